@@ -0,0 +1,88 @@
+#!/usr/bin/env bash
+#
+# Measures time-to-first-masked-response (and time-to-ready) of the Data Masking API.
+#
+# Usage:
+#   scripts/startup-benchmark.sh [runs] [mode]
+#     runs  number of cold starts to measure (default 5)
+#     mode  fatjar  - target/data-masking-api-1.0.0.jar            (mvn package)
+#           appcds  - target/appcds with the AppCDS archive        (mvn -Pappcds package)
+#           all     - both, one after the other (default)
+#
+# Extra JVM options can be passed through JAVA_OPTS, application options through APP_ARGS.
+#
+set -euo pipefail
+
+RUNS="${1:-5}"
+MODE="${2:-all}"
+PORT="${PORT:-18089}"
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+VERSION="1.0.0"
+FAT_JAR="$ROOT/target/data-masking-api-$VERSION.jar"
+CDS_DIR="$ROOT/target/appcds"
+CDS_JAR="$CDS_DIR/data-masking-api-$VERSION-appcds.jar"
+CDS_ARCHIVE="$CDS_DIR/app-cds.jsa"
+
+REQUEST='{"transaction_id":"BENCH","payload_txt":"{\"account\":{\"accountNumber\":\"9876543210987654\"}}"}'
+
+now_ms() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+# Starts the application with the given java arguments and prints "<first-response-ms> <ready-ms>"
+measure() {
+    local start first ready pid
+    start=$(now_ms)
+    # shellcheck disable=SC2086
+    java ${JAVA_OPTS:-} "$@" --server.port="$PORT" ${APP_ARGS:-} > /dev/null 2>&1 &
+    pid=$!
+    first=""
+    ready=""
+
+    while kill -0 "$pid" 2> /dev/null; do
+        if [ -z "$first" ] && curl -sf -o /dev/null -X POST "http://localhost:$PORT/api/mask" \
+                -H 'Content-Type: application/json' -d "$REQUEST"; then
+            first=$(( $(now_ms) - start ))
+        fi
+        if [ -n "$first" ] && curl -sf "http://localhost:$PORT/actuator/health/readiness" 2> /dev/null | grep -q '"UP"'; then
+            ready=$(( $(now_ms) - start ))
+            break
+        fi
+        sleep 0.05
+    done
+
+    kill "$pid" 2> /dev/null || true
+    wait "$pid" 2> /dev/null || true
+    echo "${first:-NA} ${ready:-NA}"
+}
+
+run_mode() {
+    local label="$1"
+    shift
+    local total_first=0 total_ready=0 result first ready
+
+    echo "== $label ($RUNS runs)"
+    for i in $(seq 1 "$RUNS"); do
+        result=$(measure "$@")
+        first=${result% *}
+        ready=${result#* }
+        printf '  run %d: first masked response %s ms, ready %s ms\n' "$i" "$first" "$ready"
+        if [ "$first" = "NA" ] || [ "$ready" = "NA" ]; then
+            echo "  application exited before answering; aborting" >&2
+            exit 1
+        fi
+        total_first=$(( total_first + first ))
+        total_ready=$(( total_ready + ready ))
+    done
+    printf '  mean: first masked response %d ms, ready %d ms\n' $(( total_first / RUNS )) $(( total_ready / RUNS ))
+}
+
+if [ "$MODE" = "fatjar" ] || [ "$MODE" = "all" ]; then
+    [ -f "$FAT_JAR" ] || { echo "Missing $FAT_JAR - run mvn package" >&2; exit 1; }
+    run_mode "fat jar" -jar "$FAT_JAR"
+fi
+
+if [ "$MODE" = "appcds" ] || [ "$MODE" = "all" ]; then
+    [ -f "$CDS_ARCHIVE" ] || { echo "Missing $CDS_ARCHIVE - run mvn -Pappcds package" >&2; exit 1; }
+    run_mode "AppCDS" -XX:SharedArchiveFile="$CDS_ARCHIVE" -Xlog:cds=error -jar "$CDS_JAR"
+fi
@@ -0,0 +1,186 @@
+package com.example.masking.benchmark;
+
+import com.example.masking.DataMaskingApplication;
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * End-to-end /api/mask round trip over HTTP against the running application: an identity, gzip or
+ * zstd request body, and a response in the same coding that the client decodes. Compression only
+ * pays off on a real link, so {@code linkMbps} adds the time the request and response bytes would
+ * take at that bandwidth (0 = loopback only). Payloads are camt.054 notifications; "4MB" is above
+ * the in-memory threshold and is spilled and masked by the streaming engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressedRequestBenchmark {
+
+    @Param({"identity", "gzip", "zstd"})
+    public String encoding;
+
+    @Param({"64KB", "4MB"})
+    public String size;
+
+    @Param({"0", "100", "1000"})
+    public int linkMbps;
+
+    private ConfigurableApplicationContext context;
+    private URL url;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = SpringApplication.run(DataMaskingApplication.class,
+                "--server.port=0", "--logging.level.root=WARN", "--logging.level.com.example.masking=WARN",
+                "--masking.warmup.enabled=false");
+        url = new URL("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/mask");
+
+        byte[] json = ("{\"transaction_id\":\"benchmark\",\"payload_txt\":\""
+                + camt054(size.equals("4MB") ? 4 * 1024 * 1024 : 64 * 1024).replace("\"", "\\\"")
+                + "\"}").getBytes(StandardCharsets.UTF_8);
+        body = encode(json, encoding);
+        System.out.printf("%n%s %s: %d request bytes on the wire (%d decoded)%n", size, encoding, body.length, json.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long roundTrip() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (!encoding.equals("identity")) {
+            connection.setRequestProperty("Content-Encoding", encoding);
+        }
+        connection.setRequestProperty("Accept-Encoding", encoding);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("HTTP " + connection.getResponseCode());
+        }
+
+        CountingInputStream wire = new CountingInputStream(connection.getInputStream());
+        long decoded = 0;
+        try (InputStream in = decoder(wire, connection.getHeaderField("Content-Encoding"))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                decoded += n;
+            }
+        }
+
+        if (linkMbps > 0) {
+            // Time the request and response bytes would spend on the link
+            long end = System.nanoTime() + (body.length + wire.count) * 8_000L / linkMbps;
+            for (long left = end - System.nanoTime(); left > 0; left = end - System.nanoTime()) {
+                LockSupport.parkNanos(left);
+            }
+        }
+        return decoded;
+    }
+
+    private static InputStream decoder(InputStream in, String contentEncoding) throws IOException {
+        if ("gzip".equals(contentEncoding)) {
+            return new GZIPInputStream(in, 8192);
+        }
+        if ("zstd".equals(contentEncoding)) {
+            return new ZstdInputStream(in);
+        }
+        return in;
+    }
+
+    private static byte[] encode(byte[] json, String encoding) throws IOException {
+        if (encoding.equals("identity")) {
+            return json;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (OutputStream encoder = encoding.equals("gzip") ? new GZIPOutputStream(out, 8192) : new ZstdOutputStream(out)) {
+            encoder.write(json);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A camt.054 notification with entries up to about {@code length} chars, every IBAN distinct.
+     */
+    static String camt054(int length) {
+        StringBuilder xml = new StringBuilder(length + 512)
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.054.001.08\"><BkToCstmrDbtCdtNtfctn>")
+                .append("<GrpHdr><MsgId>NTF-0001</MsgId><CreDtTm>2024-06-11T10:00:00</CreDtTm></GrpHdr>")
+                .append("<Ntfctn><Id>N-1</Id><Acct><Id><IBAN>DE89370400440532013000</IBAN></Id></Acct>");
+        for (int i = 0; xml.length() < length; i++) {
+            xml.append("<Ntry><NtryRef>").append(i).append("</NtryRef>")
+                    .append("<Amt Ccy=\"EUR\">").append(100 + i % 9000).append(".00</Amt><CdtDbtInd>CRDT</CdtDbtInd>")
+                    .append("<NtryDtls><TxDtls><Refs><EndToEndId>E2E-").append(i).append("</EndToEndId></Refs>")
+                    .append("<RltdPties><DbtrAcct><Id><IBAN>DE").append(10 + i % 90).append("5001051754")
+                    .append(String.format("%08d", i)).append("</IBAN></Id></DbtrAcct>")
+                    .append("<CdtrAcct><Id><IBAN>FR76300060000112345678").append(String.format("%05d", i % 100000))
+                    .append("</IBAN></Id></CdtrAcct></RltdPties></TxDtls></NtryDtls></Ntry>");
+        }
+        return xml.append("</Ntfctn></BkToCstmrDbtCdtNtfctn></Document>").toString();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.masking.benchmark;
+
+import com.example.masking.config.PiiDetectorProperties;
+import com.example.masking.service.processor.DefaultMaskingProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default masking path: legacy 10-14 digit regex versus the single-pass detector scanner.
+ * "digit-runs" enables only the digit-run detector (same output as the regex); "detectors"
+ * adds card and IBAN validation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DefaultMaskingBenchmark {
+
+    @Param({"regex", "digit-runs", "detectors"})
+    public String engine;
+
+    @Param({"mixed", "digits", "text"})
+    public String payload;
+
+    private DefaultMaskingProcessor processor;
+    private String input;
+
+    @Setup
+    public void setUp() {
+        PiiDetectorProperties properties = new PiiDetectorProperties();
+        // Digit runs are off by default; both detector engines include them to compare with the regex
+        properties.getDigitRuns().setEnabled(true);
+        if (engine.equals("regex")) {
+            properties.setEnabled(false);
+        } else if (engine.equals("digit-runs")) {
+            properties.getCards().setEnabled(false);
+            properties.getIbans().setEnabled(false);
+        }
+        processor = new DefaultMaskingProcessor(properties);
+        input = payload(payload, 16 * 1024);
+    }
+
+    @Benchmark
+    public String mask() {
+        return processor.mask(input, null);
+    }
+
+    /**
+     * Deterministic payloads: "mixed" is log-like text with occasional accounts, cards, IBANs
+     * and timestamps; "digits" is dense numeric content; "text" contains nothing to mask.
+     */
+    static String payload(String kind, int length) {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(length + 64);
+        String[] words = {"payment", "REF", "status", "ACCEPTED", "amount", "EUR", "Customer", "note", "batch", "id"};
+
+        while (builder.length() < length) {
+            switch (kind) {
+                case "digits":
+                    builder.append(random.nextInt(1_000_000)).append(random.nextInt(1_000_000_000))
+                            .append(random.nextBoolean() ? ' ' : ',');
+                    break;
+                case "text":
+                    builder.append(words[random.nextInt(words.length)]).append(' ');
+                    break;
+                default:
+                    builder.append(words[random.nextInt(words.length)]).append(' ');
+                    switch (random.nextInt(12)) {
+                        case 0:
+                            builder.append("acct 1234567890123 ");
+                            break;
+                        case 1:
+                            builder.append("card 4111 1111 1111 1111 ");
+                            break;
+                        case 2:
+                            builder.append("iban DE89370400440532013000 ");
+                            break;
+                        case 3:
+                            builder.append("ts 20240101123045 ");
+                            break;
+                        case 4:
+                            builder.append(random.nextInt(100_000)).append(".00 ");
+                            break;
+                        default:
+                            break;
+                    }
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.masking.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of every load step, per mix entry (payload type and size) and overall, and the
+ * throughput vs. latency report written at the end. Latencies are microseconds from a request's
+ * intended send time, so time a request spent waiting behind slower ones is part of its latency.
+ */
+final class LatencyReport {
+
+    static final String ALL = "all";
+
+    private final String title;
+    private final double sloP99Millis;
+    private final List<Step> steps = new ArrayList<>();
+
+    LatencyReport(String title, double sloP99Millis) {
+        this.title = title;
+        this.sloP99Millis = sloP99Millis;
+    }
+
+    Step newStep(double offeredRate, List<String> labels) {
+        Step step = new Step(offeredRate, labels);
+        steps.add(step);
+        return step;
+    }
+
+    /**
+     * The highest offered rate whose step met the SLO, or 0 if none did.
+     */
+    double sustainedRate() {
+        double sustained = 0;
+        for (Step step : steps) {
+            if (step.violation(sloP99Millis) == null) {
+                sustained = Math.max(sustained, step.offeredRate);
+            }
+        }
+        return sustained;
+    }
+
+    /**
+     * Why a step misses the SLO, or null if it meets it.
+     */
+    String violation(Step step) {
+        return step.violation(sloP99Millis);
+    }
+
+    void print(Step step, PrintStream out) {
+        out.println();
+        out.printf(Locale.ROOT, "Offered %.1f req/s, achieved %.1f req/s%s%n", step.offeredRate, step.achievedRate(),
+                step.unfinished > 0 ? ", " + step.unfinished + " unfinished" : "");
+        out.printf("%-14s %9s %7s %10s %10s %10s %10s%n", "payload", "requests", "errors", "p50 ms", "p99 ms",
+                "p99.9 ms", "max ms");
+        for (String label : step.histograms.keySet()) {
+            Histogram histogram = step.histograms.get(label);
+            out.printf(Locale.ROOT, "%-14s %9d %7d %10.2f %10.2f %10.2f %10.2f%n", label, histogram.getTotalCount(),
+                    step.errors.get(label).sum(), millis(histogram, 50), millis(histogram, 99),
+                    millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+        }
+        String violation = step.violation(sloP99Millis);
+        out.println(violation != null ? "SLO missed: " + violation : "SLO met");
+    }
+
+    /**
+     * Writes the Markdown report, a CSV of the same rows and the overall latency distribution of each
+     * step (HdrHistogram .hgrm, in milliseconds) under {@code directory}, named after {@code name}.
+     */
+    void write(Path directory, String name) throws IOException {
+        Files.createDirectories(directory);
+        try (PrintWriter md = writer(directory.resolve(name + ".md"));
+             PrintWriter csv = writer(directory.resolve(name + ".csv"))) {
+            md.println("# " + title);
+            md.println();
+            md.printf(Locale.ROOT, "Sustained rate: **%.1f req/s** (p99 of all requests at most %.0f ms, at least 95%% "
+                    + "of the offered rate achieved, at most 1%% errors, nothing left unfinished).%n", sustainedRate(),
+                    sloP99Millis);
+            md.println();
+            md.println("| Offered req/s | Achieved req/s | Payload | Requests | Errors | p50 ms | p99 ms | p99.9 ms | Max ms |");
+            md.println("|---:|---:|---|---:|---:|---:|---:|---:|---:|");
+            csv.println("offered_rate,achieved_rate,payload,requests,errors,p50_ms,p99_ms,p999_ms,max_ms");
+
+            for (Step step : steps) {
+                for (String label : step.histograms.keySet()) {
+                    Histogram histogram = step.histograms.get(label);
+                    Object[] row = {step.offeredRate, step.achievedRate(), label, histogram.getTotalCount(),
+                            step.errors.get(label).sum(), millis(histogram, 50), millis(histogram, 99),
+                            millis(histogram, 99.9), histogram.getMaxValue() / 1000.0};
+                    md.printf(Locale.ROOT, "| %.1f | %.1f | %s | %d | %d | %.2f | %.2f | %.2f | %.2f |%n", row);
+                    csv.printf(Locale.ROOT, "%.1f,%.1f,%s,%d,%d,%.3f,%.3f,%.3f,%.3f%n", row);
+                }
+                String violation = step.violation(sloP99Millis);
+                if (violation != null) {
+                    md.printf(Locale.ROOT, "| %.1f | | *SLO missed: %s* | | | | | | |%n", step.offeredRate, violation);
+                }
+
+                try (PrintStream hgrm = new PrintStream(Files.newOutputStream(
+                        directory.resolve(String.format(Locale.ROOT, "%s-%.0f.hgrm", name, step.offeredRate))),
+                        false, "UTF-8")) {
+                    step.histograms.get(ALL).outputPercentileDistribution(hgrm, 1000.0);
+                }
+            }
+        }
+    }
+
+    private static PrintWriter writer(Path file) throws IOException {
+        Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        return new PrintWriter(writer);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * One fixed arrival rate held for the step duration.
+     */
+    static final class Step {
+        final double offeredRate;
+        private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+        private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+        private long elapsedNanos;
+        private long unfinished;
+
+        private Step(double offeredRate, List<String> labels) {
+            this.offeredRate = offeredRate;
+            for (String label : labels) {
+                histograms.put(label, new ConcurrentHistogram(3));
+                errors.put(label, new LongAdder());
+            }
+            histograms.put(ALL, new ConcurrentHistogram(3));
+            errors.put(ALL, new LongAdder());
+        }
+
+        void record(String label, long latencyNanos) {
+            long micros = Math.max(1, latencyNanos / 1000);
+            histograms.get(label).recordValue(micros);
+            histograms.get(ALL).recordValue(micros);
+        }
+
+        void error(String label) {
+            errors.get(label).increment();
+            errors.get(ALL).increment();
+        }
+
+        /**
+         * @param elapsedNanos From the first intended send time to the last completion
+         * @param unfinished Requests still in progress when the step gave up waiting for them
+         */
+        void finish(long elapsedNanos, long unfinished) {
+            this.elapsedNanos = elapsedNanos;
+            this.unfinished = unfinished;
+        }
+
+        double achievedRate() {
+            return elapsedNanos > 0 ? histograms.get(ALL).getTotalCount() * 1e9 / elapsedNanos : 0;
+        }
+
+        /**
+         * Why this step does not meet the SLO, or null if it does.
+         */
+        String violation(double sloP99Millis) {
+            long requests = histograms.get(ALL).getTotalCount() + errors.get(ALL).sum();
+            if (unfinished > 0) {
+                return unfinished + " requests unfinished";
+            }
+            if (errors.get(ALL).sum() > requests / 100) {
+                return errors.get(ALL).sum() + " of " + requests + " requests failed";
+            }
+            if (achievedRate() < offeredRate * 0.95) {
+                return String.format(Locale.ROOT, "achieved %.1f of %.1f req/s", achievedRate(), offeredRate);
+            }
+            double p99 = millis(histograms.get(ALL), 99);
+            if (p99 > sloP99Millis) {
+                return String.format(Locale.ROOT, "p99 %.2f ms above %.0f ms", p99, sloP99Millis);
+            }
+            return null;
+        }
+    }
+}
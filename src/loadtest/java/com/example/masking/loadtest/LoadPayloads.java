@@ -0,0 +1,89 @@
+package com.example.masking.loadtest;
+
+import com.example.masking.model.PayloadType;
+
+import java.util.Random;
+
+/**
+ * Payloads of about a given size that the rules in masking-config.yaml mask: camt.054 notifications
+ * for XML, arrays of account records for JSON and MTSFTR records for FIXED. Account numbers are
+ * random, so no two payloads are alike.
+ */
+final class LoadPayloads {
+
+    // Starts of the 16-char ranges masked by the mtsftr rules
+    private static final int[] MTSFTR_RANGES = {10, 50, 100};
+
+    private LoadPayloads() {
+    }
+
+    static String generate(PayloadType type, int length, Random random) {
+        switch (type) {
+            case XML:
+                return camt054(length, random);
+            case JSON:
+                return accountRecords(length, random);
+            default:
+                return mtsftr(length, random);
+        }
+    }
+
+    private static String camt054(int length, Random random) {
+        StringBuilder xml = new StringBuilder(length + 512)
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.054.001.08\"><BkToCstmrDbtCdtNtfctn>")
+                .append("<GrpHdr><MsgId>NTF-").append(random.nextInt(1_000_000)).append("</MsgId>")
+                .append("<CreDtTm>2024-06-11T10:00:00</CreDtTm></GrpHdr>")
+                .append("<Ntfctn><Id>N-1</Id><Acct><Id><IBAN>").append(iban(random)).append("</IBAN></Id></Acct>");
+        for (int i = 0; xml.length() < length; i++) {
+            xml.append("<Ntry><NtryRef>").append(i).append("</NtryRef>")
+                    .append("<Amt Ccy=\"EUR\">").append(100 + random.nextInt(9000)).append(".00</Amt>")
+                    .append("<CdtDbtInd>CRDT</CdtDbtInd><NtryDtls><TxDtls><Refs><EndToEndId>E2E-").append(i)
+                    .append("</EndToEndId></Refs><RltdPties><DbtrAcct><Id><IBAN>").append(iban(random))
+                    .append("</IBAN></Id></DbtrAcct><CdtrAcct><Id><IBAN>").append(iban(random))
+                    .append("</IBAN></Id></CdtrAcct></RltdPties></TxDtls></NtryDtls></Ntry>");
+        }
+        return xml.append("</Ntfctn></BkToCstmrDbtCdtNtfctn></Document>").toString();
+    }
+
+    private static String accountRecords(int length, Random random) {
+        StringBuilder json = new StringBuilder(length + 256).append('[');
+        for (int i = 0; json.length() < length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i)
+                    .append(",\"account\":{\"accountNumber\":\"").append(digits(random, 16))
+                    .append("\",\"currency\":\"EUR\"},\"amount\":").append(random.nextInt(100_000))
+                    .append(",\"memo\":\"invoice ").append(random.nextInt(1_000_000)).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * An MTSFTR record ("*FTR" prefix) with card-like numbers in its three masked ranges.
+     */
+    private static String mtsftr(int length, Random random) {
+        char[] record = new char[Math.max(length, 120)];
+        for (int i = 0; i < record.length; i++) {
+            record[i] = (char) ('A' + random.nextInt(26));
+        }
+        "*FTR".getChars(0, 4, record, 0);
+        for (int start : MTSFTR_RANGES) {
+            digits(random, 16).getChars(0, 16, record, start);
+        }
+        return new String(record);
+    }
+
+    private static String iban(Random random) {
+        return "DE" + digits(random, 20);
+    }
+
+    private static String digits(Random random, int count) {
+        char[] digits = new char[count];
+        for (int i = 0; i < count; i++) {
+            digits[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+}
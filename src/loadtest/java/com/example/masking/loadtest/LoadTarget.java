@@ -0,0 +1,184 @@
+package com.example.masking.loadtest;
+
+import com.example.masking.DataMaskingApplication;
+import com.example.masking.model.PayloadType;
+import com.example.masking.service.DataMaskingService;
+import com.example.masking.service.RuleSet;
+import com.example.masking.service.TenantRuleSets;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * What the load test drives: a running service over HTTP, the application booted inside the
+ * load test JVM (still over HTTP on localhost), or DataMaskingService called directly.
+ */
+abstract class LoadTarget implements AutoCloseable {
+
+    // Keep the service's per-request INFO logging from dominating the measurement; the load test
+    // warms the service up at its first rate instead of the startup warm-up
+    private static final String[] QUIET = {
+            "--logging.level.root=WARN", "--logging.level.com.example.masking=WARN", "--masking.warmup.enabled=false"
+    };
+
+    /**
+     * Masks one payload.
+     *
+     * @return The payload type the service detected
+     */
+    abstract PayloadType mask(String transactionId, String payload) throws IOException;
+
+    abstract String describe();
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @param target "embedded", "in-process" or the base URL of a running service
+     * @param tenant Tenant sent in the tenant header (or whose rule set is used in-process), or null
+     */
+    static LoadTarget create(String target, String tenant) throws IOException {
+        if (target.equals("in-process")) {
+            return new InProcess(tenant);
+        }
+        if (target.equals("embedded")) {
+            ConfigurableApplicationContext context = boot("--server.port=0");
+            String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            return new Http(url, tenant, context);
+        }
+        return new Http(target, tenant, null);
+    }
+
+    /**
+     * POST /api/mask with a unique transaction_id per request, so the response cache never answers.
+     */
+    static final class Http extends LoadTarget {
+        private final JsonFactory json = new JsonFactory();
+        private final URL url;
+        private final String tenant;
+        private final ConfigurableApplicationContext context;   // Embedded application, or null
+
+        private Http(String baseUrl, String tenant, ConfigurableApplicationContext context) throws IOException {
+            this.url = new URL(baseUrl.replaceAll("/+$", "") + "/api/mask");
+            this.tenant = tenant;
+            this.context = context;
+        }
+
+        @Override
+        PayloadType mask(String transactionId, String payload) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(payload.length() + 64);
+            try (JsonGenerator generator = json.createGenerator(body)) {
+                generator.writeStartObject();
+                generator.writeStringField("transaction_id", transactionId);
+                generator.writeStringField("payload_txt", payload);
+                generator.writeEndObject();
+            }
+
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.size());
+            connection.setRequestProperty("Content-Type", "application/json");
+            if (tenant != null) {
+                connection.setRequestProperty("X-Masking-Tenant", tenant);
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                body.writeTo(out);
+            }
+
+            int status = connection.getResponseCode();
+            if (status != 200) {
+                // Drain the error body so the connection can be reused
+                try (InputStream error = connection.getErrorStream()) {
+                    if (error != null) {
+                        while (error.read() != -1) {
+                            // discard
+                        }
+                    }
+                }
+                throw new IOException("HTTP " + status);
+            }
+            try (InputStream in = connection.getInputStream(); JsonParser parser = json.createParser(in)) {
+                PayloadType type = null;
+                while (parser.nextToken() != null) {
+                    if (parser.currentToken() == JsonToken.FIELD_NAME && "payload_type".equals(parser.getCurrentName())) {
+                        parser.nextToken();
+                        type = PayloadType.valueOf(parser.getText());
+                    }
+                }
+                if (type == null) {
+                    throw new IOException("Response without payload_type");
+                }
+                return type;
+            }
+        }
+
+        @Override
+        String describe() {
+            return context != null ? "embedded application at " + url : url.toString();
+        }
+
+        @Override
+        public void close() {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * DataMaskingService of an application context without a web server: the masking path alone,
+     * without HTTP, JSON envelope or filters.
+     */
+    static final class InProcess extends LoadTarget {
+        private final ConfigurableApplicationContext context;
+        private final DataMaskingService service;
+        private final RuleSet ruleSet;
+
+        private InProcess(String tenant) {
+            this.context = boot("--spring.main.web-application-type=none");
+            this.service = context.getBean(DataMaskingService.class);
+            TenantRuleSets tenants = context.getBean(TenantRuleSets.class);
+            this.ruleSet = tenant != null ? tenants.get(tenant) : tenants.getDefault();
+        }
+
+        @Override
+        PayloadType mask(String transactionId, String payload) {
+            try {
+                PayloadType type = service.detectPayloadType(payload);
+                service.maskPayload(payload, type, ruleSet);
+                return type;
+            } finally {
+                service.clearThreadLocalState();
+            }
+        }
+
+        @Override
+        String describe() {
+            return "DataMaskingService in-process";
+        }
+
+        @Override
+        public void close() {
+            context.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext boot(String argument) {
+        String[] args = Arrays.copyOf(QUIET, QUIET.length + 1);
+        args[QUIET.length] = argument;
+        return SpringApplication.run(DataMaskingApplication.class, args);
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.masking.loadtest;
+
+import com.example.masking.model.PayloadType;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: sends a weighted mix of payload types and sizes at fixed arrival rates,
+ * one step per rate, and reports throughput against p50/p99/p99.9 latency per payload. Requests are
+ * sent on a fixed schedule whether or not earlier ones have completed, and each latency is measured
+ * from its scheduled send time, so a stalled service shows up in the percentiles instead of silently
+ * lowering the request rate (coordinated omission). Steps stop at the first rate that misses the SLO.
+ *
+ * <pre>
+ * mvn -Ploadtest compile exec:exec@loadtest -Dloadtest.args="--rates=50,100,200 --duration=30s"
+ * </pre>
+ *
+ * Options (all {@code --name=value}):
+ * <ul>
+ *   <li>target: {@code embedded} (default, the application on a free local port), {@code in-process}
+ *       (DataMaskingService without HTTP) or the base URL of a running service</li>
+ *   <li>tenant: tenant of every request (default: none)</li>
+ *   <li>mix: {@code TYPE:size:weight,...} with TYPE one of XML, JSON, FIXED
+ *       (default {@code XML:8KB:40,JSON:8KB:40,FIXED:512B:20})</li>
+ *   <li>rates: requests per second of each step (default {@code 25,50,100,200,400})</li>
+ *   <li>duration: length of each step (default 30s); warmup: unrecorded run at the first rate (default 15s)</li>
+ *   <li>max-in-flight: concurrent requests; later ones queue, and their wait counts (default 256)</li>
+ *   <li>drain-timeout: wait for requests still in flight after a step (default 30s)</li>
+ *   <li>slo-p99: p99 latency of all requests a step must meet (default 250ms)</li>
+ *   <li>output: report directory (default target/loadtest); seed: payload and mix seed (default 42)</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    private static final int VARIANTS = 16;     // Distinct payloads per mix entry
+
+    private final LoadTarget target;
+    private final List<MixEntry> mix;
+    private final int totalWeight;
+    private final int maxInFlight;
+    private final Duration drainTimeout;
+    private final long seed;
+    private final AtomicLong transactions = new AtomicLong();
+    private final Map<String, String> firstErrors = new ConcurrentHashMap<>();
+
+    private LoadTest(LoadTarget target, List<MixEntry> mix, int maxInFlight, Duration drainTimeout, long seed) {
+        this.target = target;
+        this.mix = mix;
+        this.totalWeight = mix.stream().mapToInt(entry -> entry.weight).sum();
+        this.maxInFlight = maxInFlight;
+        this.drainTimeout = drainTimeout;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        List<MixEntry> mix = parseMix(options.getOrDefault("mix", "XML:8KB:40,JSON:8KB:40,FIXED:512B:20"),
+                new Random(seed));
+        List<Double> rates = new ArrayList<>();
+        for (String rate : options.getOrDefault("rates", "25,50,100,200,400").split(",")) {
+            rates.add(Double.parseDouble(rate.trim()));
+        }
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+        Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "15s"));
+        Duration sloP99 = DurationStyle.detectAndParse(options.getOrDefault("slo-p99", "250ms"));
+        Path output = Paths.get(options.getOrDefault("output", "target/loadtest"));
+
+        try (LoadTarget target = LoadTarget.create(options.getOrDefault("target", "embedded"), options.get("tenant"))) {
+            LoadTest test = new LoadTest(target, mix,
+                    Integer.parseInt(options.getOrDefault("max-in-flight", "256")),
+                    DurationStyle.detectAndParse(options.getOrDefault("drain-timeout", "30s")), seed);
+            String title = "Masking load test: " + target.describe() + ", mix " + describe(mix);
+            System.out.println(title);
+
+            LatencyReport report = new LatencyReport(title, sloP99.toNanos() / 1e6);
+            test.run(rates, duration, warmup, report);
+
+            String name = "loadtest-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            report.write(output, name);
+            System.out.printf(Locale.ROOT, "%nSustained rate: %.1f req/s (p99 SLO %d ms)%nReport: %s%n",
+                    report.sustainedRate(), sloP99.toMillis(), output.resolve(name + ".md").toAbsolutePath());
+        }
+    }
+
+    private void run(List<Double> rates, Duration duration, Duration warmup, LatencyReport report)
+            throws InterruptedException {
+        List<String> labels = new ArrayList<>();
+        mix.forEach(entry -> labels.add(entry.label));
+
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxInFlight, maxInFlight, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "load-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            if (!warmup.isZero()) {
+                System.out.printf(Locale.ROOT, "Warming up at %.1f req/s for %s%n", rates.get(0),
+                        DurationStyle.SIMPLE.print(warmup));
+                step(pool, new LatencyReport("warm-up", 0).newStep(rates.get(0), labels), warmup, -1);
+            }
+            for (int i = 0; i < rates.size(); i++) {
+                LatencyReport.Step step = report.newStep(rates.get(i), labels);
+                step(pool, step, duration, i);
+                report.print(step, System.out);
+                if (report.violation(step) != null) {
+                    System.out.println("Stopping: the node is saturated at this rate");
+                    break;
+                }
+            }
+            firstErrors.forEach((label, error) -> System.out.println("First " + label + " error: " + error));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends requests at the step's rate for {@code duration}, then waits for the ones in flight.
+     */
+    private void step(ExecutorService pool, LatencyReport.Step step, Duration duration, int index)
+            throws InterruptedException {
+        Random random = new Random(seed + index);
+        long intervalNanos = (long) (1e9 / step.offeredRate);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicLong lastCompletion = new AtomicLong(start);
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+
+            MixEntry entry = pick(random);
+            String payload = entry.payloads[random.nextInt(entry.payloads.length)];
+            String transactionId = "load-" + transactions.incrementAndGet();
+            inFlight.incrementAndGet();
+            pool.execute(() -> {
+                try {
+                    PayloadType detected = target.mask(transactionId, payload);
+                    long now = System.nanoTime();
+                    if (detected != entry.type) {
+                        throw new IllegalStateException("detected as " + detected);
+                    }
+                    step.record(entry.label, now - intended);
+                    lastCompletion.accumulateAndGet(now, Math::max);
+                } catch (Exception e) {
+                    step.error(entry.label);
+                    firstErrors.putIfAbsent(entry.label, String.valueOf(e.getMessage()));
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+
+        long drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        step.finish(lastCompletion.get() - start, inFlight.get());
+    }
+
+    private MixEntry pick(Random random) {
+        int ticket = random.nextInt(totalWeight);
+        for (MixEntry entry : mix) {
+            ticket -= entry.weight;
+            if (ticket < 0) {
+                return entry;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    private static List<MixEntry> parseMix(String mix, Random random) {
+        List<MixEntry> entries = new ArrayList<>();
+        for (String spec : mix.split(",")) {
+            String[] parts = spec.trim().split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected TYPE:size:weight in mix: " + spec);
+            }
+            PayloadType type = PayloadType.valueOf(parts[0].toUpperCase(Locale.ROOT));
+            int size = (int) DataSize.parse(parts[1]).toBytes();
+            String[] payloads = new String[VARIANTS];
+            for (int i = 0; i < payloads.length; i++) {
+                payloads[i] = LoadPayloads.generate(type, size, random);
+            }
+            entries.add(new MixEntry(type, type + " " + parts[1], Integer.parseInt(parts[2]), payloads));
+        }
+        return entries;
+    }
+
+    private static String describe(List<MixEntry> mix) {
+        int total = mix.stream().mapToInt(entry -> entry.weight).sum();
+        StringBuilder description = new StringBuilder();
+        for (MixEntry entry : mix) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(entry.label).append(' ').append(Math.round(100.0 * entry.weight / total)).append('%');
+        }
+        return description.toString();
+    }
+
+    private static final class MixEntry {
+        private final PayloadType type;
+        private final String label;
+        private final int weight;
+        private final String[] payloads;
+
+        private MixEntry(PayloadType type, String label, int weight, String[] payloads) {
+            this.type = type;
+            this.label = label;
+            this.weight = weight;
+            this.payloads = payloads;
+        }
+    }
+}
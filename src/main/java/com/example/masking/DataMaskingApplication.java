@@ -1,12 +1,22 @@
 package com.example.masking;
 
+import com.example.masking.config.WarmupProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class DataMaskingApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(DataMaskingApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(DataMaskingApplication.class, args);
+
+        if (context.getBean(WarmupProperties.class).isExitAfterWarmup()) {
+            // Training run (see the appcds Maven profile): closing the context stops the web server and
+            // job workers, so the JVM exits normally and writes the class-data archive
+            SpringApplication.exit(context);
+        }
     }
 }
@@ -0,0 +1,21 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "masking.admin")
+public class AdminProperties {
+
+    private String token;                                     // Bearer token of /api/admin/**; unset disables them
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public boolean isEnabled() {
+        return token != null && !token.trim().isEmpty();
+    }
+}
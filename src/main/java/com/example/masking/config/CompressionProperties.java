@@ -0,0 +1,49 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "masking.compression")
+public class CompressionProperties {
+
+    private boolean enabled = true;                                            // Decode gzip/zstd request bodies, compress responses
+    private List<String> responseEncodings = new ArrayList<>(Arrays.asList("gzip", "zstd"));  // Preferred first; empty disables
+    private DataSize responseMinSize = DataSize.ofKilobytes(8);                // Smaller responses are sent as is
+    private int gzipLevel = 1;                                                 // 1 (fastest) to 9 (smallest)
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getResponseEncodings() {
+        return responseEncodings;
+    }
+
+    public void setResponseEncodings(List<String> responseEncodings) {
+        this.responseEncodings = responseEncodings;
+    }
+
+    public DataSize getResponseMinSize() {
+        return responseMinSize;
+    }
+
+    public void setResponseMinSize(DataSize responseMinSize) {
+        this.responseMinSize = responseMinSize;
+    }
+
+    public int getGzipLevel() {
+        return gzipLevel;
+    }
+
+    public void setGzipLevel(int gzipLevel) {
+        this.gzipLevel = gzipLevel;
+    }
+}
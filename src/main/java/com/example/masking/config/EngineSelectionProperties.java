@@ -0,0 +1,112 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "masking.engine")
+public class EngineSelectionProperties {
+
+    public enum Mode {
+        AUTO,       // Streaming at or above the threshold, tree below it
+        TREE,       // Always DOM/JsonPath
+        STREAMING   // Always streaming where the rules allow it
+    }
+
+    private Mode mode = Mode.AUTO;
+    private DataSize streamingThreshold = DataSize.ofKilobytes(512);       // Payload chars, for XML and JSON
+    private Map<String, DataSize> typeStreamingThreshold = new HashMap<>();  // Rule type or "xml"/"json" -> threshold
+    private final AutoTune autoTune = new AutoTune();
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public DataSize getStreamingThreshold() {
+        return streamingThreshold;
+    }
+
+    public void setStreamingThreshold(DataSize streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
+
+    public Map<String, DataSize> getTypeStreamingThreshold() {
+        return typeStreamingThreshold;
+    }
+
+    public void setTypeStreamingThreshold(Map<String, DataSize> typeStreamingThreshold) {
+        this.typeStreamingThreshold = typeStreamingThreshold;
+    }
+
+    public AutoTune getAutoTune() {
+        return autoTune;
+    }
+
+    /**
+     * Moves each threshold to where the measured latency of the two engines crosses over.
+     */
+    public static class AutoTune {
+
+        private boolean enabled = false;
+        private Duration interval = Duration.ofMinutes(1);            // How often thresholds are recomputed
+        private double explorationRate = 0.02;                        // Requests near the threshold sent to the other engine
+        private int minSamples = 20;                                  // Per engine and size bucket before it is compared
+        private DataSize minThreshold = DataSize.ofKilobytes(16);
+        private DataSize maxThreshold = DataSize.ofMegabytes(2);      // Larger payloads never use the tree engine
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public double getExplorationRate() {
+            return explorationRate;
+        }
+
+        public void setExplorationRate(double explorationRate) {
+            this.explorationRate = explorationRate;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public DataSize getMinThreshold() {
+            return minThreshold;
+        }
+
+        public void setMinThreshold(DataSize minThreshold) {
+            this.minThreshold = minThreshold;
+        }
+
+        public DataSize getMaxThreshold() {
+            return maxThreshold;
+        }
+
+        public void setMaxThreshold(DataSize maxThreshold) {
+            this.maxThreshold = maxThreshold;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "masking.jobs")
+public class JobProperties {
+
+    private boolean enabled = true;
+    private String directory = System.getProperty("java.io.tmpdir") + "/masking-jobs";  // Persistent queue
+    private String inputDirectory;          // Jobs may only read input files below this directory
+    private int workers = 2;                // Jobs executed concurrently
+    private int checkpointInterval = 500;   // Records between progress checkpoints
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public String getInputDirectory() {
+        return inputDirectory;
+    }
+
+    public void setInputDirectory(String inputDirectory) {
+        this.inputDirectory = inputDirectory;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+}
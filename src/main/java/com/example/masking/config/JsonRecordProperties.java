@@ -0,0 +1,36 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "masking.json.records")
+public class JsonRecordProperties {
+
+    private int parallelism = 0;                            // Worker threads; 0 = available processors, 1 = mask on the request thread
+    private DataSize batchSize = DataSize.ofKilobytes(64);  // Record chars masked per task
+    private int batchesPerWorker = 2;                       // Tasks in flight per worker for one payload (bounds buffered records)
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public DataSize getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(DataSize batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchesPerWorker() {
+        return batchesPerWorker;
+    }
+
+    public void setBatchesPerWorker(int batchesPerWorker) {
+        this.batchesPerWorker = batchesPerWorker;
+    }
+}
@@ -7,6 +7,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -14,17 +17,35 @@ import java.io.InputStream;
 @Configuration
 public class MaskingConfigLoader {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+
     @Value("${masking.config.file:masking-config.yaml}")
     private String configFile;
 
     @Bean
     public MaskingConfig loadMaskingConfig() throws IOException {
-        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
         ClassPathResource resource = new ClassPathResource(configFile);
 
+        return load(resource);
+    }
+
+    /**
+     * Reads a masking YAML (the default configuration or a tenant's rule set).
+     */
+    public static MaskingConfig load(Resource resource) throws IOException {
         try (InputStream inputStream = resource.getInputStream()) {
-            MaskingConfigWrapper wrapper = mapper.readValue(inputStream, MaskingConfigWrapper.class);
-            return wrapper.getMasking();
+            byte[] yaml = StreamUtils.copyToByteArray(inputStream);
+            MaskingConfigWrapper wrapper = MAPPER.readValue(yaml, MaskingConfigWrapper.class);
+            MaskingConfig config = wrapper.getMasking();
+            if (config == null) {
+                throw new IOException("No masking section in " + resource.getDescription());
+            }
+
+            // Version identifies this exact rule set (e.g. for response cache keys)
+            if (config.getVersion() == null) {
+                config.setVersion(DigestUtils.md5DigestAsHex(yaml));
+            }
+            return config;
         }
     }
 
@@ -0,0 +1,102 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "masking.limits")
+public class MaskingLimitsProperties {
+
+    private DataSize maxBodySize = DataSize.ofMegabytes(64);   // Default limit for every endpoint
+    private Map<String, DataSize> endpointMaxBodySize = new HashMap<>();  // Request path -> limit
+    private DataSize inMemoryThreshold = DataSize.ofMegabytes(2);  // Above this, /api/mask spills to disk
+    private String spillDirectory = System.getProperty("java.io.tmpdir");
+    private Duration timeBudget = Duration.ofSeconds(10);    // Per-request masking budget, 0 disables
+    private int maxDepth = 256;                               // Element/array nesting depth
+    private int maxNodes = 1_000_000;                         // Elements, attributes and text nodes / JSON values
+    private int maxStringLength = 4 * 1024 * 1024;            // Longest text, attribute or JSON string, in chars
+    private int maxNestedDepth = 3;                           // Payloads embedded in payloads (nested rules)
+
+    public DataSize getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(DataSize maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public Map<String, DataSize> getEndpointMaxBodySize() {
+        return endpointMaxBodySize;
+    }
+
+    public void setEndpointMaxBodySize(Map<String, DataSize> endpointMaxBodySize) {
+        this.endpointMaxBodySize = endpointMaxBodySize;
+    }
+
+    public DataSize getInMemoryThreshold() {
+        return inMemoryThreshold;
+    }
+
+    public void setInMemoryThreshold(DataSize inMemoryThreshold) {
+        this.inMemoryThreshold = inMemoryThreshold;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public Duration getTimeBudget() {
+        return timeBudget;
+    }
+
+    public void setTimeBudget(Duration timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    public void setMaxStringLength(int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+    }
+
+    public int getMaxNestedDepth() {
+        return maxNestedDepth;
+    }
+
+    public void setMaxNestedDepth(int maxNestedDepth) {
+        this.maxNestedDepth = maxNestedDepth;
+    }
+
+    /**
+     * Resolves the body size limit for a request path, falling back to the default.
+     */
+    public long maxBodyBytesFor(String path) {
+        DataSize limit = endpointMaxBodySize.get(path);
+        return (limit != null ? limit : maxBodySize).toBytes();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Detectors used by the default masking path (payloads without configured rules).
+ */
+@ConfigurationProperties(prefix = "masking.detectors")
+public class PiiDetectorProperties {
+
+    private boolean enabled = true;   // false: legacy 10-14 digit regex
+    private final DigitRuns digitRuns = new DigitRuns();
+    private final Cards cards = new Cards();
+    private final Ibans ibans = new Ibans();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DigitRuns getDigitRuns() {
+        return digitRuns;
+    }
+
+    public Cards getCards() {
+        return cards;
+    }
+
+    public Ibans getIbans() {
+        return ibans;
+    }
+
+    /**
+     * Plain digit runs; runs longer than maxDigits are masked in maxDigits chunks. Off by default:
+     * timestamps, dates and amounts are digit runs too, while cards and IBANs are caught by their checksums.
+     */
+    public static class DigitRuns {
+
+        private boolean enabled = false;
+        private int minDigits = 10;
+        private int maxDigits = 14;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMinDigits() {
+            return minDigits;
+        }
+
+        public void setMinDigits(int minDigits) {
+            this.minDigits = minDigits;
+        }
+
+        public int getMaxDigits() {
+            return maxDigits;
+        }
+
+        public void setMaxDigits(int maxDigits) {
+            this.maxDigits = maxDigits;
+        }
+    }
+
+    /**
+     * 13-19 digit card numbers that pass the Luhn check.
+     */
+    public static class Cards {
+
+        private boolean enabled = true;
+        private boolean allowSeparators = true;   // Digit groups joined by single spaces or hyphens
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isAllowSeparators() {
+            return allowSeparators;
+        }
+
+        public void setAllowSeparators(boolean allowSeparators) {
+            this.allowSeparators = allowSeparators;
+        }
+    }
+
+    /**
+     * IBANs with a known country length and a valid mod-97 checksum.
+     */
+    public static class Ibans {
+
+        private boolean enabled = true;
+        private boolean allowSpaces = true;   // Print format: groups of four separated by spaces
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isAllowSpaces() {
+            return allowSpaces;
+        }
+
+        public void setAllowSpaces(boolean allowSpaces) {
+            this.allowSpaces = allowSpaces;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "masking.cache")
+public class ResponseCacheProperties {
+
+    private boolean enabled = false;
+    private DataSize maxMemory = DataSize.ofMegabytes(64);   // Estimated heap used by cached responses
+    private Duration ttl = Duration.ofMinutes(5);            // Retry window
+    private final Disk disk = new Disk();
+    private final Spilled spilled = new Spilled();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DataSize getMaxMemory() {
+        return maxMemory;
+    }
+
+    public void setMaxMemory(DataSize maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public Disk getDisk() {
+        return disk;
+    }
+
+    public Spilled getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Optional local disk store that receives entries evicted from memory for size.
+     */
+    public static class Disk {
+
+        private boolean enabled = false;
+        private String directory = System.getProperty("java.io.tmpdir") + "/masking-response-cache";
+        private int maxEntries = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    /**
+     * Responses of spilled requests, kept as files and bounded by their total size.
+     */
+    public static class Spilled {
+
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+        private String directory = System.getProperty("java.io.tmpdir") + "/masking-spilled-responses";
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+    }
+}
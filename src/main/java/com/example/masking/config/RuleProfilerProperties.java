@@ -0,0 +1,46 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "masking.profiler")
+public class RuleProfilerProperties {
+
+    private boolean enabled = false;                          // Log and retain slow rule evaluations
+    private double sampleRate = 1.0;                          // Fraction of slow evaluations that are logged
+    private Duration slowThreshold = Duration.ofMillis(5);    // Evaluations at or above this are "slow"
+    private int retainedSamples = 20;                         // Size of the slowest-evaluations list
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Duration getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void setSlowThreshold(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    public int getRetainedSamples() {
+        return retainedSamples;
+    }
+
+    public void setRetainedSamples(int retainedSamples) {
+        this.retainedSamples = retainedSamples;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "masking.tenants")
+public class TenantProperties {
+
+    private String header = "X-Masking-Tenant";              // Selects the tenant; or tenant_id in the request body
+    private int defaultMaxConcurrent = 0;                    // Concurrent requests per tenant, 0 = unlimited
+    private Duration acquireTimeout = Duration.ZERO;         // Wait for a free slot before answering 429
+    private Map<String, Tenant> definitions = new LinkedHashMap<>();   // Tenant id -> rule set and quota
+
+    public String getHeader() {
+        return header;
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public int getDefaultMaxConcurrent() {
+        return defaultMaxConcurrent;
+    }
+
+    public void setDefaultMaxConcurrent(int defaultMaxConcurrent) {
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+    }
+
+    public Duration getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    public void setAcquireTimeout(Duration acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public Map<String, Tenant> getDefinitions() {
+        return definitions;
+    }
+
+    public void setDefinitions(Map<String, Tenant> definitions) {
+        this.definitions = definitions;
+    }
+
+    public static class Tenant {
+
+        private String configFile;          // Masking YAML: classpath:, file: or a classpath path
+        private Integer maxConcurrent;      // Overrides default-max-concurrent
+
+        public String getConfigFile() {
+            return configFile;
+        }
+
+        public void setConfigFile(String configFile) {
+            this.configFile = configFile;
+        }
+
+        public Integer getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(Integer maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+    }
+}
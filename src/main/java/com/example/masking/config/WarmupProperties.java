@@ -0,0 +1,55 @@
+package com.example.masking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "masking.warmup")
+public class WarmupProperties {
+
+    private boolean enabled = true;
+    private int iterations = 200;                         // Masking runs per warm-up payload
+    private String sampleDirectory;                       // Optional directory of real sample payloads
+    private Duration maxDuration = Duration.ofSeconds(30);  // Hard cap so a slow node still becomes ready
+    private boolean exitAfterWarmup = false;              // Shut down once warmed up (AppCDS training runs)
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public String getSampleDirectory() {
+        return sampleDirectory;
+    }
+
+    public void setSampleDirectory(String sampleDirectory) {
+        this.sampleDirectory = sampleDirectory;
+    }
+
+    public Duration getMaxDuration() {
+        return maxDuration;
+    }
+
+    public void setMaxDuration(Duration maxDuration) {
+        this.maxDuration = maxDuration;
+    }
+
+    public boolean isExitAfterWarmup() {
+        return exitAfterWarmup;
+    }
+
+    public void setExitAfterWarmup(boolean exitAfterWarmup) {
+        this.exitAfterWarmup = exitAfterWarmup;
+    }
+}
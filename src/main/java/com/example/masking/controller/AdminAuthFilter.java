@@ -0,0 +1,96 @@
+package com.example.masking.controller;
+
+import com.example.masking.config.AdminProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Guards the admin API (rule set reloads, rule statistics, tenant details): requests to /api/admin/**
+ * must carry {@code Authorization: Bearer <masking.admin.token>}. Without a configured token the
+ * admin API is disabled and answers 403.
+ */
+@Component
+public class AdminAuthFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminAuthFilter.class);
+
+    static final String ADMIN_PATH = "/api/admin";
+    private static final String BEARER = "Bearer ";
+
+    private final AdminProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    public AdminAuthFilter(AdminProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        if (!properties.isEnabled()) {
+            log.info("Admin API disabled (set masking.admin.token to enable {}/**)", ADMIN_PATH);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // The decoded and normalized path ("//", "..", ";params" resolved), as request mapping sees it
+        String path = request.getServletPath() + (request.getPathInfo() != null ? request.getPathInfo() : "");
+        return !path.equals(ADMIN_PATH) && !path.startsWith(ADMIN_PATH + "/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!properties.isEnabled()) {
+            reject(response, HttpStatus.FORBIDDEN, "Admin API disabled",
+                    "Set masking.admin.token to enable the admin API");
+            return;
+        }
+
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.startsWith(BEARER)
+                || !tokenMatches(authorization.substring(BEARER.length()).trim())) {
+            log.warn("Rejected unauthenticated admin request {} {} from {}", request.getMethod(),
+                    request.getRequestURI(), request.getRemoteAddr());
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            reject(response, HttpStatus.UNAUTHORIZED, "Unauthorized", "A valid admin bearer token is required");
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    // Constant-time comparison, so response times do not reveal how much of the token matched
+    private boolean tokenMatches(String presented) {
+        return MessageDigest.isEqual(presented.getBytes(StandardCharsets.UTF_8),
+                properties.getToken().trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String errorText, String message)
+            throws IOException {
+        meterRegistry.counter("masking.requests.rejected", "endpoint", ADMIN_PATH, "reason",
+                status == HttpStatus.FORBIDDEN ? "admin_disabled" : "unauthorized").increment();
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("error", errorText);
+        error.put("message", message);
+
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), error);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.masking.controller;
+
+import com.example.masking.model.RuleStatsSnapshot;
+import com.example.masking.model.SlowRuleSample;
+import com.example.masking.service.RuleSet;
+import com.example.masking.service.RuleStatistics;
+import com.example.masking.service.TenantRuleSets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminController.class);
+
+    private final RuleStatistics ruleStatistics;
+    private final TenantRuleSets tenantRuleSets;
+
+    public AdminController(RuleStatistics ruleStatistics, TenantRuleSets tenantRuleSets) {
+        this.ruleStatistics = ruleStatistics;
+        this.tenantRuleSets = tenantRuleSets;
+    }
+
+    /**
+     * Per-rule evaluation counters, most expensive rules first.
+     */
+    @GetMapping("/rules/stats")
+    public ResponseEntity<List<RuleStatsSnapshot>> ruleStats() {
+        return ResponseEntity.ok(ruleStatistics.snapshot());
+    }
+
+    /**
+     * Slowest rule evaluations captured by the profiler (masking.profiler.enabled=true).
+     */
+    @GetMapping("/rules/slow")
+    public ResponseEntity<List<SlowRuleSample>> slowRules() {
+        return ResponseEntity.ok(ruleStatistics.slowestSamples());
+    }
+
+    /**
+     * Tenants with their rule set version, rule types, concurrency quota and requests in progress.
+     */
+    @GetMapping("/tenants")
+    public ResponseEntity<List<Map<String, Object>>> tenants() {
+        return ResponseEntity.ok(tenantRuleSets.describe());
+    }
+
+    /**
+     * Re-reads a tenant's masking YAML and swaps in its new rule set; other tenants are untouched.
+     * If the YAML cannot be loaded the tenant keeps its current rules.
+     */
+    @PostMapping("/tenants/{tenant}/reload")
+    public ResponseEntity<Map<String, String>> reloadTenant(@PathVariable String tenant) {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("tenant", tenant);
+        try {
+            RuleSet ruleSet = tenantRuleSets.reload(tenant);
+            body.put("version", ruleSet.getVersion());
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            log.error("Reload of tenant {} failed: {}", tenant, e.getMessage());
+            body.put("error", "Rule set reload failed");
+            body.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(body);
+        }
+    }
+}
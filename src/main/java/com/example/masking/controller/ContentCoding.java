@@ -0,0 +1,142 @@
+package com.example.masking.controller;
+
+import com.example.masking.config.CompressionProperties;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings accepted on request bodies and offered on responses. Both directions are
+ * streams over the servlet streams, so a body is never inflated or compressed as a whole.
+ */
+enum ContentCoding {
+
+    GZIP("gzip") {
+        @Override
+        InputStream newDecoder(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+
+        @Override
+        OutputStream newEncoder(OutputStream out, CompressionProperties properties) throws IOException {
+            int level = properties.getGzipLevel();
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION
+                            ? level : Deflater.DEFAULT_COMPRESSION);
+                }
+            };
+        }
+    },
+
+    // Pure-Java codec; no native library to bundle
+    ZSTD("zstd") {
+        @Override
+        InputStream newDecoder(InputStream in) {
+            return new ZstdInputStream(in);
+        }
+
+        @Override
+        OutputStream newEncoder(OutputStream out, CompressionProperties properties) throws IOException {
+            return new ZstdOutputStream(out);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * The token used in Content-Encoding and Accept-Encoding headers.
+     */
+    String token() {
+        return token;
+    }
+
+    abstract InputStream newDecoder(InputStream in) throws IOException;
+
+    abstract OutputStream newEncoder(OutputStream out, CompressionProperties properties) throws IOException;
+
+    /**
+     * The coding for a header token, or null if it is not supported. {@code x-gzip} is an alias of gzip.
+     */
+    static ContentCoding forToken(String token) {
+        String normalized = token.trim().toLowerCase(Locale.ROOT);
+        if ("x-gzip".equals(normalized)) {
+            return GZIP;
+        }
+        for (ContentCoding coding : values()) {
+            if (coding.token.equals(normalized)) {
+                return coding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes a request body. The decoder is created on the first read, so an empty or truncated
+     * body fails like any other malformed one: with IllegalArgumentException, which the filter and
+     * GlobalExceptionHandler turn into a 400.
+     */
+    InputStream decode(InputStream in) {
+        return new InputStream() {
+            private InputStream decoder;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                int n = read(single, 0, 1);
+                return n == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                try {
+                    if (decoder == null) {
+                        decoder = newDecoder(in);
+                    }
+                    return decoder.read(b, off, len);
+                } catch (IOException | MalformedInputException e) {
+                    String detail = e.getMessage() != null ? e.getMessage() : "unexpected end of input";
+                    throw new IllegalArgumentException("Malformed " + token + " request body: " + detail, e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /**
+     * Compresses a response body; closing the returned stream finishes the encoding but leaves
+     * {@code out} open.
+     */
+    OutputStream encode(OutputStream out, CompressionProperties properties) throws IOException {
+        return newEncoder(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, properties);
+    }
+}
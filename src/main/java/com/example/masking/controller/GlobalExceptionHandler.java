@@ -1,7 +1,10 @@
 package com.example.masking.controller;
 
+import com.example.masking.service.MaskingLimitExceededException;
+import com.example.masking.service.TenantQuotaExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -37,6 +40,43 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
 
+    @ExceptionHandler(PayloadTooLargeException.class)
+    public ResponseEntity<Map<String, String>> handlePayloadTooLargeException(PayloadTooLargeException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Payload too large");
+        error.put("message", ex.getMessage());
+
+        log.error("Payload too large: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(error);
+    }
+
+    @ExceptionHandler(MaskingLimitExceededException.class)
+    public ResponseEntity<Map<String, String>> handleMaskingLimitExceededException(MaskingLimitExceededException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.isStructural() ? "Payload exceeds masking limits" : "Masking time budget exceeded");
+        error.put("limit", ex.getLimit().tag());
+        error.put("message", ex.getMessage());
+
+        // Structural limits are the client's payload; an exhausted budget is the server giving up
+        log.warn("Masking aborted ({}): {}", ex.getLimit().tag(), ex.getMessage());
+        HttpStatus status = ex.isStructural() ? HttpStatus.UNPROCESSABLE_ENTITY : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(error);
+    }
+
+    @ExceptionHandler(TenantQuotaExceededException.class)
+    public ResponseEntity<Map<String, String>> handleTenantQuotaExceededException(TenantQuotaExceededException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Tenant concurrency quota exceeded");
+        error.put("tenant", ex.getTenant());
+        error.put("message", ex.getMessage());
+
+        // Slots free up as the tenant's requests finish, so a prompt retry is reasonable
+        log.warn("Rejected request of tenant {}: {}", ex.getTenant(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error);
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException ex) {
         Map<String, String> error = new HashMap<>();
@@ -0,0 +1,81 @@
+package com.example.masking.controller;
+
+import com.example.masking.model.JobStatus;
+import com.example.masking.model.JobSubmission;
+import com.example.masking.service.MaskingJobService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bulk masking jobs: submit, poll and download results without holding a connection open.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final MaskingJobService maskingJobService;
+
+    public JobController(MaskingJobService maskingJobService) {
+        this.maskingJobService = maskingJobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<JobStatus> submit(@RequestBody JobSubmission submission) throws IOException {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(maskingJobService.submit(submission));
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> status(@PathVariable String jobId) {
+        JobStatus status = maskingJobService.getStatus(jobId);
+        if (status == null) {
+            return notFound(jobId);
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<?> result(@PathVariable String jobId) {
+        JobStatus status = maskingJobService.getStatus(jobId);
+        if (status == null) {
+            return notFound(jobId);
+        }
+        if (status.getStatus() != JobStatus.State.COMPLETED) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Job is not completed");
+            error.put("status", status.getStatus().name());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(new FileSystemResource(maskingJobService.getResultFile(jobId)));
+    }
+
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<?> delete(@PathVariable String jobId) throws IOException {
+        if (maskingJobService.getStatus(jobId) == null) {
+            return notFound(jobId);
+        }
+        if (!maskingJobService.delete(jobId)) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Only completed or failed jobs can be deleted");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private static ResponseEntity<Map<String, String>> notFound(String jobId) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Job not found: " + jobId);
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+    }
+}
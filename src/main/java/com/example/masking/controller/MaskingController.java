@@ -1,16 +1,28 @@
 package com.example.masking.controller;
 
+import com.example.masking.model.MaskingPatch;
 import com.example.masking.model.MaskingRequest;
 import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.PatchOffsetUnit;
 import com.example.masking.model.PayloadType;
+import com.example.masking.model.SpilledPayload;
 import com.example.masking.service.DataMaskingService;
+import com.example.masking.service.MaskingLimitExceededException;
+import com.example.masking.service.MaskingResponseCache;
+import com.example.masking.service.PayloadSpillService;
+import com.example.masking.service.RuleSet;
+import com.example.masking.service.TenantRuleSets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.nio.file.Path;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api")
@@ -18,15 +30,68 @@ public class MaskingController {
 
     private static final Logger log = LoggerFactory.getLogger(MaskingController.class);
 
-    private final DataMaskingService dataMaskingService;
+    private static final String RESPONSE_FULL = "full";
+    private static final String RESPONSE_PATCHES = "patches";
 
-    public MaskingController(DataMaskingService dataMaskingService) {
+    private final DataMaskingService dataMaskingService;
+    private final PayloadSpillService payloadSpillService;
+    private final MaskingResponseCache responseCache;
+    private final TenantRuleSets tenantRuleSets;
+
+    public MaskingController(DataMaskingService dataMaskingService,
+                             PayloadSpillService payloadSpillService,
+                             MaskingResponseCache responseCache,
+                             TenantRuleSets tenantRuleSets) {
         this.dataMaskingService = dataMaskingService;
+        this.payloadSpillService = payloadSpillService;
+        this.responseCache = responseCache;
+        this.tenantRuleSets = tenantRuleSets;
     }
 
     @PostMapping("/mask")
-    public ResponseEntity<MaskingResponse> maskPayload(@Valid @RequestBody MaskingRequest request) {
-        log.info("Received masking request for transaction_id: {}", request.getTransaction_id());
+    public ResponseEntity<?> maskPayload(
+            @Valid @RequestBody(required = false) MaskingRequest request,
+            @RequestAttribute(name = SpilledPayload.REQUEST_ATTRIBUTE, required = false) SpilledPayload spilled,
+            @RequestParam(name = "response", defaultValue = RESPONSE_FULL) String responseMode,
+            @RequestParam(name = "offsets", defaultValue = "char") String offsets,
+            @RequestHeader(name = "${masking.tenants.header:X-Masking-Tenant}", required = false) String tenantHeader) {
+        // "patches" returns only the masked regions, as offsets into the original payload
+        PatchOffsetUnit offsetUnit = null;
+        if (RESPONSE_PATCHES.equals(responseMode)) {
+            offsetUnit = PatchOffsetUnit.fromParameter(offsets);
+        } else if (!RESPONSE_FULL.equals(responseMode)) {
+            throw new IllegalArgumentException("Unsupported response: " + responseMode + " (expected full or patches)");
+        }
+
+        if (spilled == null && request == null) {
+            throw new IllegalArgumentException("Request body is required");
+        }
+
+        // The tenant's rule set masks the payload; the permit counts against its concurrency quota
+        String tenant = TenantRuleSets.resolve(tenantHeader,
+                spilled != null ? spilled.getTenant_id() : request.getTenant_id());
+        try (TenantRuleSets.Permit permit = tenantRuleSets.acquire(tenant)) {
+            // Bodies above the in-memory threshold were spilled to disk by RequestSizeLimitFilter
+            if (spilled != null) {
+                return maskSpilledPayload(spilled, offsetUnit, permit.getRuleSet());
+            }
+
+            log.info("Received masking request for transaction_id: {} (tenant {})", request.getTransaction_id(), tenant);
+
+            if (offsetUnit != null) {
+                return maskToPatches(request, offsetUnit, permit.getRuleSet());
+            }
+            return mask(request, permit.getRuleSet());
+        }
+    }
+
+    private ResponseEntity<MaskingResponse> mask(MaskingRequest request, RuleSet ruleSet) {
+        // Upstream retries of the same transaction and payload get the stored response
+        MaskingResponse cached = responseCache.get(ruleSet, request.getTransaction_id(), request.getPayload_txt());
+        if (cached != null) {
+            log.info("Returning cached response for retried transaction_id: {}", request.getTransaction_id());
+            return ResponseEntity.ok(cached);
+        }
 
         long startTime = System.currentTimeMillis();
 
@@ -34,7 +99,7 @@ public class MaskingController {
             PayloadType detectedType = dataMaskingService.detectPayloadType(request.getPayload_txt());
             log.info("Detected payload type: {}", detectedType);
 
-            String maskedPayload = dataMaskingService.maskPayload(request.getPayload_txt(), detectedType);
+            String maskedPayload = dataMaskingService.maskPayload(request.getPayload_txt(), detectedType, ruleSet);
 
             // Get detected subtype if available
             String detectedSubtype = dataMaskingService.getLastDetectedSubtype();
@@ -51,8 +116,12 @@ public class MaskingController {
                     processingTime
             );
             response.setDetected_subtype(detectedSubtype);
+            responseCache.put(ruleSet, request.getTransaction_id(), request.getPayload_txt(), response);
 
             return ResponseEntity.ok(response);
+        } catch (MaskingLimitExceededException e) {
+            // Handled by GlobalExceptionHandler with a 422 or 503
+            throw e;
         } catch (Exception e) {
             log.error("Error processing masking request: {}", e.getMessage(), e);
             throw new RuntimeException("Error processing masking request: " + e.getMessage());
@@ -62,6 +131,120 @@ public class MaskingController {
         }
     }
 
+    /**
+     * Patch response mode. Patch responses are not stored in the idempotent-retry cache,
+     * which holds full responses only.
+     */
+    private ResponseEntity<MaskingResponse> maskToPatches(MaskingRequest request, PatchOffsetUnit offsetUnit,
+                                                          RuleSet ruleSet) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            PayloadType detectedType = dataMaskingService.detectPayloadType(request.getPayload_txt());
+            log.info("Detected payload type: {}", detectedType);
+
+            List<MaskingPatch> patches = dataMaskingService.maskPayloadToPatches(
+                    request.getPayload_txt(), detectedType, offsetUnit, ruleSet);
+            String detectedSubtype = dataMaskingService.getLastDetectedSubtype();
+
+            long processingTime = System.currentTimeMillis() - startTime;
+
+            log.info("Masking completed for transaction_id: {} in {} ms ({} patches)",
+                    request.getTransaction_id(), processingTime, patches.size());
+
+            return ResponseEntity.ok(patchResponse(request.getTransaction_id(), detectedType, detectedSubtype,
+                    processingTime, patches, offsetUnit));
+        } catch (MaskingLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error processing masking request: {}", e.getMessage(), e);
+            throw new RuntimeException("Error processing masking request: " + e.getMessage());
+        } finally {
+            dataMaskingService.clearThreadLocalState();
+        }
+    }
+
+    private ResponseEntity<?> maskSpilledPayload(SpilledPayload spilled, PatchOffsetUnit offsetUnit, RuleSet ruleSet) {
+        if (spilled.getTransaction_id() == null || spilled.getTransaction_id().trim().isEmpty()) {
+            throw new IllegalArgumentException("transaction_id is required");
+        }
+        if (spilled.getPayloadChars() == 0) {
+            throw new IllegalArgumentException("payload_txt is required");
+        }
+
+        log.info("Received spilled masking request for transaction_id: {} ({} bytes)",
+                spilled.getTransaction_id(), spilled.getBodyBytes());
+
+        // Retries are matched by the payload digest computed while the body was spilled
+        if (offsetUnit == null) {
+            Path cached = responseCache.getSpilled(ruleSet, spilled.getTransaction_id(), spilled);
+            if (cached != null) {
+                log.info("Returning cached response for retried transaction_id: {}", spilled.getTransaction_id());
+                return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(new FileSystemResource(cached));
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        try {
+            PayloadType detectedType = dataMaskingService.detectPayloadType(spilled);
+            log.info("Detected payload type: {}", detectedType);
+
+            if (offsetUnit != null) {
+                List<MaskingPatch> patches = dataMaskingService.maskPayloadToPatches(spilled, detectedType, offsetUnit,
+                        ruleSet);
+                long processingTime = System.currentTimeMillis() - startTime;
+                log.info("Masking completed for transaction_id: {} in {} ms ({} patches)",
+                        spilled.getTransaction_id(), processingTime, patches.size());
+                return ResponseEntity.ok(patchResponse(spilled.getTransaction_id(), detectedType,
+                        dataMaskingService.getLastDetectedSubtype(), processingTime, patches, offsetUnit));
+            }
+
+            dataMaskingService.maskPayload(spilled, detectedType, ruleSet);
+
+            String detectedSubtype = dataMaskingService.getLastDetectedSubtype();
+
+            long processingTime = System.currentTimeMillis() - startTime;
+
+            log.info("Masking completed for transaction_id: {} in {} ms", spilled.getTransaction_id(), processingTime);
+
+            MaskingResponse response = new MaskingResponse(
+                    spilled.getTransaction_id(),
+                    null,
+                    detectedType.name(),
+                    processingTime
+            );
+            response.setDetected_subtype(detectedSubtype);
+
+            // Stream the response from disk; the filter deletes the files once it has been written
+            Path body = payloadSpillService.writeResponse(spilled, response);
+            responseCache.putSpilled(ruleSet, spilled.getTransaction_id(), spilled, body);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new FileSystemResource(body));
+        } catch (MaskingLimitExceededException e) {
+            // Handled by GlobalExceptionHandler with a 422 or 503
+            throw e;
+        } catch (Exception e) {
+            log.error("Error processing spilled masking request: {}", e.getMessage(), e);
+            throw new RuntimeException("Error processing masking request: " + e.getMessage());
+        } finally {
+            dataMaskingService.clearThreadLocalState();
+        }
+    }
+
+    private static MaskingResponse patchResponse(String transactionId, PayloadType detectedType, String detectedSubtype,
+                                                 long processingTime, List<MaskingPatch> patches,
+                                                 PatchOffsetUnit offsetUnit) {
+        MaskingResponse response = new MaskingResponse(transactionId, null, detectedType.name(), processingTime);
+        response.setDetected_subtype(detectedSubtype);
+        response.setPatches(patches);
+        response.setOffset_unit(offsetUnit.name().toLowerCase());
+        return response;
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("Data Masking API is running");
@@ -0,0 +1,18 @@
+package com.example.masking.controller;
+
+/**
+ * Thrown when a request body exceeds the configured size limit for its endpoint.
+ */
+public class PayloadTooLargeException extends RuntimeException {
+
+    private final long limitBytes;
+
+    public PayloadTooLargeException(long limitBytes) {
+        super("Request body exceeds the limit of " + limitBytes + " bytes");
+        this.limitBytes = limitBytes;
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+}
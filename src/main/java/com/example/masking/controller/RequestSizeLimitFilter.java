@@ -0,0 +1,453 @@
+package com.example.masking.controller;
+
+import com.example.masking.config.CompressionProperties;
+import com.example.masking.config.MaskingLimitsProperties;
+import com.example.masking.model.SpilledPayload;
+import com.example.masking.service.PayloadSpillService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size-aware admission for incoming requests.
+ * Rejects bodies above the endpoint's limit with 413 and, for /api/mask, spills bodies
+ * above the in-memory threshold to disk before they reach Jackson.
+ * gzip and zstd bodies (Content-Encoding) are decoded while they are read; the limit applies
+ * to both the compressed and the decoded size.
+ */
+@Component
+public class RequestSizeLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestSizeLimitFilter.class);
+
+    static final String SPILL_PATH = "/api/mask";
+
+    private final MaskingLimitsProperties limits;
+    private final CompressionProperties compression;
+    private final PayloadSpillService payloadSpillService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    public RequestSizeLimitFilter(MaskingLimitsProperties limits,
+                                  CompressionProperties compression,
+                                  PayloadSpillService payloadSpillService,
+                                  ObjectMapper objectMapper,
+                                  MeterRegistry meterRegistry) {
+        this.limits = limits;
+        this.compression = compression;
+        this.payloadSpillService = payloadSpillService;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        long maxBytes = limits.maxBodyBytesFor(path);
+        long contentLength = request.getContentLengthLong();
+
+        if (contentLength > maxBytes) {
+            reject(response, path, maxBytes);
+            return;
+        }
+
+        String contentEncoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        ContentCoding coding = null;
+        if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            coding = compression.isEnabled() ? ContentCoding.forToken(contentEncoding) : null;
+            if (coding == null) {
+                rejectEncoding(response, path, contentEncoding);
+                return;
+            }
+        }
+
+        // Content-Length may be absent (chunked), so enforce the limit while reading too
+        HttpServletRequest limited = new LimitedBodyRequest(request, maxBytes);
+        DecodedBodyRequest decoded = null;
+        if (coding != null) {
+            // The decoded size is unknown until the body has been read
+            decoded = new DecodedBodyRequest(limited, coding, maxBytes);
+            limited = decoded;
+            contentLength = -1;
+        }
+
+        try {
+            admit(limited, response, chain, path, contentLength, maxBytes);
+        } finally {
+            if (decoded != null) {
+                decoded.record(meterRegistry);
+            }
+        }
+    }
+
+    private void admit(HttpServletRequest limited, HttpServletResponse response, FilterChain chain,
+                       String path, long contentLength, long maxBytes) throws ServletException, IOException {
+        if (!"POST".equals(limited.getMethod()) || !SPILL_PATH.equals(path)) {
+            chain.doFilter(limited, response);
+            return;
+        }
+
+        long threshold = limits.getInMemoryThreshold().toBytes();
+        SpilledPayload spilled;
+        try {
+            InputStream body = limited.getInputStream();
+            byte[] buffered = new byte[0];
+
+            if (contentLength < 0) {
+                // Unknown length: buffer up to the threshold to find out which side of it we are on
+                buffered = readUpTo(body, threshold + 1);
+                if (buffered.length <= threshold) {
+                    chain.doFilter(new ReplayedBodyRequest(limited, buffered), response);
+                    return;
+                }
+            } else if (contentLength <= threshold) {
+                chain.doFilter(limited, response);
+                return;
+            }
+
+            spilled = payloadSpillService.spill(new SequenceInputStream(new ByteArrayInputStream(buffered), body));
+        } catch (PayloadTooLargeException e) {
+            reject(response, path, maxBytes);
+            return;
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid request body: {}", e.getMessage());
+            writeError(response, HttpStatus.BAD_REQUEST, "Invalid request body", e.getMessage());
+            return;
+        }
+
+        try {
+            limited.setAttribute(SpilledPayload.REQUEST_ATTRIBUTE, spilled);
+            chain.doFilter(new ReplayedBodyRequest(limited, new byte[0]), response);
+        } finally {
+            spilled.close();
+        }
+    }
+
+    private void reject(HttpServletResponse response, String path, long maxBytes) throws IOException {
+        meterRegistry.counter("masking.requests.rejected", "endpoint", path, "reason", "payload_too_large").increment();
+        log.warn("Rejected request to {}: body exceeds {} bytes", path, maxBytes);
+        writeError(response, HttpStatus.PAYLOAD_TOO_LARGE, "Payload too large",
+                "Request body exceeds the limit of " + maxBytes + " bytes");
+    }
+
+    private void rejectEncoding(HttpServletResponse response, String path, String contentEncoding) throws IOException {
+        meterRegistry.counter("masking.requests.rejected", "endpoint", path, "reason", "unsupported_encoding").increment();
+        log.warn("Rejected request to {}: unsupported Content-Encoding {}", path, contentEncoding);
+        List<String> supported = new ArrayList<>();
+        if (compression.isEnabled()) {
+            for (ContentCoding coding : ContentCoding.values()) {
+                supported.add(coding.token());
+            }
+        }
+        // RFC 7694: tell the client which codings it may use instead
+        response.setHeader(HttpHeaders.ACCEPT_ENCODING, supported.isEmpty() ? "identity" : String.join(", ", supported));
+        writeError(response, HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Unsupported content encoding",
+                "Content-Encoding " + contentEncoding + " is not supported");
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String errorText, String message)
+            throws IOException {
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("error", errorText);
+        error.put("message", message);
+
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), error);
+    }
+
+    private static byte[] readUpTo(InputStream in, long max) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(max, 64 * 1024)];
+        int length = 0;
+        int n;
+        while (length < max && (n = in.read(buffer, length, (int) Math.min(buffer.length - length, max - length))) != -1) {
+            length += n;
+            if (length == buffer.length && length < max) {
+                byte[] grown = new byte[(int) Math.min(max, (long) buffer.length * 2)];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Request wrapper whose body stream fails with PayloadTooLargeException once the limit is passed.
+     */
+    private static class LimitedBodyRequest extends HttpServletRequestWrapper {
+        private final long maxBytes;
+        private ServletInputStream stream;
+
+        LimitedBodyRequest(HttpServletRequest request, long maxBytes) {
+            super(request);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (stream == null) {
+                stream = new LimitedServletInputStream(super.getInputStream(), maxBytes);
+            }
+            return stream;
+        }
+    }
+
+    private static class LimitedServletInputStream extends ServletInputStream {
+        private final ServletInputStream source;    // Servlet stream, for the non-blocking API
+        private final InputStream delegate;         // The source, or a decoder reading from it
+        private final long maxBytes;
+        private long count;
+
+        LimitedServletInputStream(ServletInputStream source, long maxBytes) {
+            this(source, source, maxBytes);
+        }
+
+        LimitedServletInputStream(ServletInputStream source, InputStream delegate, long maxBytes) {
+            this.source = source;
+            this.delegate = delegate;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b != -1) {
+                track(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = delegate.read(b, off, len);
+            if (n > 0) {
+                track(n);
+            }
+            return n;
+        }
+
+        private void track(int n) {
+            count += n;
+            if (count > maxBytes) {
+                throw new PayloadTooLargeException(maxBytes);
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return source.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return source.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            source.setReadListener(readListener);
+        }
+    }
+
+    /**
+     * Request wrapper that decodes a compressed body while it is read and hides the Content-Encoding
+     * and Content-Length of the compressed body from the rest of the chain.
+     */
+    private static class DecodedBodyRequest extends HttpServletRequestWrapper {
+        private final ContentCoding coding;
+        private final long maxBytes;
+        private LimitedServletInputStream encoded;
+        private LimitedServletInputStream stream;
+
+        DecodedBodyRequest(HttpServletRequest limited, ContentCoding coding, long maxBytes) {
+            super(limited);
+            this.coding = coding;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (stream == null) {
+                encoded = (LimitedServletInputStream) super.getInputStream();
+                stream = new LimitedServletInputStream(encoded, coding.decode(encoded), maxBytes);
+            }
+            return stream;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isHidden(name) ? Collections.<String>emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = new ArrayList<>();
+            for (Enumeration<String> e = super.getHeaderNames(); e.hasMoreElements(); ) {
+                String name = e.nextElement();
+                if (!isHidden(name)) {
+                    names.add(name);
+                }
+            }
+            return Collections.enumeration(names);
+        }
+
+        private static boolean isHidden(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+
+        /**
+         * Counts the body and the bytes read on both sides of the decoder.
+         */
+        void record(MeterRegistry meterRegistry) {
+            meterRegistry.counter("masking.compression.bodies", "direction", "request", "encoding", coding.token())
+                    .increment();
+            if (stream != null) {
+                meterRegistry.counter("masking.compression.bytes", "direction", "request",
+                        "encoding", coding.token(), "form", "encoded").increment(encoded.count);
+                meterRegistry.counter("masking.compression.bytes", "direction", "request",
+                        "encoding", coding.token(), "form", "decoded").increment(stream.count);
+            }
+        }
+    }
+
+    /**
+     * Request wrapper that serves an already-consumed body from memory.
+     */
+    private static class ReplayedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+        private ServletInputStream stream;
+
+        ReplayedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            if (stream == null) {
+                stream = new ByteArrayServletInputStream(body);
+            }
+            return stream;
+        }
+    }
+
+    private static class ByteArrayServletInputStream extends ServletInputStream {
+        private final ByteArrayInputStream in;
+        private ReadListener readListener;
+        private boolean allDataReadSignalled;
+
+        ByteArrayServletInputStream(byte[] body) {
+            this.in = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int read() {
+            int b = in.read();
+            signalAllDataReadIfFinished();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = in.read(b, off, len);
+            signalAllDataReadIfFinished();
+            return n;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        /**
+         * The whole body is already in memory, so the listener is told at once that data is available.
+         * All-data-read is signalled only once the body has been consumed: straight away if the listener
+         * read it all from {@code onDataAvailable}, otherwise by the read that reaches the end.
+         */
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            if (readListener == null) {
+                throw new NullPointerException("readListener");
+            }
+            this.readListener = readListener;
+            try {
+                if (!isFinished()) {
+                    readListener.onDataAvailable();
+                }
+            } catch (IOException | RuntimeException e) {
+                readListener.onError(e);
+                return;
+            }
+            signalAllDataReadIfFinished();
+        }
+
+        private void signalAllDataReadIfFinished() {
+            if (readListener == null || allDataReadSignalled || !isFinished()) {
+                return;
+            }
+            allDataReadSignalled = true;
+            try {
+                readListener.onAllDataRead();
+            } catch (IOException | RuntimeException e) {
+                readListener.onError(e);
+            }
+        }
+    }
+}
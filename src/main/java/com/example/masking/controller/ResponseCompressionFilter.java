@@ -0,0 +1,419 @@
+package com.example.masking.controller;
+
+import com.example.masking.config.CompressionProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compresses responses with the best coding the client accepts (Accept-Encoding), in the
+ * configured order of preference. The first {@code response-min-size} bytes are buffered to decide;
+ * smaller responses go out as they are, larger ones are compressed while they are written, so a
+ * masked payload streamed from disk is never held in memory. Responses written asynchronously
+ * (after startAsync, or through a WriteListener) go out uncompressed: the encoder writes blocking
+ * and the filter cannot tell when such a body ends.
+ */
+@Component
+public class ResponseCompressionFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCompressionFilter.class);
+
+    private final CompressionProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final List<ContentCoding> offered;
+    private final int minSize;
+
+    public ResponseCompressionFilter(CompressionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.minSize = (int) Math.min(properties.getResponseMinSize().toBytes(), Integer.MAX_VALUE - 8);
+
+        List<ContentCoding> codings = new ArrayList<>();
+        for (String token : properties.getResponseEncodings()) {
+            ContentCoding coding = ContentCoding.forToken(token);
+            if (coding == null) {
+                log.warn("Ignoring unsupported response encoding: {}", token);
+            } else if (!codings.contains(coding)) {
+                codings.add(coding);
+            }
+        }
+        this.offered = Collections.unmodifiableList(codings);
+        if (properties.isEnabled() && !offered.isEmpty()) {
+            log.info("Response compression: {} for responses from {} bytes", offered, minSize);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled() || offered.isEmpty();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        ContentCoding coding = negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING), offered);
+        if (coding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CompressingResponse compressing = new CompressingResponse(response, coding);
+        HttpServletRequest guarded = new HttpServletRequestWrapper(request) {
+            @Override
+            public AsyncContext startAsync() {
+                compressing.passThrough();
+                return super.startAsync();
+            }
+
+            @Override
+            public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+                compressing.passThrough();
+                return super.startAsync(servletRequest, servletResponse);
+            }
+        };
+        chain.doFilter(guarded, compressing);
+        if (!request.isAsyncStarted()) {
+            compressing.finish();
+        }
+    }
+
+    /**
+     * The offered coding with the highest q-value in the Accept-Encoding header, earlier offers
+     * winning ties; null if the client accepts none of them (or sent no header).
+     */
+    static ContentCoding negotiate(String acceptEncoding, List<ContentCoding> offered) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Map<String, Double> qualities = new HashMap<>();
+        for (String part : acceptEncoding.split(",")) {
+            String[] parameters = part.split(";");
+            String token = parameters[0].trim().toLowerCase(Locale.ROOT);
+            if (token.isEmpty()) {
+                continue;
+            }
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            qualities.put("x-gzip".equals(token) ? ContentCoding.GZIP.token() : token, quality);
+        }
+
+        ContentCoding best = null;
+        double bestQuality = 0;
+        for (ContentCoding coding : offered) {
+            Double quality = qualities.get(coding.token());
+            if (quality == null) {
+                quality = qualities.getOrDefault("*", 0.0);
+            }
+            if (quality > bestQuality) {
+                best = coding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml");
+    }
+
+    /**
+     * Response wrapper that holds back the body (and its Content-Length) until it knows whether
+     * to compress.
+     */
+    private class CompressingResponse extends HttpServletResponseWrapper {
+        private final ContentCoding coding;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private String contentLength;        // Held back: it is wrong once the body is compressed
+        private OutputStream target;         // Set once decided: the encoder, or the servlet stream
+        private CountingOutputStream encoded;
+        private long written;
+        private ServletOutputStream stream;
+        private boolean streamUsed;
+        private PrintWriter writer;
+
+        CompressingResponse(HttpServletResponse response, ContentCoding coding) {
+            super(response);
+            this.coding = coding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            streamUsed = true;
+            return body();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (streamUsed) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(body(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private ServletOutputStream body() {
+            if (stream == null) {
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        CompressingResponse.this.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        // Until decided there is nothing to flush; the buffer is written by finish()
+                        if (target != null) {
+                            target.flush();
+                        }
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return !(target instanceof ServletOutputStream) || ((ServletOutputStream) target).isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        passThrough();
+                        ((ServletOutputStream) target).setWriteListener(writeListener);
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            if (target == null) {
+                contentLength = Long.toString(length);
+            } else if (encoded == null) {
+                super.setContentLengthLong(length);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!holdContentLength(name, value) && !isRangeHeader(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!holdContentLength(name, value) && !isRangeHeader(name)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (!holdContentLength(name, Integer.toString(value))) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (!holdContentLength(name, Integer.toString(value))) {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        private boolean holdContentLength(String name, String value) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                return false;
+            }
+            if (target == null) {
+                contentLength = value;
+                return true;
+            }
+            return encoded != null;
+        }
+
+        // Byte ranges of the decoded body (a FileSystemResource's Accept-Ranges) do not apply to the encoded one
+        private boolean isRangeHeader(String name) {
+            return encoded != null && HttpHeaders.ACCEPT_RANGES.equalsIgnoreCase(name);
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target != null) {
+                target.flush();
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            buffer.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            buffer.reset();
+            contentLength = null;
+            super.reset();
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            written += len;
+            if (target == null) {
+                if (buffer.size() + len <= minSize) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                // A partial response (206) is a byte range of the decoded body and stays as it is
+                decide(getHeader(HttpHeaders.CONTENT_ENCODING) == null && getHeader(HttpHeaders.CONTENT_RANGE) == null
+                        && isCompressible(getContentType()));
+            }
+            target.write(b, off, len);
+        }
+
+        private void decide(boolean compress) throws IOException {
+            if (compress) {
+                super.setHeader(HttpHeaders.CONTENT_ENCODING, coding.token());
+                if (getHeader(HttpHeaders.ACCEPT_RANGES) != null) {
+                    super.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+                }
+                encoded = new CountingOutputStream(super.getOutputStream());
+                target = coding.encode(encoded, properties);
+            } else {
+                if (contentLength != null) {
+                    super.setHeader(HttpHeaders.CONTENT_LENGTH, contentLength);
+                }
+                target = super.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer.reset();
+        }
+
+        /**
+         * Decides against compression, for a body written asynchronously; anything buffered goes out first.
+         *
+         * @throws IllegalStateException if the body is already being compressed
+         */
+        void passThrough() {
+            if (encoded != null) {
+                throw new IllegalStateException("Response compression has already started");
+            }
+            if (target == null) {
+                try {
+                    decide(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * Writes what is still buffered and completes the encoding.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                if (buffer.size() == 0) {
+                    if (contentLength != null) {
+                        super.setHeader(HttpHeaders.CONTENT_LENGTH, contentLength);
+                    }
+                    return;
+                }
+                decide(false);
+            }
+            if (encoded == null) {
+                target.flush();
+                return;
+            }
+
+            target.close();
+            meterRegistry.counter("masking.compression.bodies", "direction", "response", "encoding", coding.token())
+                    .increment();
+            meterRegistry.counter("masking.compression.bytes", "direction", "response",
+                    "encoding", coding.token(), "form", "decoded").increment(written);
+            meterRegistry.counter("masking.compression.bytes", "direction", "response",
+                    "encoding", coding.token(), "form", "encoded").increment(encoded.count);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.masking.model;
+
+public class FixedLengthFormat {
+
+    private String type;                   // Rule type / subtype identifier (e.g., "mtsftr")
+    private String prefix;                 // Leading characters that identify the format (e.g., "*FTR")
+    private Integer recordLength;          // Optional - exact record length, surrounding whitespace excluded
+    private Discriminator discriminator;   // Optional - secondary check for formats sharing a prefix
+
+    public FixedLengthFormat() {
+    }
+
+    public FixedLengthFormat(String type, String prefix) {
+        this.type = type;
+        this.prefix = prefix;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public Integer getRecordLength() {
+        return recordLength;
+    }
+
+    public void setRecordLength(Integer recordLength) {
+        this.recordLength = recordLength;
+    }
+
+    public Discriminator getDiscriminator() {
+        return discriminator;
+    }
+
+    public void setDiscriminator(Discriminator discriminator) {
+        this.discriminator = discriminator;
+    }
+
+    @Override
+    public String toString() {
+        return "FixedLengthFormat{" +
+                "type='" + type + '\'' +
+                ", prefix='" + prefix + '\'' +
+                '}';
+    }
+
+    /**
+     * Characters expected at a fixed offset of the record.
+     */
+    public static class Discriminator {
+        private int offset;
+        private String value;
+
+        public Discriminator() {
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public void setOffset(int offset) {
+            this.offset = offset;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
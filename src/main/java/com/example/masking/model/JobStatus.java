@@ -0,0 +1,131 @@
+package com.example.masking.model;
+
+public class JobStatus {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String job_id;
+    private State status;
+    private String input_file;       // Null for inline jobs (payloads are stored with the job)
+    private long total_records;
+    private long processed_records;
+    private long failed_records;
+    private Long submitted_at;       // Epoch millis
+    private Long started_at;
+    private Long completed_at;
+    private String error;
+
+    public JobStatus() {
+    }
+
+    public JobStatus(JobStatus other) {
+        this.job_id = other.job_id;
+        this.status = other.status;
+        this.input_file = other.input_file;
+        this.total_records = other.total_records;
+        this.processed_records = other.processed_records;
+        this.failed_records = other.failed_records;
+        this.submitted_at = other.submitted_at;
+        this.started_at = other.started_at;
+        this.completed_at = other.completed_at;
+        this.error = other.error;
+    }
+
+    public String getJob_id() {
+        return job_id;
+    }
+
+    public void setJob_id(String job_id) {
+        this.job_id = job_id;
+    }
+
+    public State getStatus() {
+        return status;
+    }
+
+    public void setStatus(State status) {
+        this.status = status;
+    }
+
+    public String getInput_file() {
+        return input_file;
+    }
+
+    public void setInput_file(String input_file) {
+        this.input_file = input_file;
+    }
+
+    public long getTotal_records() {
+        return total_records;
+    }
+
+    public void setTotal_records(long total_records) {
+        this.total_records = total_records;
+    }
+
+    public long getProcessed_records() {
+        return processed_records;
+    }
+
+    public void setProcessed_records(long processed_records) {
+        this.processed_records = processed_records;
+    }
+
+    public long getFailed_records() {
+        return failed_records;
+    }
+
+    public void setFailed_records(long failed_records) {
+        this.failed_records = failed_records;
+    }
+
+    public Long getSubmitted_at() {
+        return submitted_at;
+    }
+
+    public void setSubmitted_at(Long submitted_at) {
+        this.submitted_at = submitted_at;
+    }
+
+    public Long getStarted_at() {
+        return started_at;
+    }
+
+    public void setStarted_at(Long started_at) {
+        this.started_at = started_at;
+    }
+
+    public Long getCompleted_at() {
+        return completed_at;
+    }
+
+    public void setCompleted_at(Long completed_at) {
+        this.completed_at = completed_at;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public double getProgress() {
+        return total_records == 0 ? 0.0 : (double) processed_records / total_records;
+    }
+
+    public double getRecords_per_second() {
+        if (started_at == null) {
+            return 0.0;
+        }
+        long end = completed_at != null ? completed_at : System.currentTimeMillis();
+        long elapsed = Math.max(1, end - started_at);
+        return processed_records * 1000.0 / elapsed;
+    }
+}
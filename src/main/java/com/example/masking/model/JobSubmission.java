@@ -0,0 +1,28 @@
+package com.example.masking.model;
+
+import java.util.List;
+
+public class JobSubmission {
+
+    private List<MaskingRequest> items;  // Inline payloads
+    private String input_file;           // Or a local JSON Lines file of {transaction_id, payload_txt}
+
+    public JobSubmission() {
+    }
+
+    public List<MaskingRequest> getItems() {
+        return items;
+    }
+
+    public void setItems(List<MaskingRequest> items) {
+        this.items = items;
+    }
+
+    public String getInput_file() {
+        return input_file;
+    }
+
+    public void setInput_file(String input_file) {
+        this.input_file = input_file;
+    }
+}
@@ -6,6 +6,7 @@ public class MaskingAttribute {
     private String jsonpath;
     private Integer start;
     private Integer end;
+    private boolean nested;     // The value is itself an XML/JSON payload, masked with its own type's rules
 
     public MaskingAttribute() {
     }
@@ -48,4 +49,12 @@ public class MaskingAttribute {
     public void setEnd(Integer end) {
         this.end = end;
     }
+
+    public boolean isNested() {
+        return nested;
+    }
+
+    public void setNested(boolean nested) {
+        this.nested = nested;
+    }
 }
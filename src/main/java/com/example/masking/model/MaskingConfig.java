@@ -5,7 +5,9 @@ import java.util.List;
 public class MaskingConfig {
 
     private List<NamespaceMapping> namespaceMappings;  // xmlns -> subtype mappings
+    private List<FixedLengthFormat> fixedLengthFormats;  // leading characters -> fixed-length subtype
     private List<MaskingRule> rules;
+    private String version;  // Digest of the loaded YAML unless set explicitly; changes on every config change
 
     public MaskingConfig() {
     }
@@ -22,6 +24,14 @@ public class MaskingConfig {
         this.namespaceMappings = namespaceMappings;
     }
 
+    public List<FixedLengthFormat> getFixedLengthFormats() {
+        return fixedLengthFormats;
+    }
+
+    public void setFixedLengthFormats(List<FixedLengthFormat> fixedLengthFormats) {
+        this.fixedLengthFormats = fixedLengthFormats;
+    }
+
     public List<MaskingRule> getRules() {
         return rules;
     }
@@ -29,4 +39,12 @@ public class MaskingConfig {
     public void setRules(List<MaskingRule> rules) {
         this.rules = rules;
     }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
 }
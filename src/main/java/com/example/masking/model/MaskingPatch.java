@@ -0,0 +1,51 @@
+package com.example.masking.model;
+
+/**
+ * One masked region of a payload: replace {@code length} units starting at {@code offset} of the
+ * original payload with {@code replacement}. Offsets are in the unit named by the response's
+ * {@code offset_unit} and always refer to the original payload, so patches can be applied in any order.
+ */
+public class MaskingPatch {
+
+    private long offset;
+    private long length;
+    private String replacement;
+
+    public MaskingPatch() {
+    }
+
+    public MaskingPatch(long offset, long length, String replacement) {
+        this.offset = offset;
+        this.length = length;
+        this.replacement = replacement;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    public void setReplacement(String replacement) {
+        this.replacement = replacement;
+    }
+
+    @Override
+    public String toString() {
+        return "MaskingPatch{offset=" + offset + ", length=" + length + ", replacement='" + replacement + "'}";
+    }
+}
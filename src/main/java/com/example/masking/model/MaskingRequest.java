@@ -10,6 +10,8 @@ public class MaskingRequest {
     @NotBlank(message = "payload_txt is required")
     private String payload_txt;
 
+    private String tenant_id;   // Optional - selects the tenant's rule set, like the tenant header
+
     private String xmlSubtype;  // Optional - for carrying detected subtype info
 
     public MaskingRequest() {
@@ -36,6 +38,14 @@ public class MaskingRequest {
         this.payload_txt = payload_txt;
     }
 
+    public String getTenant_id() {
+        return tenant_id;
+    }
+
+    public void setTenant_id(String tenant_id) {
+        this.tenant_id = tenant_id;
+    }
+
     public String getXmlSubtype() {
         return xmlSubtype;
     }
@@ -1,5 +1,9 @@
 package com.example.masking.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
 public class MaskingResponse {
 
     private String transaction_id;
@@ -7,6 +11,8 @@ public class MaskingResponse {
     private String payload_type;
     private String detected_subtype;  // NEW: XML subtype (e.g., "pain.013", "camt.054")
     private Long processing_time_ms;
+    private List<MaskingPatch> patches;   // Patch response mode only; masked_payload is then null
+    private String offset_unit;           // Unit of the patch offsets: "char" or "utf8"
 
     public MaskingResponse() {
     }
@@ -63,4 +69,22 @@ public class MaskingResponse {
     public void setProcessing_time_ms(Long processing_time_ms) {
         this.processing_time_ms = processing_time_ms;
     }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<MaskingPatch> getPatches() {
+        return patches;
+    }
+
+    public void setPatches(List<MaskingPatch> patches) {
+        this.patches = patches;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getOffset_unit() {
+        return offset_unit;
+    }
+
+    public void setOffset_unit(String offset_unit) {
+        this.offset_unit = offset_unit;
+    }
 }
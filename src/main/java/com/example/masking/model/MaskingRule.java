@@ -6,6 +6,7 @@ public class MaskingRule {
 
     private String type;
     private List<MaskingAttribute> attributes;
+    private Integer minRecordLength;  // Optional - fixed-length records shorter than this are not masked
 
     public MaskingRule() {
     }
@@ -30,4 +31,12 @@ public class MaskingRule {
     public void setAttributes(List<MaskingAttribute> attributes) {
         this.attributes = attributes;
     }
+
+    public Integer getMinRecordLength() {
+        return minRecordLength;
+    }
+
+    public void setMinRecordLength(Integer minRecordLength) {
+        this.minRecordLength = minRecordLength;
+    }
 }
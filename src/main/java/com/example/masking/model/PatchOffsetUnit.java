@@ -0,0 +1,18 @@
+package com.example.masking.model;
+
+/**
+ * Unit of {@link MaskingPatch} offsets: UTF-16 chars of the payload string, or bytes of its UTF-8 encoding.
+ */
+public enum PatchOffsetUnit {
+    CHAR,
+    UTF8;
+
+    public static PatchOffsetUnit fromParameter(String value) {
+        for (PatchOffsetUnit unit : values()) {
+            if (unit.name().equalsIgnoreCase(value)) {
+                return unit;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported offsets: " + value + " (expected char or utf8)");
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.masking.model;
+
+public class RuleStatsSnapshot {
+
+    private String tenant;
+    private String type;
+    private String rule;            // XPath, JSONPath or fixed-length range
+    private long evaluations;
+    private long matches;           // Evaluations that found at least one node/value
+    private long nodesMasked;
+    private long errors;
+    private long totalNanos;
+
+    public RuleStatsSnapshot() {
+    }
+
+    public RuleStatsSnapshot(String tenant, String type, String rule, long evaluations, long matches,
+                             long nodesMasked, long errors, long totalNanos) {
+        this.tenant = tenant;
+        this.type = type;
+        this.rule = rule;
+        this.evaluations = evaluations;
+        this.matches = matches;
+        this.nodesMasked = nodesMasked;
+        this.errors = errors;
+        this.totalNanos = totalNanos;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public void setRule(String rule) {
+        this.rule = rule;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public void setEvaluations(long evaluations) {
+        this.evaluations = evaluations;
+    }
+
+    public long getMatches() {
+        return matches;
+    }
+
+    public void setMatches(long matches) {
+        this.matches = matches;
+    }
+
+    public long getNodesMasked() {
+        return nodesMasked;
+    }
+
+    public void setNodesMasked(long nodesMasked) {
+        this.nodesMasked = nodesMasked;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public void setTotalNanos(long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+
+    public double getAverageMicros() {
+        return evaluations == 0 ? 0.0 : totalNanos / 1000.0 / evaluations;
+    }
+
+    public boolean isDead() {
+        // Evaluated but never matched anything
+        return evaluations > 0 && matches == 0;
+    }
+}
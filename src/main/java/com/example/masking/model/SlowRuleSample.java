@@ -0,0 +1,71 @@
+package com.example.masking.model;
+
+public class SlowRuleSample {
+
+    private String tenant;
+    private String type;
+    private String rule;
+    private long nanos;
+    private long payloadChars;      // -1 when the payload was streamed and its size is unknown
+    private long timestamp;         // Epoch millis
+
+    public SlowRuleSample() {
+    }
+
+    public SlowRuleSample(String tenant, String type, String rule, long nanos, long payloadChars, long timestamp) {
+        this.tenant = tenant;
+        this.type = type;
+        this.rule = rule;
+        this.nanos = nanos;
+        this.payloadChars = payloadChars;
+        this.timestamp = timestamp;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public void setRule(String rule) {
+        this.rule = rule;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public void setNanos(long nanos) {
+        this.nanos = nanos;
+    }
+
+    public long getPayloadChars() {
+        return payloadChars;
+    }
+
+    public void setPayloadChars(long payloadChars) {
+        this.payloadChars = payloadChars;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.masking.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A masking request whose payload_txt was too large to keep on the heap and was
+ * spilled to a temp file. Owns its temp files and deletes them on close.
+ */
+public class SpilledPayload implements Closeable {
+
+    // Request attribute under which the spilled payload is handed to the controller
+    public static final String REQUEST_ATTRIBUTE = "com.example.masking.model.SpilledPayload";
+
+    private String transaction_id;
+    private String tenant_id;
+    private final Path payloadFile;     // Decoded payload_txt
+    private final Path maskedFile;      // Masked payload written by the processors
+    private final Path responseFile;    // Serialized MaskingResponse streamed back to the client
+    private String head;                // Leading characters, used for type/subtype detection
+    private char trailingChar;          // Last non-whitespace character
+    private long payloadChars;
+    private long contentEnd;            // Chars up to and including the last non-whitespace character
+    private long bodyBytes;             // Raw request body size
+    private byte[] payloadDigest;       // SHA-256 of payload_txt, computed while spilling; null if not needed
+
+    public SpilledPayload(Path payloadFile, Path maskedFile, Path responseFile) {
+        this.payloadFile = payloadFile;
+        this.maskedFile = maskedFile;
+        this.responseFile = responseFile;
+    }
+
+    public String getTransaction_id() {
+        return transaction_id;
+    }
+
+    public void setTransaction_id(String transaction_id) {
+        this.transaction_id = transaction_id;
+    }
+
+    public String getTenant_id() {
+        return tenant_id;
+    }
+
+    public void setTenant_id(String tenant_id) {
+        this.tenant_id = tenant_id;
+    }
+
+    public Path getPayloadFile() {
+        return payloadFile;
+    }
+
+    public Path getMaskedFile() {
+        return maskedFile;
+    }
+
+    public Path getResponseFile() {
+        return responseFile;
+    }
+
+    public String getHead() {
+        return head;
+    }
+
+    public void setHead(String head) {
+        this.head = head;
+    }
+
+    public char getTrailingChar() {
+        return trailingChar;
+    }
+
+    public void setTrailingChar(char trailingChar) {
+        this.trailingChar = trailingChar;
+    }
+
+    public long getPayloadChars() {
+        return payloadChars;
+    }
+
+    public void setPayloadChars(long payloadChars) {
+        this.payloadChars = payloadChars;
+    }
+
+    public long getContentEnd() {
+        return contentEnd;
+    }
+
+    public void setContentEnd(long contentEnd) {
+        this.contentEnd = contentEnd;
+    }
+
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    public void setBodyBytes(long bodyBytes) {
+        this.bodyBytes = bodyBytes;
+    }
+
+    public byte[] getPayloadDigest() {
+        return payloadDigest;
+    }
+
+    public void setPayloadDigest(byte[] payloadDigest) {
+        this.payloadDigest = payloadDigest;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(payloadFile);
+        Files.deleteIfExists(maskedFile);
+        Files.deleteIfExists(responseFile);
+    }
+}
@@ -1,23 +1,36 @@
 package com.example.masking.service;
 
 import com.example.masking.model.MaskingAttribute;
-import com.example.masking.model.MaskingConfig;
-import com.example.masking.model.MaskingRule;
+import com.example.masking.model.MaskingPatch;
+import com.example.masking.model.PatchOffsetUnit;
 import com.example.masking.model.PayloadType;
+import com.example.masking.model.SpilledPayload;
 import com.example.masking.service.processor.DefaultMaskingProcessor;
+import com.example.masking.service.processor.FixedLengthMaskingPlan;
 import com.example.masking.service.processor.FixedLengthMaskingProcessor;
+import com.example.masking.service.MaskingEngineSelector.Engine;
+import com.example.masking.service.jfr.MaskingRequestEvent;
 import com.example.masking.service.processor.JsonMaskingProcessor;
+import com.example.masking.service.processor.JsonStreamingPlan;
+import com.example.masking.service.processor.MaskingPatches;
 import com.example.masking.service.processor.MaskingProcessor;
+import com.example.masking.service.processor.NestedPayloadMasker;
 import com.example.masking.service.processor.XmlMaskingProcessor;
+import com.example.masking.service.processor.XmlStreamingPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class DataMaskingService {
@@ -29,82 +42,468 @@ public class DataMaskingService {
     private final JsonMaskingProcessor jsonMaskingProcessor;
     private final FixedLengthMaskingProcessor fixedLengthMaskingProcessor;
     private final DefaultMaskingProcessor defaultMaskingProcessor;
-    private final MaskingConfig maskingConfig;
-
-    // Rule index for O(1) lookup (built at startup)
-    private final Map<String, List<MaskingAttribute>> ruleIndex;
+    private final TenantRuleSets tenantRuleSets;
+    private final MaskingLimits maskingLimits;
+    private final MaskingEngineSelector engineSelector;
 
     // Store last detected subtype for retrieval by controller
     private ThreadLocal<String> lastDetectedSubtype = new ThreadLocal<>();
 
+    // Rule set of the request on this thread, for payloads nested in its values
+    private final ThreadLocal<RuleSet> requestRuleSet = new ThreadLocal<>();
+
+    // JFR event of the request on this thread, only set while a recording has it enabled
+    private final ThreadLocal<MaskingRequestEvent> requestEvent = new ThreadLocal<>();
+
+    // tenant/version/type of payloads without rules that have been warned about
+    private final Set<String> unconfiguredTypes = ConcurrentHashMap.newKeySet();
+
     public DataMaskingService(PayloadTypeDetector payloadTypeDetector,
                               XmlMaskingProcessor xmlMaskingProcessor,
                               JsonMaskingProcessor jsonMaskingProcessor,
                               FixedLengthMaskingProcessor fixedLengthMaskingProcessor,
                               DefaultMaskingProcessor defaultMaskingProcessor,
-                              MaskingConfig maskingConfig) {
+                              TenantRuleSets tenantRuleSets,
+                              MaskingLimits maskingLimits,
+                              MaskingEngineSelector engineSelector) {
         this.payloadTypeDetector = payloadTypeDetector;
         this.xmlMaskingProcessor = xmlMaskingProcessor;
         this.jsonMaskingProcessor = jsonMaskingProcessor;
         this.fixedLengthMaskingProcessor = fixedLengthMaskingProcessor;
         this.defaultMaskingProcessor = defaultMaskingProcessor;
-        this.maskingConfig = maskingConfig;
+        this.tenantRuleSets = tenantRuleSets;
+        this.maskingLimits = maskingLimits;
+        this.engineSelector = engineSelector;
+
+        // Values of nested rules are masked as payloads of their own, within the outer request
+        NestedPayloadMasker nestedPayloadMasker = new NestedPayloadMasker() {
+            @Override
+            public String mask(MaskingAttribute rule, String payload) {
+                return maskNested(payload);
+            }
 
-        // Build rule index at startup for fast O(1) lookups
-        this.ruleIndex = buildRuleIndex(maskingConfig);
-        log.info("Built rule index with {} types", ruleIndex.size());
+            @Override
+            public Runnable forRequest(Runnable task) {
+                RuleSet ruleSet = requestRuleSet.get();
+                if (ruleSet == null) {
+                    return task;
+                }
+                return () -> {
+                    requestRuleSet.set(ruleSet);
+                    try {
+                        task.run();
+                    } finally {
+                        requestRuleSet.remove();
+                    }
+                };
+            }
+        };
+        xmlMaskingProcessor.setNestedPayloadMasker(nestedPayloadMasker);
+        jsonMaskingProcessor.setNestedPayloadMasker(nestedPayloadMasker);
+
+        // Engine thresholds tuned for a tenant's previous rules do not carry over to its new ones
+        tenantRuleSets.addReloadListener(reloaded -> engineSelector.reset(reloaded.getTenant()));
     }
 
+    /**
+     * Masks a payload with the default tenant's rules.
+     */
     public String maskPayload(String payload, PayloadType detectedType) {
-        log.info("Masking payload of type: {}", detectedType);
+        return maskPayload(payload, detectedType, tenantRuleSets.getDefault());
+    }
 
-        String detectedNamespace = null;
-        String xmlSubtype = null;
+    public String maskPayload(String payload, PayloadType detectedType, RuleSet ruleSet) {
+        log.debug("Masking payload of type: {}", detectedType);
+        maskingLimits.start();
 
-        // Detect XML subtype if applicable
-        if (detectedType == PayloadType.XML || payload.trim().startsWith("<")) {
-            xmlSubtype = payloadTypeDetector.detectXmlSubtype(
-                    payload,
-                    maskingConfig.getNamespaceMappings()
-            );
+        long routeStart = System.nanoTime();
+        Route route = route(payload, -1, detectedType, ruleSet);
 
-            if (xmlSubtype != null) {
-                // Extract namespace for XPath processing
-                detectedNamespace = payloadTypeDetector.extractNamespace(payload);
-                log.info("Detected XML subtype: {} with namespace: {}", xmlSubtype, detectedNamespace);
+        if (route.engineType != null) {
+            Engine engine = selectEngine(route, payload.length());
+            long start = routed(route, engine, false, payload, routeStart);
+            String masked;
+            if (engine == Engine.STREAMING) {
+                StringWriter out = new StringWriter(payload.length());
+                maskStreaming(maskingLimits.guard(new StringReader(payload)), out, route, payload.length());
+                masked = out.toString();
+            } else {
+                masked = maskTree(payload, route);
             }
+            engineSelector.record(route.tenant, route.type, route.engineType, engine, payload.length(),
+                    System.nanoTime() - start);
+            masked(start);
+            return masked;
         }
+        long start = routed(route, null, false, payload, routeStart);
+        // Fixed-length types run their precompiled plan
+        String masked = route.plan != null
+                ? fixedLengthMaskingProcessor.mask(payload, route.plan)
+                : route.processor.mask(payload, route.attributes);
+        masked(start);
+        return masked;
+    }
 
-        // Store detected subtype for controller to retrieve
-        if (xmlSubtype != null) {
-            lastDetectedSubtype.set(xmlSubtype.toUpperCase());
+    private String maskTree(String payload, Route route) {
+        // Pass namespace to XML processor if detected
+        if (route.namespace != null) {
+            return xmlMaskingProcessor.maskWithNamespace(payload, route.attributes, route.namespace);
+        }
+        return route.processor.mask(payload, route.attributes);
+    }
+
+    /**
+     * Masks a payload embedded in a value of the payload being masked (a rule with {@code nested: true}),
+     * detecting its type and subtype and applying that type's rules, from the request's rule set,
+     * with the tree engine. It is masked as part of the outer request: same time budget, no request
+     * event, and the outer payload's subtype stays the one reported. Text that is not a well-formed
+     * payload is masked as a plain value.
+     */
+    private String maskNested(String payload) {
+        if (payload.trim().isEmpty()) {
+            return payload;
+        }
+        RuleSet ruleSet = requestRuleSet.get();
+        if (ruleSet == null) {
+            // Only when a processor is used on its own, outside a request routed here
+            return defaultMaskingProcessor.maskValue(payload);
+        }
+        maskingLimits.enterNested();
+        String outerSubtype = lastDetectedSubtype.get();
+        try {
+            Route route = route(payload, -1, payloadTypeDetector.detectType(payload), ruleSet);
+            return route.plan != null
+                    ? fixedLengthMaskingProcessor.mask(payload, route.plan)
+                    : maskTree(payload, route);
+        } catch (MaskingLimitExceededException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("Nested payload could not be masked as a payload, masking it as a value: {}", e.getMessage());
+            return defaultMaskingProcessor.maskValue(payload);
+        } finally {
+            if (outerSubtype != null) {
+                lastDetectedSubtype.set(outerSubtype);
+            } else {
+                lastDetectedSubtype.remove();
+            }
+            maskingLimits.exitNested();
+        }
+    }
+
+    /**
+     * Masks a payload and returns the masked regions as patches against the original
+     * instead of the masked payload.
+     */
+    public List<MaskingPatch> maskPayloadToPatches(String payload, PayloadType detectedType, PatchOffsetUnit unit) {
+        return maskPayloadToPatches(payload, detectedType, unit, tenantRuleSets.getDefault());
+    }
+
+    public List<MaskingPatch> maskPayloadToPatches(String payload, PayloadType detectedType, PatchOffsetUnit unit,
+                                                   RuleSet ruleSet) {
+        log.debug("Masking payload of type: {} (patch response)", detectedType);
+        maskingLimits.start();
+
+        long routeStart = System.nanoTime();
+        Route route = route(payload, -1, detectedType, ruleSet);
+        long start = routed(route, route.engineType != null ? Engine.TREE : null, true, payload, routeStart);
+        List<MaskingPatch> patches = maskToPatches(payload, route);
+        if (unit == PatchOffsetUnit.UTF8) {
+            MaskingPatches.toUtf8(payload, patches);
+        }
+        masked(start);
+        return patches;
+    }
+
+    /**
+     * Masks a payload that was spilled to disk, streaming from its payload file to its masked file.
+     * Type and subtype detection only look at the leading characters captured while spilling.
+     */
+    public void maskPayload(SpilledPayload spilled, PayloadType detectedType) throws IOException {
+        maskPayload(spilled, detectedType, tenantRuleSets.getDefault());
+    }
+
+    public void maskPayload(SpilledPayload spilled, PayloadType detectedType, RuleSet ruleSet) throws IOException {
+        log.debug("Masking spilled payload of type: {} ({} chars)", detectedType, spilled.getPayloadChars());
+        maskingLimits.start();
+
+        long routeStart = System.nanoTime();
+        long start = maskSpilled(spilled, routeSpilled(spilled, detectedType, ruleSet), false, routeStart);
+        masked(start);
+    }
+
+    /**
+     * Patch variant of {@link #maskPayload(SpilledPayload, PayloadType)}. Default and fixed-length masking
+     * keep the payload length, so they stream to the masked file and the two files are compared;
+     * XML and JSON run the streaming engine in patch mode, which reads the payload file once and only
+     * holds the value being masked.
+     */
+    public List<MaskingPatch> maskPayloadToPatches(SpilledPayload spilled, PayloadType detectedType,
+                                                   PatchOffsetUnit unit) throws IOException {
+        return maskPayloadToPatches(spilled, detectedType, unit, tenantRuleSets.getDefault());
+    }
+
+    public List<MaskingPatch> maskPayloadToPatches(SpilledPayload spilled, PayloadType detectedType,
+                                                   PatchOffsetUnit unit, RuleSet ruleSet) throws IOException {
+        log.debug("Masking spilled payload of type: {} ({} chars, patch response)",
+                detectedType, spilled.getPayloadChars());
+        maskingLimits.start();
+
+        long routeStart = System.nanoTime();
+        Route route = routeSpilled(spilled, detectedType, ruleSet);
+        if (route.engineType == null) {
+            long start = maskSpilled(spilled, route, true, routeStart);
+            try (Reader original = Files.newBufferedReader(spilled.getPayloadFile(), StandardCharsets.UTF_8);
+                 Reader masked = Files.newBufferedReader(spilled.getMaskedFile(), StandardCharsets.UTF_8)) {
+                List<MaskingPatch> patches = MaskingPatches.diff(original, masked, unit);
+                masked(start);
+                return patches;
+            }
+        }
+
+        requireStreaming(route);
+        long start = routed(route, Engine.STREAMING, true, spilled, routeStart);
+        List<MaskingPatch> patches;
+        try (Reader in = maskingLimits.guard(Files.newBufferedReader(spilled.getPayloadFile(), StandardCharsets.UTF_8))) {
+            patches = route.xmlStreamingPlan != null
+                    ? xmlMaskingProcessor.maskStreamingToPatches(in, route.xmlStreamingPlan, route.namespace,
+                            spilled.getPayloadChars())
+                    : jsonMaskingProcessor.maskStreamingToPatches(in, route.jsonStreamingPlan, spilled.getPayloadChars());
+        }
+        if (unit == PatchOffsetUnit.UTF8) {
+            try (Reader original = Files.newBufferedReader(spilled.getPayloadFile(), StandardCharsets.UTF_8)) {
+                MaskingPatches.toUtf8(original, patches);
+            }
+        }
+        masked(start);
+        return patches;
+    }
+
+    private List<MaskingPatch> maskToPatches(String payload, Route route) {
+        if (route.namespace != null) {
+            return xmlMaskingProcessor.maskWithNamespaceToPatches(payload, route.attributes, route.namespace);
+        }
+        if (route.plan != null) {
+            return fixedLengthMaskingProcessor.maskToPatches(payload, route.plan);
+        }
+        return route.processor.maskToPatches(payload, route.attributes);
+    }
+
+    private Route routeSpilled(SpilledPayload spilled, PayloadType detectedType, RuleSet ruleSet) {
+        long recordLength = spilled.getContentEnd() - PayloadTypeDetector.leadingWhitespace(spilled.getHead());
+        return route(spilled.getHead(), recordLength, detectedType, ruleSet);
+    }
+
+    /**
+     * Streams a spilled payload to its masked file. XML and JSON always use the streaming engines: the
+     * tree engines would build the whole document in memory, which is what spilling avoids.
+     *
+     * @return Start of the mask phase, for {@link #masked(long)}
+     */
+    private long maskSpilled(SpilledPayload spilled, Route route, boolean patches, long routeStart) throws IOException {
+        Engine engine = null;
+        if (route.engineType != null) {
+            requireStreaming(route);
+            engine = Engine.STREAMING;
+        }
+        long start = routed(route, engine, patches, spilled, routeStart);
+
+        // Every engine reads through the guard, so the time budget is checked as the payload streams in
+        try (Reader in = maskingLimits.guard(Files.newBufferedReader(spilled.getPayloadFile(), StandardCharsets.UTF_8));
+             Writer out = Files.newBufferedWriter(spilled.getMaskedFile(), StandardCharsets.UTF_8)) {
+            if (engine == Engine.STREAMING) {
+                maskStreaming(in, out, route, spilled.getPayloadChars());
+            } else if (route.plan != null) {
+                fixedLengthMaskingProcessor.mask(in, out, route.plan);
+            } else if (route.processor == defaultMaskingProcessor) {
+                defaultMaskingProcessor.mask(in, out, route.attributes);
+            } else {
+                fixedLengthMaskingProcessor.mask(in, out, route.attributes);
+            }
+        }
+        if (engine != null) {
+            engineSelector.record(route.tenant, route.type, route.engineType, engine, spilled.getPayloadChars(),
+                    System.nanoTime() - start);
+        }
+        return start;
+    }
+
+    /**
+     * Ends the route phase of the request's JFR event, if one is being recorded, and fills in what
+     * routing decided. Payload bytes are only counted while recording.
+     *
+     * @param engine Engine chosen for an XML/JSON route, null for fixed-length and default masking
+     * @return Start of the mask phase
+     */
+    private long routed(Route route, Engine engine, boolean patches, String payload, long routeStart) {
+        long now = System.nanoTime();
+        MaskingRequestEvent event = requestEvent.get();
+        if (event != null) {
+            routed(event, route, engine, patches, now - routeStart);
+            event.payloadChars = payload.length();
+            event.payloadBytes = MaskingPatches.utf8Length(payload);
+        }
+        return now;
+    }
+
+    private long routed(Route route, Engine engine, boolean patches, SpilledPayload spilled, long routeStart)
+            throws IOException {
+        long now = System.nanoTime();
+        MaskingRequestEvent event = requestEvent.get();
+        if (event != null) {
+            routed(event, route, engine, patches, now - routeStart);
+            event.spilled = true;
+            event.payloadChars = spilled.getPayloadChars();
+            event.payloadBytes = Files.size(spilled.getPayloadFile());
+        }
+        return now;
+    }
+
+    private void routed(MaskingRequestEvent event, Route route, Engine engine, boolean patches, long routeNanos) {
+        event.routeTime = routeNanos;
+        event.subtype = lastDetectedSubtype.get();
+        event.engine = engine != null ? engine.tag()
+                : route.processor instanceof DefaultMaskingProcessor ? "default" : "fixed-length";
+        event.response = patches ? "patches" : "full";
+    }
+
+    /**
+     * Ends the mask phase of the request's JFR event. Requests that never get here are committed
+     * with outcome "error".
+     */
+    private void masked(long maskStart) {
+        MaskingRequestEvent event = requestEvent.get();
+        if (event != null) {
+            event.maskTime = System.nanoTime() - maskStart;
+            event.outcome = "ok";
+        }
+    }
+
+    /**
+     * Rejects a spilled XML or JSON payload whose rules need the tree engine, which would hold the whole
+     * document in memory.
+     */
+    private static void requireStreaming(Route route) {
+        if (!isStreamingCompatible(route)) {
+            throw new IllegalArgumentException(route.type + " payloads above the in-memory threshold can only be"
+                    + " masked by the streaming engine, and its rules need the tree engine; send smaller payloads"
+                    + " or use streaming-compatible rules");
+        }
+    }
+
+    /**
+     * Lets the selector choose between the tree and streaming engines for an XML or JSON route.
+     */
+    private Engine selectEngine(Route route, long payloadChars) {
+        return engineSelector.select(route.tenant, route.type, route.engineType, payloadChars,
+                isStreamingCompatible(route));
+    }
+
+    private static boolean isStreamingCompatible(Route route) {
+        return route.xmlStreamingPlan != null
+                ? route.xmlStreamingPlan.supports(route.namespace)
+                : route.jsonStreamingPlan != null;
+    }
+
+    private void maskStreaming(Reader in, Writer out, Route route, long payloadChars) {
+        if (route.xmlStreamingPlan != null) {
+            xmlMaskingProcessor.maskStreaming(in, out, route.xmlStreamingPlan, route.namespace, payloadChars);
         } else {
-            lastDetectedSubtype.set(detectedType.name());
+            jsonMaskingProcessor.maskStreaming(in, out, route.jsonStreamingPlan, payloadChars);
+        }
+    }
+
+    /**
+     * Detects the subtype and picks the processor, rules, namespace and fixed-length plan for a payload.
+     *
+     * @param payload The payload, or its leading characters for spilled payloads
+     * @param recordLength Length without surrounding whitespace, or -1 if the payload is complete
+     * @param ruleSet Rule set of the request's tenant
+     */
+    private Route route(String payload, long recordLength, PayloadType detectedType, RuleSet ruleSet) {
+        requestRuleSet.set(ruleSet);
+        MaskingRequestEvent event = requestEvent.get();
+        if (event != null && event.tenant == null) {
+            event.tenant = ruleSet.getTenant();
+        }
+
+        String detectedNamespace = null;
+        String subtype = detectSubtype(payload, recordLength, detectedType, ruleSet);
+
+        if (subtype != null && detectedType == PayloadType.XML) {
+            // Extract namespace for XPath processing
+            detectedNamespace = payloadTypeDetector.extractNamespace(payload);
+            log.debug("Detected XML subtype: {} with namespace: {}", subtype, detectedNamespace);
+        } else if (subtype != null) {
+            log.debug("Detected fixed-length subtype: {}", subtype);
         }
 
         // Get attributes using subtype if available, otherwise use base type
-        List<MaskingAttribute> attributes = xmlSubtype != null ?
-                getAttributesForTypeString(xmlSubtype) :
-                getAttributesForType(detectedType);
+        List<MaskingAttribute> attributes = ruleSet.getAttributes(subtype != null ? subtype : detectedType.name());
 
         if (attributes.isEmpty()) {
-            log.warn("No masking rules found for payload type: {}. Using default masking (10-14 consecutive digits).",
-                    xmlSubtype != null ? xmlSubtype : detectedType);
-            return defaultMaskingProcessor.mask(payload, null);
+            // A configuration gap, not a request problem: warned once per rule set and type
+            Object unconfigured = subtype != null ? subtype : detectedType;
+            if (unconfiguredTypes.add(ruleSet.getTenant() + '/' + ruleSet.getVersion() + '/' + unconfigured)) {
+                log.warn("No masking rules found for payload type: {} (tenant {}). Using default masking: {}.",
+                        unconfigured, ruleSet.getTenant(), defaultMaskingProcessor.getDescription());
+            } else {
+                log.debug("No masking rules found for payload type: {}; using default masking", unconfigured);
+            }
+            return new Route(defaultMaskingProcessor, attributes, null, null);
         }
 
+        String type = (subtype != null ? subtype : detectedType.name()).toLowerCase();
         MaskingProcessor processor = getProcessor(detectedType);
-
-        // Pass namespace to XML processor if detected
-        if (processor instanceof XmlMaskingProcessor && detectedNamespace != null) {
-            return ((XmlMaskingProcessor) processor).maskWithNamespace(payload, attributes, detectedNamespace);
+        if (processor instanceof XmlMaskingProcessor) {
+            return new Route(processor, PayloadType.XML, ruleSet.getTenant(), type, attributes, detectedNamespace,
+                    ruleSet.getXmlStreamingPlan(type), null);
         }
-
-        return processor.mask(payload, attributes);
+        if (processor instanceof JsonMaskingProcessor) {
+            return new Route(processor, PayloadType.JSON, ruleSet.getTenant(), type, attributes, null, null,
+                    ruleSet.getJsonStreamingPlan(type));
+        }
+        return new Route(processor, attributes, null, ruleSet.getFixedLengthPlan(type));
     }
 
+    /**
+     * Detects the base payload type. This is the first step of every masking request, so it also
+     * begins the request's JFR event, committed by {@link #clearThreadLocalState()}.
+     */
     public PayloadType detectPayloadType(String payload) {
-        return payloadTypeDetector.detectType(payload);
+        MaskingRequestEvent event = beginRequestEvent();
+        long start = event != null ? System.nanoTime() : 0;
+        PayloadType type = payloadTypeDetector.detectType(payload);
+        detected(event, type, start);
+        return type;
+    }
+
+    public PayloadType detectPayloadType(SpilledPayload spilled) {
+        MaskingRequestEvent event = beginRequestEvent();
+        long start = event != null ? System.nanoTime() : 0;
+        PayloadType type = payloadTypeDetector.detectType(spilled.getHead(), spilled.getTrailingChar());
+        detected(event, type, start);
+        return type;
+    }
+
+    /**
+     * Starts a request event if a recording has it enabled; otherwise this is one allocation the JIT
+     * removes and a flag check.
+     */
+    private MaskingRequestEvent beginRequestEvent() {
+        MaskingRequestEvent event = new MaskingRequestEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        requestEvent.set(event);
+        return event;
+    }
+
+    private static void detected(MaskingRequestEvent event, PayloadType type, long detectStart) {
+        if (event != null) {
+            event.detectTime = System.nanoTime() - detectStart;
+            event.payloadType = type.name();
+        }
     }
 
     public String getLastDetectedSubtype() {
@@ -114,38 +513,54 @@ public class DataMaskingService {
     /**
      * Clears ThreadLocal state to prevent memory leaks in thread pools.
      * Should be called in finally block after request processing.
+     * Also commits the request's JFR event, if one is being recorded.
      */
     public void clearThreadLocalState() {
         lastDetectedSubtype.remove();
+        requestRuleSet.remove();
+        maskingLimits.clear();
+
+        MaskingRequestEvent event = requestEvent.get();
+        if (event != null) {
+            requestEvent.remove();
+            if (event.outcome == null) {
+                event.outcome = "error";
+            }
+            event.commit();
+        }
     }
 
     /**
-     * Builds an index of masking rules for O(1) lookup performance.
-     * Called once at service initialization.
+     * Detects the XML or fixed-length subtype (if any) and records the detected subtype for the controller.
+     *
+     * @param payload The payload, or its leading characters for spilled payloads
+     * @param recordLength Length without surrounding whitespace, or -1 if the payload is complete
+     * @param detectedType The detected base type
+     * @param ruleSet Rule set whose namespace mappings and fixed-length formats define the subtypes
+     * @return Subtype identifier used as the rule type, or null to use the base type's rules
      */
-    private Map<String, List<MaskingAttribute>> buildRuleIndex(MaskingConfig config) {
-        Map<String, List<MaskingAttribute>> index = new HashMap<>();
+    private String detectSubtype(String payload, long recordLength, PayloadType detectedType, RuleSet ruleSet) {
+        String subtype = null;
 
-        if (config.getRules() != null) {
-            for (MaskingRule rule : config.getRules()) {
-                if (rule.getType() != null && rule.getAttributes() != null) {
-                    String typeKey = rule.getType().toLowerCase();
-                    index.computeIfAbsent(typeKey, k -> new ArrayList<>())
-                         .addAll(rule.getAttributes());
-                }
-            }
+        if (detectedType == PayloadType.XML || payload.trim().startsWith("<")) {
+            subtype = payloadTypeDetector.detectXmlSubtype(
+                    payload,
+                    ruleSet.getNamespaceMappings()
+            );
+        } else if (detectedType == PayloadType.FIXED) {
+            subtype = recordLength < 0
+                    ? payloadTypeDetector.detectFixedSubtype(payload, ruleSet.getFixedLengthFormats())
+                    : payloadTypeDetector.detectFixedSubtype(payload, recordLength, ruleSet.getFixedLengthFormats());
         }
 
-        return Collections.unmodifiableMap(index);
-    }
-
-    private List<MaskingAttribute> getAttributesForType(PayloadType type) {
-        return getAttributesForTypeString(type.name());
-    }
+        // Store detected subtype for controller to retrieve
+        if (subtype != null) {
+            lastDetectedSubtype.set(subtype.toUpperCase());
+        } else {
+            lastDetectedSubtype.set(detectedType.name());
+        }
 
-    private List<MaskingAttribute> getAttributesForTypeString(String typeString) {
-        // Use O(1) index lookup instead of O(N) linear scan
-        return ruleIndex.getOrDefault(typeString.toLowerCase(), Collections.emptyList());
+        return subtype;
     }
 
     private MaskingProcessor getProcessor(PayloadType type) {
@@ -159,4 +574,47 @@ public class DataMaskingService {
             return fixedLengthMaskingProcessor;
         }
     }
+
+    /**
+     * Where a payload goes: the processor and rules, plus the XML namespace or compiled
+     * fixed-length plan when one applies. XML and JSON routes also carry the rule type and
+     * streaming plan the engine selector needs.
+     */
+    private static final class Route {
+        private final MaskingProcessor processor;
+        private final List<MaskingAttribute> attributes;
+        private final String namespace;
+        private final FixedLengthMaskingPlan plan;
+        private final PayloadType engineType;       // XML or JSON when the engine is selected per request
+        private final String tenant;                // Tenant of the rule set, for engine selection
+        private final String type;                  // Rule type, for engine selection and metrics
+        private final XmlStreamingPlan xmlStreamingPlan;
+        private final JsonStreamingPlan jsonStreamingPlan;
+
+        private Route(MaskingProcessor processor, List<MaskingAttribute> attributes,
+                      String namespace, FixedLengthMaskingPlan plan) {
+            this.processor = processor;
+            this.attributes = attributes;
+            this.namespace = namespace;
+            this.plan = plan;
+            this.engineType = null;
+            this.tenant = null;
+            this.type = null;
+            this.xmlStreamingPlan = null;
+            this.jsonStreamingPlan = null;
+        }
+
+        private Route(MaskingProcessor processor, PayloadType engineType, String tenant, String type,
+                      List<MaskingAttribute> attributes, String namespace, XmlStreamingPlan xmlStreamingPlan, JsonStreamingPlan jsonStreamingPlan) {
+            this.processor = processor;
+            this.attributes = attributes;
+            this.namespace = namespace;
+            this.plan = null;
+            this.engineType = engineType;
+            this.tenant = tenant;
+            this.type = type;
+            this.xmlStreamingPlan = xmlStreamingPlan;
+            this.jsonStreamingPlan = jsonStreamingPlan;
+        }
+    }
 }
@@ -0,0 +1,169 @@
+package com.example.masking.service;
+
+import com.example.masking.model.FixedLengthFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Prefix trie over the configured fixed-length formats, built once at startup.
+ * Matching walks the record's leading characters once, down to the longest configured prefix,
+ * then checks candidates from the deepest matching node upwards, so longer prefixes win and
+ * the cost does not grow with the number of formats.
+ */
+final class FixedLengthFormatTrie {
+
+    private static final Logger log = LoggerFactory.getLogger(FixedLengthFormatTrie.class);
+
+    private final Node root = new Node();
+
+    private FixedLengthFormatTrie() {
+    }
+
+    static FixedLengthFormatTrie compile(List<FixedLengthFormat> formats) {
+        FixedLengthFormatTrie trie = new FixedLengthFormatTrie();
+        if (formats == null) {
+            return trie;
+        }
+
+        for (FixedLengthFormat format : formats) {
+            if (format.getType() == null || format.getPrefix() == null) {
+                log.warn("Ignoring fixed-length format without type or prefix: {}", format);
+                continue;
+            }
+            if (format.getPrefix().isEmpty() && format.getDiscriminator() == null && format.getRecordLength() == null) {
+                log.warn("Ignoring fixed-length format {}: an empty prefix needs a discriminator or record length",
+                        format.getType());
+                continue;
+            }
+            if (format.getDiscriminator() != null && (format.getDiscriminator().getValue() == null
+                    || format.getDiscriminator().getValue().isEmpty() || format.getDiscriminator().getOffset() < 0)) {
+                log.warn("Ignoring fixed-length format {}: invalid discriminator", format.getType());
+                continue;
+            }
+            trie.insert(format);
+        }
+        link(trie.root, null);
+        return trie;
+    }
+
+    private static void link(Node node, Node fallback) {
+        node.fallback = fallback;
+        Node childFallback = node.candidates.isEmpty() ? fallback : node;
+        for (Node child : node.children) {
+            link(child, childFallback);
+        }
+    }
+
+    private void insert(FixedLengthFormat format) {
+        Node node = root;
+        String prefix = format.getPrefix();
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.childOrCreate(prefix.charAt(i));
+        }
+
+        for (FixedLengthFormat existing : node.candidates) {
+            if (sameConstraints(existing, format)) {
+                log.warn("Fixed-length format {} is unreachable: {} has the same prefix and constraints",
+                        format.getType(), existing.getType());
+                return;
+            }
+        }
+
+        // Constrained formats are checked before an unconstrained format with the same prefix
+        int position = node.candidates.size();
+        while (position > 0 && constraints(node.candidates.get(position - 1)) < constraints(format)) {
+            position--;
+        }
+        node.candidates.add(position, format);
+    }
+
+    /**
+     * Returns the format matching a record, or null.
+     *
+     * @param record The record (may be only its leading part)
+     * @param start Index of the record's first non-whitespace character
+     * @param recordLength Length of the whole record without surrounding whitespace
+     */
+    FixedLengthFormat match(String record, int start, long recordLength) {
+        Node node = root;
+        Node deepest = root.candidates.isEmpty() ? null : root;
+
+        for (int i = start; i < record.length(); i++) {
+            node = node.child(record.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (!node.candidates.isEmpty()) {
+                deepest = node;
+            }
+        }
+
+        for (Node candidateNode = deepest; candidateNode != null; candidateNode = candidateNode.fallback) {
+            for (FixedLengthFormat format : candidateNode.candidates) {
+                if (matches(format, record, start, recordLength)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(FixedLengthFormat format, String record, int start, long recordLength) {
+        if (format.getRecordLength() != null && format.getRecordLength() != recordLength) {
+            return false;
+        }
+        FixedLengthFormat.Discriminator discriminator = format.getDiscriminator();
+        return discriminator == null
+                || record.regionMatches(start + discriminator.getOffset(), discriminator.getValue(), 0,
+                discriminator.getValue().length());
+    }
+
+    private static int constraints(FixedLengthFormat format) {
+        return (format.getDiscriminator() != null ? 1 : 0) + (format.getRecordLength() != null ? 1 : 0);
+    }
+
+    private static boolean sameConstraints(FixedLengthFormat a, FixedLengthFormat b) {
+        if (!Objects.equals(a.getRecordLength(), b.getRecordLength())) {
+            return false;
+        }
+        if (a.getDiscriminator() == null || b.getDiscriminator() == null) {
+            return a.getDiscriminator() == b.getDiscriminator();
+        }
+        return a.getDiscriminator().getOffset() == b.getDiscriminator().getOffset()
+                && a.getDiscriminator().getValue().equals(b.getDiscriminator().getValue());
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private final List<FixedLengthFormat> candidates = new ArrayList<>(1);
+        private Node fallback;   // Nearest ancestor with candidates, tried when none of ours match
+
+        Node child(char c) {
+            // Few children per node in practice, so a linear scan beats hashing
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
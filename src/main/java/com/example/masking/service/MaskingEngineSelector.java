@@ -0,0 +1,290 @@
+package com.example.masking.service;
+
+import com.example.masking.config.EngineSelectionProperties;
+import com.example.masking.config.EngineSelectionProperties.Mode;
+import com.example.masking.model.PayloadType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Picks the XML/JSON masking engine per request: the tree engines (DOM/XPath, JsonPath) for small
+ * payloads, the streaming engines from the streaming threshold up, and always the tree when the
+ * type's rules are not streaming-compatible. Every decision is counted in
+ * {@code masking.engine.decisions} and every masked payload timed in {@code masking.engine.latency}.
+ *
+ * <p>With auto-tune enabled, latency per payload char is tracked per engine in power-of-two size
+ * buckets, a small share of requests near the threshold is sent to the other engine so both keep
+ * being measured, and each type's threshold is periodically moved to where streaming becomes faster.
+ * Thresholds are tuned per tenant and rule type, and a tenant's start over when its rule set is reloaded.
+ */
+@Component
+public class MaskingEngineSelector {
+
+    private static final Logger log = LoggerFactory.getLogger(MaskingEngineSelector.class);
+
+    public enum Engine {
+        TREE, STREAMING;
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final int BUCKETS = 48;              // Payload sizes up to 2^47 chars
+    private static final int EXPLORATION_WINDOW = 8;    // Explore within threshold / 8 .. threshold * 8
+    private static final double SMOOTHING = 0.3;        // Weight of the latest interval in the averages
+
+    private final EngineSelectionProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final boolean autoTune;
+    private final long intervalNanos;
+    private final long minThreshold;
+    private final long maxThreshold;
+
+    private final Map<String, Tuning> tunings = new ConcurrentHashMap<>();   // Keyed by tenant/rule type
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public MaskingEngineSelector(EngineSelectionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.autoTune = properties.getAutoTune().isEnabled() && properties.getMode() == Mode.AUTO;
+        this.intervalNanos = properties.getAutoTune().getInterval().toNanos();
+        this.minThreshold = properties.getAutoTune().getMinThreshold().toBytes();
+        this.maxThreshold = properties.getAutoTune().getMaxThreshold().toBytes();
+        log.info("Masking engine selection: mode {}, streaming threshold {} chars{}", properties.getMode(),
+                properties.getStreamingThreshold().toBytes(), autoTune ? " (auto-tuned)" : "");
+    }
+
+    /**
+     * Chooses the engine for one XML or JSON payload and counts the decision.
+     *
+     * @param tenant Tenant whose rule set the payload is masked with
+     * @param type Rule type, e.g. "json" or "xml_pain_013"
+     * @param payloadType Detected base type (XML or JSON)
+     * @param payloadChars Payload length
+     * @param streamingCompatible Whether the type's rules can run on the streaming engine for this payload
+     */
+    public Engine select(String tenant, String type, PayloadType payloadType, long payloadChars,
+                         boolean streamingCompatible) {
+        Engine engine;
+        String reason;
+
+        if (!streamingCompatible) {
+            engine = Engine.TREE;
+            reason = "rules";
+        } else if (properties.getMode() != Mode.AUTO) {
+            engine = properties.getMode() == Mode.STREAMING ? Engine.STREAMING : Engine.TREE;
+            reason = "mode";
+        } else {
+            long threshold = tuning(tenant, type, payloadType).threshold;
+            engine = payloadChars >= threshold ? Engine.STREAMING : Engine.TREE;
+            reason = "size";
+            if (autoTune && explore(payloadChars, threshold)) {
+                engine = engine == Engine.TREE ? Engine.STREAMING : Engine.TREE;
+                reason = "explore";
+            }
+        }
+
+        meterRegistry.counter("masking.engine.decisions",
+                "type", type, "engine", engine.tag(), "reason", reason).increment();
+        return engine;
+    }
+
+    /**
+     * Records how long the chosen engine took, for the latency histograms and auto-tuning.
+     */
+    public void record(String tenant, String type, PayloadType payloadType, Engine engine, long payloadChars,
+                       long nanos) {
+        timers.computeIfAbsent(type + '/' + engine.tag(), k -> Timer.builder("masking.engine.latency")
+                        .description("Masking time per payload by engine")
+                        .tags("type", type, "engine", engine.tag())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+
+        if (!autoTune) {
+            return;
+        }
+        Tuning tuning = tuning(tenant, type, payloadType);
+        int bucket = bucket(payloadChars);
+        tuning.count[engine.ordinal()][bucket].increment();
+        tuning.nanos[engine.ordinal()][bucket].add(nanos);
+        tuning.chars[engine.ordinal()][bucket].add(payloadChars);
+
+        long now = System.nanoTime();
+        if (now - tuning.nextTune >= 0) {
+            synchronized (tuning) {
+                if (now - tuning.nextTune >= 0) {
+                    tuning.nextTune = now + intervalNanos;
+                    retune(tuning);
+                }
+            }
+        }
+    }
+
+    /**
+     * Current streaming threshold of a tenant's rule type, in payload chars.
+     */
+    public long threshold(String tenant, String type, PayloadType payloadType) {
+        return tuning(tenant, type, payloadType).threshold;
+    }
+
+    /**
+     * Forgets the thresholds and measurements of a tenant's rule types, whose rules have changed;
+     * they start again from the configured thresholds.
+     */
+    public void reset(String tenant) {
+        tunings.entrySet().removeIf(entry -> {
+            if (!entry.getValue().tenant.equals(tenant)) {
+                return false;
+            }
+            meterRegistry.remove(entry.getValue().gauge);
+            return true;
+        });
+    }
+
+    private boolean explore(long payloadChars, long threshold) {
+        if (payloadChars < threshold / EXPLORATION_WINDOW || payloadChars > threshold * EXPLORATION_WINDOW) {
+            return false;
+        }
+        // Never build a tree for payloads the tree engine must not see
+        if (payloadChars >= threshold && payloadChars > maxThreshold) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextDouble() < properties.getAutoTune().getExplorationRate();
+    }
+
+    /**
+     * Folds the interval's measurements into the smoothed per-bucket latencies and moves the threshold
+     * to the lowest size from which streaming is at least as fast in every bucket measured for both
+     * engines. If the tree is faster even in the largest such bucket, the threshold moves above it.
+     */
+    private void retune(Tuning tuning) {
+        int minSamples = properties.getAutoTune().getMinSamples();
+        for (int e = 0; e < 2; e++) {
+            for (int b = 0; b < BUCKETS; b++) {
+                long n = tuning.count[e][b].sumThenReset();
+                long nanos = tuning.nanos[e][b].sumThenReset();
+                long chars = tuning.chars[e][b].sumThenReset();
+                if (n == 0 || chars == 0) {
+                    continue;
+                }
+                double nanosPerChar = (double) nanos / chars;
+                tuning.nanosPerChar[e][b] = tuning.samples[e][b] == 0 ? nanosPerChar
+                        : SMOOTHING * nanosPerChar + (1 - SMOOTHING) * tuning.nanosPerChar[e][b];
+                tuning.samples[e][b] += n;
+            }
+        }
+
+        int tree = Engine.TREE.ordinal();
+        int streaming = Engine.STREAMING.ordinal();
+        int highestCompared = -1;
+        int crossover = -1;
+        for (int b = BUCKETS - 1; b >= 0; b--) {
+            if (tuning.samples[tree][b] < minSamples || tuning.samples[streaming][b] < minSamples) {
+                continue;
+            }
+            if (highestCompared < 0) {
+                highestCompared = b;
+            }
+            if (tuning.nanosPerChar[streaming][b] > tuning.nanosPerChar[tree][b]) {
+                break;
+            }
+            crossover = b;
+        }
+        if (highestCompared < 0) {
+            return;
+        }
+
+        long tuned = crossover >= 0 ? lowerBound(crossover) : lowerBound(highestCompared + 1);
+        tuned = Math.max(minThreshold, Math.min(maxThreshold, tuned));
+        if (tuned != tuning.threshold) {
+            log.info("Streaming threshold for {}/{} tuned from {} to {} chars", tuning.tenant, tuning.type,
+                    tuning.threshold, tuned);
+            tuning.threshold = tuned;
+        }
+    }
+
+    private Tuning tuning(String tenant, String type, PayloadType payloadType) {
+        String key = tenant + '/' + type;
+        Tuning tuning = tunings.get(key);
+        if (tuning != null) {
+            return tuning;
+        }
+        return tunings.computeIfAbsent(key, k -> {
+            Tuning created = new Tuning(tenant, type, configuredThreshold(type, payloadType),
+                    System.nanoTime() + intervalNanos);
+            created.gauge = Gauge.builder("masking.engine.streaming.threshold", created, t -> t.threshold)
+                    .description("Payload size (chars) from which the streaming engine is used")
+                    .tags("tenant", tenant, "type", type)
+                    .register(meterRegistry);
+            return created;
+        });
+    }
+
+    private long configuredThreshold(String type, PayloadType payloadType) {
+        Map<String, DataSize> perType = properties.getTypeStreamingThreshold();
+        DataSize threshold = perType.get(type);
+        if (threshold == null) {
+            threshold = perType.get(payloadType.name().toLowerCase());
+        }
+        return (threshold != null ? threshold : properties.getStreamingThreshold()).toBytes();
+    }
+
+    // Bucket b holds sizes in [2^(b-1), 2^b)
+    private static int bucket(long chars) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(chars));
+    }
+
+    private static long lowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * Threshold and latency measurements of one tenant's rule type.
+     */
+    private static final class Tuning {
+        private final String tenant;
+        private final String type;
+        private Gauge gauge;
+        private volatile long threshold;
+        private volatile long nextTune;
+
+        // Per engine and size bucket: measurements since the last retune
+        private final LongAdder[][] count = adders();
+        private final LongAdder[][] nanos = adders();
+        private final LongAdder[][] chars = adders();
+
+        // Smoothed nanos per char and total samples, guarded by the Tuning's monitor
+        private final double[][] nanosPerChar = new double[2][BUCKETS];
+        private final long[][] samples = new long[2][BUCKETS];
+
+        private Tuning(String tenant, String type, long threshold, long nextTune) {
+            this.tenant = tenant;
+            this.type = type;
+            this.threshold = threshold;
+            this.nextTune = nextTune;
+        }
+
+        private static LongAdder[][] adders() {
+            LongAdder[][] adders = new LongAdder[2][BUCKETS];
+            for (LongAdder[] engine : adders) {
+                for (int b = 0; b < BUCKETS; b++) {
+                    engine[b] = new LongAdder();
+                }
+            }
+            return adders;
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package com.example.masking.service;
+
+import com.example.masking.config.JobProperties;
+import com.example.masking.model.JobStatus;
+import com.example.masking.model.JobSubmission;
+import com.example.masking.model.MaskingRequest;
+import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.PayloadType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk masking jobs backed by a local directory queue.
+ * Each job is a directory holding job.json (state), input.jsonl (inline payloads) and
+ * output.jsonl (one result per input record). Unfinished jobs found at startup are
+ * re-queued and resume after the last complete output record.
+ */
+@Service
+public class MaskingJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(MaskingJobService.class);
+
+    private static final String STATE_FILE = "job.json";
+    private static final String INPUT_FILE = "input.jsonl";
+    private static final String OUTPUT_FILE = "output.jsonl";
+
+    private final DataMaskingService dataMaskingService;
+    private final TenantRuleSets tenantRuleSets;
+    private final JobProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final Map<String, JobStatus> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final Counter maskedRecords;
+    private final Counter failedRecords;
+    private final DistributionSummary jobThroughput;
+
+    public MaskingJobService(DataMaskingService dataMaskingService,
+                             TenantRuleSets tenantRuleSets,
+                             JobProperties properties,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) throws IOException {
+        this.dataMaskingService = dataMaskingService;
+        this.tenantRuleSets = tenantRuleSets;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(properties.getDirectory());
+
+        this.maskedRecords = Counter.builder("masking.jobs.records").tag("result", "masked")
+                .description("Records processed by bulk jobs").register(meterRegistry);
+        this.failedRecords = Counter.builder("masking.jobs.records").tag("result", "failed")
+                .description("Records processed by bulk jobs").register(meterRegistry);
+        this.jobThroughput = DistributionSummary.builder("masking.jobs.throughput")
+                .description("Records per second of completed jobs")
+                .baseUnit("records/s")
+                .register(meterRegistry);
+        Gauge.builder("masking.jobs.queue.depth", jobs, MaskingJobService::countQueued)
+                .description("Jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("masking.jobs.active", activeJobs, AtomicInteger::get)
+                .description("Jobs currently being processed")
+                .register(meterRegistry);
+
+        if (!properties.isEnabled()) {
+            this.workers = null;
+            return;
+        }
+
+        Files.createDirectories(directory);
+        loadJobs();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "masking-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.workers = Executors.newFixedThreadPool(Math.max(1, properties.getWorkers()), threadFactory);
+    }
+
+    /**
+     * Re-queues jobs that were queued or running when the application last stopped.
+     * Runs once the application is ready, so resumed work does not compete with warm-up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        if (workers == null) {
+            return;
+        }
+
+        List<JobStatus> unfinished = new ArrayList<>();
+        for (JobStatus status : jobs.values()) {
+            if (status.getStatus() == JobStatus.State.QUEUED || status.getStatus() == JobStatus.State.RUNNING) {
+                unfinished.add(status);
+            }
+        }
+        unfinished.sort(Comparator.comparing(JobStatus::getSubmitted_at));
+
+        for (JobStatus status : unfinished) {
+            log.info("Resuming job {} ({} of {} records done)", status.getJob_id(),
+                    status.getProcessed_records(), status.getTotal_records());
+            enqueue(status.getJob_id());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (workers == null) {
+            return;
+        }
+        // Running jobs checkpoint and stop; they resume on the next start
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Persists a new job and queues it. Returns as soon as the job is on disk.
+     */
+    public JobStatus submit(JobSubmission submission) throws IOException {
+        if (workers == null) {
+            throw new IllegalStateException("Job processing is disabled (masking.jobs.enabled=false)");
+        }
+
+        boolean hasItems = submission.getItems() != null && !submission.getItems().isEmpty();
+        boolean hasFile = submission.getInput_file() != null && !submission.getInput_file().trim().isEmpty();
+        if (hasItems == hasFile) {
+            throw new IllegalArgumentException("Exactly one of items or input_file is required");
+        }
+
+        Path inputFile = hasFile ? resolveInputFile(submission.getInput_file()) : null;
+
+        String jobId = UUID.randomUUID().toString();
+        Path jobDirectory = directory.resolve(jobId);
+        Files.createDirectories(jobDirectory);
+
+        JobStatus status = new JobStatus();
+        status.setJob_id(jobId);
+        status.setStatus(JobStatus.State.QUEUED);
+        status.setSubmitted_at(System.currentTimeMillis());
+
+        if (hasFile) {
+            status.setInput_file(inputFile.toString());
+        } else {
+            try (BufferedWriter writer = Files.newBufferedWriter(jobDirectory.resolve(INPUT_FILE), StandardCharsets.UTF_8)) {
+                for (MaskingRequest item : submission.getItems()) {
+                    writer.write(objectMapper.writeValueAsString(item));
+                    writer.newLine();
+                }
+            }
+            status.setTotal_records(submission.getItems().size());
+        }
+
+        persist(status);
+        jobs.put(jobId, status);
+        enqueue(jobId);
+
+        log.info("Submitted job {} ({})", jobId, hasFile ? status.getInput_file() : status.getTotal_records() + " inline records");
+        return snapshot(status);
+    }
+
+    /**
+     * Returns a snapshot of the job's state, or null if the job is unknown.
+     */
+    public JobStatus getStatus(String jobId) {
+        JobStatus status = jobs.get(jobId);
+        return status != null ? snapshot(status) : null;
+    }
+
+    /**
+     * Results of a job as JSON Lines, in input order: a MaskingResponse per masked record,
+     * or {transaction_id, error} for a record that could not be masked.
+     */
+    public Path getResultFile(String jobId) {
+        return directory.resolve(jobId).resolve(OUTPUT_FILE);
+    }
+
+    /**
+     * Deletes a finished job and its files. Returns false if the job is unknown or still queued/running.
+     */
+    public boolean delete(String jobId) throws IOException {
+        JobStatus status = jobs.get(jobId);
+        if (status == null) {
+            return false;
+        }
+        synchronized (status) {
+            if (status.getStatus() != JobStatus.State.COMPLETED && status.getStatus() != JobStatus.State.FAILED) {
+                return false;
+            }
+            jobs.remove(jobId);
+        }
+
+        Path jobDirectory = directory.resolve(jobId);
+        for (String file : new String[]{OUTPUT_FILE, INPUT_FILE, STATE_FILE}) {
+            Files.deleteIfExists(jobDirectory.resolve(file));
+        }
+        Files.deleteIfExists(jobDirectory);
+        return true;
+    }
+
+    private void enqueue(String jobId) {
+        workers.execute(() -> runJob(jobId));
+    }
+
+    private void runJob(String jobId) {
+        JobStatus status = jobs.get(jobId);
+        if (status == null) {
+            return;
+        }
+
+        activeJobs.incrementAndGet();
+        try {
+            execute(status);
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                log.info("Job {} interrupted by shutdown; it will resume on restart", jobId);
+                return;
+            }
+            log.error("Job {} failed: {}", jobId, e.getMessage(), e);
+            synchronized (status) {
+                status.setStatus(JobStatus.State.FAILED);
+                status.setError(e.getMessage());
+                status.setCompleted_at(System.currentTimeMillis());
+            }
+            persistQuietly(status);
+        } finally {
+            activeJobs.decrementAndGet();
+        }
+    }
+
+    private void execute(JobStatus status) throws IOException {
+        Path jobDirectory = directory.resolve(status.getJob_id());
+        Path input = status.getInput_file() != null ? Paths.get(status.getInput_file()) : jobDirectory.resolve(INPUT_FILE);
+        Path output = jobDirectory.resolve(OUTPUT_FILE);
+
+        // Output records already on disk are done; anything after the last newline is a torn write
+        long done = truncateToCompleteLines(output);
+        long failedBefore = done > 0 ? countFailures(output) : 0;
+        long total = status.getInput_file() != null ? countRecords(input) : status.getTotal_records();
+
+        synchronized (status) {
+            status.setStatus(JobStatus.State.RUNNING);
+            status.setTotal_records(total);
+            status.setProcessed_records(done);
+            status.setFailed_records(failedBefore);
+            if (status.getStarted_at() == null) {
+                status.setStarted_at(System.currentTimeMillis());
+            }
+        }
+        persist(status);
+
+        int checkpointInterval = Math.max(1, properties.getCheckpointInterval());
+        long index = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || index++ < done) {
+                    continue;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    writer.flush();
+                    persist(status);
+                    log.info("Job {} stopped at record {}; it will resume on restart", status.getJob_id(), index - 1);
+                    return;
+                }
+
+                Object result = maskRecord(line);
+                writer.write(objectMapper.writeValueAsString(result));
+                writer.newLine();
+
+                boolean failed = !(result instanceof MaskingResponse);
+                (failed ? failedRecords : maskedRecords).increment();
+                synchronized (status) {
+                    status.setProcessed_records(status.getProcessed_records() + 1);
+                    if (failed) {
+                        status.setFailed_records(status.getFailed_records() + 1);
+                    }
+                }
+                if ((index - done) % checkpointInterval == 0) {
+                    writer.flush();
+                    persist(status);
+                }
+            }
+        }
+
+        JobStatus finished;
+        synchronized (status) {
+            status.setStatus(JobStatus.State.COMPLETED);
+            status.setCompleted_at(System.currentTimeMillis());
+            finished = snapshot(status);
+        }
+        persist(status);
+        jobThroughput.record(finished.getRecords_per_second());
+
+        log.info("Job {} completed: {} records ({} failed) at {} records/s", finished.getJob_id(),
+                finished.getProcessed_records(), finished.getFailed_records(),
+                String.format("%.1f", finished.getRecords_per_second()));
+    }
+
+    private Object maskRecord(String line) {
+        MaskingRequest request;
+        try {
+            request = objectMapper.readValue(line, MaskingRequest.class);
+        } catch (JsonProcessingException e) {
+            return failure(null, "Invalid record: " + e.getOriginalMessage());
+        }
+        if (request.getTransaction_id() == null || request.getTransaction_id().trim().isEmpty()) {
+            return failure(null, "transaction_id is required");
+        }
+        if (request.getPayload_txt() == null || request.getPayload_txt().trim().isEmpty()) {
+            return failure(request.getTransaction_id(), "payload_txt is required");
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            // Each record names its own tenant; jobs already run on a bounded worker pool, so records
+            // take no tenant quota
+            RuleSet ruleSet = tenantRuleSets.get(TenantRuleSets.resolve(null, request.getTenant_id()));
+            PayloadType detectedType = dataMaskingService.detectPayloadType(request.getPayload_txt());
+            String maskedPayload = dataMaskingService.maskPayload(request.getPayload_txt(), detectedType, ruleSet);
+
+            MaskingResponse response = new MaskingResponse(
+                    request.getTransaction_id(),
+                    maskedPayload,
+                    detectedType.name(),
+                    System.currentTimeMillis() - startTime
+            );
+            response.setDetected_subtype(dataMaskingService.getLastDetectedSubtype());
+            return response;
+        } catch (RuntimeException e) {
+            log.debug("Job record {} failed: {}", request.getTransaction_id(), e.getMessage());
+            return failure(request.getTransaction_id(), e.getMessage());
+        } finally {
+            dataMaskingService.clearThreadLocalState();
+        }
+    }
+
+    private static Map<String, String> failure(String transactionId, String message) {
+        Map<String, String> failure = new LinkedHashMap<>();
+        failure.put("transaction_id", transactionId);
+        failure.put("error", message);
+        return failure;
+    }
+
+    /**
+     * Input files must live under masking.jobs.input-directory, so clients cannot read arbitrary files.
+     */
+    private Path resolveInputFile(String inputFile) throws IOException {
+        if (properties.getInputDirectory() == null || properties.getInputDirectory().trim().isEmpty()) {
+            throw new IllegalArgumentException("input_file submissions are disabled (masking.jobs.input-directory is not set)");
+        }
+
+        Path base = Paths.get(properties.getInputDirectory()).toRealPath();
+        Path file = base.resolve(inputFile).normalize();
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("input_file not found: " + inputFile);
+        }
+        file = file.toRealPath();
+        if (!file.startsWith(base)) {
+            throw new IllegalArgumentException("input_file must be inside the configured input directory");
+        }
+        return file;
+    }
+
+    private void loadJobs() throws IOException {
+        try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path jobDirectory : jobDirectories) {
+                Path state = jobDirectory.resolve(STATE_FILE);
+                if (!Files.isRegularFile(state)) {
+                    continue;
+                }
+                try {
+                    JobStatus status = objectMapper.readValue(state.toFile(), JobStatus.class);
+                    jobs.put(status.getJob_id(), status);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable job state {}: {}", state, e.getMessage());
+                }
+            }
+        }
+        log.info("Job queue at {}: {} jobs, {} queued", directory, jobs.size(), (long) countQueued(jobs));
+    }
+
+    private void persist(JobStatus status) throws IOException {
+        Path jobDirectory = directory.resolve(status.getJob_id());
+        Path temp = jobDirectory.resolve(STATE_FILE + ".tmp");
+        objectMapper.writeValue(temp.toFile(), snapshot(status));
+        Files.move(temp, jobDirectory.resolve(STATE_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void persistQuietly(JobStatus status) {
+        try {
+            persist(status);
+        } catch (IOException e) {
+            log.warn("Could not persist state of job {}: {}", status.getJob_id(), e.getMessage());
+        }
+    }
+
+    private static JobStatus snapshot(JobStatus status) {
+        synchronized (status) {
+            return new JobStatus(status);
+        }
+    }
+
+    private static double countQueued(Map<String, JobStatus> jobs) {
+        long queued = 0;
+        for (JobStatus status : jobs.values()) {
+            if (status.getStatus() == JobStatus.State.QUEUED) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    private static long countRecords(Path input) throws IOException {
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Failure records are the only output lines with an "error" key; quotes inside values are escaped.
+     */
+    private static long countFailures(Path output) throws IOException {
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("\"error\":")) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drops a trailing partial line and returns the number of complete lines in the file.
+     */
+    private static long truncateToCompleteLines(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        long lines = 0;
+        long completeBytes = 0;
+        long position = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    lines++;
+                    completeBytes = position;
+                }
+            }
+        }
+
+        if (completeBytes < position) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(completeBytes);
+            }
+        }
+        return lines;
+    }
+}
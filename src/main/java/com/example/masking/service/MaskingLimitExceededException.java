@@ -0,0 +1,43 @@
+package com.example.masking.service;
+
+/**
+ * Thrown when a payload exceeds a structural limit or masking runs past the request's time budget.
+ */
+public class MaskingLimitExceededException extends RuntimeException {
+
+    public enum Limit {
+        MAX_DEPTH,
+        MAX_NODES,
+        MAX_STRING_LENGTH,
+        MAX_NESTED_DEPTH,
+        DOCTYPE,            // A DOCTYPE declaration, which the XML engines never read
+        PARSER_LIMIT,       // One of the XML parser's own limits, e.g. attributes per element
+        TIME_BUDGET;
+
+        /**
+         * Name used in error bodies and metric tags, e.g. {@code max_depth}.
+         */
+        public String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Limit limit;
+
+    public MaskingLimitExceededException(Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * True if the payload itself is at fault (depth, node count, string length, nested payloads, DOCTYPE, parser
+     * limits) rather than the time budget.
+     */
+    public boolean isStructural() {
+        return limit != Limit.TIME_BUDGET;
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.masking.service;
+
+import com.example.masking.config.MaskingLimitsProperties;
+import com.example.masking.service.MaskingLimitExceededException.Limit;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Per-request time budget and structural limits (depth, node count, string length, nested payloads).
+ * The engines check these cooperatively: the deadline is bound to the masking thread by
+ * {@link #start()} and polled between rules, every few thousand nodes and on every streamed read,
+ * so an oversized or adversarial payload fails fast instead of holding a worker thread. Work that
+ * cannot poll it (an XPath evaluation) is waited for with {@link #await(Future)}.
+ */
+@Component
+public class MaskingLimits {
+
+    private static final Logger log = LoggerFactory.getLogger(MaskingLimits.class);
+
+    private static final int DEADLINE_CHECK_CHARS = 64 * 1024;
+
+    private final MaskingLimitsProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final long budgetNanos;
+
+    // Deadline (System.nanoTime) of the request being masked on this thread
+    private final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+    // Nested payloads (values of nested rules) being masked on this thread, outermost first; unset outside them
+    private final ThreadLocal<Integer> nestedDepth = new ThreadLocal<>();
+
+    public MaskingLimits(MaskingLimitsProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.budgetNanos = properties.getTimeBudget().toNanos();
+        log.info("Masking limits: time budget {} ms, max depth {}, max nodes {}, max string length {}, "
+                        + "max nested depth {}", properties.getTimeBudget().toMillis(), properties.getMaxDepth(),
+                properties.getMaxNodes(), properties.getMaxStringLength(), properties.getMaxNestedDepth());
+    }
+
+    public MaskingLimitsProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Starts the time budget for the request masked on the current thread.
+     */
+    public void start() {
+        if (budgetNanos > 0) {
+            deadline.set(System.nanoTime() + budgetNanos);
+        }
+    }
+
+    /**
+     * Wraps part of the current request's work so it runs under the request's deadline and nested
+     * depth on another thread (e.g. a pool masking records in parallel).
+     */
+    public Runnable withRequestLimits(Runnable task) {
+        Long end = deadline.get();
+        Integer nested = nestedDepth.get();
+        if (end == null && nested == null) {
+            return task;
+        }
+        return () -> {
+            set(deadline, end);
+            set(nestedDepth, nested);
+            try {
+                task.run();
+            } finally {
+                deadline.remove();
+                nestedDepth.remove();
+            }
+        };
+    }
+
+    private static <T> void set(ThreadLocal<T> local, T value) {
+        if (value != null) {
+            local.set(value);
+        } else {
+            local.remove();
+        }
+    }
+
+    /**
+     * Removes the current thread's deadline and nested depth. Called with the rest of the per-request
+     * ThreadLocal state.
+     */
+    public void clear() {
+        deadline.remove();
+        nestedDepth.remove();
+    }
+
+    /**
+     * Enters a payload embedded in a value of the payload being masked, or aborts the request if that
+     * nests deeper than allowed. Each call is paired with {@link #exitNested()}.
+     */
+    public void enterNested() {
+        Integer depth = nestedDepth.get();
+        int entered = depth != null ? depth + 1 : 1;
+        if (entered > properties.getMaxNestedDepth()) {
+            throw exceeded(Limit.MAX_NESTED_DEPTH,
+                    "Nested payloads exceed the maximum depth of " + properties.getMaxNestedDepth());
+        }
+        nestedDepth.set(entered);
+    }
+
+    public void exitNested() {
+        Integer depth = nestedDepth.get();
+        set(nestedDepth, depth != null && depth > 1 ? depth - 1 : null);
+    }
+
+    /**
+     * Aborts the current request if its time budget has run out.
+     */
+    public void checkDeadline() {
+        Long end = deadline.get();
+        if (end != null && System.nanoTime() - end > 0) {
+            throw timeBudgetExceeded();
+        }
+    }
+
+    /**
+     * True if a time budget runs for the request masked on the current thread.
+     */
+    public boolean isBudgeted() {
+        return deadline.get() != null;
+    }
+
+    /**
+     * Waits for work that cannot poll the deadline itself (an XPath evaluation, run on another thread)
+     * for at most the rest of the current request's budget. If the budget runs out first, the work is
+     * cancelled and left to stop at its own next deadline check, and the request is aborted.
+     */
+    public <T> T await(Future<T> work) throws ExecutionException, InterruptedException {
+        Long end = deadline.get();
+        if (end == null) {
+            return work.get();
+        }
+        try {
+            return work.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            work.cancel(true);
+            throw timeBudgetExceeded();
+        } catch (InterruptedException e) {
+            work.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Scans JSON text once, before it is parsed, checking nesting depth, value count and string
+     * lengths. Values are counted as opened objects/arrays plus separators, which is exact for arrays
+     * and counts members for objects. Malformed input is left for the parser to report.
+     */
+    public void checkJson(String json) {
+        int depth = 0;
+        long nodes = 1;
+        int nextDeadlineCheck = DEADLINE_CHECK_CHARS;
+        int length = json.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                int start = i + 1;
+                for (i = start; i < length; i++) {
+                    char s = json.charAt(i);
+                    if (s == '\\') {
+                        i++;
+                    } else if (s == '"') {
+                        break;
+                    }
+                }
+                checkStringLength(i - start);
+            } else if (c == '{' || c == '[') {
+                checkDepth(++depth);
+                checkNodes(++nodes);
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == ',') {
+                checkNodes(++nodes);
+            }
+
+            if (i >= nextDeadlineCheck) {
+                checkDeadline();
+                nextDeadlineCheck = i + DEADLINE_CHECK_CHARS;
+            }
+        }
+    }
+
+    /**
+     * Wraps a streamed payload so that every read polls the deadline. Parsers and streaming
+     * engines read in buffer-sized chunks, so this costs one clock read per chunk.
+     */
+    public Reader guard(Reader in) {
+        if (budgetNanos <= 0) {
+            return in;
+        }
+        return new FilterReader(in) {
+            @Override
+            public int read() throws IOException {
+                checkDeadline();
+                return super.read();
+            }
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                checkDeadline();
+                return super.read(buffer, offset, length);
+            }
+        };
+    }
+
+    /**
+     * Incremental checks for streaming engines, which see the structure one event at a time.
+     */
+    public void checkDepth(int depth) {
+        if (depth > properties.getMaxDepth()) {
+            throw exceeded(Limit.MAX_DEPTH, "Payload nesting exceeds the maximum depth of " + properties.getMaxDepth());
+        }
+    }
+
+    public void checkNodes(long nodes) {
+        if (nodes > properties.getMaxNodes()) {
+            throw exceeded(Limit.MAX_NODES, "Payload exceeds the maximum of " + properties.getMaxNodes() + " nodes");
+        }
+    }
+
+    public void checkStringLength(int length) {
+        if (length > properties.getMaxStringLength()) {
+            throw exceeded(Limit.MAX_STRING_LENGTH,
+                    "Payload contains a value longer than " + properties.getMaxStringLength() + " characters");
+        }
+    }
+
+    /**
+     * Rejects a DOCTYPE declaration. The XML engines read no DTDs, so no entity can expand or reach
+     * outside the payload.
+     */
+    public MaskingLimitExceededException doctypeNotAllowed() {
+        return exceeded(Limit.DOCTYPE, "DOCTYPE declarations are not allowed");
+    }
+
+    /**
+     * The masking limit behind a parse error raised by one of the XML parser's own limits, so it is
+     * reported like the engines' checks; null for any other error. The factories enforce max-depth as
+     * jdk.xml.maxElementDepth and max-string-length as the StAX attribute size limit; the parsers' other
+     * limits (JDK jdk.xml.* limits, attributes per element) are reported as {@code parser_limit}.
+     */
+    public MaskingLimitExceededException fromParserLimit(Exception e) {
+        String message = e.getMessage();
+        if (message == null) {
+            return null;
+        }
+        if (message.contains("exceeds the limit") && message.contains("maxElementDepth")) {
+            return exceeded(Limit.MAX_DEPTH, "Payload nesting exceeds the maximum depth of " + properties.getMaxDepth());
+        }
+        if (message.contains("DOCTYPE is disallowed")) {
+            return doctypeNotAllowed();
+        }
+        if (message.contains("attribute size limit")) {
+            return exceeded(Limit.MAX_STRING_LENGTH,
+                    "Payload contains a value longer than " + properties.getMaxStringLength() + " characters");
+        }
+        if (message.contains("JAXP0001") || message.toLowerCase().matches("(?s).*limit \\(\\d+\\) exceeded.*")) {
+            return exceeded(Limit.PARSER_LIMIT, "Payload exceeds an XML parser limit: " + message);
+        }
+        return null;
+    }
+
+    private MaskingLimitExceededException timeBudgetExceeded() {
+        return exceeded(Limit.TIME_BUDGET,
+                "Masking exceeded the time budget of " + properties.getTimeBudget().toMillis() + " ms");
+    }
+
+    private MaskingLimitExceededException exceeded(Limit limit, String message) {
+        meterRegistry.counter("masking.requests.aborted", "limit", limit.tag()).increment();
+        return new MaskingLimitExceededException(limit, message);
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.masking.service;
+
+import com.example.masking.model.SpilledPayload;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Minimal streaming reader for the MaskingRequest JSON envelope.
+ * Decodes payload_txt straight into a Writer so an oversized payload is never
+ * materialized as a String; all other fields are small and read into memory.
+ */
+class MaskingRequestStreamReader {
+
+    static final int HEAD_CHARS = 8192;            // Enough to cover an XML prolog and root element
+    private static final int MAX_FIELD_CHARS = 64 * 1024;
+
+    private final Reader in;
+    private final boolean digestPayload;
+    private int peeked = -2;  // -2 means nothing peeked
+
+    /**
+     * @param digestPayload Whether to digest payload_txt while it is decoded, for the response cache
+     */
+    MaskingRequestStreamReader(Reader in, boolean digestPayload) {
+        this.in = in;
+        this.digestPayload = digestPayload;
+    }
+
+    /**
+     * Reads the envelope, writing the decoded payload_txt to {@code payloadOut} and
+     * recording transaction_id, tenant_id, head, length and digest on {@code target}.
+     */
+    void read(SpilledPayload target, Writer payloadOut) throws IOException {
+        expect('{');
+        boolean payloadSeen = false;
+
+        while (true) {
+            int c = nextNonWhitespace();
+            if (c == '}') {
+                break;
+            }
+            if (c == ',') {
+                continue;
+            }
+            if (c != '"') {
+                throw error("Expected field name");
+            }
+
+            String field = readSmallString();
+            expect(':');
+            int valueStart = nextNonWhitespace();
+
+            if ("payload_txt".equals(field) && valueStart == '"') {
+                PayloadSink sink = new PayloadSink(payloadOut, digestPayload ? new PayloadDigest() : null);
+                readString(sink);
+                sink.applyTo(target);
+                payloadSeen = true;
+            } else if ("transaction_id".equals(field) && valueStart == '"') {
+                target.setTransaction_id(readSmallString());
+            } else if ("tenant_id".equals(field) && valueStart == '"') {
+                target.setTenant_id(readSmallString());
+            } else {
+                skipValue(valueStart);
+            }
+        }
+
+        if (!payloadSeen) {
+            target.setHead("");
+        }
+    }
+
+    private String readSmallString() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        readString(new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) {
+                return append(csq, 0, csq.length());
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) {
+                for (int i = start; i < end; i++) {
+                    append(csq.charAt(i));
+                }
+                return this;
+            }
+
+            @Override
+            public Appendable append(char c) {
+                if (sb.length() >= MAX_FIELD_CHARS) {
+                    throw new IllegalArgumentException("Request field exceeds " + MAX_FIELD_CHARS + " characters");
+                }
+                sb.append(c);
+                return this;
+            }
+        });
+        return sb.toString();
+    }
+
+    /**
+     * Reads a JSON string body (opening quote already consumed), decoding escapes.
+     */
+    private void readString(Appendable out) throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw error("Unterminated string");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c != '\\') {
+                out.append((char) c);
+                continue;
+            }
+
+            int e = read();
+            switch (e) {
+                case '"': out.append('"'); break;
+                case '\\': out.append('\\'); break;
+                case '/': out.append('/'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw error("Invalid unicode escape");
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    out.append((char) code);
+                    break;
+                default:
+                    throw error("Invalid escape sequence");
+            }
+        }
+    }
+
+    private void skipValue(int first) throws IOException {
+        if (first == '"') {
+            readString(new NullAppendable());
+            return;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                int c = read();
+                if (c == -1) {
+                    throw error("Unterminated value");
+                } else if (c == '"') {
+                    readString(new NullAppendable());
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+            return;
+        }
+        // Literal or number: consume up to the next delimiter
+        int c = first;
+        while (c != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)) {
+            c = read();
+        }
+        peeked = c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (nextNonWhitespace() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Malformed request body: " + message);
+    }
+
+    private static class NullAppendable implements Appendable {
+        @Override
+        public Appendable append(CharSequence csq) {
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            return this;
+        }
+    }
+
+    /**
+     * Forwards payload characters to the spill file while tracking head, length, last non-whitespace char
+     * and, if requested, the digest.
+     */
+    private static class PayloadSink implements Appendable {
+        private final Writer out;
+        private final PayloadDigest digest;
+        private final StringBuilder head = new StringBuilder();
+        private long count;
+        private char trailing;
+        private long contentEnd;
+
+        PayloadSink(Writer out, PayloadDigest digest) {
+            this.out = out;
+            this.digest = digest;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            for (int i = start; i < end; i++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            out.write(c);
+            if (digest != null) {
+                digest.update(c);
+            }
+            if (head.length() < HEAD_CHARS) {
+                head.append(c);
+            }
+            if (!Character.isWhitespace(c)) {
+                trailing = c;
+                contentEnd = count + 1;
+            }
+            count++;
+            return this;
+        }
+
+        void applyTo(SpilledPayload target) {
+            target.setHead(head.toString());
+            target.setTrailingChar(trailing);
+            target.setPayloadChars(count);
+            target.setContentEnd(contentEnd);
+            if (digest != null) {
+                target.setPayloadDigest(digest.digest());
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.example.masking.service;
+
+import com.example.masking.config.ResponseCacheProperties;
+import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.SpilledPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Idempotent-retry cache: returns the stored MaskingResponse when a request is retried with the
+ * same transaction_id and payload under the same tenant and rule set version. Bounded by estimated memory
+ * and TTL; entries evicted for size can optionally be kept in a local disk store. Responses of spilled
+ * requests are kept as files, matched by the payload digest computed while the request was spilled.
+ */
+@Service
+public class MaskingResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(MaskingResponseCache.class);
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final Cache<String, CachedResponse> memory;
+    private final DiskStore disk;
+    private final Cache<String, SpilledResponse> spilled;
+    private final Path spilledDirectory;
+    private final MeterRegistry meterRegistry;
+    private final Counter hits;
+    private final Counter misses;
+
+    public MaskingResponseCache(ResponseCacheProperties properties,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry) throws IOException {
+        this.enabled = properties.isEnabled();
+        this.ttlMillis = properties.getTtl().toMillis();
+        this.meterRegistry = meterRegistry;
+        this.hits = Counter.builder("masking.cache.requests").tag("result", "hit")
+                .description("Response cache lookups").register(meterRegistry);
+        this.misses = Counter.builder("masking.cache.requests").tag("result", "miss")
+                .description("Response cache lookups").register(meterRegistry);
+
+        if (!enabled) {
+            this.memory = null;
+            this.disk = null;
+            this.spilled = null;
+            this.spilledDirectory = null;
+            return;
+        }
+
+        this.disk = properties.getDisk().isEnabled()
+                ? new DiskStore(Paths.get(properties.getDisk().getDirectory()), properties.getDisk().getMaxEntries(), objectMapper)
+                : null;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxMemory().toBytes())
+                .weigher((String key, CachedResponse value) -> value.estimatedBytes())
+                .expireAfterWrite(properties.getTtl())
+                .removalListener(this::onRemoval)
+                .build();
+
+        Gauge.builder("masking.cache.memory.bytes", memory,
+                        cache -> cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("Estimated heap used by cached responses")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        if (disk != null) {
+            Gauge.builder("masking.cache.disk.entries", disk, DiskStore::size)
+                    .description("Responses held in the disk store")
+                    .register(meterRegistry);
+        }
+
+        // Files of spilled responses are scoped to the process lifetime, like the disk store
+        this.spilledDirectory = Paths.get(properties.getSpilled().getDirectory());
+        deleteStaleFiles(spilledDirectory);
+        this.spilled = Caffeine.newBuilder()
+                .maximumWeight(properties.getSpilled().getMaxSize().toBytes())
+                .weigher((String key, SpilledResponse value) -> (int) Math.min(Integer.MAX_VALUE, value.fileBytes))
+                .expireAfterWrite(properties.getTtl())
+                .removalListener(this::onSpilledRemoval)
+                .build();
+        Gauge.builder("masking.cache.spilled.bytes", spilled,
+                        cache -> cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("Disk used by cached responses of spilled requests")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        log.info("Response cache enabled: max memory {}, ttl {}, disk store {}",
+                properties.getMaxMemory(), properties.getTtl(), disk != null ? "on" : "off");
+    }
+
+    /**
+     * Returns the cached response for a retried request, or null on a miss.
+     */
+    public MaskingResponse get(RuleSet ruleSet, String transactionId, String payload) {
+        if (!enabled) {
+            return null;
+        }
+
+        String key = key(ruleSet, transactionId);
+        CachedResponse entry = memory.getIfPresent(key);
+        if (entry == null && disk != null) {
+            entry = disk.read(key);
+            if (entry != null && System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+                entry = null;
+            }
+            if (entry != null) {
+                memory.put(key, entry);  // Promote back into memory
+            }
+        }
+
+        // Same transaction_id with a different payload is not a retry
+        if (entry != null && entry.payloadLength == payload.length()
+                && Arrays.equals(entry.payloadDigest, PayloadDigest.of(payload))) {
+            hits.increment();
+            return entry.response;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    public void put(RuleSet ruleSet, String transactionId, String payload, MaskingResponse response) {
+        if (!enabled) {
+            return;
+        }
+        memory.put(key(ruleSet, transactionId),
+                new CachedResponse(PayloadDigest.of(payload), payload.length(), response, System.currentTimeMillis()));
+    }
+
+    /**
+     * Restores the cached response of a retried spilled request into the request's response file, to be
+     * streamed back like a freshly masked one. Returns that file, or null on a miss.
+     */
+    public Path getSpilled(RuleSet ruleSet, String transactionId, SpilledPayload payload) {
+        if (!enabled) {
+            return null;
+        }
+
+        SpilledResponse entry = spilled.getIfPresent(key(ruleSet, transactionId));
+        if (entry != null && entry.payloadChars == payload.getPayloadChars()
+                && Arrays.equals(entry.payloadDigest, payload.getPayloadDigest())) {
+            try {
+                linkOrCopy(entry.file, payload.getResponseFile());
+                hits.increment();
+                return payload.getResponseFile();
+            } catch (IOException e) {
+                // Evicted (and its file deleted) since the lookup
+                log.debug("Cached response file {} is gone: {}", entry.file, e.getMessage());
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the response file of a masked spilled request. The cache keeps its own link to (or copy of)
+     * the file, so the request's temp files are deleted as usual.
+     */
+    public void putSpilled(RuleSet ruleSet, String transactionId, SpilledPayload payload, Path responseFile) {
+        if (!enabled || payload.getPayloadDigest() == null) {
+            return;
+        }
+        try {
+            Path file = Files.createTempFile(spilledDirectory, "masking-cached-", ".json");
+            linkOrCopy(responseFile, file);
+            spilled.put(key(ruleSet, transactionId),
+                    new SpilledResponse(payload.getPayloadDigest(), payload.getPayloadChars(), file, Files.size(file)));
+        } catch (IOException e) {
+            log.warn("Could not cache the spilled response of transaction_id {}: {}", transactionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Hard-links {@code target} to {@code source}, which costs nothing however large the response is;
+     * copies where the file system cannot link.
+     */
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String key(RuleSet ruleSet, String transactionId) {
+        // Tenant and rule set version are part of the key, so a reload never serves stale masking
+        // and tenants never see each other's responses
+        return ruleSet.getTenant() + '\u0000' + ruleSet.getVersion() + '\u0000' + transactionId;
+    }
+
+    private void onRemoval(String key, CachedResponse value, RemovalCause cause) {
+        if (!cause.wasEvicted()) {
+            return;
+        }
+        meterRegistry.counter("masking.cache.evictions", "cause", cause.name().toLowerCase()).increment();
+
+        if (cause == RemovalCause.SIZE && disk != null && key != null && value != null) {
+            disk.write(key, value);
+        }
+    }
+
+    private void onSpilledRemoval(String key, SpilledResponse value, RemovalCause cause) {
+        if (cause.wasEvicted()) {
+            meterRegistry.counter("masking.cache.evictions", "cause", cause.name().toLowerCase()).increment();
+        }
+        if (value != null) {
+            DiskStore.deleteQuietly(value.file);
+        }
+    }
+
+    private static void deleteStaleFiles(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Cache entry; also the JSON layout of disk store files.
+     */
+    static class CachedResponse {
+        public byte[] payloadDigest;
+        public int payloadLength;
+        public MaskingResponse response;
+        public long createdAt;
+
+        public CachedResponse() {
+        }
+
+        CachedResponse(byte[] payloadDigest, int payloadLength, MaskingResponse response, long createdAt) {
+            this.payloadDigest = payloadDigest;
+            this.payloadLength = payloadLength;
+            this.response = response;
+            this.createdAt = createdAt;
+        }
+
+        int estimatedBytes() {
+            long chars = length(response.getMasked_payload()) + length(response.getTransaction_id())
+                    + length(response.getPayload_type()) + length(response.getDetected_subtype());
+            return (int) Math.min(Integer.MAX_VALUE, 2 * chars + 256);
+        }
+
+        private static long length(String value) {
+            return value != null ? value.length() : 0;
+        }
+    }
+
+    /**
+     * Cached response of a spilled request, held as a file.
+     */
+    private static final class SpilledResponse {
+        private final byte[] payloadDigest;
+        private final long payloadChars;
+        private final Path file;
+        private final long fileBytes;
+
+        SpilledResponse(byte[] payloadDigest, long payloadChars, Path file, long fileBytes) {
+            this.payloadDigest = payloadDigest;
+            this.payloadChars = payloadChars;
+            this.file = file;
+            this.fileBytes = fileBytes;
+        }
+    }
+
+    /**
+     * Bounded local store of evicted entries, one JSON file per key, oldest removed first.
+     * Scoped to the process lifetime: the directory is cleared at startup.
+     */
+    private static class DiskStore {
+        private final Path directory;
+        private final int maxEntries;
+        private final ObjectMapper objectMapper;
+        private final Map<String, Path> index = new LinkedHashMap<>();
+
+        DiskStore(Path directory, int maxEntries, ObjectMapper objectMapper) throws IOException {
+            this.directory = directory;
+            this.maxEntries = maxEntries;
+            this.objectMapper = objectMapper;
+
+            deleteStaleFiles(directory);
+        }
+
+        synchronized CachedResponse read(String key) {
+            Path file = index.get(key);
+            if (file == null) {
+                return null;
+            }
+            try {
+                return objectMapper.readValue(file.toFile(), CachedResponse.class);
+            } catch (IOException e) {
+                log.warn("Dropping unreadable disk cache entry {}: {}", file, e.getMessage());
+                remove(key);
+                return null;
+            }
+        }
+
+        synchronized void write(String key, CachedResponse value) {
+            Path file = directory.resolve(toHex(PayloadDigest.of(key)) + ".json");
+            try {
+                objectMapper.writeValue(file.toFile(), value);
+            } catch (IOException e) {
+                log.warn("Could not write disk cache entry {}: {}", file, e.getMessage());
+                return;
+            }
+            index.remove(key);
+            index.put(key, file);
+
+            Iterator<Map.Entry<String, Path>> oldest = index.entrySet().iterator();
+            while (index.size() > maxEntries && oldest.hasNext()) {
+                deleteQuietly(oldest.next().getValue());
+                oldest.remove();
+            }
+        }
+
+        synchronized int size() {
+            return index.size();
+        }
+
+        private void remove(String key) {
+            Path file = index.remove(key);
+            if (file != null) {
+                deleteQuietly(file);
+            }
+        }
+
+        private static void deleteQuietly(Path file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete disk cache entry {}: {}", file, e.getMessage());
+            }
+        }
+
+        private static String toHex(byte[] bytes) {
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+    }
+}
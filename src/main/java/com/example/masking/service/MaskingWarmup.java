@@ -0,0 +1,391 @@
+package com.example.masking.service;
+
+import com.example.masking.config.WarmupProperties;
+import com.example.masking.model.FixedLengthFormat;
+import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.NamespaceMapping;
+import com.example.masking.model.PayloadType;
+import com.example.masking.model.SpilledPayload;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Runs representative payloads through DataMaskingService, with every tenant's rule set, before the
+ * application reports ready. Spring Boot only publishes ReadinessState.ACCEPTING_TRAFFIC after all ApplicationRunners
+ * have completed, so the readiness probe stays down until the XPath, JsonPath and regex
+ * paths have been JIT-compiled. Each sample is also masked once more at streaming size, in memory and
+ * spilled to disk, so the streaming engines, spill readers and PII scanner are compiled too.
+ */
+@Component
+public class MaskingWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(MaskingWarmup.class);
+
+    private static final String SAMPLE_VALUE = "1234567890123456";
+    private static final int LATENCY_WINDOW = 20;  // Final iterations averaged for the reported latency
+    private static final int STREAMING_ITERATION_DIVISOR = 100;  // Streaming-sized samples run iterations / 100 times
+    private static final long MAX_STREAMING_SAMPLE_CHARS = 1024 * 1024;
+    private static final long DEFAULT_STREAMING_SAMPLE_CHARS = 256 * 1024;
+
+    private final DataMaskingService dataMaskingService;
+    private final PayloadTypeDetector payloadTypeDetector;
+    private final RuleStatistics ruleStatistics;
+    private final TenantRuleSets tenantRuleSets;
+    private final MaskingEngineSelector engineSelector;
+    private final PayloadSpillService payloadSpillService;
+    private final WarmupProperties properties;
+    private final ObjectMapper objectMapper;
+
+    public MaskingWarmup(DataMaskingService dataMaskingService,
+                         PayloadTypeDetector payloadTypeDetector,
+                         RuleStatistics ruleStatistics,
+                         TenantRuleSets tenantRuleSets,
+                         MaskingEngineSelector engineSelector,
+                         PayloadSpillService payloadSpillService,
+                         WarmupProperties properties,
+                         ObjectMapper objectMapper) {
+        this.dataMaskingService = dataMaskingService;
+        this.payloadTypeDetector = payloadTypeDetector;
+        this.ruleStatistics = ruleStatistics;
+        this.tenantRuleSets = tenantRuleSets;
+        this.engineSelector = engineSelector;
+        this.payloadSpillService = payloadSpillService;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (properties.isEnabled() && properties.getIterations() > 0) {
+            warmUpAll();
+        } else {
+            log.info("Masking warm-up disabled");
+        }
+
+        if (properties.isExitAfterWarmup()) {
+            // DataMaskingApplication closes the context once startup completes
+            log.info("Exiting after warm-up (masking.warmup.exit-after-warmup=true)");
+        }
+    }
+
+    private void warmUpAll() throws IOException {
+        Map<String, String> loaded = properties.getSampleDirectory() != null && !properties.getSampleDirectory().isEmpty()
+                ? loadSamples(Paths.get(properties.getSampleDirectory()))
+                : null;
+
+        long start = System.nanoTime();
+        long deadline = start + properties.getMaxDuration().toNanos();
+        Map<String, Double> finalLatencyMicros = new LinkedHashMap<>();
+
+        warmUp:
+        for (RuleSet ruleSet : tenantRuleSets.getAll()) {
+            Map<String, String> samples = loaded != null ? loaded : synthesizeSamples(ruleSet);
+            for (Map.Entry<String, String> sample : samples.entrySet()) {
+                if (System.nanoTime() > deadline) {
+                    log.warn("Warm-up exceeded {}; skipping remaining samples", properties.getMaxDuration());
+                    break warmUp;
+                }
+                String label = ruleSet.getTenant() + "/" + sample.getKey();
+                try {
+                    finalLatencyMicros.put(label, warmUp(sample.getValue(), ruleSet, deadline));
+                    String streamingSample = loaded != null ? null
+                            : streamingSample(sample.getKey(), sample.getValue(), ruleSet);
+                    warmUpStreaming(label, streamingSample, sample.getValue(), ruleSet, deadline);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Warm-up sample {} failed: {}", label, e.getMessage());
+                }
+            }
+        }
+
+        // Warm-up evaluations are not real traffic; start the rule counters and the engine thresholds
+        // (tuned from the warm-up latencies) from scratch
+        ruleStatistics.reset();
+        for (RuleSet ruleSet : tenantRuleSets.getAll()) {
+            engineSelector.reset(ruleSet.getTenant());
+        }
+
+        StringJoiner latencies = new StringJoiner(", ");
+        finalLatencyMicros.forEach((label, micros) -> latencies.add(String.format("%s=%.3f ms", label, micros / 1000.0)));
+        log.info("Masking warm-up completed in {} ms ({} samples x {} iterations); final latency per type: {}",
+                (System.nanoTime() - start) / 1_000_000, finalLatencyMicros.size(), properties.getIterations(),
+                latencies);
+    }
+
+    /**
+     * Masks one payload repeatedly and returns the mean latency of the final iterations in microseconds.
+     */
+    private double warmUp(String payload, RuleSet ruleSet, long deadline) {
+        int iterations = properties.getIterations();
+        long windowNanos = 0;
+        int windowCount = 0;
+
+        for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+            long start = System.nanoTime();
+            try {
+                PayloadType type = dataMaskingService.detectPayloadType(payload);
+                dataMaskingService.maskPayload(payload, type, ruleSet);
+            } finally {
+                dataMaskingService.clearThreadLocalState();
+            }
+            if (i >= iterations - LATENCY_WINDOW) {
+                windowNanos += System.nanoTime() - start;
+                windowCount++;
+            }
+        }
+
+        return windowCount == 0 ? 0.0 : windowNanos / 1000.0 / windowCount;
+    }
+
+    /**
+     * Masks the streaming-sized sample in memory, then spills it (or the regular sample when there is
+     * none) to disk and masks it from the file, as /api/mask does with large bodies.
+     */
+    private void warmUpStreaming(String label, String streamingSample, String sample, RuleSet ruleSet, long deadline)
+            throws IOException {
+        int iterations = Math.max(1, properties.getIterations() / STREAMING_ITERATION_DIVISOR);
+        byte[] envelope = objectMapper.writeValueAsBytes(Collections.singletonMap("payload_txt",
+                streamingSample != null ? streamingSample : sample));
+
+        for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+            try {
+                if (streamingSample != null) {
+                    dataMaskingService.maskPayload(streamingSample,
+                            dataMaskingService.detectPayloadType(streamingSample), ruleSet);
+                }
+                try (SpilledPayload spilled = payloadSpillService.spill(new ByteArrayInputStream(envelope))) {
+                    PayloadType type = dataMaskingService.detectPayloadType(spilled);
+                    dataMaskingService.maskPayload(spilled, type, ruleSet);
+                    payloadSpillService.writeResponse(spilled, new MaskingResponse("warmup", null, type.name(), 0L));
+                }
+            } catch (IllegalArgumentException e) {
+                // Rules the streaming engines cannot run reject spilled payloads
+                log.debug("Warm-up sample {} cannot be masked spilled: {}", label, e.getMessage());
+                return;
+            } finally {
+                dataMaskingService.clearThreadLocalState();
+            }
+        }
+    }
+
+    /**
+     * Repeats a synthesized sample up to the type's streaming threshold, so the in-memory request
+     * takes the streaming engine. Null for fixed-length types, which have no streaming engine choice.
+     */
+    private String streamingSample(String type, String sample, RuleSet ruleSet) {
+        if (type.equals("default")) {
+            return repeat(sample, "\n", DEFAULT_STREAMING_SAMPLE_CHARS);
+        }
+        if (type.equals("xml") || type.startsWith("xml_")) {
+            int start = sample.indexOf('>', sample.indexOf("<Document")) + 1;
+            int end = sample.lastIndexOf("</Document>");
+            long target = streamingSize(ruleSet, type, PayloadType.XML) - sample.length();
+            return sample.substring(0, start) + repeat(sample.substring(start, end), "", target)
+                    + sample.substring(end);
+        }
+        if (type.equals("json")) {
+            String fields = sample.substring(1, sample.length() - 1);
+            long target = streamingSize(ruleSet, type, PayloadType.JSON) - sample.length();
+            return "{" + (fields.isEmpty() ? "" : fields + ",") + "\"warmup\":[" + repeat(sample, ",", target) + "]}";
+        }
+        return null;
+    }
+
+    private long streamingSize(RuleSet ruleSet, String type, PayloadType payloadType) {
+        return Math.min(engineSelector.threshold(ruleSet.getTenant(), type, payloadType), MAX_STREAMING_SAMPLE_CHARS);
+    }
+
+    private static String repeat(String part, String separator, long chars) {
+        StringBuilder repeated = new StringBuilder(part);
+        while (!part.isEmpty() && repeated.length() < chars) {
+            repeated.append(separator).append(part);
+        }
+        return repeated.toString();
+    }
+
+    private Map<String, String> loadSamples(Path directory) throws IOException {
+        Map<String, String> samples = new LinkedHashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    samples.put(file.getFileName().toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        log.info("Loaded {} warm-up samples from {}", samples.size(), directory);
+        return samples;
+    }
+
+    /**
+     * Builds one payload per rule type of the rule set that exercises every attribute of that type.
+     */
+    private Map<String, String> synthesizeSamples(RuleSet ruleSet) throws JsonProcessingException {
+        Map<String, String> samples = new LinkedHashMap<>();
+
+        for (Map.Entry<String, List<MaskingAttribute>> rule : new TreeMap<>(ruleSet.getRuleIndex()).entrySet()) {
+            String type = rule.getKey();
+            String payload = synthesize(type, rule.getValue(), ruleSet);
+            if (payload != null) {
+                samples.put(type, payload);
+            } else {
+                log.debug("No warm-up payload can be synthesized for rule type {} of tenant {}", type,
+                        ruleSet.getTenant());
+            }
+        }
+
+        // Unconfigured payloads fall through to the default digit-masking path
+        samples.put("default", "WARMUP REF " + SAMPLE_VALUE + " AMOUNT 000123 DATE 20240101");
+        return samples;
+    }
+
+    private String synthesize(String type, List<MaskingAttribute> attributes, RuleSet ruleSet)
+            throws JsonProcessingException {
+        if (type.equals("xml")) {
+            return synthesizeXml(attributes, null);
+        }
+        if (type.startsWith("xml_")) {
+            String namespace = namespaceForType(type, ruleSet);
+            return namespace != null ? synthesizeXml(attributes, namespace) : null;
+        }
+        if (type.equals("json")) {
+            return synthesizeJson(attributes);
+        }
+        return synthesizeFixed(type, attributes, ruleSet);
+    }
+
+    private String namespaceForType(String type, RuleSet ruleSet) {
+        if (ruleSet.getNamespaceMappings() == null) {
+            return null;
+        }
+        for (NamespaceMapping mapping : ruleSet.getNamespaceMappings()) {
+            if (payloadTypeDetector.patternToTypeIdentifier(mapping.getPattern()).equals(type)) {
+                return "urn:warmup:" + mapping.getPattern();
+            }
+        }
+        return null;
+    }
+
+    private String synthesizeXml(List<MaskingAttribute> attributes, String namespace) {
+        Map<String, Object> tree = new LinkedHashMap<>();
+        for (MaskingAttribute attribute : attributes) {
+            if (attribute.getXpath() != null) {
+                addPath(tree, attribute.getXpath().replaceFirst("^/+", "").split("/"));
+            }
+        }
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?><Document");
+        if (namespace != null) {
+            xml.append(" xmlns=\"").append(namespace).append('"');
+        }
+        xml.append('>');
+        appendXml(xml, tree);
+        return xml.append("</Document>").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addPath(Map<String, Object> tree, String[] steps) {
+        Map<String, Object> node = tree;
+        for (String step : steps) {
+            String name = step.replaceFirst("^[\\w-]+:", "").replaceAll("\\[.*]$", "");
+            if (!name.matches("[A-Za-z_][\\w.-]*")) {
+                return;  // Wildcards, attributes and functions are not synthesized
+            }
+            node = (Map<String, Object>) node.computeIfAbsent(name, k -> new LinkedHashMap<String, Object>());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void appendXml(StringBuilder xml, Map<String, Object> tree) {
+        for (Map.Entry<String, Object> entry : tree.entrySet()) {
+            Map<String, Object> children = (Map<String, Object>) entry.getValue();
+            xml.append('<').append(entry.getKey()).append('>');
+            if (children.isEmpty()) {
+                xml.append(SAMPLE_VALUE);
+            } else {
+                appendXml(xml, children);
+            }
+            xml.append("</").append(entry.getKey()).append('>');
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private String synthesizeJson(List<MaskingAttribute> attributes) throws JsonProcessingException {
+        Map<String, Object> root = new LinkedHashMap<>();
+        for (MaskingAttribute attribute : attributes) {
+            String path = attribute.getJsonpath();
+            if (path == null || !path.matches("\\$(\\.[A-Za-z_][\\w-]*)+")) {
+                continue;  // Only plain dotted paths are synthesized
+            }
+            String[] steps = path.substring(2).split("\\.");
+            Map<String, Object> node = root;
+            for (int i = 0; i < steps.length - 1; i++) {
+                Object child = node.computeIfAbsent(steps[i], k -> new LinkedHashMap<String, Object>());
+                if (!(child instanceof Map)) {
+                    break;
+                }
+                node = (Map<String, Object>) child;
+            }
+            node.putIfAbsent(steps[steps.length - 1], SAMPLE_VALUE);
+        }
+        return objectMapper.writeValueAsString(root);
+    }
+
+    private String synthesizeFixed(String type, List<MaskingAttribute> attributes, RuleSet ruleSet) {
+        FixedLengthFormat format = ruleSet.getFixedLengthFormat(type);
+        String prefix;
+        if (format != null) {
+            prefix = format.getPrefix();
+        } else if (type.equals("fixed")) {
+            prefix = "HDR";
+        } else {
+            return null;
+        }
+
+        int length = 0;
+        for (MaskingAttribute attribute : attributes) {
+            if (attribute.getEnd() != null) {
+                length = Math.max(length, attribute.getEnd());
+            }
+        }
+
+        StringBuilder record = new StringBuilder(prefix);
+        while (record.length() < length + SAMPLE_VALUE.length()) {
+            record.append(SAMPLE_VALUE);
+        }
+
+        if (format != null && format.getDiscriminator() != null) {
+            FixedLengthFormat.Discriminator discriminator = format.getDiscriminator();
+            int end = discriminator.getOffset() + discriminator.getValue().length();
+            while (record.length() < end) {
+                record.append(SAMPLE_VALUE);
+            }
+            record.replace(discriminator.getOffset(), end, discriminator.getValue());
+        }
+        if (format != null && format.getRecordLength() != null) {
+            while (record.length() < format.getRecordLength()) {
+                record.append(SAMPLE_VALUE);
+            }
+            record.setLength(format.getRecordLength());
+        }
+        return record.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.masking.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of a payload's UTF-16 code units, fed through a small buffer to avoid copying the payload.
+ * Built one char at a time, so a spilled payload is digested while it is written to disk.
+ */
+final class PayloadDigest {
+
+    private final MessageDigest md;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+
+    PayloadDigest() {
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static byte[] of(String payload) {
+        PayloadDigest digest = new PayloadDigest();
+        for (int i = 0; i < payload.length(); i++) {
+            digest.update(payload.charAt(i));
+        }
+        return digest.digest();
+    }
+
+    void update(char c) {
+        buffer[position++] = (byte) (c >>> 8);
+        buffer[position++] = (byte) c;
+        if (position == buffer.length) {
+            md.update(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    byte[] digest() {
+        md.update(buffer, 0, position);
+        position = 0;
+        return md.digest();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.masking.service;
+
+import com.example.masking.config.MaskingLimitsProperties;
+import com.example.masking.config.ResponseCacheProperties;
+import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.SpilledPayload;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Spills oversized masking requests to disk so the payload never sits on the heap
+ * as a single String, and streams the masked result back from disk.
+ */
+@Service
+public class PayloadSpillService {
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadSpillService.class);
+
+    private final Path spillDirectory;
+    private final boolean digestPayloads;   // The response cache matches spilled retries by payload digest
+    private final ObjectMapper objectMapper;
+    private final Counter spilledRequests;
+    private final Counter spilledBytes;
+
+    public PayloadSpillService(MaskingLimitsProperties limits, ResponseCacheProperties cacheProperties,
+                               ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.spillDirectory = Paths.get(limits.getSpillDirectory());
+        this.digestPayloads = cacheProperties.isEnabled();
+        this.objectMapper = objectMapper;
+        this.spilledRequests = Counter.builder("masking.spill.requests")
+                .description("Requests whose payload was spilled to disk")
+                .register(meterRegistry);
+        this.spilledBytes = Counter.builder("masking.spill.bytes")
+                .description("Request body bytes spilled to disk")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reads a MaskingRequest JSON body from the stream, decoding payload_txt into a temp file.
+     * The caller owns the returned payload and must close it to delete the temp files.
+     */
+    public SpilledPayload spill(InputStream body) throws IOException {
+        Files.createDirectories(spillDirectory);
+        SpilledPayload spilled = new SpilledPayload(
+                Files.createTempFile(spillDirectory, "masking-payload-", ".tmp"),
+                Files.createTempFile(spillDirectory, "masking-masked-", ".tmp"),
+                Files.createTempFile(spillDirectory, "masking-response-", ".json"));
+
+        CountingInputStream counting = new CountingInputStream(body);
+        try (Reader reader = new BufferedReader(new InputStreamReader(counting, StandardCharsets.UTF_8));
+             Writer payloadOut = Files.newBufferedWriter(spilled.getPayloadFile(), StandardCharsets.UTF_8)) {
+            new MaskingRequestStreamReader(reader, digestPayloads).read(spilled, payloadOut);
+        } catch (IOException | RuntimeException e) {
+            spilled.close();
+            throw e;
+        }
+
+        spilled.setBodyBytes(counting.count);
+        spilledRequests.increment();
+        spilledBytes.increment(counting.count);
+        log.debug("Spilled request body of {} bytes ({} payload chars) to {}",
+                counting.count, spilled.getPayloadChars(), spilled.getPayloadFile());
+        return spilled;
+    }
+
+    /**
+     * Serializes the response with masked_payload streamed from the masked file,
+     * mirroring the field layout of MaskingResponse.
+     */
+    public Path writeResponse(SpilledPayload spilled, MaskingResponse response) throws IOException {
+        try (Writer out = Files.newBufferedWriter(spilled.getResponseFile(), StandardCharsets.UTF_8);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+             Reader masked = Files.newBufferedReader(spilled.getMaskedFile(), StandardCharsets.UTF_8)) {
+            generator.writeStartObject();
+            generator.writeStringField("transaction_id", response.getTransaction_id());
+            generator.writeFieldName("masked_payload");
+            generator.writeString(masked, -1);
+            generator.writeStringField("payload_type", response.getPayload_type());
+            generator.writeStringField("detected_subtype", response.getDetected_subtype());
+            generator.writeNumberField("processing_time_ms", response.getProcessing_time_ms());
+            generator.writeEndObject();
+        }
+        return spilled.getResponseFile();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
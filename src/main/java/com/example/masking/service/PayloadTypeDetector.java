@@ -1,5 +1,6 @@
 package com.example.masking.service;
 
+import com.example.masking.model.FixedLengthFormat;
 import com.example.masking.model.NamespaceMapping;
 import com.example.masking.model.PayloadType;
 import com.example.masking.model.XmlSubtypeInfo;
@@ -25,6 +26,22 @@ public class PayloadTypeDetector {
         }
 
         String trimmed = payload.trim();
+        return detectType(trimmed, trimmed.charAt(trimmed.length() - 1));
+    }
+
+    /**
+     * Detects the payload type from its leading characters and last non-whitespace character.
+     * Used for spilled payloads that are never loaded into a single String.
+     *
+     * @param leading Leading characters of the payload
+     * @param trailing Last non-whitespace character of the payload
+     * @return Detected base payload type
+     */
+    public PayloadType detectType(String leading, char trailing) {
+        String trimmed = leading.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Payload cannot be null or empty");
+        }
 
         // Check for XML
         if (trimmed.startsWith("<") || trimmed.startsWith("<?xml")) {
@@ -32,26 +49,54 @@ public class PayloadTypeDetector {
         }
 
         // Check for JSON
-        if ((trimmed.startsWith("{") && trimmed.endsWith("}")) ||
-            (trimmed.startsWith("[") && trimmed.endsWith("]"))) {
+        if ((trimmed.startsWith("{") && trailing == '}') ||
+            (trimmed.startsWith("[") && trailing == ']')) {
             return PayloadType.JSON;
         }
 
-        // Check for specific fixed-length formats by starting characters
-        if (trimmed.startsWith("*FTR")) {
-            return PayloadType.MTSFTR;
-        }
+        // Everything else is fixed-length; the format is resolved by detectFixedSubtype
+        return PayloadType.FIXED;
+    }
 
-        if (trimmed.startsWith("*ADM")) {
-            return PayloadType.MTSADM;
+    /**
+     * Detects the fixed-length format from a rule set's prefixes, record lengths and discriminators.
+     * Returns a string subtype identifier, like XML subtypes, so new formats need no PayloadType changes.
+     *
+     * @param payload Fixed-length payload string
+     * @param formats The rule set's compiled fixed-length formats
+     * @return Subtype identifier (the format's rule type, e.g. "mtsftr") or null if no format matches
+     */
+    String detectFixedSubtype(String payload, FixedLengthFormatTrie formats) {
+        if (payload == null) {
+            return null;
         }
-
-        if (trimmed.startsWith("ACAI")) {
-            return PayloadType.MFFIXED;
+        int end = payload.length();
+        while (end > 0 && Character.isWhitespace(payload.charAt(end - 1))) {
+            end--;
         }
+        return detectFixedSubtype(payload, Math.max(0, end - leadingWhitespace(payload)), formats);
+    }
 
-        // Default to generic fixed-length
-        return PayloadType.FIXED;
+    /**
+     * Detects the fixed-length format from the leading characters of a record.
+     * Used for spilled payloads that are never loaded into a single String.
+     *
+     * @param leading Leading characters of the payload (leading whitespace is skipped)
+     * @param recordLength Length of the whole record without surrounding whitespace
+     * @param formats The rule set's compiled fixed-length formats
+     * @return Subtype identifier or null if no format matches
+     */
+    String detectFixedSubtype(String leading, long recordLength, FixedLengthFormatTrie formats) {
+        FixedLengthFormat format = formats.match(leading, leadingWhitespace(leading), recordLength);
+        return format != null ? format.getType().toLowerCase() : null;
+    }
+
+    static int leadingWhitespace(String payload) {
+        int start = 0;
+        while (start < payload.length() && Character.isWhitespace(payload.charAt(start))) {
+            start++;
+        }
+        return start;
     }
 
     /**
@@ -105,7 +150,7 @@ public class PayloadTypeDetector {
      * @param pattern The pattern that matched (e.g., "pain.013", "camt.054", "payment_request")
      * @return Type identifier string (e.g., "xml_pain_013", "xml_camt_054", "xml_payment_request")
      */
-    private String patternToTypeIdentifier(String pattern) {
+    String patternToTypeIdentifier(String pattern) {
         // Convert pattern like "pain.013" to type identifier "xml_pain_013"
         // Replace dots with underscores and convert to lowercase
         return "xml_" + pattern.replace(".", "_").toLowerCase();
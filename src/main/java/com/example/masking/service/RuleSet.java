@@ -0,0 +1,200 @@
+package com.example.masking.service;
+
+import com.example.masking.model.FixedLengthFormat;
+import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingConfig;
+import com.example.masking.model.MaskingRule;
+import com.example.masking.model.NamespaceMapping;
+import com.example.masking.service.processor.FixedLengthMaskingPlan;
+import com.example.masking.service.processor.JsonStreamingPlan;
+import com.example.masking.service.processor.XmlStreamingPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One tenant's masking configuration compiled for lookups: the rule index by type, fixed-length
+ * plans, streaming plans, namespace mappings and fixed-length formats. Built once per load of the
+ * tenant's YAML and immutable afterwards, so a reload swaps in a new instance while requests
+ * already routed keep the one they started with.
+ */
+public final class RuleSet {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleSet.class);
+
+    private final String tenant;
+    private final String version;
+    private final MaskingConfig config;
+
+    // Rule index for O(1) lookup by type
+    private final Map<String, List<MaskingAttribute>> ruleIndex;
+
+    // Compiled fixed-length plans (sorted, merged ranges) keyed like the rule index
+    private final Map<String, FixedLengthMaskingPlan> fixedLengthPlans;
+
+    // Rules compiled for the streaming engines; types missing here are tree-only
+    private final Map<String, XmlStreamingPlan> xmlStreamingPlans;
+    private final Map<String, JsonStreamingPlan> jsonStreamingPlans;
+
+    private final FixedLengthFormatTrie fixedLengthFormats;
+    private final Map<String, FixedLengthFormat> fixedLengthFormatsByType;
+
+    private RuleSet(String tenant, MaskingConfig config) {
+        this.tenant = tenant;
+        this.version = config.getVersion();
+        this.config = config;
+        this.ruleIndex = buildRuleIndex(config);
+        this.fixedLengthPlans = buildFixedLengthPlans(config);
+        this.fixedLengthFormats = FixedLengthFormatTrie.compile(config.getFixedLengthFormats());
+
+        Map<String, FixedLengthFormat> formatsByType = new HashMap<>();
+        if (config.getFixedLengthFormats() != null) {
+            for (FixedLengthFormat format : config.getFixedLengthFormats()) {
+                if (format.getType() != null) {
+                    formatsByType.putIfAbsent(format.getType().toLowerCase(), format);
+                }
+            }
+        }
+        this.fixedLengthFormatsByType = Collections.unmodifiableMap(formatsByType);
+
+        Map<String, XmlStreamingPlan> xmlPlans = new HashMap<>();
+        Map<String, JsonStreamingPlan> jsonPlans = new HashMap<>();
+        for (Map.Entry<String, List<MaskingAttribute>> entry : ruleIndex.entrySet()) {
+            XmlStreamingPlan xmlPlan = XmlStreamingPlan.compile(entry.getKey(), entry.getValue());
+            if (xmlPlan != null) {
+                xmlPlans.put(entry.getKey(), xmlPlan);
+            }
+            JsonStreamingPlan jsonPlan = JsonStreamingPlan.compile(entry.getKey(), entry.getValue());
+            if (jsonPlan != null) {
+                jsonPlans.put(entry.getKey(), jsonPlan);
+            }
+        }
+        this.xmlStreamingPlans = Collections.unmodifiableMap(xmlPlans);
+        this.jsonStreamingPlans = Collections.unmodifiableMap(jsonPlans);
+    }
+
+    /**
+     * Compiles a tenant's configuration. Problems that would otherwise show up per request
+     * (overlapping ranges, formats without rules) are logged here, once.
+     */
+    public static RuleSet compile(String tenant, MaskingConfig config) {
+        RuleSet ruleSet = new RuleSet(tenant, config);
+        log.info("Compiled rule set for tenant {} (version {}): {} types, streaming-compatible XML {}, JSON {}",
+                tenant, ruleSet.version, ruleSet.ruleIndex.size(),
+                ruleSet.xmlStreamingPlans.keySet(), ruleSet.jsonStreamingPlans.keySet());
+
+        if (config.getFixedLengthFormats() != null) {
+            for (FixedLengthFormat format : config.getFixedLengthFormats()) {
+                if (format.getType() != null && !ruleSet.ruleIndex.containsKey(format.getType().toLowerCase())) {
+                    log.warn("Fixed-length format {} of tenant {} has no masking rules; its records use default masking",
+                            format.getType(), tenant);
+                }
+            }
+        }
+        return ruleSet;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * The configuration version: a digest of the YAML unless it sets one, so it changes on every reload
+     * that changes the rules.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public List<NamespaceMapping> getNamespaceMappings() {
+        return config.getNamespaceMappings();
+    }
+
+    /**
+     * Rules of a type (a base type name or detected subtype, in any case); empty if there are none.
+     */
+    public List<MaskingAttribute> getAttributes(String type) {
+        return ruleIndex.getOrDefault(type.toLowerCase(), Collections.emptyList());
+    }
+
+    /**
+     * Every configured rule type with its rules.
+     */
+    public Map<String, List<MaskingAttribute>> getRuleIndex() {
+        return ruleIndex;
+    }
+
+    public FixedLengthMaskingPlan getFixedLengthPlan(String type) {
+        return fixedLengthPlans.get(type);
+    }
+
+    public XmlStreamingPlan getXmlStreamingPlan(String type) {
+        return xmlStreamingPlans.get(type);
+    }
+
+    public JsonStreamingPlan getJsonStreamingPlan(String type) {
+        return jsonStreamingPlans.get(type);
+    }
+
+    /**
+     * The fixed-length format configured for a subtype identifier, or null.
+     */
+    public FixedLengthFormat getFixedLengthFormat(String subtype) {
+        return fixedLengthFormatsByType.get(subtype.toLowerCase());
+    }
+
+    FixedLengthFormatTrie getFixedLengthFormats() {
+        return fixedLengthFormats;
+    }
+
+    /**
+     * Builds an index of masking rules for O(1) lookup performance.
+     */
+    private static Map<String, List<MaskingAttribute>> buildRuleIndex(MaskingConfig config) {
+        Map<String, List<MaskingAttribute>> index = new HashMap<>();
+
+        if (config.getRules() != null) {
+            for (MaskingRule rule : config.getRules()) {
+                if (rule.getType() != null && rule.getAttributes() != null) {
+                    index.computeIfAbsent(rule.getType().toLowerCase(), k -> new ArrayList<>())
+                         .addAll(rule.getAttributes());
+                }
+            }
+        }
+
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Compiles each type with fixed-length ranges into a sorted, non-overlapping plan.
+     */
+    private Map<String, FixedLengthMaskingPlan> buildFixedLengthPlans(MaskingConfig config) {
+        Map<String, Integer> minRecordLengths = new HashMap<>();
+        if (config.getRules() != null) {
+            for (MaskingRule rule : config.getRules()) {
+                if (rule.getType() != null && rule.getMinRecordLength() != null) {
+                    minRecordLengths.merge(rule.getType().toLowerCase(), rule.getMinRecordLength(), Math::max);
+                }
+            }
+        }
+
+        Map<String, FixedLengthMaskingPlan> plans = new HashMap<>();
+        for (Map.Entry<String, List<MaskingAttribute>> entry : ruleIndex.entrySet()) {
+            boolean hasRanges = entry.getValue().stream().anyMatch(a -> a.getStart() != null && a.getEnd() != null);
+            if (hasRanges) {
+                FixedLengthMaskingPlan plan = FixedLengthMaskingPlan.compile(
+                        entry.getKey(), entry.getValue(), minRecordLengths.get(entry.getKey()));
+                plans.put(entry.getKey(), plan);
+                log.info("Compiled fixed-length plan for {}/{}: {} segments, min record length {}",
+                        tenant, entry.getKey(), plan.getSegments().size(), plan.getMinRecordLength());
+            }
+        }
+
+        return Collections.unmodifiableMap(plans);
+    }
+}
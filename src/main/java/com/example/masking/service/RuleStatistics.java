@@ -0,0 +1,259 @@
+package com.example.masking.service;
+
+import com.example.masking.config.RuleProfilerProperties;
+import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.RuleStatsSnapshot;
+import com.example.masking.model.SlowRuleSample;
+import com.example.masking.service.jfr.RuleEvaluationEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-rule evaluation counters and slow-rule profiler.
+ * Rules are registered when a tenant's rule set is compiled and unregistered once a reload has
+ * replaced it and the requests still using it are done. A rule unchanged by the reload keeps its
+ * counters, shared by both versions' attributes; processors report each
+ * attribute evaluation so expensive and dead rules can be found and pruned.
+ * Evaluations are also emitted as {@link RuleEvaluationEvent}s while a JFR recording enables them.
+ */
+@Component
+public class RuleStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleStatistics.class);
+
+    // Keyed by attribute identity: each configured attribute belongs to exactly one tenant and rule type
+    private final Map<MaskingAttribute, RuleStats> statsByAttribute = new ConcurrentHashMap<>();
+    // Keyed by tenant, type and rule: one entry (and one set of meters) per rule, whatever the rule set version
+    private final Map<List<String>, RuleStats> statsByRule = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final RuleProfilerProperties profiler;
+    private final long slowThresholdNanos;
+
+    // Min-heap of the slowest sampled evaluations, bounded by retainedSamples
+    private final PriorityQueue<SlowRuleSample> slowest =
+            new PriorityQueue<>(Comparator.comparingLong(SlowRuleSample::getNanos));
+
+    public RuleStatistics(MeterRegistry meterRegistry, RuleProfilerProperties profiler) {
+        this.meterRegistry = meterRegistry;
+        this.profiler = profiler;
+        this.slowThresholdNanos = profiler.getSlowThreshold().toNanos();
+    }
+
+    /**
+     * Registers a configured attribute under its tenant and rule type and exports its counters as
+     * metrics, unless another attribute of the same rule (e.g. of the previous rule set version)
+     * already has them.
+     */
+    public synchronized void register(String tenant, String type, MaskingAttribute attribute) {
+        if (statsByAttribute.containsKey(attribute)) {
+            return;
+        }
+        String rule = describe(attribute);
+        List<String> key = Arrays.asList(tenant, type, rule);
+        RuleStats stats = statsByRule.get(key);
+        if (stats == null) {
+            stats = new RuleStats(tenant, type, rule);
+            exportMeters(stats);
+            statsByRule.put(key, stats);
+        }
+        stats.attributes++;
+        statsByAttribute.put(attribute, stats);
+    }
+
+    private void exportMeters(RuleStats stats) {
+        Tags tags = Tags.of("tenant", stats.tenant, "type", stats.type, "rule", stats.rule);
+        stats.meters.add(FunctionTimer.builder("masking.rule.evaluations", stats,
+                        s -> s.evaluations.sum(), s -> s.totalNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Masking rule evaluations and cumulative evaluation time")
+                .tags(tags)
+                .register(meterRegistry));
+        stats.meters.add(FunctionCounter.builder("masking.rule.matches", stats, s -> s.matches.sum())
+                .description("Rule evaluations that matched at least one node")
+                .tags(tags)
+                .register(meterRegistry));
+        stats.meters.add(FunctionCounter.builder("masking.rule.nodes.masked", stats, s -> s.nodesMasked.sum())
+                .description("Nodes/values masked by the rule")
+                .tags(tags)
+                .register(meterRegistry));
+        stats.meters.add(FunctionCounter.builder("masking.rule.errors", stats, s -> s.errors.sum())
+                .description("Rule evaluations that failed")
+                .tags(tags)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Drops an attribute of a replaced rule set, and its rule's counters and metrics if no current
+     * attribute shares them. Evaluations recorded against it afterwards are ignored.
+     */
+    public synchronized void unregister(MaskingAttribute attribute) {
+        RuleStats stats = statsByAttribute.remove(attribute);
+        if (stats != null && --stats.attributes == 0) {
+            statsByRule.remove(Arrays.asList(stats.tenant, stats.type, stats.rule));
+            stats.meters.forEach(meterRegistry::remove);
+        }
+    }
+
+    /**
+     * Records one evaluation of an attribute.
+     *
+     * @param attribute The evaluated attribute
+     * @param nanos Time spent evaluating and masking
+     * @param nodesMatched Nodes/values selected by the rule
+     * @param nodesMasked Nodes/values actually masked
+     * @param payloadChars Payload size, or -1 if unknown (streamed payloads)
+     */
+    public void record(MaskingAttribute attribute, long nanos, int nodesMatched, int nodesMasked, long payloadChars) {
+        RuleStats stats = statsByAttribute.get(attribute);
+        if (stats == null) {
+            return;
+        }
+
+        stats.evaluations.increment();
+        stats.totalNanos.add(nanos);
+        if (nodesMatched > 0) {
+            stats.matches.increment();
+        }
+        stats.nodesMasked.add(nodesMasked);
+
+        RuleEvaluationEvent event = new RuleEvaluationEvent();
+        if (event.isEnabled()) {
+            commit(event, stats, nanos, nodesMatched, nodesMasked, payloadChars, false);
+        }
+
+        if (profiler.isEnabled() && nanos >= slowThresholdNanos
+                && ThreadLocalRandom.current().nextDouble() < profiler.getSampleRate()) {
+            recordSlow(stats, nanos, payloadChars);
+        }
+    }
+
+    /**
+     * Records a failed evaluation (the processor skips the attribute and carries on).
+     */
+    public void recordError(MaskingAttribute attribute, long nanos) {
+        RuleStats stats = statsByAttribute.get(attribute);
+        if (stats == null) {
+            return;
+        }
+
+        stats.evaluations.increment();
+        stats.totalNanos.add(nanos);
+        stats.errors.increment();
+
+        RuleEvaluationEvent event = new RuleEvaluationEvent();
+        if (event.isEnabled()) {
+            commit(event, stats, nanos, 0, 0, -1, true);
+        }
+    }
+
+    /**
+     * Zeroes all counters and drops retained samples. Only used before the node takes
+     * traffic (after warm-up), so exported counters never appear to go backwards in practice.
+     */
+    public void reset() {
+        for (RuleStats stats : statsByRule.values()) {
+            stats.evaluations.reset();
+            stats.matches.reset();
+            stats.nodesMasked.reset();
+            stats.errors.reset();
+            stats.totalNanos.reset();
+        }
+        synchronized (slowest) {
+            slowest.clear();
+        }
+    }
+
+    public List<RuleStatsSnapshot> snapshot() {
+        List<RuleStatsSnapshot> snapshots = new ArrayList<>(statsByRule.size());
+        for (RuleStats stats : statsByRule.values()) {
+            snapshots.add(new RuleStatsSnapshot(stats.tenant, stats.type, stats.rule, stats.evaluations.sum(),
+                    stats.matches.sum(), stats.nodesMasked.sum(), stats.errors.sum(), stats.totalNanos.sum()));
+        }
+        // Most expensive rules first
+        snapshots.sort(Comparator.comparingLong(RuleStatsSnapshot::getTotalNanos).reversed());
+        return snapshots;
+    }
+
+    public List<SlowRuleSample> slowestSamples() {
+        List<SlowRuleSample> samples;
+        synchronized (slowest) {
+            samples = new ArrayList<>(slowest);
+        }
+        samples.sort(Comparator.comparingLong(SlowRuleSample::getNanos).reversed());
+        return samples;
+    }
+
+    private void recordSlow(RuleStats stats, long nanos, long payloadChars) {
+        log.warn("Slow rule evaluation: tenant={} type={} rule={} took {} us on payload of {} chars",
+                stats.tenant, stats.type, stats.rule, TimeUnit.NANOSECONDS.toMicros(nanos),
+                payloadChars >= 0 ? payloadChars : "unknown");
+
+        SlowRuleSample sample = new SlowRuleSample(stats.tenant, stats.type, stats.rule, nanos, payloadChars,
+                System.currentTimeMillis());
+        synchronized (slowest) {
+            slowest.offer(sample);
+            if (slowest.size() > profiler.getRetainedSamples()) {
+                slowest.poll();
+            }
+        }
+    }
+
+    // Only reached while a recording has the event enabled; commit() applies its minEvaluationTime
+    private static void commit(RuleEvaluationEvent event, RuleStats stats, long nanos, int nodesMatched,
+                               int nodesMasked, long payloadChars, boolean failed) {
+        event.tenant = stats.tenant;
+        event.type = stats.type;
+        event.rule = stats.rule;
+        event.evaluationTime = nanos;
+        event.nodesMatched = nodesMatched;
+        event.nodesMasked = nodesMasked;
+        event.payloadChars = payloadChars;
+        event.failed = failed;
+        event.commit();
+    }
+
+    static String describe(MaskingAttribute attribute) {
+        if (attribute.getXpath() != null) {
+            return attribute.getXpath();
+        }
+        if (attribute.getJsonpath() != null) {
+            return attribute.getJsonpath();
+        }
+        return "[" + attribute.getStart() + "," + attribute.getEnd() + ")";
+    }
+
+    private static class RuleStats {
+        private final String tenant;
+        private final String type;
+        private final String rule;
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder matches = new LongAdder();
+        private final LongAdder nodesMasked = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final List<Meter> meters = new ArrayList<>(4);
+        private int attributes;     // Registered attributes sharing these counters, guarded by RuleStatistics
+
+        RuleStats(String tenant, String type, String rule) {
+            this.tenant = tenant;
+            this.type = type;
+            this.rule = rule;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.masking.service;
+
+/**
+ * Thrown when a tenant already has its maximum number of masking requests in progress.
+ */
+public class TenantQuotaExceededException extends RuntimeException {
+
+    private final String tenant;
+
+    public TenantQuotaExceededException(String tenant, int maxConcurrent) {
+        super("Tenant " + tenant + " already has " + maxConcurrent + " masking requests in progress");
+        this.tenant = tenant;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+}
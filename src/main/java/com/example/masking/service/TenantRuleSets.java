@@ -0,0 +1,340 @@
+package com.example.masking.service;
+
+import com.example.masking.config.MaskingConfigLoader;
+import com.example.masking.config.TenantProperties;
+import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The compiled rule set of every tenant. The "default" tenant is the masking.config.file
+ * configuration and serves requests that name no tenant; other tenants are defined under
+ * masking.tenants.definitions, each with its own YAML. The set of tenants is fixed at startup,
+ * their rule sets can be reloaded one at a time.
+ *
+ * Each tenant can be limited to a number of concurrent masking requests, so one tenant's burst
+ * cannot occupy every request thread; requests over the limit are rejected with 429.
+ */
+@Service
+public class TenantRuleSets {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantRuleSets.class);
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private final TenantProperties properties;
+    private final RuleStatistics ruleStatistics;
+    private final MeterRegistry meterRegistry;
+    private final ResourceLoader resourceLoader;
+
+    // Tenant id -> state, fixed at startup
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+
+    // Called with each reloaded rule set once it is current
+    private final List<Consumer<RuleSet>> reloadListeners = new CopyOnWriteArrayList<>();
+
+    public TenantRuleSets(MaskingConfig maskingConfig,
+                          TenantProperties properties,
+                          RuleStatistics ruleStatistics,
+                          MeterRegistry meterRegistry,
+                          ResourceLoader resourceLoader,
+                          @Value("${masking.config.file:masking-config.yaml}") String configFile) throws IOException {
+        this.properties = properties;
+        this.ruleStatistics = ruleStatistics;
+        this.meterRegistry = meterRegistry;
+        this.resourceLoader = resourceLoader;
+
+        Tenant defaultTenant = new Tenant(DEFAULT_TENANT, "classpath:" + configFile, null);
+        defaultTenant.current = new Generation(RuleSet.compile(DEFAULT_TENANT, maskingConfig));
+        tenants.put(DEFAULT_TENANT, defaultTenant);
+
+        for (Map.Entry<String, TenantProperties.Tenant> entry : properties.getDefinitions().entrySet()) {
+            String id = entry.getKey();
+            TenantProperties.Tenant definition = entry.getValue();
+            if (DEFAULT_TENANT.equals(id)) {
+                if (definition.getConfigFile() != null) {
+                    log.warn("Ignoring config-file of tenant default; it always uses masking.config.file");
+                }
+                defaultTenant.limit(definition.getMaxConcurrent());
+                continue;
+            }
+            if (definition.getConfigFile() == null) {
+                throw new IllegalStateException("Tenant " + id + " has no config-file");
+            }
+            Tenant tenant = new Tenant(id, definition.getConfigFile(), definition.getMaxConcurrent());
+            tenant.current = new Generation(RuleSet.compile(id, load(tenant.configFile)));
+            tenants.put(id, tenant);
+        }
+        log.info("Loaded rule sets for tenants {}", tenants.keySet());
+    }
+
+    public RuleSet getDefault() {
+        return tenants.get(DEFAULT_TENANT).current.ruleSet;
+    }
+
+    /**
+     * The current rule set of a tenant.
+     *
+     * @throws IllegalArgumentException if the tenant is not defined
+     */
+    public RuleSet get(String tenant) {
+        return tenant(tenant).current.ruleSet;
+    }
+
+    /**
+     * The current rule set of every tenant, the default tenant first.
+     */
+    public List<RuleSet> getAll() {
+        List<RuleSet> ruleSets = new ArrayList<>();
+        tenants.values().forEach(tenant -> ruleSets.add(tenant.current.ruleSet));
+        return ruleSets;
+    }
+
+    /**
+     * Picks the tenant of a request from the tenant header and the request's tenant_id field;
+     * the default tenant if it names none.
+     *
+     * @throws IllegalArgumentException if both are set and disagree
+     */
+    public static String resolve(String header, String field) {
+        boolean hasHeader = header != null && !header.trim().isEmpty();
+        boolean hasField = field != null && !field.trim().isEmpty();
+        if (hasHeader && hasField && !header.trim().equals(field.trim())) {
+            throw new IllegalArgumentException("Tenant header (" + header.trim()
+                    + ") and tenant_id (" + field.trim() + ") do not match");
+        }
+        return hasHeader ? header.trim() : hasField ? field.trim() : DEFAULT_TENANT;
+    }
+
+    /**
+     * Takes one of the tenant's concurrent request slots, waiting up to masking.tenants.acquire-timeout
+     * for one to free up. The permit carries the rule set current at that moment, which the request
+     * keeps even if the tenant is reloaded meanwhile (its rule statistics stay registered until the
+     * last such permit is closed); close it when the request is done.
+     *
+     * @throws IllegalArgumentException if the tenant is not defined
+     * @throws TenantQuotaExceededException if no slot became free in time
+     */
+    public Permit acquire(String tenantId) {
+        Tenant tenant = tenant(tenantId);
+        if (tenant.permits != null) {
+            boolean acquired;
+            try {
+                Duration timeout = properties.getAcquireTimeout();
+                acquired = timeout.isZero() || timeout.isNegative()
+                        ? tenant.permits.tryAcquire()
+                        : tenant.permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                tenant.rejected.increment();
+                throw new TenantQuotaExceededException(tenant.id, tenant.maxConcurrent);
+            }
+        }
+        Generation generation;
+        do {
+            generation = tenant.current;
+        } while (!generation.retain());   // Retired by a concurrent reload; take the new one
+        tenant.active.incrementAndGet();
+        return new Permit(tenant, generation, System.nanoTime());
+    }
+
+    /**
+     * Re-reads a tenant's YAML and swaps in the newly compiled rule set. Requests already masking keep
+     * the old one; if the YAML cannot be read or compiled the tenant keeps its current rules.
+     */
+    public RuleSet reload(String tenantId) throws IOException {
+        Tenant tenant = tenant(tenantId);
+        synchronized (tenant) {
+            RuleSet reloaded;
+            try {
+                reloaded = RuleSet.compile(tenant.id, load(tenant.configFile));
+            } catch (IOException | RuntimeException e) {
+                meterRegistry.counter("masking.tenant.reloads", "tenant", tenant.id, "result", "failed").increment();
+                throw e;
+            }
+            // Unchanged rules keep their counters; the previous version's rules are unregistered once
+            // the requests still masking with it have closed their permits
+            Generation previous = tenant.current;
+            tenant.current = new Generation(reloaded);
+            previous.release();
+            reloadListeners.forEach(listener -> listener.accept(reloaded));
+            meterRegistry.counter("masking.tenant.reloads", "tenant", tenant.id, "result", "ok").increment();
+            log.info("Reloaded rule set of tenant {}: version {} -> {}", tenant.id, previous.ruleSet.getVersion(),
+                    reloaded.getVersion());
+            return reloaded;
+        }
+    }
+
+    /**
+     * Registers a callback for every successful reload, called with the new rule set once requests get it.
+     */
+    public void addReloadListener(Consumer<RuleSet> listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Tenant ids with their current rule set version, rule types, quota and requests in progress.
+     */
+    public List<Map<String, Object>> describe() {
+        List<Map<String, Object>> described = new ArrayList<>();
+        for (Tenant tenant : tenants.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("tenant", tenant.id);
+            entry.put("config_file", tenant.configFile);
+            RuleSet ruleSet = tenant.current.ruleSet;
+            entry.put("version", ruleSet.getVersion());
+            entry.put("types", new TreeSet<>(ruleSet.getRuleIndex().keySet()));
+            entry.put("max_concurrent", tenant.maxConcurrent);
+            entry.put("active", tenant.active.get());
+            described.add(entry);
+        }
+        return Collections.unmodifiableList(described);
+    }
+
+    private Tenant tenant(String tenantId) {
+        Tenant tenant = tenantId != null ? tenants.get(tenantId) : null;
+        if (tenant == null) {
+            throw new IllegalArgumentException("Unknown tenant: " + tenantId);
+        }
+        return tenant;
+    }
+
+    private MaskingConfig load(String location) throws IOException {
+        // A plain path is on the classpath, like masking.config.file
+        Resource resource = resourceLoader.getResource(location.contains(":") ? location : "classpath:" + location);
+        return MaskingConfigLoader.load(resource);
+    }
+
+    /**
+     * A tenant's slot for one masking request, and the rule set the request uses.
+     */
+    public static final class Permit implements AutoCloseable {
+        private final Tenant tenant;
+        private final Generation generation;
+        private final long start;
+        private boolean closed;
+
+        private Permit(Tenant tenant, Generation generation, long start) {
+            this.tenant = tenant;
+            this.generation = generation;
+            this.start = start;
+        }
+
+        public RuleSet getRuleSet() {
+            return generation.ruleSet;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            tenant.requests.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            tenant.active.decrementAndGet();
+            if (tenant.permits != null) {
+                tenant.permits.release();
+            }
+            generation.release();
+        }
+    }
+
+    private final class Tenant {
+        private final String id;
+        private final String configFile;
+        private final AtomicInteger active = new AtomicInteger();
+        private final Timer requests;
+        private final Counter rejected;
+        private volatile Generation current;
+        private int maxConcurrent;
+        private Semaphore permits;      // null when unlimited
+
+        private Tenant(String id, String configFile, Integer maxConcurrent) {
+            this.id = id;
+            this.configFile = configFile;
+            this.requests = Timer.builder("masking.tenant.requests")
+                    .description("Masking requests of the tenant, from taking a slot to releasing it")
+                    .tag("tenant", id)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("masking.tenant.rejected")
+                    .description("Requests rejected because the tenant had max-concurrent requests in progress")
+                    .tag("tenant", id)
+                    .register(meterRegistry);
+            Gauge.builder("masking.tenant.active", active, AtomicInteger::get)
+                    .description("Masking requests of the tenant in progress")
+                    .tag("tenant", id)
+                    .register(meterRegistry);
+            limit(maxConcurrent);
+        }
+
+        private void limit(Integer tenantMaxConcurrent) {
+            maxConcurrent = tenantMaxConcurrent != null ? tenantMaxConcurrent : properties.getDefaultMaxConcurrent();
+            permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+        }
+    }
+
+    /**
+     * One rule set of a tenant, referenced while it is current and by each open permit. Its
+     * rules are registered for statistics when it is created and unregistered when the last
+     * reference is released.
+     */
+    private final class Generation {
+        private final RuleSet ruleSet;
+        private final AtomicInteger references = new AtomicInteger(1);   // The tenant's, until replaced
+
+        private Generation(RuleSet ruleSet) {
+            this.ruleSet = ruleSet;
+            for (Map.Entry<String, List<MaskingAttribute>> entry : ruleSet.getRuleIndex().entrySet()) {
+                for (MaskingAttribute attribute : entry.getValue()) {
+                    ruleStatistics.register(ruleSet.getTenant(), entry.getKey(), attribute);
+                }
+            }
+        }
+
+        /**
+         * Adds a reference, unless the last one is already gone.
+         */
+        private boolean retain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                ruleSet.getRuleIndex().values().forEach(attributes -> attributes.forEach(ruleStatistics::unregister));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.masking.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * One masked payload, from type detection until the per-request state is cleared. Begun by
+ * {@code DataMaskingService.detectPayloadType} and committed by {@code clearThreadLocalState}, so
+ * API requests, bulk job items and warm-up payloads all record it.
+ */
+@Name("com.example.masking.Request")
+@Label("Masking Request")
+@Category({"Data Masking"})
+@Description("A payload masked by the data masking service, with phase timings")
+@Enabled(true)
+@Threshold("0 ms")
+@StackTrace(false)
+public class MaskingRequestEvent extends Event {
+
+    @Label("Tenant")
+    public String tenant;
+
+    @Label("Payload Type")
+    public String payloadType;
+
+    @Label("Subtype")
+    @Description("Detected subtype, or the payload type when there is none")
+    public String subtype;
+
+    @Label("Engine")
+    @Description("tree, streaming, fixed-length or default")
+    public String engine;
+
+    @Label("Response")
+    @Description("full or patches")
+    public String response;
+
+    @Label("Spilled")
+    @Description("The payload was spilled to disk and masked from file to file")
+    public boolean spilled;
+
+    @Label("Payload Chars")
+    public long payloadChars;
+
+    @Label("Payload Size")
+    @DataAmount(DataAmount.BYTES)
+    public long payloadBytes;
+
+    @Label("Detect Time")
+    @Description("Base payload type detection")
+    @Timespan(Timespan.NANOSECONDS)
+    public long detectTime;
+
+    @Label("Route Time")
+    @Description("Subtype and namespace detection, rule lookup and engine selection")
+    @Timespan(Timespan.NANOSECONDS)
+    public long routeTime;
+
+    @Label("Mask Time")
+    @Description("Parsing, rule evaluation and serialization of the masked payload")
+    @Timespan(Timespan.NANOSECONDS)
+    public long maskTime;
+
+    @Label("Outcome")
+    @Description("ok, or error if masking failed or a limit was exceeded")
+    public String outcome;
+}
@@ -0,0 +1,61 @@
+package com.example.masking.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One evaluation of a masking rule, reported where {@code RuleStatistics} records it. The
+ * processors time evaluations themselves, so the event is committed afterwards with the measured
+ * {@link #evaluationTime}; the built-in duration threshold does not apply and the
+ * {@code minEvaluationTime} setting filters on the measured time instead.
+ */
+@Name("com.example.masking.RuleEvaluation")
+@Label("Masking Rule Evaluation")
+@Category({"Data Masking"})
+@Description("A masking rule evaluation that took at least minEvaluationTime")
+@Enabled(true)
+@StackTrace(false)
+public class RuleEvaluationEvent extends Event {
+
+    @Label("Tenant")
+    public String tenant;
+
+    @Label("Rule Type")
+    public String type;
+
+    @Label("Rule")
+    @Description("XPath, JSONPath or fixed-length range")
+    public String rule;
+
+    @Label("Evaluation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long evaluationTime;
+
+    @Label("Nodes Matched")
+    public int nodesMatched;
+
+    @Label("Nodes Masked")
+    public int nodesMasked;
+
+    @Label("Payload Chars")
+    @Description("Payload size, or -1 if unknown (streamed payloads)")
+    public long payloadChars;
+
+    @Label("Failed")
+    public boolean failed;
+
+    @Label("Minimum Evaluation Time")
+    @Description("Evaluations faster than this are not recorded")
+    @Name("minEvaluationTime")
+    @SettingDefinition
+    protected boolean minEvaluationTime(TimespanSetting setting) {
+        return evaluationTime >= setting.getNanos();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.masking.service.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.MetadataDefinition;
+import jdk.jfr.Name;
+import jdk.jfr.SettingControl;
+import jdk.jfr.Timespan;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event setting holding a timespan in JFR syntax ({@code "0 ns"}, {@code "500 us"}, {@code "1 ms"}),
+ * for events that filter on a measured field rather than their own duration. When several
+ * recordings set it, the lowest value wins so every recording gets at least the events it asked for.
+ */
+@MetadataDefinition
+@Label("Timespan")
+@Name("com.example.masking.Timespan")
+@Description("Timespan, e.g. 1 ms")
+@Timespan
+public class TimespanSetting extends SettingControl {
+
+    private static final String DEFAULT = "1 ms";
+
+    private String value = DEFAULT;
+    private volatile long nanos = parse(DEFAULT);
+
+    @Override
+    public String combine(Set<String> values) {
+        String lowest = null;
+        long lowestNanos = Long.MAX_VALUE;
+        for (String candidate : values) {
+            long candidateNanos = parse(candidate);
+            if (candidateNanos < lowestNanos) {
+                lowest = candidate;
+                lowestNanos = candidateNanos;
+            }
+        }
+        return lowest != null ? lowest : DEFAULT;
+    }
+
+    @Override
+    public void setValue(String value) {
+        this.nanos = parse(value);
+        this.value = value;
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Parses "{number} {unit}" with unit ns, us, ms, s, m, h or d ("0" alone is allowed).
+     * Unparseable values fall back to the default rather than failing the recording.
+     */
+    static long parse(String text) {
+        String trimmed = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (trimmed.equals("0")) {
+            return 0;
+        }
+        int unitStart = 0;
+        while (unitStart < trimmed.length() && Character.isDigit(trimmed.charAt(unitStart))) {
+            unitStart++;
+        }
+        if (unitStart == 0 || unitStart > 15) {
+            return parse(DEFAULT);
+        }
+        long amount = Long.parseLong(trimmed.substring(0, unitStart));
+        switch (trimmed.substring(unitStart).trim()) {
+            case "ns":
+                return amount;
+            case "us":
+                return TimeUnit.MICROSECONDS.toNanos(amount);
+            case "ms":
+                return TimeUnit.MILLISECONDS.toNanos(amount);
+            case "s":
+                return TimeUnit.SECONDS.toNanos(amount);
+            case "m":
+                return TimeUnit.MINUTES.toNanos(amount);
+            case "h":
+                return TimeUnit.HOURS.toNanos(amount);
+            case "d":
+                return TimeUnit.DAYS.toNanos(amount);
+            default:
+                return parse(DEFAULT);
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package com.example.masking.service.processor;
 
+import com.example.masking.config.PiiDetectorProperties;
 import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingPatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -10,13 +17,50 @@ import java.util.regex.Pattern;
 @Component
 public class DefaultMaskingProcessor implements MaskingProcessor {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultMaskingProcessor.class);
+
     // Regex to match consecutive 10-14 digit numbers (with or without word boundaries)
     private static final Pattern ACCOUNT_NUMBER_PATTERN = Pattern.compile("\\d{10,14}");
+    private static final int MIN_DIGITS = 10;
+    private static final int MAX_DIGITS = 14;
+
+    // Digit-run, card and IBAN detectors; null when disabled in favour of the legacy regex
+    private final PiiScanner scanner;
+
+    // What the default path masks, for log messages
+    private final String description;
+
+    public DefaultMaskingProcessor(PiiDetectorProperties properties) {
+        this.scanner = properties.isEnabled() ? new PiiScanner(properties) : null;
+        this.description = scanner != null
+                ? String.format("detectors (digit runs %s, cards %s, IBANs %s)",
+                        properties.getDigitRuns().isEnabled() ? properties.getDigitRuns().getMinDigits() + "-"
+                                + properties.getDigitRuns().getMaxDigits() + " digits" : "off",
+                        properties.getCards().isEnabled() ? "on" : "off",
+                        properties.getIbans().isEnabled() ? "on" : "off")
+                : "legacy 10-14 digit regex";
+        log.info("Default masking: {}", description);
+    }
+
+    /**
+     * The configured detectors, or the legacy regex, e.g. "detectors (digit runs off, cards on, IBANs on)".
+     */
+    public String getDescription() {
+        return description;
+    }
 
     @Override
     public String mask(String payload, List<MaskingAttribute> attributes) {
         // For default processing, we ignore attributes and auto-detect account numbers
-        return maskConsecutiveDigits(payload);
+        return scanner != null ? scanner.mask(payload) : maskConsecutiveDigits(payload);
+    }
+
+    /**
+     * Both engines mask in place without changing the length, so each changed run is a patch.
+     */
+    @Override
+    public List<MaskingPatch> maskToPatches(String payload, List<MaskingAttribute> attributes) {
+        return MaskingPatches.diff(payload, mask(payload, attributes));
     }
 
     /**
@@ -41,4 +85,45 @@ public class DefaultMaskingProcessor implements MaskingProcessor {
         matcher.appendTail(maskedPayload);
         return maskedPayload.toString();
     }
+
+    /**
+     * Streaming equivalent of {@link #maskConsecutiveDigits(String)}: the greedy regex always
+     * takes 14 digits when available, so runs are masked in 14-digit chunks as they are read
+     * and only the current chunk is buffered.
+     */
+    public void mask(Reader in, Writer out, List<MaskingAttribute> attributes) throws IOException {
+        if (scanner != null) {
+            scanner.mask(in, out);
+            return;
+        }
+
+        StringBuilder run = new StringBuilder(MAX_DIGITS);
+        char[] buffer = new char[8192];
+        int n;
+
+        while ((n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                char c = buffer[i];
+                if (c >= '0' && c <= '9') {
+                    run.append(c);
+                    if (run.length() == MAX_DIGITS) {
+                        out.write(maskValue(run.toString()));
+                        run.setLength(0);
+                    }
+                } else {
+                    flushRun(run, out);
+                    out.write(c);
+                }
+            }
+        }
+        flushRun(run, out);
+    }
+
+    private void flushRun(StringBuilder run, Writer out) throws IOException {
+        if (run.length() == 0) {
+            return;
+        }
+        out.write(run.length() >= MIN_DIGITS ? maskValue(run.toString()) : run.toString());
+        run.setLength(0);
+    }
 }
@@ -0,0 +1,171 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.model.MaskingAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compiled masking plan for a fixed-length type: the configured ranges sorted by start,
+ * with overlapping ranges merged so every character is masked at most once.
+ * Adjacent ranges stay separate segments because they are distinct fields that each keep
+ * their own last four characters. A merged segment keeps its configured ranges as sources, so
+ * on a record too short for the whole segment the ranges that fit are still masked.
+ * Built once at startup and immutable afterwards.
+ */
+public final class FixedLengthMaskingPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(FixedLengthMaskingPlan.class);
+
+    private final String type;
+    private final List<Segment> segments;
+    private final int minRecordLength;   // Records shorter than this have nothing to mask
+    private final int maxEnd;
+
+    private FixedLengthMaskingPlan(String type, List<Segment> segments, int minRecordLength) {
+        this.type = type;
+        this.segments = Collections.unmodifiableList(segments);
+        this.minRecordLength = minRecordLength;
+        this.maxEnd = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).end;
+    }
+
+    /**
+     * Normalizes the ranges of a fixed-length type, logging invalid, out-of-order and overlapping entries.
+     *
+     * @param type Rule type the ranges belong to (for log messages)
+     * @param attributes Configured attributes; those without start/end are ignored
+     * @param minRecordLength Optional configured minimum record length
+     * @return The compiled plan
+     */
+    public static FixedLengthMaskingPlan compile(String type, List<MaskingAttribute> attributes, Integer minRecordLength) {
+        return compile(type, attributes, minRecordLength, true);
+    }
+
+    /**
+     * Compiles an ad-hoc plan without logging, for callers that pass raw attributes per request.
+     */
+    public static FixedLengthMaskingPlan of(List<MaskingAttribute> attributes) {
+        return compile("ad-hoc", attributes, null, false);
+    }
+
+    private static FixedLengthMaskingPlan compile(String type, List<MaskingAttribute> attributes,
+                                                  Integer minRecordLength, boolean warn) {
+        List<Segment> ranges = new ArrayList<>();
+        int previousStart = Integer.MIN_VALUE;
+        boolean outOfOrder = false;
+
+        for (MaskingAttribute attribute : attributes) {
+            if (attribute.getStart() == null || attribute.getEnd() == null) {
+                continue;
+            }
+            int start = attribute.getStart();
+            int end = attribute.getEnd();
+            if (start < 0 || start >= end) {
+                if (warn) {
+                    log.warn("Fixed-length type {}: ignoring invalid range [{},{})", type, start, end);
+                }
+                continue;
+            }
+            if (start < previousStart) {
+                outOfOrder = true;
+            }
+            previousStart = start;
+            ranges.add(new Segment(start, end, attribute));
+        }
+
+        if (outOfOrder && warn) {
+            log.warn("Fixed-length type {}: ranges are not in ascending order; they are applied sorted by start", type);
+        }
+        ranges.sort(Comparator.comparingInt((Segment segment) -> segment.start).thenComparingInt(segment -> segment.end));
+
+        List<Segment> merged = new ArrayList<>();
+        for (Segment range : ranges) {
+            Segment last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range.start < last.end) {
+                Segment union = last.merge(range);
+                if (warn) {
+                    log.warn("Fixed-length type {}: overlapping ranges [{},{}) and [{},{}) merged into [{},{})",
+                            type, last.start, last.end, range.start, range.end, union.start, union.end);
+                }
+                merged.set(merged.size() - 1, union);
+            } else {
+                merged.add(range);
+            }
+        }
+
+        // No range can apply to a record shorter than the smallest configured end; a merged segment's
+        // end is larger than its first range's, so it is not the minimum
+        int derivedMinimum = 0;
+        for (Segment range : ranges) {
+            derivedMinimum = derivedMinimum == 0 ? range.end : Math.min(derivedMinimum, range.end);
+        }
+        int minimum = minRecordLength != null ? Math.max(minRecordLength, derivedMinimum) : derivedMinimum;
+
+        return new FixedLengthMaskingPlan(type, merged, minimum);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public int getMinRecordLength() {
+        return minRecordLength;
+    }
+
+    /**
+     * Length of the record prefix covered by the plan; characters beyond it are never masked.
+     */
+    public int getMaxEnd() {
+        return maxEnd;
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     * A non-overlapping range [start, end) and the configured attributes it was built from, in order of
+     * their start. Their own ranges lie within it.
+     */
+    public static final class Segment {
+        private final int start;
+        private final int end;
+        private final List<MaskingAttribute> sources;
+
+        private Segment(int start, int end, MaskingAttribute source) {
+            this(start, end, Collections.singletonList(source));
+        }
+
+        private Segment(int start, int end, List<MaskingAttribute> sources) {
+            this.start = start;
+            this.end = end;
+            this.sources = sources;
+        }
+
+        private Segment merge(Segment other) {
+            List<MaskingAttribute> union = new ArrayList<>(sources);
+            union.addAll(other.sources);
+            return new Segment(start, Math.max(end, other.end), Collections.unmodifiableList(union));
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public List<MaskingAttribute> getSources() {
+            return sources;
+        }
+    }
+}
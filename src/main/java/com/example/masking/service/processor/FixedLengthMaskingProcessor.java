@@ -1,31 +1,112 @@
 package com.example.masking.service.processor;
 
 import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingPatch;
+import com.example.masking.service.RuleStatistics;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.List;
 
 @Component
 public class FixedLengthMaskingProcessor implements MaskingProcessor {
 
+    private final RuleStatistics ruleStatistics;
+
+    public FixedLengthMaskingProcessor(RuleStatistics ruleStatistics) {
+        this.ruleStatistics = ruleStatistics;
+    }
+
     @Override
     public String mask(String payload, List<MaskingAttribute> attributes) {
-        StringBuilder result = new StringBuilder(payload);
+        return mask(payload, FixedLengthMaskingPlan.of(attributes));
+    }
 
-        for (MaskingAttribute attribute : attributes) {
-            if (attribute.getStart() != null && attribute.getEnd() != null) {
-                int start = attribute.getStart();
-                int end = attribute.getEnd();
+    /**
+     * Masks a fixed-length record with a precompiled plan. Segments are sorted and
+     * non-overlapping, so masking stops at the first segment that runs past the record,
+     * once the configured ranges of that segment that fit in the record have been masked.
+     */
+    public String mask(String payload, FixedLengthMaskingPlan plan) {
+        int length = payload.length();
+        if (plan.isEmpty() || length < plan.getMinRecordLength()) {
+            return payload;
+        }
 
-                if (start >= 0 && end <= payload.length() && start < end) {
-                    String value = payload.substring(start, end);
-                    String maskedValue = maskValue(value);
+        char[] chars = payload.toCharArray();
 
-                    result.replace(start, end, maskedValue);
+        for (FixedLengthMaskingPlan.Segment segment : plan.getSegments()) {
+            if (segment.getEnd() > length) {
+                // Merged ranges that still fit are masked as configured, so a short record never
+                // leaks a field just because an overlapping one runs past it
+                for (MaskingAttribute source : segment.getSources()) {
+                    if (source.getEnd() <= length) {
+                        long startNanos = System.nanoTime();
+                        maskRange(chars, source.getStart(), source.getEnd());
+                        ruleStatistics.record(source, System.nanoTime() - startNanos, 1, 1, length);
+                    }
                 }
+                break;
             }
+            long startNanos = System.nanoTime();
+            maskRange(chars, segment.getStart(), segment.getEnd());
+
+            long nanos = (System.nanoTime() - startNanos) / segment.getSources().size();
+            for (MaskingAttribute source : segment.getSources()) {
+                ruleStatistics.record(source, nanos, 1, 1, length);
+            }
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Same result as maskValue(): everything but the last 4 characters of [start, end) becomes '*'.
+     */
+    private static void maskRange(char[] chars, int start, int end) {
+        for (int i = start; i < end - 4; i++) {
+            chars[i] = '*';
         }
+    }
+
+    @Override
+    public List<MaskingPatch> maskToPatches(String payload, List<MaskingAttribute> attributes) {
+        return maskToPatches(payload, FixedLengthMaskingPlan.of(attributes));
+    }
+
+    /**
+     * Patch variant of {@link #mask(String, FixedLengthMaskingPlan)}: masking is in place,
+     * so the changed runs of each segment are the patches.
+     */
+    public List<MaskingPatch> maskToPatches(String payload, FixedLengthMaskingPlan plan) {
+        return MaskingPatches.diff(payload, mask(payload, plan));
+    }
 
-        return result.toString();
+    public void mask(Reader in, Writer out, List<MaskingAttribute> attributes) throws IOException {
+        mask(in, out, FixedLengthMaskingPlan.of(attributes));
+    }
+
+    /**
+     * Streams a fixed-length payload: only the prefix covered by the plan is buffered
+     * and masked, the remainder is copied through unchanged.
+     */
+    public void mask(Reader in, Writer out, FixedLengthMaskingPlan plan) throws IOException {
+        // Segments beyond the payload length are skipped, so masking the buffered prefix
+        // gives the same result as masking the whole payload
+        int prefixLength = Math.max(plan.getMaxEnd(), plan.getMinRecordLength());
+        char[] prefix = new char[prefixLength];
+        int length = 0;
+        int n;
+        while (length < prefixLength && (n = in.read(prefix, length, prefixLength - length)) != -1) {
+            length += n;
+        }
+        out.write(mask(new String(prefix, 0, length), plan));
+
+        char[] buffer = new char[8192];
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
     }
 }
@@ -1,6 +1,21 @@
 package com.example.masking.service.processor;
 
+import com.example.masking.config.JsonRecordProperties;
 import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingPatch;
+import com.example.masking.service.MaskingLimitExceededException;
+import com.example.masking.service.MaskingLimits;
+import com.example.masking.service.RuleStatistics;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -9,42 +24,758 @@ import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 
 @Component
 public class JsonMaskingProcessor implements MaskingProcessor {
 
-    // Cache JSONPath configuration (immutable, thread-safe)
-    private static final Configuration JSON_PATH_CONFIG = Configuration.builder()
-            .options(Option.SUPPRESS_EXCEPTIONS, Option.DEFAULT_PATH_LEAF_TO_NULL)
+    private static final Logger log = LoggerFactory.getLogger(JsonMaskingProcessor.class);
+
+    // Cache JSONPath configuration (immutable, thread-safe).
+    // Built on first use so deployments without JSON rules skip JsonPath's provider setup.
+    private static final class JsonPathConfig {
+        private static final Configuration INSTANCE = Configuration.builder()
+                .options(Option.SUPPRESS_EXCEPTIONS, Option.DEFAULT_PATH_LEAF_TO_NULL)
+                .build();
+
+        // Same lookups, returning the normalized paths of the matches ($['a'][0]['b'])
+        private static final Configuration PATHS = Configuration.builder()
+                .options(Option.SUPPRESS_EXCEPTIONS, Option.AS_PATH_LIST)
+                .build();
+
+        // Masking each match of an indefinite path: without DEFAULT_PATH_LEAF_TO_NULL, so
+        // records missing the leaf are left alone instead of gaining it
+        private static final Configuration MATCHES = Configuration.builder()
+                .options(Option.SUPPRESS_EXCEPTIONS)
+                .build();
+    }
+
+    // Source positions and replacement text for the patch response mode
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Streaming engine: accepts the lenient syntax json-smart's permissive parser accepts
+    private static final JsonFactory STREAMING_FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS)
+            .enable(JsonReadFeature.ALLOW_LEADING_DECIMAL_POINT_FOR_NUMBERS)
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
             .build();
 
+    private final RuleStatistics ruleStatistics;
+    private final MaskingLimits maskingLimits;
+    private final int parallelism;
+    private final long batchChars;
+    private final int maxPendingBatches;
+
+    // Masks records of large arrays in parallel; started on first use
+    private volatile ForkJoinPool recordPool;
+
+    // Masks the values of nested rules; set by DataMaskingService, which depends on this processor
+    private NestedPayloadMasker nestedPayloadMasker;
+
+    // Configured (and rebased record) paths -> whether they select a single value
+    private final Map<String, Boolean> definitePaths = new ConcurrentHashMap<>();
+
+    public JsonMaskingProcessor(RuleStatistics ruleStatistics, MaskingLimits maskingLimits,
+                                JsonRecordProperties recordProperties) {
+        this.ruleStatistics = ruleStatistics;
+        this.maskingLimits = maskingLimits;
+        this.parallelism = recordProperties.getParallelism() > 0
+                ? recordProperties.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.batchChars = Math.max(1, recordProperties.getBatchSize().toBytes());
+        this.maxPendingBatches = Math.max(1, parallelism * recordProperties.getBatchesPerWorker());
+    }
+
+    public void setNestedPayloadMasker(NestedPayloadMasker nestedPayloadMasker) {
+        this.nestedPayloadMasker = nestedPayloadMasker;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (recordPool != null) {
+            recordPool.shutdownNow();
+        }
+    }
+
     @Override
     public String mask(String payload, List<MaskingAttribute> attributes) {
         try {
+            // Reject oversized structures before building the document
+            maskingLimits.checkJson(payload);
+
             // Use cached configuration
-            DocumentContext document = JsonPath.using(JSON_PATH_CONFIG).parse(payload);
-
-            for (MaskingAttribute attribute : attributes) {
-                if (attribute.getJsonpath() != null) {
-                    try {
-                        Object value = document.read(attribute.getJsonpath());
-
-                        if (value != null) {
-                            String maskedValue = maskValue(value.toString());
-                            document.set(attribute.getJsonpath(), maskedValue);
-                        }
-                    } catch (Exception e) {
-                        // Path not found or error reading, continue with next attribute
+            DocumentContext document = JsonPath.using(JsonPathConfig.INSTANCE).parse(payload);
+            applyRules(document, attributes, attributes, payload.length(), null);
+
+            return document.jsonString();
+        } catch (MaskingLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error masking JSON payload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Patch variant of {@link #mask(String, List)}: the masked values are located in the original text
+     * with a streaming parser, so the original formatting is kept. Falls back to a single whole-payload
+     * patch when the original cannot be tokenized strictly or a masked path is not found in it.
+     */
+    @Override
+    public List<MaskingPatch> maskToPatches(String payload, List<MaskingAttribute> attributes) {
+        try {
+            maskingLimits.checkJson(payload);
+
+            DocumentContext document = JsonPath.using(JsonPathConfig.INSTANCE).parse(payload);
+            Set<String> masked = new HashSet<>();
+            applyRules(document, attributes, attributes, payload.length(), masked);
+
+            List<MaskingPatch> patches = locate(payload, document, masked);
+            return patches != null ? patches : MaskingPatches.wholePayload(payload, document.jsonString());
+        } catch (MaskingLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error masking JSON payload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streaming engine: masks in one pass over parser tokens without building a tree, copying
+     * everything else to the generator. Masked values become the same strings as with JsonPath:
+     * scalars and containers are converted with the JsonPath provider's toString, and JSON nulls
+     * are left alone. Numbers elsewhere are copied as written.
+     *
+     * @param payloadChars Payload size, or -1 if unknown
+     */
+    public void maskStreaming(Reader in, Writer out, JsonStreamingPlan plan, long payloadChars) {
+        long startNanos = System.nanoTime();
+        Map<MaskingAttribute, Integer> matches = new IdentityHashMap<>();
+
+        try (JsonParser parser = STREAMING_FACTORY.createParser(in);
+             JsonGenerator generator = STREAMING_FACTORY.createGenerator(out)) {
+            // Trie node of each open object reached along rule names; null for other containers
+            JsonStreamingPlan.Node[] open = new JsonStreamingPlan.Node[32];
+            int depth = 0;
+            long[] nodes = new long[1];
+            JsonStreamingPlan.Node field = null;    // Trie node of the value after the last field name
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    JsonStreamingPlan.Node object = open[depth - 1];
+                    field = object != null ? object.child(parser.getCurrentName()) : null;
+                    generator.writeFieldName(parser.getCurrentName());
+                    continue;
+                }
+                if (token.isStructEnd()) {
+                    depth--;
+                    generator.copyCurrentEvent(parser);
+                    field = null;
+                    continue;
+                }
+
+                maskingLimits.checkNodes(++nodes[0]);
+                JsonStreamingPlan.Node node = depth == 0 ? plan.getRoot() : field;
+                field = null;
+
+                if (node != null && node.isMasked() && token != JsonToken.VALUE_NULL) {
+                    String value = providerString(parser, token, depth, nodes);
+                    generator.writeString(maskStreamed(node.getSources(), value, token == JsonToken.VALUE_STRING));
+                    for (MaskingAttribute source : node.getSources()) {
+                        matches.merge(source, 1, Integer::sum);
+                    }
+                } else if (node != null && node.hasRecords() && token.isStructStart()) {
+                    maskRecords(parser, generator, node, depth, nodes);
+                } else if (token.isStructStart()) {
+                    depth++;
+                    maskingLimits.checkDepth(depth);
+                    if (depth > open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
                     }
+                    open[depth - 1] = token == JsonToken.START_OBJECT ? node : null;
+                    generator.copyCurrentEvent(parser);
+                } else {
+                    copyScalar(parser, generator, token);
                 }
             }
+            generator.flush();
 
-            return document.jsonString();
+            // One pass evaluates every streamed rule, so the pass time is shared between them
+            List<MaskingAttribute> streamed = plan.getStreamedAttributes();
+            long nanos = streamed.isEmpty() ? 0 : (System.nanoTime() - startNanos) / streamed.size();
+            for (MaskingAttribute attribute : streamed) {
+                int matched = matches.getOrDefault(attribute, 0);
+                ruleStatistics.record(attribute, nanos, matched, matched, payloadChars);
+            }
+        } catch (MaskingLimitExceededException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Error masking JSON payload: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Patch variant of {@link #maskStreaming(Reader, Writer, JsonStreamingPlan, long)}: the same pass,
+     * but each masked value's token is returned as a patch (char offsets) against the original text
+     * instead of writing the masked payload. Records are cut out of the original text one at a time and
+     * masked to patches with the tree engine, on the request thread. Only the current record or value
+     * is held, so spilled payloads are never read into memory.
+     */
+    public List<MaskingPatch> maskStreamingToPatches(Reader in, JsonStreamingPlan plan, long payloadChars) {
+        long startNanos = System.nanoTime();
+        Map<MaskingAttribute, Integer> matches = new IdentityHashMap<>();
+        List<MaskingPatch> patches = new ArrayList<>();
+        SourceWindow source = new SourceWindow(in);
+
+        try (JsonParser parser = STREAMING_FACTORY.createParser(source)) {
+            JsonStreamingPlan.Node[] open = new JsonStreamingPlan.Node[32];
+            int depth = 0;
+            long[] nodes = new long[1];
+            JsonStreamingPlan.Node field = null;
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                source.release(parser.getTokenLocation().getCharOffset());
+                if (token == JsonToken.FIELD_NAME) {
+                    JsonStreamingPlan.Node object = open[depth - 1];
+                    field = object != null ? object.child(parser.getCurrentName()) : null;
+                    continue;
+                }
+                if (token.isStructEnd()) {
+                    depth--;
+                    field = null;
+                    continue;
+                }
+
+                maskingLimits.checkNodes(++nodes[0]);
+                JsonStreamingPlan.Node node = depth == 0 ? plan.getRoot() : field;
+                field = null;
+
+                if (node != null && node.isMasked() && token != JsonToken.VALUE_NULL) {
+                    long start = parser.getTokenLocation().getCharOffset();
+                    String value = providerString(parser, token, depth, nodes);
+                    String masked = maskStreamed(node.getSources(), value, token == JsonToken.VALUE_STRING);
+                    if (token != JsonToken.VALUE_STRING || !masked.equals(value)) {
+                        patches.add(new MaskingPatch(start, parser.getCurrentLocation().getCharOffset() - start,
+                                OBJECT_MAPPER.writeValueAsString(masked)));
+                    }
+                    for (MaskingAttribute attribute : node.getSources()) {
+                        matches.merge(attribute, 1, Integer::sum);
+                    }
+                } else if (node != null && node.hasRecords() && token.isStructStart()) {
+                    maskRecordsToPatches(parser, source, node, depth, nodes, patches);
+                } else if (token.isStructStart()) {
+                    depth++;
+                    maskingLimits.checkDepth(depth);
+                    if (depth > open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth - 1] = token == JsonToken.START_OBJECT ? node : null;
+                } else if (token == JsonToken.VALUE_STRING) {
+                    maskingLimits.checkStringLength(parser.getTextLength());
+                }
+            }
+
+            List<MaskingAttribute> streamed = plan.getStreamedAttributes();
+            long nanos = streamed.isEmpty() ? 0 : (System.nanoTime() - startNanos) / streamed.size();
+            for (MaskingAttribute attribute : streamed) {
+                int matched = matches.getOrDefault(attribute, 0);
+                ruleStatistics.record(attribute, nanos, matched, matched, payloadChars);
+            }
+            return patches;
+        } catch (MaskingLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error masking JSON payload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Patch variant of {@link #maskRecords}: each record's original text is masked to patches with the
+     * tree engine and the patches are moved to the record's offset. A record whose masked values cannot
+     * be located in its text gets one patch replacing the whole record. Leaves the parser on the
+     * container's end token.
+     */
+    private void maskRecordsToPatches(JsonParser parser, SourceWindow source, JsonStreamingPlan.Node node, int depth,
+                                      long[] nodes, List<MaskingPatch> patches) throws IOException {
+        maskingLimits.checkDepth(depth + 1);
+        boolean object = parser.currentToken() == JsonToken.START_OBJECT;
+
+        String name = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && !token.isStructEnd()) {
+            if (token == JsonToken.FIELD_NAME) {
+                name = parser.getCurrentName();
+                continue;
+            }
+            maskingLimits.checkNodes(++nodes[0]);
+            long start = parser.getTokenLocation().getCharOffset();
+            source.release(start);
+            copyValue(parser, token, depth + 1, nodes);     // Checks the limits inside the record
+            long end = parser.getCurrentLocation().getCharOffset();
+
+            JsonStreamingPlan.Node field = object ? node.child(name) : null;
+            if (field != null) {
+                // As in maskRecord: masked as {"name": value}, so rules that mask the whole field can replace it
+                String prefix = "{\"" + new String(JsonStringEncoder.getInstance().quoteAsString(name)) + "\":";
+                String wrapped = prefix + source.text(start, end) + "}";
+                DocumentContext document = JsonPath.using(JsonPathConfig.INSTANCE).parse(wrapped);
+                Set<String> masked = new HashSet<>();
+                applyRules(document, field.getFieldRules(), field.getFieldSources(), wrapped.length(), masked);
+                List<MaskingPatch> located = locate(wrapped, document, masked);
+                if (located != null) {
+                    shift(located, start - prefix.length(), patches);
+                } else {
+                    Object value = ((Map<?, ?>) document.json()).get(name);
+                    patches.add(new MaskingPatch(start, end - start,
+                            JsonPathConfig.INSTANCE.jsonProvider().toJson(value)));
+                }
+            } else if (token.isStructStart()) {
+                String record = source.text(start, end);
+                DocumentContext document = JsonPath.using(JsonPathConfig.INSTANCE).parse(record);
+                Set<String> masked = new HashSet<>();
+                applyRules(document, node.getRecordRules(), node.getRecordSources(), record.length(), masked);
+                List<MaskingPatch> located = locate(record, document, masked);
+                if (located != null) {
+                    shift(located, start, patches);
+                } else {
+                    shift(MaskingPatches.wholePayload(record, document.jsonString()), start, patches);
+                }
+            }
+            name = null;
+        }
+    }
+
+    private static void shift(List<MaskingPatch> located, long offset, List<MaskingPatch> patches) {
+        for (MaskingPatch patch : located) {
+            patch.setOffset(patch.getOffset() + offset);
+            patches.add(patch);
+        }
+    }
+
+    /**
+     * Masks a streamed value with each rule at its node in turn, as the JsonPath engine applies them:
+     * a nested rule only masks string values as payloads, and any masked value is a string.
+     */
+    private String maskStreamed(List<MaskingAttribute> sources, String value, boolean string) {
+        for (MaskingAttribute source : sources) {
+            value = string ? maskMatch(source, value) : maskValue(value);
+            string = true;
+        }
+        return value;
+    }
+
+    /**
+     * The value at the parser's position as the string the JsonPath engine masks: the provider's
+     * toString of the parsed value, so numbers and containers are rendered the same way.
+     */
+    private String providerString(JsonParser parser, JsonToken token, int depth, long[] nodes) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                maskingLimits.checkStringLength(parser.getTextLength());
+                return parser.getText();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return String.valueOf(JsonPathConfig.INSTANCE.jsonProvider().parse(parser.getText()));
+            default:
+                return String.valueOf(JsonPathConfig.INSTANCE.jsonProvider().parse(copyValue(parser, token, depth, nodes)));
+        }
+    }
+
+    /**
+     * Copies the value at the parser's position (a scalar or a whole container) to a strict JSON
+     * string, checking the limits for everything inside it.
+     *
+     * @param depth Open containers around the value
+     */
+    private String copyValue(JsonParser parser, JsonToken token, int depth, long[] nodes) throws IOException {
+        StringWriter value = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(value)) {
+            int level = 0;
+            do {
+                if (token.isStructStart()) {
+                    maskingLimits.checkDepth(depth + ++level);
+                } else if (token.isStructEnd()) {
+                    level--;
+                } else if (token != JsonToken.FIELD_NAME && level > 0) {
+                    maskingLimits.checkNodes(++nodes[0]);
+                }
+                copyScalar(parser, generator, token);
+            } while (level > 0 && (token = parser.nextToken()) != null);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Masks the container at a record rule's node: each array element (or, for an object, each
+     * field value) is cut out as a record and masked with the tree engine against the record-relative
+     * rules. Records are masked in batches, on the record pool when there is more than one batch,
+     * and written back in their original order. Leaves the parser on the container's end token.
+     */
+    private void maskRecords(JsonParser parser, JsonGenerator generator, JsonStreamingPlan.Node node, int depth,
+                             long[] nodes) throws IOException {
+        maskingLimits.checkDepth(depth + 1);
+        generator.copyCurrentEvent(parser);
+        boolean object = parser.currentToken() == JsonToken.START_OBJECT;
+
+        RecordBatches batches = new RecordBatches(generator);
+        try {
+            String name = null;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && !token.isStructEnd()) {
+                if (token == JsonToken.FIELD_NAME) {
+                    name = parser.getCurrentName();
+                    continue;
+                }
+                maskingLimits.checkNodes(++nodes[0]);
+                String value = copyValue(parser, token, depth + 1, nodes);
+
+                JsonStreamingPlan.Node field = object ? node.child(name) : null;
+                if (field != null) {
+                    // Other rules reach this field too: mask it with all of them, as {"name": value}
+                    batches.add(new Record(name, value, true, field.getFieldRules(), field.getFieldSources()));
+                } else if (token.isStructStart()) {
+                    batches.add(new Record(name, value, false, node.getRecordRules(), node.getRecordSources()));
+                } else {
+                    batches.add(new Record(name, value, false, null, null));   // Record rules select nothing in scalars
+                }
+                name = null;
+            }
+            batches.finish();
+            batches = null;
+        } finally {
+            if (batches != null) {
+                batches.cancel();
+            }
+        }
+        generator.copyCurrentEvent(parser);
+    }
+
+    /**
+     * Masks one record (or record field) with the tree engine and returns it as JSON.
+     */
+    private String maskRecord(Record record) {
+        if (record.rules == null) {
+            return record.value;
+        }
+        if (!record.field) {
+            DocumentContext document = JsonPath.using(JsonPathConfig.INSTANCE).parse(record.value);
+            applyRules(document, record.rules, record.sources, record.value.length(), null);
+            return document.jsonString();
+        }
+
+        // Wrapped as {"name": value}, so rules that mask the whole field can replace it
+        String wrapped = "{\"" + new String(JsonStringEncoder.getInstance().quoteAsString(record.name)) + "\":"
+                + record.value + "}";
+        DocumentContext document = JsonPath.using(JsonPathConfig.INSTANCE).parse(wrapped);
+        applyRules(document, record.rules, record.sources, wrapped.length(), null);
+        Object value = ((Map<?, ?>) document.json()).get(record.name);
+        return JsonPathConfig.INSTANCE.jsonProvider().toJson(value);
+    }
+
+    private ForkJoinPool recordPool() {
+        ForkJoinPool pool = recordPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = recordPool;
+                if (pool == null) {
+                    pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                        thread.setName("masking-json-records-" + thread.getPoolIndex());
+                        return thread;
+                    }, null, false);
+                    log.info("Started JSON record pool with {} threads", parallelism);
+                    recordPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * A record cut out of a record container: an array element or an object's field value.
+     */
+    private static final class Record {
+        private final String name;                      // Field name, null for array elements
+        private final String value;                     // The record as strict JSON
+        private final boolean field;                    // Rules are rebased onto {"name": value}
+        private final List<MaskingAttribute> rules;     // null: copied unchanged
+        private final List<MaskingAttribute> sources;
+        private String masked;
+
+        private Record(String name, String value, boolean field, List<MaskingAttribute> rules,
+                       List<MaskingAttribute> sources) {
+            this.name = name;
+            this.value = value;
+            this.field = field;
+            this.rules = rules;
+            this.sources = sources;
+        }
+    }
+
+    /**
+     * Groups the records of one container into batches of about {@code batchChars}. Full batches go
+     * to the record pool, at most {@code maxPendingBatches} ahead of the writer; the last batch is
+     * masked on the request thread, so containers smaller than one batch never leave it.
+     */
+    private final class RecordBatches {
+        private final JsonGenerator generator;
+        private final Deque<Batch> pending = new ArrayDeque<>();
+        private Batch current = new Batch();
+
+        private RecordBatches(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        private void add(Record record) throws IOException {
+            current.records.add(record);
+            current.chars += record.value.length();
+            if (current.chars < batchChars) {
+                return;
+            }
+
+            Batch full = current;
+            current = new Batch();
+            if (parallelism <= 1) {
+                full.run();
+                write(full);
+                return;
+            }
+            Runnable task = nestedPayloadMasker != null ? nestedPayloadMasker.forRequest(full) : full;
+            full.future = recordPool().submit(maskingLimits.withRequestLimits(task));
+            pending.add(full);
+            while (pending.size() > maxPendingBatches) {
+                write(await(pending.poll()));
+            }
+        }
+
+        private void finish() throws IOException {
+            current.run();
+            while (!pending.isEmpty()) {
+                write(await(pending.poll()));
+            }
+            write(current);
+        }
+
+        private void cancel() {
+            for (Batch batch : pending) {
+                batch.future.cancel(true);
+            }
+        }
+
+        private Batch await(Batch batch) {
+            try {
+                batch.future.get();
+                return batch;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while masking JSON records", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        private void write(Batch batch) throws IOException {
+            for (Record record : batch.records) {
+                if (record.name != null) {
+                    generator.writeFieldName(record.name);
+                }
+                generator.writeRawValue(record.masked);
+            }
+        }
+    }
+
+    private final class Batch implements Runnable {
+        private final List<Record> records = new ArrayList<>();
+        private long chars;
+        private Future<?> future;
+
+        @Override
+        public void run() {
+            for (Record record : records) {
+                record.masked = maskRecord(record);
+            }
+        }
+    }
+
+    private void copyScalar(JsonParser parser, JsonGenerator generator, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                maskingLimits.checkStringLength(parser.getTextLength());
+                generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                break;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                generator.writeNumber(parser.getText());   // Keeps the literal as written
+                break;
+            default:
+                generator.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Evaluates each rule's JSONPath and masks the match in place. A definite path masks its value;
+     * an indefinite one ({@code $[*].account.accountNumber}) masks each value it selects.
+     *
+     * @param attributes Rules to evaluate
+     * @param sources The configured rule each attribute stands for (the same list unless rules were rebased)
+     * @param masked Collects the normalized paths of masked values for the patch response mode, or null
+     */
+    private void applyRules(DocumentContext document, List<MaskingAttribute> attributes,
+                            List<MaskingAttribute> sources, long payloadChars, Set<String> masked) {
+        for (int i = 0; i < attributes.size(); i++) {
+            MaskingAttribute attribute = attributes.get(i);
+            if (attribute.getJsonpath() != null) {
+                maskingLimits.checkDeadline();
+                long start = System.nanoTime();
+                try {
+                    int matched = isDefinite(attribute.getJsonpath())
+                            ? maskDefinite(document, attribute.getJsonpath(), sources.get(i), masked)
+                            : maskEach(document, attribute.getJsonpath(), sources.get(i), masked);
+                    ruleStatistics.record(sources.get(i), System.nanoTime() - start, matched, matched, payloadChars);
+                } catch (MaskingLimitExceededException e) {
+                    throw e;    // From a nested payload: aborts the request like any other limit
+                } catch (Exception e) {
+                    // Path not found or error reading, continue with next attribute
+                    ruleStatistics.recordError(sources.get(i), System.nanoTime() - start);
+                    log.debug("JSONPath {} failed: {}", attribute.getJsonpath(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private boolean isDefinite(String jsonpath) {
+        return definitePaths.computeIfAbsent(jsonpath, path -> JsonPath.compile(path).isDefinite());
+    }
+
+    private int maskDefinite(DocumentContext document, String jsonpath, MaskingAttribute rule, Set<String> masked) {
+        Object value = document.read(jsonpath);
+        if (value == null) {
+            return 0;
+        }
+        if (masked != null) {
+            List<String> paths = JsonPath.using(JsonPathConfig.PATHS).parse((Object) document.json()).read(jsonpath);
+            masked.addAll(paths);
+        }
+        document.set(jsonpath, maskMatch(rule, value));
+        return 1;
+    }
+
+    private int maskEach(DocumentContext document, String jsonpath, MaskingAttribute rule, Set<String> masked) {
+        if (masked != null) {
+            List<String> paths = JsonPath.using(JsonPathConfig.PATHS).parse((Object) document.json()).read(jsonpath);
+            masked.addAll(paths);
+        }
+        int[] matched = new int[1];
+        JsonPath.using(JsonPathConfig.MATCHES).parse((Object) document.json()).map(jsonpath, (value, configuration) -> {
+            if (value == null) {
+                return null;
+            }
+            matched[0]++;
+            return maskMatch(rule, value);
+        });
+        return matched[0];
+    }
+
+    /**
+     * Masks a matched value: the payload in a string for a nested rule, otherwise with {@link #maskValue(String)}.
+     */
+    private String maskMatch(MaskingAttribute rule, Object value) {
+        if (rule.isNested() && value instanceof String && nestedPayloadMasker != null) {
+            return nestedPayloadMasker.mask(rule, (String) value);
+        }
+        return maskValue(value.toString());
+    }
+
+    /**
+     * Finds each masked path's token span in the original text and pairs it with the final value
+     * as JSON. Returns null if a path cannot be found.
+     */
+    private static List<MaskingPatch> locate(String payload, DocumentContext document, Set<String> masked)
+            throws IOException {
+        List<MaskingPatch> patches = new ArrayList<>();
+        Set<String> remaining = new HashSet<>(masked);
+
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            JsonToken token;
+            while (!remaining.isEmpty() && (token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME || token.isStructEnd()) {
+                    continue;
+                }
+                // A container's own context is already open when its start token is read
+                JsonStreamContext context = token.isStructStart()
+                        ? parser.getParsingContext().getParent()
+                        : parser.getParsingContext();
+                String path = valuePath(context);
+                if (!remaining.remove(path)) {
+                    continue;
+                }
+
+                int start = (int) parser.getTokenLocation().getCharOffset();
+                if (token.isStructStart()) {
+                    parser.skipChildren();
+                    // Values inside a masked container were replaced along with it
+                    remaining.removeIf(p -> p.startsWith(path + "[") || p.startsWith(path + "['"));
+                } else {
+                    parser.getText();   // Completes the token, so the location is past its closing quote
+                }
+                int end = (int) parser.getCurrentLocation().getCharOffset();
+
+                String replacement = OBJECT_MAPPER.writeValueAsString(document.read(path));
+                if (end - start != replacement.length() || !payload.regionMatches(start, replacement, 0, end - start)) {
+                    patches.add(new MaskingPatch(start, end - start, replacement));
+                }
+            }
+        } catch (JsonProcessingException e) {
+            log.debug("Cannot locate masked values in the original JSON: {}", e.getOriginalMessage());
+            return null;
+        }
+        return remaining.isEmpty() ? MaskingPatches.normalize(patches) : null;
+    }
+
+    /**
+     * Normalized JSONPath of the value at the current position of {@code context}, matching {@link Option#AS_PATH_LIST}.
+     */
+    private static String valuePath(JsonStreamContext context) {
+        if (context.inRoot()) {
+            return "$";
+        }
+        String container = valuePath(context.getParent());
+        return context.inArray()
+                ? container + "[" + context.getCurrentIndex() + "]"
+                : container + "['" + context.getCurrentName() + "']";
+    }
 }
@@ -0,0 +1,309 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.model.MaskingAttribute;
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JSON rules compiled for the streaming engine: a trie over the field names of definite paths
+ * from the root ({@code $.a.b} or {@code $['a']['b']}). Deep scans, indexes and filters need the
+ * tree, as do rules that are a prefix of another rule (masking the outer value turns it into a
+ * string, so the order of evaluation would matter). Built once at startup and immutable afterwards.
+ *
+ * <p>Record rules ({@code $[*].account.accountNumber}, {@code $.batch.records[*].iban}) are a
+ * definite prefix, a wildcard and a record-relative rest. The node at the prefix collects the
+ * rest as a rule relative to each record ({@code $.account.accountNumber}); the streaming engine
+ * cuts the records out of the array while streaming and masks each one with the tree engine,
+ * in parallel for large arrays. When the prefix holds an object instead, the wildcard selects
+ * each field value, like JsonPath does; fields that other rules also reach are masked together
+ * with those rules, in configuration order.
+ */
+public final class JsonStreamingPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(JsonStreamingPlan.class);
+
+    // One step: .name or ['name'] / ["name"]
+    private static final Pattern STEP = Pattern.compile("\\.([A-Za-z_$][\\w$\\-]*)|\\['([^'\\\\]+)'\\]|\\[\"([^\"\\\\]+)\"\\]");
+
+    // Definite prefix, then [*] or .* and the record-relative rest
+    private static final Pattern RECORDS = Pattern.compile("^(\\$.*?)(?:\\[\\*\\]|\\.\\*)(.+)$");
+
+    private final Node root;
+    private final List<MaskingAttribute> attributes;
+    private final List<MaskingAttribute> streamedAttributes;
+
+    private JsonStreamingPlan(Node root, List<MaskingAttribute> attributes, List<MaskingAttribute> streamedAttributes) {
+        this.root = root;
+        this.attributes = Collections.unmodifiableList(attributes);
+        this.streamedAttributes = Collections.unmodifiableList(streamedAttributes);
+    }
+
+    /**
+     * Compiles the JSONPath rules of a type, or returns null if any of them needs the tree engine.
+     *
+     * @param type Rule type the attributes belong to (for log messages)
+     */
+    public static JsonStreamingPlan compile(String type, List<MaskingAttribute> attributes) {
+        Node root = new Node();
+        List<Rule> rules = new ArrayList<>();
+        for (MaskingAttribute attribute : attributes) {
+            if (attribute.getJsonpath() == null) {
+                continue;
+            }
+            Rule rule = Rule.parse(attribute);
+            if (rule == null) {
+                log.info("JSON type {} uses the tree engine only: {} is not streaming-compatible",
+                        type, attribute.getJsonpath());
+                return null;
+            }
+            if (!rule.addTo(root)) {
+                log.info("JSON type {} uses the tree engine only: {} overlaps another rule",
+                        type, attribute.getJsonpath());
+                return null;
+            }
+            rules.add(rule);
+        }
+        if (rules.isEmpty()) {
+            return null;
+        }
+
+        // Fields of a record object that other rules reach are masked with all of those rules at once
+        List<MaskingAttribute> compiled = new ArrayList<>();
+        List<MaskingAttribute> streamed = new ArrayList<>();
+        for (Rule rule : rules) {
+            compiled.add(rule.source);
+            if (rule.recordRest == null && !rule.underRecords(root)) {
+                streamed.add(rule.source);
+            }
+        }
+        root.compileFields(new ArrayList<>(), rules);
+        return new JsonStreamingPlan(root, compiled, streamed);
+    }
+
+    /**
+     * The trie node for the root object.
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    public List<MaskingAttribute> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * The rules the streaming pass itself evaluates; record rules and the rules that share a record
+     * object's fields with them are evaluated per record.
+     */
+    public List<MaskingAttribute> getStreamedAttributes() {
+        return streamedAttributes;
+    }
+
+    private static List<String> parse(String jsonpath) {
+        if (!jsonpath.startsWith("$")) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        Matcher matcher = STEP.matcher(jsonpath);
+        int position = 1;
+        while (position < jsonpath.length()) {
+            if (!matcher.find(position) || matcher.start() != position) {
+                return null;
+            }
+            String name = matcher.group(1) != null ? matcher.group(1)
+                    : matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            names.add(name);
+            position = matcher.end();
+        }
+        return names;
+    }
+
+    private static String definitePath(List<String> names) {
+        StringBuilder path = new StringBuilder("$");
+        for (String name : names) {
+            path.append("['").append(name).append("']");
+        }
+        return path.toString();
+    }
+
+    /**
+     * One configured rule: the field names of its definite part and, for record rules, the rest.
+     */
+    private static final class Rule {
+        private final MaskingAttribute source;
+        private final List<String> names;
+        private final String recordRest;    // After the wildcard, e.g. ".account.accountNumber"; null if definite
+
+        private Rule(MaskingAttribute source, List<String> names, String recordRest) {
+            this.source = source;
+            this.names = names;
+            this.recordRest = recordRest;
+        }
+
+        private static Rule parse(MaskingAttribute attribute) {
+            String jsonpath = attribute.getJsonpath().trim();
+            List<String> names = JsonStreamingPlan.parse(jsonpath);
+            if (names != null) {
+                return names.isEmpty() ? null : new Rule(attribute, names, null);
+            }
+
+            Matcher records = RECORDS.matcher(jsonpath);
+            if (!records.matches()) {
+                return null;
+            }
+            names = JsonStreamingPlan.parse(records.group(1));
+            String rest = records.group(2);
+            if (names == null || !(rest.startsWith(".") || rest.startsWith("["))) {
+                return null;
+            }
+            try {
+                JsonPath.compile("$" + rest);
+            } catch (InvalidPathException e) {
+                return null;
+            }
+            return new Rule(attribute, names, rest);
+        }
+
+        /**
+         * Adds the rule to the trie; false if it conflicts with a masked value on the way.
+         */
+        private boolean addTo(Node root) {
+            Node node = root;
+            for (String name : names) {
+                if (node.isMasked()) {
+                    return false;
+                }
+                node = node.children.computeIfAbsent(name, k -> new Node());
+            }
+            if (recordRest != null) {
+                if (node.isMasked()) {
+                    return false;
+                }
+                node.records.add(new MaskingAttribute(null, "$" + recordRest, null, null));
+                node.recordSources.add(source);
+                return true;
+            }
+            if (!node.children.isEmpty() || node.hasRecords()) {
+                return false;
+            }
+            node.sources.add(source);
+            return true;
+        }
+
+        private boolean underRecords(Node root) {
+            Node node = root;
+            for (String name : names) {
+                if (node.hasRecords()) {
+                    return true;
+                }
+                node = node.children.get(name);
+            }
+            return false;
+        }
+
+        private boolean startsWith(List<String> prefix) {
+            return names.size() >= prefix.size() && names.subList(0, prefix.size()).equals(prefix);
+        }
+
+        /**
+         * The rule rebased onto a one-field document holding the value at {@code prefix}: a record
+         * object's field and everything below it, e.g. {@code $['account']['accountNumber']}.
+         */
+        private MaskingAttribute rebase(List<String> prefix) {
+            String rest = definitePath(names.subList(prefix.size(), names.size()));
+            return new MaskingAttribute(null, recordRest != null ? rest + "[*]" + recordRest : rest, null, null);
+        }
+    }
+
+    /**
+     * A field name reached from the root. A masked node has neither children nor record rules.
+     */
+    public static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<MaskingAttribute> sources = new ArrayList<>(1);
+
+        // Record rules at this node: relative to each record, with the configured rules they came from
+        private final List<MaskingAttribute> records = new ArrayList<>(1);
+        private final List<MaskingAttribute> recordSources = new ArrayList<>(1);
+
+        // Child of a record rule node: every rule that reaches this field of a record object, in configuration order
+        private List<MaskingAttribute> fieldRules;
+        private List<MaskingAttribute> fieldSources;
+
+        public Node child(String name) {
+            return children.get(name);
+        }
+
+        public boolean isMasked() {
+            return !sources.isEmpty();
+        }
+
+        /**
+         * The rules that mask the value at this node (duplicates of the same path are allowed).
+         */
+        public List<MaskingAttribute> getSources() {
+            return Collections.unmodifiableList(sources);
+        }
+
+        public boolean hasRecords() {
+            return !records.isEmpty();
+        }
+
+        /**
+         * Record rules relative to each element (or field value) of the container at this node.
+         */
+        public List<MaskingAttribute> getRecordRules() {
+            return Collections.unmodifiableList(records);
+        }
+
+        public List<MaskingAttribute> getRecordSources() {
+            return Collections.unmodifiableList(recordSources);
+        }
+
+        /**
+         * For a field of a record object that other rules also reach: all rules for the field,
+         * rebased onto a document holding only this field ({@code {"name": value}}).
+         */
+        public List<MaskingAttribute> getFieldRules() {
+            return fieldRules;
+        }
+
+        public List<MaskingAttribute> getFieldSources() {
+            return fieldSources;
+        }
+
+        private void compileFields(List<String> path, List<Rule> rules) {
+            for (Map.Entry<String, Node> entry : children.entrySet()) {
+                List<String> childPath = new ArrayList<>(path);
+                childPath.add(entry.getKey());
+                if (hasRecords()) {
+                    Node field = entry.getValue();
+                    field.fieldRules = new ArrayList<>();
+                    field.fieldSources = new ArrayList<>();
+                    // Rules are in configuration order already
+                    for (Rule rule : rules) {
+                        if (rule.startsWith(childPath)) {
+                            field.fieldRules.add(rule.rebase(path));
+                            field.fieldSources.add(rule.source);
+                        } else if (rule.recordRest != null && rule.names.equals(path)) {
+                            field.fieldRules.add(new MaskingAttribute(null,
+                                    definitePath(Collections.singletonList(entry.getKey())) + rule.recordRest, null, null));
+                            field.fieldSources.add(rule.source);
+                        }
+                    }
+                }
+                entry.getValue().compileFields(childPath, rules);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.model.MaskingPatch;
+import com.example.masking.model.PatchOffsetUnit;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Helpers for the patch response mode. Processors produce patches in char offsets against the
+ * original payload; {@link #toUtf8(String, List)} converts them when byte offsets were requested.
+ */
+public final class MaskingPatches {
+
+    private MaskingPatches() {
+    }
+
+    /**
+     * Single patch replacing the whole payload, for masked output that cannot be mapped back to the original.
+     */
+    public static List<MaskingPatch> wholePayload(String original, String masked) {
+        if (original.equals(masked)) {
+            return new ArrayList<>();
+        }
+        List<MaskingPatch> patches = new ArrayList<>(1);
+        patches.add(new MaskingPatch(0, original.length(), masked));
+        return patches;
+    }
+
+    /**
+     * Patches for an engine that masks in place without changing the payload length:
+     * one patch per run of changed characters.
+     */
+    public static List<MaskingPatch> diff(String original, String masked) {
+        if (original.length() != masked.length()) {
+            return wholePayload(original, masked);
+        }
+        List<MaskingPatch> patches = new ArrayList<>();
+        int length = original.length();
+        int i = 0;
+        while (i < length) {
+            if (original.charAt(i) == masked.charAt(i)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && original.charAt(i) != masked.charAt(i)) {
+                i++;
+            }
+            patches.add(new MaskingPatch(start, i - start, masked.substring(start, i)));
+        }
+        return patches;
+    }
+
+    /**
+     * Streaming variant of {@link #diff(String, String)} for spilled payloads, producing offsets in
+     * the requested unit directly. Both readers must yield the same number of characters.
+     */
+    public static List<MaskingPatch> diff(Reader original, Reader masked, PatchOffsetUnit unit) throws IOException {
+        List<MaskingPatch> patches = new ArrayList<>();
+        char[] a = new char[8192];
+        char[] b = new char[8192];
+        long position = 0;        // In the requested unit
+        long runStart = -1;
+        StringBuilder run = new StringBuilder();
+        int n;
+
+        while ((n = readFully(original, a)) > 0) {
+            if (readFully(masked, b) != n) {
+                throw new IOException("Masked output length differs from the payload");
+            }
+            for (int i = 0; i < n; i++) {
+                if (a[i] != b[i]) {
+                    if (runStart < 0) {
+                        runStart = position;
+                    }
+                    run.append(b[i]);
+                } else if (runStart >= 0) {
+                    patches.add(new MaskingPatch(runStart, position - runStart, run.toString()));
+                    runStart = -1;
+                    run.setLength(0);
+                }
+                position += unit == PatchOffsetUnit.UTF8 ? utf8Length(a[i]) : 1;
+            }
+        }
+        if (runStart >= 0) {
+            patches.add(new MaskingPatch(runStart, position - runStart, run.toString()));
+        }
+        return patches;
+    }
+
+    /**
+     * Sorts patches by offset and drops any patch inside an earlier one, e.g. a value whose
+     * enclosing element was masked by a later rule.
+     */
+    public static List<MaskingPatch> normalize(List<MaskingPatch> patches) {
+        patches.sort(Comparator.comparingLong(MaskingPatch::getOffset)
+                .thenComparing(Comparator.comparingLong(MaskingPatch::getLength).reversed()));
+        List<MaskingPatch> result = new ArrayList<>(patches.size());
+        long previousStart = -1;
+        long coveredTo = -1;
+        for (MaskingPatch patch : patches) {
+            if (patch.getOffset() < coveredTo || patch.getOffset() == previousStart) {
+                continue;
+            }
+            result.add(patch);
+            previousStart = patch.getOffset();
+            coveredTo = patch.getOffset() + patch.getLength();
+        }
+        return result;
+    }
+
+    /**
+     * Converts sorted, non-overlapping char-offset patches to UTF-8 byte offsets in one pass over the payload.
+     */
+    public static void toUtf8(String original, List<MaskingPatch> patches) {
+        int charIndex = 0;
+        long byteIndex = 0;
+        for (MaskingPatch patch : patches) {
+            int start = (int) patch.getOffset();
+            int end = start + (int) patch.getLength();
+            for (; charIndex < start; charIndex++) {
+                byteIndex += utf8Length(original.charAt(charIndex));
+            }
+            long byteStart = byteIndex;
+            for (; charIndex < end; charIndex++) {
+                byteIndex += utf8Length(original.charAt(charIndex));
+            }
+            patch.setOffset(byteStart);
+            patch.setLength(byteIndex - byteStart);
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #toUtf8(String, List)} for spilled payloads: converts in one pass
+     * over the original read from {@code original}.
+     */
+    public static void toUtf8(Reader original, List<MaskingPatch> patches) throws IOException {
+        char[] buffer = new char[8192];
+        long charIndex = 0;         // Chars of the original consumed so far
+        long byteIndex = 0;
+        int position = 0;
+        int length = 0;
+        for (MaskingPatch patch : patches) {
+            long[] bounds = {patch.getOffset(), patch.getOffset() + patch.getLength()};
+            for (int b = 0; b < 2; b++) {
+                while (charIndex < bounds[b]) {
+                    if (position == length) {
+                        length = readFully(original, buffer);
+                        position = 0;
+                        if (length == 0) {
+                            throw new IOException("Patch offset " + bounds[b] + " is past the end of the payload");
+                        }
+                    }
+                    byteIndex += utf8Length(buffer[position++]);
+                    charIndex++;
+                }
+                bounds[b] = byteIndex;
+            }
+            patch.setOffset(bounds[0]);
+            patch.setLength(bounds[1] - bounds[0]);
+        }
+    }
+
+    /**
+     * Applies char-offset patches to the original payload, as a client holding the original would.
+     */
+    public static String apply(String original, List<MaskingPatch> patches) {
+        List<MaskingPatch> sorted = new ArrayList<>(patches);
+        sorted.sort(Comparator.comparingLong(MaskingPatch::getOffset));
+        StringBuilder result = new StringBuilder(original.length());
+        int position = 0;
+        for (MaskingPatch patch : sorted) {
+            result.append(original, position, (int) patch.getOffset()).append(patch.getReplacement());
+            position = (int) (patch.getOffset() + patch.getLength());
+        }
+        return result.append(original, position, original.length()).toString();
+    }
+
+    /**
+     * UTF-8 encoded length of a string, without encoding it.
+     */
+    public static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            length += utf8Length(text.charAt(i));
+        }
+        return length;
+    }
+
+    // Surrogates count 2 each, so a pair counts the 4 bytes of its code point
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800 || Character.isSurrogate(c)) {
+            return 2;
+        }
+        return 3;
+    }
+
+    private static int readFully(Reader in, char[] buffer) throws IOException {
+        int length = 0;
+        int n;
+        while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += n;
+        }
+        return length;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.masking.service.processor;
 
 import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingPatch;
 
 import java.util.List;
 
@@ -8,6 +9,14 @@ public interface MaskingProcessor {
 
     String mask(String payload, List<MaskingAttribute> attributes);
 
+    /**
+     * Masks a payload and describes the result as patches against the original, in char offsets.
+     * The default is a single whole-payload patch; processors that know where they mask override this.
+     */
+    default List<MaskingPatch> maskToPatches(String payload, List<MaskingAttribute> attributes) {
+        return MaskingPatches.wholePayload(payload, mask(payload, attributes));
+    }
+
     default String maskValue(String value) {
         if (value == null || value.length() <= 4) {
             return value;
@@ -0,0 +1,22 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.model.MaskingAttribute;
+
+/**
+ * Masks a payload embedded in a string value of another payload (a rule with {@code nested: true})
+ * with the rules of its own detected type, taken from the rule set of the request being masked.
+ * Implemented by DataMaskingService, which hands it to the XML and JSON processors; they call it for the matched value instead of {@link MaskingProcessor#maskValue(String)}.
+ */
+@FunctionalInterface
+public interface NestedPayloadMasker {
+
+    String mask(MaskingAttribute rule, String payload);
+
+    /**
+     * Wraps a task that masks part of the current request's payload on another thread, so nested
+     * payloads it meets are masked with the request's rule set there too.
+     */
+    default Runnable forRequest(Runnable task) {
+        return task;
+    }
+}
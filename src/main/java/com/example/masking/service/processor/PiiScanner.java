@@ -0,0 +1,419 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.config.PiiDetectorProperties;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Single-pass scanner for the default masking path. Recognizes plain digit runs, Luhn-valid
+ * card numbers and mod-97-valid IBANs in one left-to-right pass without regex backtracking.
+ * Every decision looks at most {@link #LOOKAHEAD} characters ahead, so the same code masks
+ * Strings in place and streams through a small window. Masking keeps the length of the
+ * payload: all characters of a match except its last four are replaced by '*'.
+ */
+public final class PiiScanner {
+
+    // Longest candidate: a 34-character IBAN with 8 group spaces, plus the boundary character
+    static final int LOOKAHEAD = 64;
+
+    // Characters kept before the scan position between streaming windows: country code plus boundary
+    private static final int CONTEXT = 3;
+
+    private static final int CARD_MIN_DIGITS = 13;
+    private static final int CARD_MAX_DIGITS = 19;
+    private static final int VISIBLE_CHARS = 4;
+
+    // IBAN length per country code (ISO 13616 registry), indexed by (first - 'A') * 26 + (second - 'A')
+    private static final byte[] IBAN_LENGTHS = new byte[26 * 26];
+
+    static {
+        String[] registry = {
+                "AD24", "AE23", "AL28", "AT20", "AZ28", "BA20", "BE16", "BG22", "BH22", "BI27", "BR29", "BY28",
+                "CH21", "CR22", "CY28", "CZ24", "DE22", "DJ27", "DK18", "DO28", "EE20", "EG29", "ES24", "FI18",
+                "FO18", "FR27", "GB22", "GE22", "GI23", "GL18", "GR27", "GT28", "HR21", "HU28", "IE22", "IL23",
+                "IQ23", "IS26", "IT27", "JO30", "KW30", "KZ20", "LB28", "LC32", "LI21", "LT20", "LU20", "LV21",
+                "LY25", "MC27", "MD24", "ME22", "MK19", "MR27", "MT31", "MU30", "NL18", "NO15", "PK24", "PL28",
+                "PS29", "PT25", "QA29", "RO24", "RS22", "RU33", "SA24", "SC31", "SD18", "SE24", "SI19", "SK24",
+                "SM27", "SO23", "ST25", "SV28", "TL23", "TN24", "TR26", "UA29", "VA22", "VG24", "XK20"
+        };
+        for (String entry : registry) {
+            IBAN_LENGTHS[(entry.charAt(0) - 'A') * 26 + (entry.charAt(1) - 'A')] = Byte.parseByte(entry.substring(2));
+        }
+    }
+
+    private final boolean digitRuns;
+    private final int minDigits;
+    private final int maxDigits;
+    private final boolean cards;
+    private final boolean cardSeparators;
+    private final boolean ibans;
+    private final boolean ibanSpaces;
+
+    public PiiScanner(PiiDetectorProperties properties) {
+        PiiDetectorProperties.DigitRuns runs = properties.getDigitRuns();
+        if (runs.isEnabled() && (runs.getMinDigits() < 1 || runs.getMaxDigits() < runs.getMinDigits())) {
+            throw new IllegalArgumentException("masking.detectors.digit-runs requires 1 <= min-digits <= max-digits");
+        }
+        this.digitRuns = runs.isEnabled();
+        this.minDigits = runs.getMinDigits();
+        this.maxDigits = runs.getMaxDigits();
+        this.cards = properties.getCards().isEnabled();
+        this.cardSeparators = properties.getCards().isAllowSeparators();
+        this.ibans = properties.getIbans().isEnabled();
+        this.ibanSpaces = properties.getIbans().isAllowSpaces();
+    }
+
+    /**
+     * Masks a payload, returning the same instance when nothing was detected.
+     */
+    public String mask(String payload) {
+        if (payload == null || payload.isEmpty()) {
+            return payload;
+        }
+
+        char[] chars = payload.toCharArray();
+        State state = new State();
+        scan(chars, 0, chars.length, true, state);
+        return state.masked ? new String(chars) : payload;
+    }
+
+    /**
+     * Streams a payload through a fixed window; only the undecided tail of the window is carried over.
+     */
+    public void mask(Reader in, Writer out) throws IOException {
+        char[] window = new char[16 * 1024];
+        int length = 0;
+        int from = 0;
+        State state = new State();
+        boolean eof = false;
+
+        while (!eof) {
+            int n = in.read(window, length, window.length - length);
+            if (n == -1) {
+                eof = true;
+            } else {
+                length += n;
+            }
+
+            int stop = scan(window, from, length, eof, state);
+
+            // Keep a few characters before the undecided tail as left context
+            int flushed = Math.max(stop - CONTEXT, 0);
+            out.write(window, 0, flushed);
+            System.arraycopy(window, flushed, window, 0, length - flushed);
+            length -= flushed;
+            from = stop - flushed;
+        }
+        out.write(window, 0, length);
+    }
+
+    /**
+     * Scans and masks {@code buf[from, to)} in place. Up to {@link #CONTEXT} characters before
+     * {@code from} are left context: the country code of an IBAN precedes its first digit.
+     *
+     * @return Index up to which the characters are final; the rest needs more input (always {@code to} at eof)
+     */
+    private int scan(char[] buf, int from, int to, boolean eof, State state) {
+        int i = from;
+        if (state.inLongRun) {
+            i = continueLongRun(buf, i, to, eof, state);
+            if (state.inLongRun) {
+                return i;
+            }
+        }
+
+        while (i < to) {
+            // Every detector is anchored on a digit (IBANs on their check digits), so letters are skipped cheaply
+            char c = buf[i];
+            if (c > '9' || c < '0') {
+                i++;
+                continue;
+            }
+            if (!eof && to - i < LOOKAHEAD) {
+                return i;
+            }
+
+            if (ibans && i >= 2 && isUpper(buf[i - 1]) && isUpper(buf[i - 2])
+                    && (i == 2 || !isAlphanumeric(buf[i - 3]))) {
+                int end = matchIban(buf, i - 2, to);
+                if (end > 0) {
+                    maskKeepingLast(buf, i - 2, end);
+                    state.masked = true;
+                    i = end;
+                    continue;
+                }
+            }
+
+            i = scanNumber(buf, i, to, state);
+            if (state.inLongRun) {
+                i = continueLongRun(buf, i, to, eof, state);
+                if (state.inLongRun) {
+                    return i;
+                }
+            }
+        }
+
+        return i;
+    }
+
+    /**
+     * Continues a digit run too long for any single match: masked in greedy chunks of maxDigits,
+     * like the legacy \d{min,max} regex, or skipped when digit runs are disabled.
+     * Leaves {@code state.inLongRun} set if the window ends before the run does.
+     */
+    private int continueLongRun(char[] buf, int i, int to, boolean eof, State state) {
+        while (i < to) {
+            if (!isDigit(buf[i])) {
+                state.inLongRun = false;
+                return i;
+            }
+            if (!digitRuns) {
+                i++;
+                continue;
+            }
+            if (!eof && to - i < LOOKAHEAD) {
+                return i;
+            }
+
+            int end = digitsEnd(buf, i, to, maxDigits + 1);
+            if (end - i > maxDigits) {
+                maskKeepingLast(buf, i, i + maxDigits);
+                state.masked = true;
+                i += maxDigits;
+            } else {
+                if (end - i >= minDigits) {
+                    maskKeepingLast(buf, i, end);
+                    state.masked = true;
+                }
+                state.inLongRun = false;
+                return end;
+            }
+        }
+        if (eof) {
+            state.inLongRun = false;
+        }
+        return i;
+    }
+
+    /**
+     * Handles a digit sequence starting at {@code start}; returns the index to continue from.
+     */
+    private int scanNumber(char[] buf, int start, int to, State state) {
+        int end = digitsEnd(buf, start, to, CARD_MAX_DIGITS + 1);
+        int length = end - start;
+
+        if (length > CARD_MAX_DIGITS) {
+            // Too long for a card: chunked (or skipped) as a long digit run
+            state.inLongRun = true;
+            return start;
+        }
+
+        if (cards && cardSeparators && end + 1 < to && isSeparator(buf[end]) && isDigit(buf[end + 1])) {
+            int cardEnd = matchSeparatedCard(buf, start, to);
+            if (cardEnd > 0) {
+                maskKeepingLast(buf, start, cardEnd);
+                state.masked = true;
+                return cardEnd;
+            }
+        }
+
+        if (cards && length >= CARD_MIN_DIGITS && luhn(buf, start, end)) {
+            maskKeepingLast(buf, start, end);
+            state.masked = true;
+            return end;
+        }
+
+        if (digitRuns && length >= minDigits) {
+            if (length > maxDigits) {
+                state.inLongRun = true;
+                return start;
+            }
+            maskKeepingLast(buf, start, end);
+            state.masked = true;
+        }
+        return end;
+    }
+
+    /**
+     * Card number printed in digit groups joined by one consistent separator (e.g. 4-4-4-4, 4-6-5).
+     * Returns the end of the card number, or -1.
+     */
+    private static int matchSeparatedCard(char[] buf, int start, int to) {
+        int groupEnd = digitsEnd(buf, start, to, 5);
+        if (groupEnd - start != 4) {
+            return -1;  // Card print formats start with a group of four
+        }
+
+        char separator = buf[groupEnd];
+        int digits = 4;
+        int position = groupEnd;
+
+        while (position + 1 < to && buf[position] == separator && isDigit(buf[position + 1])) {
+            int groupStart = position + 1;
+            groupEnd = digitsEnd(buf, groupStart, to, 7);
+            int groupLength = groupEnd - groupStart;
+            if (groupLength < 3 || groupLength > 6) {
+                return -1;
+            }
+            digits += groupLength;
+            if (digits > CARD_MAX_DIGITS) {
+                return -1;
+            }
+            position = groupEnd;
+        }
+
+        if (digits < CARD_MIN_DIGITS || !luhn(buf, start, position)) {
+            return -1;
+        }
+        return position;
+    }
+
+    /**
+     * IBAN in electronic (compact) or print (groups of four) format, starting at {@code start}.
+     * Returns the end of the IBAN, or -1.
+     */
+    private int matchIban(char[] buf, int start, int to) {
+        if (start + 4 > to || !isUpper(buf[start]) || !isUpper(buf[start + 1])
+                || !isDigit(buf[start + 2]) || !isDigit(buf[start + 3])) {
+            return -1;
+        }
+        int length = IBAN_LENGTHS[(buf[start] - 'A') * 26 + (buf[start + 1] - 'A')];
+        if (length == 0) {
+            return -1;
+        }
+
+        int count = 0;
+        int position = start;
+        boolean spaced = false;
+        while (count < length) {
+            if (position >= to) {
+                return -1;
+            }
+            char c = buf[position];
+            if (isDigit(c) || isUpper(c)) {
+                count++;
+                position++;
+                // In print format a single space follows every group of four
+                if (count % 4 == 0 && count < length && position < to) {
+                    boolean space = buf[position] == ' ';
+                    if (count == 4) {
+                        spaced = space && ibanSpaces;
+                    } else if (space != spaced) {
+                        return -1;
+                    }
+                    if (spaced) {
+                        position++;
+                    }
+                }
+            } else {
+                return -1;
+            }
+        }
+
+        if (position < to && isAlphanumeric(buf[position])) {
+            return -1;
+        }
+        return mod97(buf, start, position) == 1 ? position : -1;
+    }
+
+    /**
+     * ISO 7064 mod 97-10 over the IBAN with its first four characters moved to the end.
+     * Accumulates in a long and reduces only when it could overflow.
+     */
+    private static long mod97(char[] buf, int start, int end) {
+        long remainder = 0;
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = buf[i];
+            if (c != ' ' && index++ >= 4) {
+                remainder = mod97Step(remainder, c);
+            }
+        }
+        for (int i = start; i < start + 4; i++) {
+            remainder = mod97Step(remainder, buf[i]);
+        }
+        return remainder % 97;
+    }
+
+    private static long mod97Step(long remainder, char c) {
+        if (remainder >= 10_000_000_000_000_000L) {
+            remainder %= 97;
+        }
+        return isDigit(c) ? remainder * 10 + (c - '0') : remainder * 100 + (c - 'A' + 10);
+    }
+
+    private static boolean luhn(char[] buf, int start, int end) {
+        int sum = 0;
+        boolean doubled = false;
+        for (int i = end - 1; i >= start; i--) {
+            char c = buf[i];
+            if (!isDigit(c)) {
+                continue;
+            }
+            int digit = c - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return sum % 10 == 0;
+    }
+
+    /**
+     * Replaces every alphanumeric character in {@code [start, end)} except the last four with '*'.
+     */
+    private static void maskKeepingLast(char[] buf, int start, int end) {
+        int visible = VISIBLE_CHARS;
+        int position = end - 1;
+        while (position >= start && visible > 0) {
+            if (isAlphanumeric(buf[position])) {
+                visible--;
+            }
+            position--;
+        }
+        for (int i = start; i <= position; i++) {
+            if (isAlphanumeric(buf[i])) {
+                buf[i] = '*';
+            }
+        }
+    }
+
+    private static int digitsEnd(char[] buf, int start, int to, int limit) {
+        int end = start;
+        int max = Math.min(to, start + limit);
+        while (end < max && isDigit(buf[end])) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return isDigit(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-';
+    }
+
+    /**
+     * Per-payload scan state carried across streaming windows.
+     */
+    private static final class State {
+        private boolean inLongRun;   // Inside a digit run longer than any single match
+        private boolean masked;
+    }
+}
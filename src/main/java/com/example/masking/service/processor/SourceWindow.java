@@ -0,0 +1,110 @@
+package com.example.masking.service.processor;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that keeps the text a streaming parser has read since the last {@link #release(long)},
+ * so the streaming engines can compute patches against the original text without holding the
+ * whole payload: only the span from the last released position to the parser's read-ahead is kept.
+ * Positions are absolute char offsets from the start of the stream, as parser locations report them.
+ */
+final class SourceWindow extends Reader {
+
+    private final Reader in;
+    private char[] buffer = new char[16384];
+    private long bufferStart;       // Offset of buffer[0]
+    private int length;             // Chars held
+    private long releasedTo;        // Chars before this offset may be dropped
+
+    SourceWindow(Reader in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = in.read(cbuf, off, len);
+        if (n > 0) {
+            append(cbuf, off, n);
+        }
+        return n;
+    }
+
+    /**
+     * Allows the text before {@code offset} to be dropped.
+     */
+    void release(long offset) {
+        releasedTo = Math.max(releasedTo, offset);
+    }
+
+    /**
+     * The original text from {@code start} to {@code end}, which must not have been released.
+     */
+    String text(long start, long end) {
+        check(start);
+        return new String(buffer, (int) (start - bufferStart), (int) (end - start));
+    }
+
+    char charAt(long offset) {
+        if (offset >= bufferStart + length) {
+            throw new IllegalStateException("Offset " + offset + " is past the text read so far");
+        }
+        check(offset);
+        return buffer[(int) (offset - bufferStart)];
+    }
+
+    /**
+     * Offset of the first {@code text} at or after {@code from}, or -1 if it is not in the text read so far.
+     */
+    long indexOf(String text, long from) {
+        check(from);
+        long last = bufferStart + length - text.length();
+        for (long i = from; i <= last; i++) {
+            if (startsWith(text, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean startsWith(String text, long offset) {
+        if (offset + text.length() > bufferStart + length) {
+            return false;
+        }
+        int start = (int) (offset - bufferStart);
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void append(char[] chars, int off, int len) {
+        if (length + len > buffer.length) {
+            // Drop the released text first, grow only if the kept text still does not fit
+            int drop = (int) Math.min(length, Math.max(0, releasedTo - bufferStart));
+            System.arraycopy(buffer, drop, buffer, 0, length - drop);
+            bufferStart += drop;
+            length -= drop;
+            if (length + len > buffer.length) {
+                char[] grown = new char[Math.max(buffer.length * 2, length + len)];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+        }
+        System.arraycopy(chars, off, buffer, length, len);
+        length += len;
+    }
+
+    private void check(long offset) {
+        if (offset < bufferStart || offset > bufferStart + length) {
+            throw new IllegalStateException("Offset " + offset + " is outside the kept text");
+        }
+    }
+}
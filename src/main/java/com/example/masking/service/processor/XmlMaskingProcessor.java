@@ -1,46 +1,156 @@
 package com.example.masking.service.processor;
 
+import com.example.masking.config.MaskingLimitsProperties;
 import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingPatch;
+import com.example.masking.service.MaskingLimitExceededException;
+import com.example.masking.service.MaskingLimits;
+import com.example.masking.service.RuleStatistics;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
+import javax.annotation.PreDestroy;
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathFactory;
-import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class XmlMaskingProcessor implements MaskingProcessor {
 
-    // Cache expensive factories as static final (thread-safe singletons)
-    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
-    private static final TransformerFactory TRANSFORMER_FACTORY;
+    // Expensive, thread-safe factories, configured with the masking limits so the parsers enforce
+    // them while they read. Created on first use: deployments without XML rules never load the
+    // JAXP implementations at startup.
+    private static final class Factories {
+        private final DocumentBuilderFactory documentBuilderFactory;
+        private final TransformerFactory transformerFactory;
+        private final XPathFactory xpathFactory = XPathFactory.newInstance();
 
-    static {
-        DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
-        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+        // StAX factories for the streaming engine
+        private final XMLInputFactory xmlInputFactory;
+        private final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
 
-        TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+        private Factories(MaskingLimitsProperties limits) {
+            String maxDepth = String.valueOf(limits.getMaxDepth());
+            try {
+                // No DTDs: a DOCTYPE fails the parse, so no entity can expand or reach outside the payload
+                documentBuilderFactory = DocumentBuilderFactory.newInstance();
+                documentBuilderFactory.setNamespaceAware(true);
+                documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                documentBuilderFactory.setFeature(DISALLOW_DOCTYPE, true);
+                documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+                documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+                documentBuilderFactory.setAttribute(MAX_ELEMENT_DEPTH, maxDepth);
+                documentBuilderFactory.setXIncludeAware(false);
+                documentBuilderFactory.setExpandEntityReferences(false);
+
+                transformerFactory = TransformerFactory.newInstance();
+                transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+                transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+            } catch (ParserConfigurationException | TransformerConfigurationException e) {
+                throw new IllegalStateException("Cannot configure the XML parser: " + e.getMessage(), e);
+            }
+
+            xmlInputFactory = XMLInputFactory.newInstance();
+            xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            // A backstop one level deeper: the streaming engine checks max-depth itself, event by event
+            for (String property : new String[] {MAX_ELEMENT_DEPTH, WOODSTOX_MAX_ELEMENT_DEPTH}) {
+                if (xmlInputFactory.isPropertySupported(property)) {
+                    xmlInputFactory.setProperty(property, String.valueOf(limits.getMaxDepth() + 1));
+                }
+            }
+            if (xmlInputFactory.isPropertySupported(WOODSTOX_MAX_ATTRIBUTE_SIZE)) {
+                // Attribute values are only seen whole, so the parser checks max-string-length as it reads them
+                xmlInputFactory.setProperty(WOODSTOX_MAX_ATTRIBUTE_SIZE, limits.getMaxStringLength());
+            }
+            if (xmlInputFactory.isPropertySupported(REPORT_CDATA)) {
+                // Keep CDATA sections as CDATA in the output, like the DOM serializer does
+                xmlInputFactory.setProperty(REPORT_CDATA, true);
+            }
+        }
+    }
+
+    private static final String DISALLOW_DOCTYPE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+    // JDK parser limit, reported as the max_depth masking limit
+    private static final String MAX_ELEMENT_DEPTH = "jdk.xml.maxElementDepth";
+    private static final String WOODSTOX_MAX_ELEMENT_DEPTH = "com.ctc.wstx.maxElementDepth";
+    private static final String WOODSTOX_MAX_ATTRIBUTE_SIZE = "com.ctc.wstx.maxAttributeSize";
+
+    // JDK (SJSXP) property; CDATA is reported as plain characters without it
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private final RuleStatistics ruleStatistics;
+    private final MaskingLimits maskingLimits;
+    private volatile Factories factories;
+
+    // Runs XPath evaluations under the request's time budget; started on first use
+    private volatile ExecutorService evaluator;
+
+    // Masks the values of nested rules; set by DataMaskingService, which depends on this processor
+    private NestedPayloadMasker nestedPayloadMasker;
+
+    public XmlMaskingProcessor(RuleStatistics ruleStatistics, MaskingLimits maskingLimits) {
+        this.ruleStatistics = ruleStatistics;
+        this.maskingLimits = maskingLimits;
+    }
+
+    public void setNestedPayloadMasker(NestedPayloadMasker nestedPayloadMasker) {
+        this.nestedPayloadMasker = nestedPayloadMasker;
     }
 
-    // Cache XPathFactory instance (thread-safe)
-    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+    @PreDestroy
+    public void shutdown() {
+        if (evaluator != null) {
+            evaluator.shutdownNow();
+        }
+    }
 
     @Override
     public String mask(String payload, List<MaskingAttribute> attributes) {
         return maskWithNamespace(payload, attributes, null);
     }
 
+    @Override
+    public List<MaskingPatch> maskToPatches(String payload, List<MaskingAttribute> attributes) {
+        return maskWithNamespaceToPatches(payload, attributes, null);
+    }
+
     /**
      * Masks XML payload with namespace-aware processing.
      *
@@ -51,44 +161,468 @@ public class XmlMaskingProcessor implements MaskingProcessor {
      */
     public String maskWithNamespace(String payload, List<MaskingAttribute> attributes, String namespaceUri) {
         try {
-            // Use cached DocumentBuilderFactory
-            DocumentBuilder builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
-            Document document = builder.parse(new ByteArrayInputStream(payload.getBytes()));
-
-            // Create XPath instance for this request (XPath.setNamespaceContext is not thread-safe)
-            XPath xpath = XPATH_FACTORY.newXPath();
-
-            // Set up namespace context if namespace URI is provided
-            if (namespaceUri != null && !namespaceUri.isEmpty()) {
-                SimpleNamespaceContext nsContext = new SimpleNamespaceContext();
-                nsContext.bindNamespaceUri("ns", namespaceUri);
-                xpath.setNamespaceContext(nsContext);
-            }
-
-            for (MaskingAttribute attribute : attributes) {
-                if (attribute.getXpath() != null) {
-                    NodeList nodes = (NodeList) xpath.evaluate(
-                            attribute.getXpath(),
-                            document,
-                            XPathConstants.NODESET
-                    );
-
-                    for (int i = 0; i < nodes.getLength(); i++) {
-                        Node node = nodes.item(i);
-                        String value = node.getTextContent();
-                        node.setTextContent(maskValue(value));
-                    }
-                }
-            }
+            Document document = parse(payload);
 
-            // Use cached TransformerFactory
-            Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
             StringWriter writer = new StringWriter();
-            transformer.transform(new DOMSource(document), new StreamResult(writer));
+            maskDocument(document, attributes, namespaceUri, writer, payload.length());
 
             return writer.toString();
+        } catch (MaskingLimitExceededException e) {
+            throw e;
         } catch (Exception e) {
-            throw new RuntimeException("Error masking XML payload: " + e.getMessage(), e);
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Patch variant of {@link #maskWithNamespace(String, List, String)}: the masked elements and attributes
+     * are mapped back to their spans in the original text, so the original formatting is kept.
+     * Falls back to a single whole-payload patch when a masked node cannot be mapped.
+     */
+    public List<MaskingPatch> maskWithNamespaceToPatches(String payload, List<MaskingAttribute> attributes,
+                                                         String namespaceUri) {
+        try {
+            Document document = parse(payload);
+
+            Set<Node> masked = Collections.newSetFromMap(new IdentityHashMap<>());
+            applyRules(document, attributes, namespaceUri, payload.length(), masked);
+
+            List<MaskingPatch> patches = XmlSourceSpans.locate(payload, document, masked);
+            if (patches == null) {
+                StringWriter writer = new StringWriter();
+                serialize(document, writer);
+                return MaskingPatches.wholePayload(payload, writer.toString());
+            }
+            return patches;
+        } catch (MaskingLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Streaming engine: masks in one pass over StAX events without building a tree. A matched
+     * element's text content (all descendant text, as in the DOM's getTextContent) is collected and
+     * written back masked, replacing its children, so the values match the XPath engine. An element
+     * matched by several rules is masked by each of them in configuration order, as the XPath engine does.
+     * Only for plans where {@link XmlStreamingPlan#supports(String)} holds.
+     *
+     * @param payloadChars Payload size, or -1 if unknown
+     */
+    public void maskStreaming(Reader in, Writer out, XmlStreamingPlan plan, String namespaceUri, long payloadChars) {
+        try {
+            stream(in, factories().xmlOutputFactory.createXMLStreamWriter(out), null, plan, namespaceUri, payloadChars);
+        } catch (XMLStreamException e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Patch variant of {@link #maskStreaming(Reader, Writer, XmlStreamingPlan, String, long)}: the same
+     * pass, but each matched element's content is returned as a patch (char offsets) against the original
+     * text instead of writing the masked payload. Only the text of the element being masked is held, so
+     * spilled payloads are never read into memory.
+     */
+    public List<MaskingPatch> maskStreamingToPatches(Reader in, XmlStreamingPlan plan, String namespaceUri,
+                                                     long payloadChars) {
+        List<MaskingPatch> patches = new ArrayList<>();
+        stream(new SourceWindow(in), null, patches, plan, namespaceUri, payloadChars);
+        return patches;
+    }
+
+    /**
+     * @param writer Receives the masked payload, or null in patch mode
+     * @param patches Collects the patches in patch mode ({@code in} is then a {@link SourceWindow}), or null
+     */
+    private void stream(Reader in, XMLStreamWriter writer, List<MaskingPatch> patches, XmlStreamingPlan plan,
+                        String namespaceUri, long payloadChars) {
+        long startNanos = System.nanoTime();
+        List<XmlStreamingPlan.Rule> rules = plan.getRules();
+        int[] matches = new int[rules.size()];
+        String namespace = namespaceUri != null ? namespaceUri : "";
+        SourceWindow source = patches != null ? (SourceWindow) in : null;
+        XmlSourceSpans.TagCursor tags = source != null ? new XmlSourceSpans.TagCursor(source) : null;
+        XMLStreamReader reader = null;
+
+        try {
+            reader = factories().xmlInputFactory.createXMLStreamReader(in);
+
+            // Namespace URI and local name of each open element, outermost first
+            String[] namespaces = new String[32];
+            String[] names = new String[32];
+            int depth = 0;
+            long nodes = 0;
+            int maskedDepth = 0;    // Depth of the matched element whose text is being collected, 0 if none
+            List<MaskingAttribute> maskedBy = new ArrayList<>(1);   // Rules that matched it
+            StringBuilder text = new StringBuilder();
+            long contentStart = 0;  // Patch mode: where the matched element's content starts
+            String qualifiedName = null;
+
+            if (writer != null) {
+                writer.writeStartDocument("UTF-8", "1.0");
+            }
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        maskingLimits.checkDepth(depth);
+                        nodes += 1 + reader.getAttributeCount();
+                        maskingLimits.checkNodes(nodes);
+                        long tagEnd = tags != null ? tags.startTag() : -1;
+                        if (maskedDepth > 0) {
+                            break;  // Replaced by the masked ancestor's text
+                        }
+                        if (depth > names.length) {
+                            namespaces = Arrays.copyOf(namespaces, depth * 2);
+                            names = Arrays.copyOf(names, depth * 2);
+                        }
+                        String uri = reader.getNamespaceURI();
+                        namespaces[depth - 1] = uri != null ? uri : "";
+                        names[depth - 1] = reader.getLocalName();
+                        if (writer != null) {
+                            writeStartElement(reader, writer);
+                        }
+
+                        maskedBy.clear();
+                        for (int r = 0; r < rules.size(); r++) {
+                            if (rules.get(r).matches(namespaces, names, depth, namespace)) {
+                                matches[r]++;
+                                maskedBy.add(rules.get(r).getSource());
+                            }
+                        }
+                        if (!maskedBy.isEmpty()) {
+                            maskedDepth = depth;
+                            text.setLength(0);
+                            if (source != null) {
+                                contentStart = tagEnd;
+                                String prefix = reader.getPrefix();
+                                qualifiedName = prefix != null && !prefix.isEmpty()
+                                        ? prefix + ":" + reader.getLocalName()
+                                        : reader.getLocalName();
+                            }
+                        } else if (source != null) {
+                            source.release(tags.position());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        long endTag = tags != null ? tags.endTag() : -1;
+                        if (maskedDepth == depth) {
+                            String value = text.toString();
+                            for (MaskingAttribute rule : maskedBy) {
+                                value = maskMatch(rule, value);
+                            }
+                            if (writer != null) {
+                                writer.writeCharacters(value);
+                            } else {
+                                MaskingPatch patch = contentPatch(source, contentStart, endTag, qualifiedName, value);
+                                if (patch != null) {
+                                    patches.add(patch);
+                                }
+                            }
+                            maskedDepth = 0;
+                        }
+                        if (maskedDepth == 0) {
+                            if (writer != null) {
+                                writer.writeEndElement();
+                            } else {
+                                source.release(tags.position());
+                            }
+                        }
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                    case XMLStreamConstants.CDATA:
+                        maskingLimits.checkNodes(++nodes);
+                        maskingLimits.checkStringLength(reader.getTextLength());
+                        if (maskedDepth > 0) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                            maskingLimits.checkStringLength(text.length());
+                        } else if (writer == null) {
+                            break;
+                        } else if (event == XMLStreamConstants.CDATA) {
+                            writer.writeCData(reader.getText());
+                        } else {
+                            writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        if (maskedDepth == 0 && writer != null) {
+                            writer.writeComment(reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (maskedDepth == 0 && writer != null) {
+                            writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                        }
+                        break;
+                    case XMLStreamConstants.DTD:
+                        // Rejected like the DOM parser does, so both engines accept the same payloads
+                        throw maskingLimits.doctypeNotAllowed();
+                    default:
+                        break;
+                }
+            }
+            if (writer != null) {
+                writer.writeEndDocument();
+                writer.flush();
+            }
+
+            // One pass evaluates every rule, so the pass time is shared between them
+            long nanos = (System.nanoTime() - startNanos) / rules.size();
+            for (int r = 0; r < rules.size(); r++) {
+                ruleStatistics.record(rules.get(r).getSource(), nanos, matches[r], matches[r], payloadChars);
+            }
+        } catch (MaskingLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw failure(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing to release; the caller closes the underlying Reader
+                }
+            }
+        }
+    }
+
+    /**
+     * Patch replacing a masked element's content, from the end of its start tag to the start of its
+     * end tag; an empty-element tag ({@code <a/>}) is opened up to hold the value. Null if the
+     * content already is the value as written.
+     *
+     * @param contentStart Offset just past the start tag, or of the "/>" of an empty-element tag
+     * @param endTag Offset of the end tag, or of the "/>" of an empty-element tag
+     */
+    private static MaskingPatch contentPatch(SourceWindow source, long contentStart, long endTag, String qualifiedName,
+                                             String value) {
+        String escaped = XmlSourceSpans.escape(value, false);
+        if (endTag == contentStart && source.charAt(endTag) == '/') {
+            return escaped.isEmpty() ? null : new MaskingPatch(endTag, 2, ">" + escaped + "</" + qualifiedName + ">");
+        }
+        if (escaped.equals(source.text(contentStart, endTag))) {
+            return null;
+        }
+        return new MaskingPatch(contentStart, endTag - contentStart, escaped);
+    }
+
+    /**
+     * Parses a payload for the tree engine, once {@link #checkLimits(String)} has accepted it. The guard
+     * checks the time budget while the parser reads.
+     */
+    private Document parse(String payload) throws Exception {
+        checkLimits(payload);
+        DocumentBuilder builder = factories().documentBuilderFactory.newDocumentBuilder();
+        return builder.parse(new InputSource(maskingLimits.guard(new StringReader(payload))));
+    }
+
+    /**
+     * Scans XML text once with StAX, before the DOM is built, checking element depth, node count
+     * (elements, attributes, text, comments and processing instructions) and text/attribute lengths,
+     * and rejecting DOCTYPEs. Only payloads within the limits are built into a tree. Adjacent text and
+     * CDATA events are counted as one value, like the text content the rules mask.
+     */
+    private void checkLimits(String payload) throws XMLStreamException {
+        XMLStreamReader reader = factories().xmlInputFactory.createXMLStreamReader(
+                maskingLimits.guard(new StringReader(payload)));
+        try {
+            int depth = 0;
+            long nodes = 0;
+            int text = -1;      // Length of the text value being read, -1 outside one
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        maskingLimits.checkDepth(++depth);
+                        nodes += 1 + reader.getAttributeCount();
+                        maskingLimits.checkNodes(nodes);
+                        text = -1;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        text = -1;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                    case XMLStreamConstants.CDATA:
+                        if (text < 0) {
+                            maskingLimits.checkNodes(++nodes);
+                            text = 0;
+                        }
+                        text += reader.getTextLength();
+                        maskingLimits.checkStringLength(text);
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        maskingLimits.checkNodes(++nodes);
+                        text = -1;
+                        break;
+                    case XMLStreamConstants.DTD:
+                        throw maskingLimits.doctypeNotAllowed();
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
         }
     }
+
+    private ExecutorService evaluator() {
+        ExecutorService pool = evaluator;
+        if (pool == null) {
+            synchronized (this) {
+                pool = evaluator;
+                if (pool == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    pool = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "masking-xpath-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    evaluator = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private Factories factories() {
+        Factories created = factories;
+        if (created == null) {
+            synchronized (this) {
+                created = factories;
+                if (created == null) {
+                    created = new Factories(maskingLimits.getProperties());
+                    factories = created;
+                }
+            }
+        }
+        return created;
+    }
+
+    /**
+     * The exception for a failed parse or masking pass: the masking limit a parser limit enforces, or a
+     * processing error.
+     */
+    private RuntimeException failure(Exception e) {
+        MaskingLimitExceededException exceeded = maskingLimits.fromParserLimit(e);
+        return exceeded != null ? exceeded : new RuntimeException("Error masking XML payload: " + e.getMessage(), e);
+    }
+
+    private static void writeStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        String prefix = reader.getPrefix();
+        String uri = reader.getNamespaceURI();
+        writer.writeStartElement(prefix != null ? prefix : "", reader.getLocalName(), uri != null ? uri : "");
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String declared = reader.getNamespacePrefix(i);
+            if (declared == null || declared.isEmpty()) {
+                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+            } else {
+                writer.writeNamespace(declared, reader.getNamespaceURI(i));
+            }
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributePrefix = reader.getAttributePrefix(i);
+            if (attributePrefix == null || attributePrefix.isEmpty()) {
+                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(attributePrefix, reader.getAttributeNamespace(i),
+                        reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    private void maskDocument(Document document, List<MaskingAttribute> attributes, String namespaceUri,
+                              Writer out, long payloadChars) throws Exception {
+        applyRules(document, attributes, namespaceUri, payloadChars, null);
+        serialize(document, out);
+    }
+
+    /**
+     * Evaluates each rule's XPath and masks the matched nodes in place. An XPath evaluation cannot poll
+     * the time budget, so with a budget the rules run on the evaluator pool and the request waits for them
+     * only as long as the budget lasts; an abandoned evaluation stops at its next deadline check, between
+     * rules or matched nodes, and its thread returns to the pool.
+     *
+     * @param masked Collects the masked nodes for the patch response mode, or null
+     */
+    private void applyRules(Document document, List<MaskingAttribute> attributes, String namespaceUri,
+                            long payloadChars, Set<Node> masked) throws Exception {
+        if (!maskingLimits.isBudgeted()) {
+            evaluateRules(document, attributes, namespaceUri, payloadChars, masked);
+            return;
+        }
+
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            evaluateRules(document, attributes, namespaceUri, payloadChars, masked);
+            return null;
+        });
+        Runnable withLimits = maskingLimits.withRequestLimits(task);
+        evaluator().execute(nestedPayloadMasker != null ? nestedPayloadMasker.forRequest(withLimits) : withLimits);
+        try {
+            maskingLimits.await(task);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void evaluateRules(Document document, List<MaskingAttribute> attributes, String namespaceUri,
+                               long payloadChars, Set<Node> masked) throws Exception {
+        // Create XPath instance for this request (XPath.setNamespaceContext is not thread-safe)
+        XPath xpath = factories().xpathFactory.newXPath();
+
+        // Set up namespace context if namespace URI is provided
+        if (namespaceUri != null && !namespaceUri.isEmpty()) {
+            SimpleNamespaceContext nsContext = new SimpleNamespaceContext();
+            nsContext.bindNamespaceUri("ns", namespaceUri);
+            xpath.setNamespaceContext(nsContext);
+        }
+
+        for (MaskingAttribute attribute : attributes) {
+            if (attribute.getXpath() != null) {
+                maskingLimits.checkDeadline();
+                long start = System.nanoTime();
+                NodeList nodes = (NodeList) xpath.evaluate(
+                        attribute.getXpath(),
+                        document,
+                        XPathConstants.NODESET
+                );
+
+                for (int i = 0; i < nodes.getLength(); i++) {
+                    if ((i & 1023) == 1023) {
+                        maskingLimits.checkDeadline();
+                    }
+                    Node node = nodes.item(i);
+                    String value = node.getTextContent();
+                    node.setTextContent(maskMatch(attribute, value));
+                    if (masked != null) {
+                        masked.add(node);
+                    }
+                }
+                ruleStatistics.record(attribute, System.nanoTime() - start,
+                        nodes.getLength(), nodes.getLength(), payloadChars);
+            }
+        }
+    }
+
+    /**
+     * Masks a matched value: the payload it holds for a nested rule, otherwise with {@link #maskValue(String)}.
+     */
+    private String maskMatch(MaskingAttribute rule, String value) {
+        return rule.isNested() && nestedPayloadMasker != null ? nestedPayloadMasker.mask(rule, value) : maskValue(value);
+    }
+
+    private void serialize(Document document, Writer out) throws Exception {
+        Transformer transformer = factories().transformerFactory.newTransformer();
+        transformer.transform(new DOMSource(document), new StreamResult(out));
+    }
 }
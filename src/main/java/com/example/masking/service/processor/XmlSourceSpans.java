@@ -0,0 +1,369 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.model.MaskingPatch;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Positions of element content and attribute values in the original XML text, in document order.
+ * The DOM keeps no source positions, so masked nodes are mapped back to the original by element
+ * ordinal: the n-th start tag in the text is the n-th element of the parsed document.
+ */
+final class XmlSourceSpans {
+
+    private int elements;
+    private int[] contentStart = new int[64];
+    private int[] contentEnd = new int[64];
+    private int[] firstAttribute = new int[64];   // Index into the attribute arrays, per element
+
+    private int attributes;
+    private int[] attributeNameStart = new int[64];
+    private int[] attributeNameEnd = new int[64];
+    private int[] attributeValueStart = new int[64];
+    private int[] attributeValueEnd = new int[64];
+
+    private XmlSourceSpans() {
+    }
+
+    /**
+     * Patches (char offsets) that turn the original XML into one with the masked nodes' final values,
+     * or null if a node cannot be mapped back, in which case the caller falls back to a whole-payload patch.
+     */
+    static List<MaskingPatch> locate(String xml, Document document, Set<Node> masked) {
+        List<MaskingPatch> patches = new ArrayList<>();
+        if (masked.isEmpty()) {
+            return patches;
+        }
+
+        XmlSourceSpans spans = scan(xml);
+        NodeList elements = document.getElementsByTagName("*");
+        if (spans == null || spans.elements != elements.getLength()) {
+            return null;
+        }
+        Map<Node, Integer> ordinals = new IdentityHashMap<>(elements.getLength());
+        for (int i = 0; i < elements.getLength(); i++) {
+            ordinals.put(elements.item(i), i);
+        }
+
+        for (Node node : masked) {
+            int start;
+            int end;
+            String replacement;
+
+            if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+                Attr attribute = (Attr) node;
+                Integer owner = ordinals.get(attribute.getOwnerElement());
+                if (owner == null) {
+                    continue;   // Removed by a later rule that masked an enclosing element
+                }
+                int index = spans.findAttribute(xml, owner, attribute.getName());
+                if (index < 0) {
+                    return null;
+                }
+                start = spans.attributeValueStart[index];
+                end = spans.attributeValueEnd[index];
+                replacement = escape(attribute.getValue(), true);
+            } else {
+                Node element = node;
+                if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+                    element = node.getParentNode();
+                    if (element == null) {
+                        continue;
+                    }
+                    if (element.getFirstChild() != node || node.getNextSibling() != null) {
+                        return null;   // Mixed content: the text node has no span of its own
+                    }
+                } else if (node.getNodeType() != Node.ELEMENT_NODE) {
+                    return null;
+                }
+                Integer ordinal = ordinals.get(element);
+                if (ordinal == null) {
+                    continue;
+                }
+                start = spans.contentStart[ordinal];
+                end = spans.contentEnd[ordinal];
+                replacement = escape(element.getTextContent(), false);
+            }
+
+            if (end - start != replacement.length() || !xml.regionMatches(start, replacement, 0, end - start)) {
+                patches.add(new MaskingPatch(start, end - start, replacement));
+            }
+        }
+        return MaskingPatches.normalize(patches);
+    }
+
+    /**
+     * Records element content and attribute value spans, or returns null for documents this scanner
+     * does not map (DOCTYPE declarations, whose entities may expand to elements, or malformed markup).
+     */
+    static XmlSourceSpans scan(String xml) {
+        XmlSourceSpans spans = new XmlSourceSpans();
+        int[] open = new int[32];
+        int depth = 0;
+        int length = xml.length();
+        int i = 0;
+
+        while (true) {
+            int lt = xml.indexOf('<', i);
+            if (lt < 0) {
+                break;
+            }
+            if (xml.startsWith("<?", lt)) {
+                i = skipPast(xml, "?>", lt + 2);
+            } else if (xml.startsWith("<!--", lt)) {
+                i = skipPast(xml, "-->", lt + 4);
+            } else if (xml.startsWith("<![CDATA[", lt)) {
+                i = skipPast(xml, "]]>", lt + 9);
+            } else if (xml.startsWith("<!", lt)) {
+                return null;
+            } else if (xml.startsWith("</", lt)) {
+                if (depth == 0) {
+                    return null;
+                }
+                spans.contentEnd[open[--depth]] = lt;
+                i = skipPast(xml, ">", lt + 2);
+            } else {
+                int element = spans.addElement();
+                int p = lt + 1;
+                while (p < length && !isNameEnd(xml.charAt(p))) {
+                    p++;
+                }
+                while (true) {
+                    while (p < length && Character.isWhitespace(xml.charAt(p))) {
+                        p++;
+                    }
+                    if (p >= length) {
+                        return null;
+                    }
+                    char c = xml.charAt(p);
+                    if (c == '>') {
+                        spans.contentStart[element] = p + 1;
+                        if (depth == open.length) {
+                            open = Arrays.copyOf(open, depth * 2);
+                        }
+                        open[depth++] = element;
+                        i = p + 1;
+                        break;
+                    }
+                    if (c == '/') {
+                        spans.contentStart[element] = p;
+                        spans.contentEnd[element] = p;
+                        i = p + 2;
+                        break;
+                    }
+                    int nameStart = p;
+                    while (p < length && !isNameEnd(xml.charAt(p)) && xml.charAt(p) != '=') {
+                        p++;
+                    }
+                    int nameEnd = p;
+                    while (p < length && Character.isWhitespace(xml.charAt(p))) {
+                        p++;
+                    }
+                    if (p >= length || xml.charAt(p) != '=') {
+                        return null;
+                    }
+                    p++;
+                    while (p < length && Character.isWhitespace(xml.charAt(p))) {
+                        p++;
+                    }
+                    if (p >= length || (xml.charAt(p) != '"' && xml.charAt(p) != '\'')) {
+                        return null;
+                    }
+                    int valueEnd = xml.indexOf(xml.charAt(p), p + 1);
+                    if (valueEnd < 0) {
+                        return null;
+                    }
+                    spans.addAttribute(nameStart, nameEnd, p + 1, valueEnd);
+                    p = valueEnd + 1;
+                }
+            }
+            if (i < 0) {
+                return null;
+            }
+        }
+        return depth == 0 ? spans : null;
+    }
+
+    private int addElement() {
+        if (elements == contentStart.length) {
+            int capacity = elements * 2;
+            contentStart = Arrays.copyOf(contentStart, capacity);
+            contentEnd = Arrays.copyOf(contentEnd, capacity);
+            firstAttribute = Arrays.copyOf(firstAttribute, capacity);
+        }
+        firstAttribute[elements] = attributes;
+        return elements++;
+    }
+
+    private void addAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (attributes == attributeNameStart.length) {
+            int capacity = attributes * 2;
+            attributeNameStart = Arrays.copyOf(attributeNameStart, capacity);
+            attributeNameEnd = Arrays.copyOf(attributeNameEnd, capacity);
+            attributeValueStart = Arrays.copyOf(attributeValueStart, capacity);
+            attributeValueEnd = Arrays.copyOf(attributeValueEnd, capacity);
+        }
+        attributeNameStart[attributes] = nameStart;
+        attributeNameEnd[attributes] = nameEnd;
+        attributeValueStart[attributes] = valueStart;
+        attributeValueEnd[attributes] = valueEnd;
+        attributes++;
+    }
+
+    private int findAttribute(String xml, int element, String name) {
+        int end = element + 1 < elements ? firstAttribute[element + 1] : attributes;
+        for (int a = firstAttribute[element]; a < end; a++) {
+            int nameLength = attributeNameEnd[a] - attributeNameStart[a];
+            if (nameLength == name.length() && xml.regionMatches(attributeNameStart[a], name, 0, nameLength)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipPast(String xml, String terminator, int from) {
+        int index = xml.indexOf(terminator, from);
+        return index < 0 ? -1 : index + terminator.length();
+    }
+
+    private static boolean isNameEnd(char c) {
+        return c == '>' || c == '/' || Character.isWhitespace(c);
+    }
+
+    static String escape(String value, boolean attribute) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String entity;
+            if (c == '&') {
+                entity = "&amp;";
+            } else if (c == '<') {
+                entity = "&lt;";
+            } else if (c == '>') {
+                entity = "&gt;";
+            } else if (attribute && c == '"') {
+                entity = "&quot;";
+            } else if (attribute && c == '\'') {
+                entity = "&apos;";
+            } else {
+                if (escaped != null) {
+                    escaped.append(c);
+                }
+                continue;
+            }
+            if (escaped == null) {
+                escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            escaped.append(entity);
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    /**
+     * Walks the start and end tags of XML text held in a {@link SourceWindow}, in step with a
+     * streaming parser's element events, for the streaming engine's patch mode. Parser locations point
+     * into its read-ahead rather than at the event, so tag boundaries are found in the text itself;
+     * the parser has always read past the tag of the event being handled.
+     */
+    static final class TagCursor {
+        private final SourceWindow source;
+        private long position;
+        private boolean empty;      // The last start tag was an empty-element tag, whose end is pending
+
+        TagCursor(SourceWindow source) {
+            this.source = source;
+        }
+
+        /**
+         * Moves past the next start tag.
+         *
+         * @return The offset just past the tag, or of its "/>" for an empty-element tag
+         */
+        long startTag() {
+            long lt = nextTag();
+            if (source.charAt(lt + 1) == '/') {
+                throw new IllegalStateException("Expected a start tag at offset " + lt);
+            }
+            char quote = 0;
+            for (long p = lt + 1; ; p++) {
+                char c = source.charAt(p);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    position = p + 1;
+                    empty = source.charAt(p - 1) == '/';
+                    return empty ? p - 1 : p + 1;
+                }
+            }
+        }
+
+        /**
+         * Moves past the end tag of the innermost open element; an empty-element tag has none.
+         *
+         * @return The offset of the end tag, or of the "/>" of an empty-element tag
+         */
+        long endTag() {
+            if (empty) {
+                empty = false;
+                return position - 2;
+            }
+            long lt = nextTag();
+            if (source.charAt(lt + 1) != '/') {
+                throw new IllegalStateException("Expected an end tag at offset " + lt);
+            }
+            position = skipPast(lt + 2, ">");
+            return lt;
+        }
+
+        /**
+         * Offset of the text not yet walked; the text before it is no longer needed.
+         */
+        long position() {
+            return position;
+        }
+
+        private long nextTag() {
+            while (true) {
+                long lt = source.indexOf("<", position);
+                if (lt < 0) {
+                    throw new IllegalStateException("No tag after offset " + position);
+                }
+                if (source.startsWith("<?", lt)) {
+                    position = skipPast(lt + 2, "?>");
+                } else if (source.startsWith("<!--", lt)) {
+                    position = skipPast(lt + 4, "-->");
+                } else if (source.startsWith("<![CDATA[", lt)) {
+                    position = skipPast(lt + 9, "]]>");
+                } else if (source.startsWith("<!", lt)) {
+                    // DOCTYPE, with or without an internal subset
+                    long bracket = source.indexOf("[", lt);
+                    long gt = source.indexOf(">", lt);
+                    position = bracket >= 0 && bracket < gt ? skipPast(skipPast(bracket, "]"), ">") : gt + 1;
+                } else {
+                    return lt;
+                }
+            }
+        }
+
+        private long skipPast(long from, String terminator) {
+            long index = source.indexOf(terminator, from);
+            if (index < 0) {
+                throw new IllegalStateException("Unterminated markup at offset " + from);
+            }
+            return index + terminator.length();
+        }
+    }
+}
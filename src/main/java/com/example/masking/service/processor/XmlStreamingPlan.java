@@ -0,0 +1,143 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.model.MaskingAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * XML rules compiled for the streaming engine. Only location paths that can be decided from the
+ * open-element stack are streaming-compatible: {@code //a/b/c} or {@code /a/b/c} made of element
+ * names, optionally prefixed with {@code ns:}, or {@code *}. Predicates, attributes, text() and
+ * other axes need the tree. Built once at startup and immutable afterwards.
+ */
+public final class XmlStreamingPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(XmlStreamingPlan.class);
+
+    // Element name test: optional "ns:" prefix, then an NCName or *
+    private static final Pattern STEP = Pattern.compile("(ns:)?([A-Za-z_][\\w.\\-]*|\\*)");
+
+    private final List<Rule> rules;
+    private final boolean namespaced;   // Some rule uses the ns: prefix
+
+    private XmlStreamingPlan(List<Rule> rules) {
+        this.rules = Collections.unmodifiableList(rules);
+        this.namespaced = rules.stream().anyMatch(rule -> rule.namespaced);
+    }
+
+    /**
+     * Compiles the XPath rules of a type, or returns null if any of them needs the tree engine.
+     *
+     * @param type Rule type the attributes belong to (for log messages)
+     */
+    public static XmlStreamingPlan compile(String type, List<MaskingAttribute> attributes) {
+        List<Rule> rules = new ArrayList<>();
+        for (MaskingAttribute attribute : attributes) {
+            if (attribute.getXpath() == null) {
+                continue;
+            }
+            Rule rule = Rule.parse(attribute);
+            if (rule == null) {
+                log.info("XML type {} uses the tree engine only: {} is not streaming-compatible",
+                        type, attribute.getXpath());
+                return null;
+            }
+            rules.add(rule);
+        }
+        return rules.isEmpty() ? null : new XmlStreamingPlan(rules);
+    }
+
+    /**
+     * Whether the plan can run for a payload: rules with the ns: prefix need a detected namespace,
+     * exactly like the XPath engine, which cannot resolve the prefix otherwise.
+     */
+    public boolean supports(String namespaceUri) {
+        return !namespaced || (namespaceUri != null && !namespaceUri.isEmpty());
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * One location path as a list of element name tests.
+     */
+    public static final class Rule {
+        private final MaskingAttribute source;
+        private final boolean anywhere;         // Starts with //, otherwise anchored at the root
+        private final String[] localNames;      // null entry: any name
+        private final boolean[] inNamespace;    // Step has the ns: prefix
+        private final boolean namespaced;
+
+        private Rule(MaskingAttribute source, boolean anywhere, String[] localNames, boolean[] inNamespace) {
+            this.source = source;
+            this.anywhere = anywhere;
+            this.localNames = localNames;
+            this.inNamespace = inNamespace;
+            boolean any = false;
+            for (boolean step : inNamespace) {
+                any |= step;
+            }
+            this.namespaced = any;
+        }
+
+        private static Rule parse(MaskingAttribute attribute) {
+            String xpath = attribute.getXpath().trim();
+            boolean anywhere = xpath.startsWith("//");
+            if (!anywhere && !xpath.startsWith("/")) {
+                return null;
+            }
+            String[] steps = xpath.substring(anywhere ? 2 : 1).split("/", -1);
+            String[] localNames = new String[steps.length];
+            boolean[] inNamespace = new boolean[steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                Matcher matcher = STEP.matcher(steps[i]);
+                if (!matcher.matches()) {
+                    return null;
+                }
+                inNamespace[i] = matcher.group(1) != null;
+                localNames[i] = "*".equals(matcher.group(2)) ? null : matcher.group(2);
+            }
+            return new Rule(attribute, anywhere, localNames, inNamespace);
+        }
+
+        /**
+         * Whether the innermost element of the stack is selected by this path.
+         *
+         * @param namespaces Namespace URI of each open element, outermost first ("" for none)
+         * @param names Local name of each open element
+         * @param depth Number of open elements
+         * @param namespaceUri URI bound to the ns: prefix
+         */
+        public boolean matches(String[] namespaces, String[] names, int depth, String namespaceUri) {
+            int steps = localNames.length;
+            if (depth < steps || (!anywhere && depth != steps)) {
+                return false;
+            }
+            for (int i = 0; i < steps; i++) {
+                int element = depth - steps + i;
+                if (localNames[i] == null && !inNamespace[i]) {
+                    continue;   // Plain * matches elements in any namespace
+                }
+                if (localNames[i] != null && !localNames[i].equals(names[element])) {
+                    return false;
+                }
+                String expected = inNamespace[i] ? namespaceUri : "";
+                if (!expected.equals(namespaces[element])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public MaskingAttribute getSource() {
+            return source;
+        }
+    }
+}
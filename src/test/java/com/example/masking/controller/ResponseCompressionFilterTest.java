@@ -0,0 +1,74 @@
+package com.example.masking.controller;
+
+import com.example.masking.config.CompressionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Byte ranges describe the decoded body, so an encoded response must not advertise them, and a
+ * partial (206) response is sent as it is.
+ */
+class ResponseCompressionFilterTest {
+
+    private static final byte[] BODY = new byte[16 * 1024];   // Above the default 8KB minimum size
+
+    static {
+        Arrays.fill(BODY, (byte) 'x');
+    }
+
+    private final ResponseCompressionFilter filter =
+            new ResponseCompressionFilter(new CompressionProperties(), new SimpleMeterRegistry());
+
+    @Test
+    void encodedResponseDoesNotAcceptRanges() throws ServletException, IOException {
+        MockHttpServletResponse response = filter(HttpStatus.OK, null);
+
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("none", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+    }
+
+    @Test
+    void partialResponseIsNotEncoded() throws ServletException, IOException {
+        MockHttpServletResponse response = filter(HttpStatus.PARTIAL_CONTENT, "bytes 0-16383/32768");
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(BODY.length, response.getContentAsByteArray().length);
+    }
+
+    // Writes a JSON file body the way Spring MVC writes a FileSystemResource: headers first
+    private MockHttpServletResponse filter(HttpStatus status, String contentRange)
+            throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/mask");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        FilterChain chain = (req, res) -> {
+            HttpServletResponse http = (HttpServletResponse) res;
+            http.setStatus(status.value());
+            http.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            http.addHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (contentRange != null) {
+                http.addHeader(HttpHeaders.CONTENT_RANGE, contentRange);
+            }
+            http.setContentLengthLong(BODY.length);
+            http.getOutputStream().write(BODY);
+        };
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.masking.differential;
+
+import com.example.masking.differential.MaskingFixture.Engine;
+import com.example.masking.differential.MaskingFixture.Result;
+import com.example.masking.differential.PayloadGenerator.Subtype;
+import com.example.masking.service.processor.DefaultMaskingProcessor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Differential test: random payloads for every configured subtype are masked by the reference
+ * in-memory tree path and by each alternative engine (patch responses in char and UTF-8 offsets, in
+ * memory and spilled, the spill path, the XML/JSON streaming engines, gzip/zstd requests through the
+ * HTTP filters, the default-masking detectors), and the masked values must agree.
+ *
+ * <p>Runs {@value #DEFAULT_CASES} cases per subtype from a fixed seed. Override with
+ * {@code -Ddifferential.cases=N} and {@code -Ddifferential.seed=N} (or {@code random});
+ * a failure reports the seed and case number needed to reproduce it.
+ */
+class DifferentialMaskingTest {
+
+    private static final int DEFAULT_CASES = 200;
+    private static final long DEFAULT_SEED = 20240611L;
+
+    private static final int CASES = Integer.getInteger("differential.cases", DEFAULT_CASES);
+    private static final long SEED = seed(System.getProperty("differential.seed"));
+
+    private static MaskingFixture fixture;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        fixture = MaskingFixture.create();
+    }
+
+    static List<Subtype> subtypes() throws Exception {
+        return PayloadGenerator.subtypes(MaskingFixture.create().config);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("subtypes")
+    void enginesAgreeWithReference(Subtype subtype) throws Exception {
+        PayloadGenerator generator = new PayloadGenerator(SEED ^ subtype.name.hashCode());
+        Map<String, Engine> engines = fixture.engines();
+
+        for (int i = 0; i < CASES; i++) {
+            String payload = generator.generate(subtype);
+            Result reference = fixture.reference(payload);
+            assertEquals(subtype.expectedDetectedSubtype(), reference.subtype,
+                    failure(subtype, i, MaskingFixture.REFERENCE, payload, "generated payload detected as another subtype"));
+            Object expected = MaskedValues.of(subtype.kind, reference.masked);
+
+            for (Map.Entry<String, Engine> engine : engines.entrySet()) {
+                if (engine.getKey().equals(MaskingFixture.REFERENCE)) {
+                    continue;
+                }
+                Result result = engine.getValue().mask(payload);
+                String context = failure(subtype, i, engine.getKey(), payload, "masked values differ");
+                assertEquals(reference.type, result.type, context);
+                assertEquals(reference.subtype, result.subtype, context);
+                assertEquals(expected, MaskedValues.of(subtype.kind, result.masked), context);
+            }
+        }
+    }
+
+    /**
+     * Default masking: the detectors restricted to digit runs must reproduce the legacy regex exactly,
+     * and every configuration's streaming engine must match its String engine.
+     */
+    @Test
+    void defaultMaskingEnginesAgree() throws Exception {
+        Subtype text = new Subtype("default", PayloadGenerator.Kind.DEFAULT, Collections.emptyList(), null, null);
+        PayloadGenerator generator = new PayloadGenerator(SEED);
+
+        DefaultMaskingProcessor legacy = MaskingFixture.defaultProcessor(p -> p.setEnabled(false));
+        Map<String, DefaultMaskingProcessor> processors = new LinkedHashMap<>();
+        processors.put("legacy-regex", legacy);
+        processors.put("digit-runs", MaskingFixture.defaultProcessor(p -> {
+            p.getDigitRuns().setEnabled(true);
+            p.getCards().setEnabled(false);
+            p.getIbans().setEnabled(false);
+        }));
+        processors.put("detectors", MaskingFixture.defaultProcessor(p -> { }));
+
+        for (int i = 0; i < CASES; i++) {
+            String payload = generator.generate(text);
+            String expected = legacy.mask(payload, Collections.emptyList());
+            assertEquals(expected, processors.get("digit-runs").mask(payload, Collections.emptyList()),
+                    failure(text, i, "digit-runs", payload, "differs from the legacy regex"));
+
+            for (Map.Entry<String, DefaultMaskingProcessor> processor : processors.entrySet()) {
+                StringWriter streamed = new StringWriter();
+                processor.getValue().mask(new StringReader(payload), streamed, Collections.emptyList());
+                assertEquals(processor.getValue().mask(payload, Collections.emptyList()), streamed.toString(),
+                        failure(text, i, processor.getKey() + " (streaming)", payload, "streaming differs from in-memory"));
+            }
+        }
+    }
+
+    private static String failure(Subtype subtype, int index, String engine, String payload, String problem) {
+        return String.format("%s: %s, engine %s, case %d (reproduce with -Ddifferential.seed=%d)%n%s",
+                subtype, problem, engine, index, SEED, payload);
+    }
+
+    private static long seed(String property) {
+        if (property == null || property.isEmpty()) {
+            return DEFAULT_SEED;
+        }
+        if (property.equals("random")) {
+            long seed = System.nanoTime();
+            System.out.println("Differential masking seed: " + seed);
+            return seed;
+        }
+        return Long.parseLong(property);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.masking.differential;
+
+import com.example.masking.differential.MaskingFixture.Engine;
+import com.example.masking.differential.PayloadGenerator.Subtype;
+import com.example.masking.service.processor.DefaultMaskingProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Throughput of each engine against the reference, per subtype, on the differential generator's
+ * payloads. Writes a markdown table to {@code target/differential/throughput-report.md}. It reports
+ * and does not assert: timings from a unit-test JVM are only indicative, use the JMH benchmarks
+ * for numbers worth quoting. Tagged {@code throughput}, so it only runs with {@code mvn -Pthroughput test}.
+ *
+ * <p>{@code -Ddifferential.throughput.millis=N} sets the measurement time per engine (warm-up is half of it).
+ */
+@Tag("throughput")
+class EngineThroughputReportTest {
+
+    private static final long MEASURE_MILLIS = Long.getLong("differential.throughput.millis", 200L);
+    private static final int CORPUS_SIZE = 32;
+    private static final int SCALE = 8;
+    private static final Path REPORT = Paths.get("target", "differential", "throughput-report.md");
+
+    @Test
+    void writeThroughputReport() throws Exception {
+        MaskingFixture fixture = MaskingFixture.create();
+        StringBuilder report = new StringBuilder()
+                .append("# Masking engine throughput\n\n")
+                .append(String.format("%d payloads per subtype, %d ms per engine after %d ms warm-up.%n%n",
+                        CORPUS_SIZE, MEASURE_MILLIS, MEASURE_MILLIS / 2))
+                .append("| Subtype | Engine | ops/s | MB/s | vs reference |\n")
+                .append("|---|---|---:|---:|---:|\n");
+
+        for (Subtype subtype : PayloadGenerator.subtypes(fixture.config)) {
+            List<String> corpus = corpus(subtype);
+            report(report, subtype.name, corpus, fixture.engines());
+        }
+
+        Subtype text = new Subtype("default", PayloadGenerator.Kind.DEFAULT, Collections.emptyList(), null, null);
+        Map<String, Engine> defaultEngines = new LinkedHashMap<>();
+        defaultEngines.put("legacy-regex", stringEngine(MaskingFixture.defaultProcessor(p -> p.setEnabled(false))));
+        defaultEngines.put("digit-runs", stringEngine(MaskingFixture.defaultProcessor(p -> {
+            p.getDigitRuns().setEnabled(true);
+            p.getCards().setEnabled(false);
+            p.getIbans().setEnabled(false);
+        })));
+        defaultEngines.put("detectors", stringEngine(MaskingFixture.defaultProcessor(p -> { })));
+        report(report, "default (processor)", corpus(text), defaultEngines);
+
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, report.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> corpus(Subtype subtype) {
+        PayloadGenerator generator = new PayloadGenerator(subtype.name.hashCode(), SCALE);
+        List<String> corpus = new ArrayList<>(CORPUS_SIZE);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            corpus.add(generator.generate(subtype));
+        }
+        return corpus;
+    }
+
+    /**
+     * Adds one row per engine; the first engine is the baseline for the relative column.
+     */
+    private static void report(StringBuilder report, String subtype, List<String> corpus, Map<String, Engine> engines)
+            throws IOException {
+        long corpusBytes = 0;
+        for (String payload : corpus) {
+            corpusBytes += payload.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        double baseline = 0;
+        for (Map.Entry<String, Engine> engine : engines.entrySet()) {
+            run(engine.getValue(), corpus, MEASURE_MILLIS / 2);
+            double opsPerSecond = run(engine.getValue(), corpus, MEASURE_MILLIS);
+            if (baseline == 0) {
+                baseline = opsPerSecond;
+            }
+            double megabytesPerSecond = opsPerSecond * corpusBytes / corpus.size() / (1024 * 1024);
+            report.append(String.format("| %s | %s | %.0f | %.2f | %.2fx |%n",
+                    subtype, engine.getKey(), opsPerSecond, megabytesPerSecond, opsPerSecond / baseline));
+        }
+    }
+
+    /**
+     * Masks the corpus round-robin for the given time and returns payloads per second.
+     */
+    private static double run(Engine engine, List<String> corpus, long millis) throws IOException {
+        long start = System.nanoTime();
+        long end = start + millis * 1_000_000;
+        long operations = 0;
+        long now;
+        do {
+            engine.mask(corpus.get((int) (operations % corpus.size())));
+            operations++;
+            now = System.nanoTime();
+        } while (now < end);
+        return operations * 1e9 / (now - start);
+    }
+
+    private static Engine stringEngine(DefaultMaskingProcessor processor) {
+        return payload -> new MaskingFixture.Result(null, null, processor.mask(payload, Collections.emptyList()));
+    }
+}
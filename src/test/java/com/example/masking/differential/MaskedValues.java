@@ -0,0 +1,72 @@
+package com.example.masking.differential;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * What the harness compares. Engines may legitimately differ in formatting (the reference
+ * re-serializes XML and JSON, patch mode keeps the original text), so structured payloads are
+ * compared by their field values and plain payloads character for character.
+ */
+final class MaskedValues {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private MaskedValues() {
+    }
+
+    static Object of(PayloadGenerator.Kind kind, String masked) throws Exception {
+        switch (kind) {
+            case XML:
+                return xml(masked);
+            case JSON:
+                return OBJECT_MAPPER.readTree(masked);
+            default:
+                return masked;
+        }
+    }
+
+    /**
+     * One line per element in document order: namespace, local name, attributes (sorted) and
+     * direct text content, with CDATA and character references resolved.
+     */
+    static List<String> xml(String masked) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(masked)));
+
+        List<String> values = new ArrayList<>();
+        NodeList elements = document.getElementsByTagName("*");
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+            TreeSet<String> attributes = new TreeSet<>();
+            NamedNodeMap map = element.getAttributes();
+            for (int a = 0; a < map.getLength(); a++) {
+                Node attribute = map.item(a);
+                if (!"http://www.w3.org/2000/xmlns/".equals(attribute.getNamespaceURI())) {
+                    attributes.add(attribute.getLocalName() + "=" + attribute.getNodeValue());
+                }
+            }
+            StringBuilder text = new StringBuilder();
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                    text.append(child.getNodeValue());
+                }
+            }
+            values.add("{" + element.getNamespaceURI() + "}" + element.getLocalName() + " " + attributes
+                    + " text=" + text);
+        }
+        return values;
+    }
+}
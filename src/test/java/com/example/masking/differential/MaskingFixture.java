@@ -0,0 +1,372 @@
+package com.example.masking.differential;
+
+import com.example.masking.config.CompressionProperties;
+import com.example.masking.config.EngineSelectionProperties;
+import com.example.masking.config.JsonRecordProperties;
+import com.example.masking.config.MaskingConfigLoader;
+import com.example.masking.config.MaskingLimitsProperties;
+import com.example.masking.config.PiiDetectorProperties;
+import com.example.masking.config.ResponseCacheProperties;
+import com.example.masking.config.RuleProfilerProperties;
+import com.example.masking.config.TenantProperties;
+import com.example.masking.controller.RequestSizeLimitFilter;
+import com.example.masking.controller.ResponseCompressionFilter;
+import com.example.masking.model.MaskingConfig;
+import com.example.masking.model.MaskingPatch;
+import com.example.masking.model.MaskingRequest;
+import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.PatchOffsetUnit;
+import com.example.masking.model.PayloadType;
+import com.example.masking.model.SpilledPayload;
+import com.example.masking.service.DataMaskingService;
+import com.example.masking.service.MaskingEngineSelector;
+import com.example.masking.service.MaskingLimits;
+import com.example.masking.service.PayloadSpillService;
+import com.example.masking.service.PayloadTypeDetector;
+import com.example.masking.service.RuleSet;
+import com.example.masking.service.RuleStatistics;
+import com.example.masking.service.TenantRuleSets;
+import com.example.masking.service.processor.DefaultMaskingProcessor;
+import com.example.masking.service.processor.FixedLengthMaskingProcessor;
+import com.example.masking.service.processor.JsonMaskingProcessor;
+import com.example.masking.service.processor.MaskingPatches;
+import com.example.masking.service.processor.XmlMaskingProcessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The masking services wired by hand from the shipped masking-config.yaml (no Spring context),
+ * and the engines the differential harness compares. Every engine returns a fully masked payload,
+ * so results can be compared with the reference DOM/JsonPath path.
+ */
+final class MaskingFixture {
+
+    /**
+     * A way of masking a payload end to end.
+     */
+    interface Engine {
+        Result mask(String payload) throws IOException;
+    }
+
+    static final class Result {
+        final PayloadType type;
+        final String subtype;
+        final String masked;
+
+        Result(PayloadType type, String subtype, String masked) {
+            this.type = type;
+            this.subtype = subtype;
+            this.masked = masked;
+        }
+    }
+
+    static final String REFERENCE = "reference";
+
+    // Tenant loading its own copy of masking-config.yaml, so it must mask exactly like the default
+    private static final String TENANT = "differential";
+
+    final MaskingConfig config;
+    final TenantRuleSets tenantRuleSets;
+    final DataMaskingService service;           // Tree engines only
+    final DataMaskingService streamingService;  // Streaming engines wherever the rules allow, records in parallel
+    final PayloadSpillService spillService;
+    private final RequestSizeLimitFilter requestFilter;
+    private final ResponseCompressionFilter compressionFilter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MaskingFixture(MaskingConfig config, TenantRuleSets tenantRuleSets, DataMaskingService service,
+                           DataMaskingService streamingService, PayloadSpillService spillService,
+                           RequestSizeLimitFilter requestFilter, ResponseCompressionFilter compressionFilter) {
+        this.config = config;
+        this.tenantRuleSets = tenantRuleSets;
+        this.service = service;
+        this.streamingService = streamingService;
+        this.spillService = spillService;
+        this.requestFilter = requestFilter;
+        this.compressionFilter = compressionFilter;
+    }
+
+    static MaskingFixture create() throws IOException {
+        MaskingConfigLoader loader = new MaskingConfigLoader();
+        ReflectionTestUtils.setField(loader, "configFile", "masking-config.yaml");
+        MaskingConfig config = loader.loadMaskingConfig();
+
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MaskingLimitsProperties limits = new MaskingLimitsProperties();
+        RuleStatistics ruleStatistics = new RuleStatistics(registry, new RuleProfilerProperties());
+        MaskingLimits maskingLimits = new MaskingLimits(limits, registry);
+
+        TenantProperties tenants = new TenantProperties();
+        TenantProperties.Tenant tenant = new TenantProperties.Tenant();
+        tenant.setConfigFile("masking-config.yaml");
+        tenants.getDefinitions().put(TENANT, tenant);
+        TenantRuleSets tenantRuleSets = new TenantRuleSets(config, tenants, ruleStatistics, registry,
+                new DefaultResourceLoader(), "masking-config.yaml");
+
+        PayloadSpillService spillService = new PayloadSpillService(limits, new ResponseCacheProperties(),
+                new ObjectMapper(), registry);
+
+        // Small thresholds, so compressed requests take both the in-memory and the spill path
+        MaskingLimitsProperties httpLimits = new MaskingLimitsProperties();
+        httpLimits.setInMemoryThreshold(DataSize.ofKilobytes(1));
+        CompressionProperties compression = new CompressionProperties();
+        compression.setResponseMinSize(DataSize.ofBytes(256));
+
+        return new MaskingFixture(config, tenantRuleSets,
+                service(EngineSelectionProperties.Mode.TREE, registry, ruleStatistics, maskingLimits,
+                        tenantRuleSets),
+                service(EngineSelectionProperties.Mode.STREAMING, registry, ruleStatistics, maskingLimits,
+                        tenantRuleSets),
+                spillService,
+                new RequestSizeLimitFilter(httpLimits, compression, spillService, new ObjectMapper(), registry),
+                new ResponseCompressionFilter(compression, registry));
+    }
+
+    private static DataMaskingService service(EngineSelectionProperties.Mode mode,
+                                              MeterRegistry registry, RuleStatistics ruleStatistics,
+                                              MaskingLimits maskingLimits, TenantRuleSets tenantRuleSets) {
+        EngineSelectionProperties engines = new EngineSelectionProperties();
+        engines.setMode(mode);
+        // Tiny batches, so even small generated arrays are split across the record pool
+        JsonRecordProperties records = new JsonRecordProperties();
+        records.setParallelism(4);
+        records.setBatchSize(DataSize.ofBytes(256));
+        return new DataMaskingService(
+                new PayloadTypeDetector(),
+                new XmlMaskingProcessor(ruleStatistics, maskingLimits),
+                new JsonMaskingProcessor(ruleStatistics, maskingLimits, records),
+                new FixedLengthMaskingProcessor(ruleStatistics),
+                new DefaultMaskingProcessor(new PiiDetectorProperties()),
+                tenantRuleSets,
+                maskingLimits,
+                new MaskingEngineSelector(engines, registry));
+    }
+
+    /**
+     * Engines for the rule-driven paths, keyed by name. The first entry is the reference.
+     */
+    Map<String, Engine> engines() {
+        Map<String, Engine> engines = new LinkedHashMap<>();
+        engines.put(REFERENCE, this::reference);
+        engines.put("patches-char", payload -> patches(payload, PatchOffsetUnit.CHAR));
+        engines.put("patches-utf8", payload -> patches(payload, PatchOffsetUnit.UTF8));
+        engines.put("spilled", payload -> spilled(service, payload, tenantRuleSets.getDefault()));
+        engines.put("streaming", payload -> inMemory(streamingService, payload, tenantRuleSets.getDefault()));
+        engines.put("spilled-streaming", payload -> spilled(streamingService, payload, tenantRuleSets.getDefault()));
+        engines.put("spilled-patches-char", payload -> spilledPatches(payload, PatchOffsetUnit.CHAR));
+        engines.put("spilled-patches-utf8", payload -> spilledPatches(payload, PatchOffsetUnit.UTF8));
+        engines.put("http-gzip", payload -> compressed(service, payload, "gzip"));
+        engines.put("http-zstd-streaming", payload -> compressed(streamingService, payload, "zstd"));
+        engines.put("tenant", payload -> inMemory(service, payload, tenantRuleSets.get(TENANT)));
+        engines.put("tenant-spilled-streaming", payload -> spilled(streamingService, payload, tenantRuleSets.get(TENANT)));
+        return engines;
+    }
+
+    /**
+     * In-memory masking through DataMaskingService with the tree engines: DOM/XPath for XML, JsonPath for JSON.
+     */
+    Result reference(String payload) {
+        return inMemory(service, payload, tenantRuleSets.getDefault());
+    }
+
+    private static Result inMemory(DataMaskingService service, String payload, RuleSet ruleSet) {
+        try {
+            PayloadType type = service.detectPayloadType(payload);
+            String masked = service.maskPayload(payload, type, ruleSet);
+            return new Result(type, service.getLastDetectedSubtype(), masked);
+        } finally {
+            service.clearThreadLocalState();
+        }
+    }
+
+    /**
+     * Patch response mode, with the patches applied to the original as a client would.
+     */
+    Result patches(String payload, PatchOffsetUnit unit) {
+        try {
+            PayloadType type = service.detectPayloadType(payload);
+            List<MaskingPatch> patches = service.maskPayloadToPatches(payload, type, unit);
+            String masked = unit == PatchOffsetUnit.UTF8 ? applyUtf8(payload, patches) : MaskingPatches.apply(payload, patches);
+            return new Result(type, service.getLastDetectedSubtype(), masked);
+        } finally {
+            service.clearThreadLocalState();
+        }
+    }
+
+    /**
+     * The spill path used for bodies above the in-memory threshold: the request body is decoded into a
+     * temp file, detection only sees its leading characters and the engines stream from disk.
+     */
+    private Result spilled(DataMaskingService service, String payload, RuleSet ruleSet) throws IOException {
+        try (SpilledPayload spilled = spillService.spill(new ByteArrayInputStream(envelope(payload)))) {
+            PayloadType type = service.detectPayloadType(spilled);
+            service.maskPayload(spilled, type, ruleSet);
+            String masked = new String(Files.readAllBytes(spilled.getMaskedFile()), StandardCharsets.UTF_8);
+            return new Result(type, service.getLastDetectedSubtype(), masked);
+        } finally {
+            service.clearThreadLocalState();
+        }
+    }
+
+    /**
+     * Patch response mode on the spill path, with the patches applied to the original. Every XML and
+     * JSON subtype of the shipped configuration can stream, as spilled patch requests require.
+     */
+    private Result spilledPatches(String payload, PatchOffsetUnit unit) throws IOException {
+        try (SpilledPayload spilled = spillService.spill(new ByteArrayInputStream(envelope(payload)))) {
+            PayloadType type = streamingService.detectPayloadType(spilled);
+            List<MaskingPatch> patches = streamingService.maskPayloadToPatches(spilled, type, unit,
+                    tenantRuleSets.getDefault());
+            String masked = unit == PatchOffsetUnit.UTF8 ? applyUtf8(payload, patches) : MaskingPatches.apply(payload, patches);
+            return new Result(type, streamingService.getLastDetectedSubtype(), masked);
+        } finally {
+            streamingService.clearThreadLocalState();
+        }
+    }
+
+    /**
+     * A compressed request through the admission and response-compression filters: the body is
+     * decoded while it is read (and spilled above the threshold), masked as the controller does,
+     * and the response is compressed with the same coding and decoded again here.
+     */
+    private Result compressed(DataMaskingService service, String payload, String encoding) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/mask");
+        request.setContentType("application/json");
+        request.addHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, encoding);
+        request.setContent(encode(envelope(payload), encoding));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        HttpServlet controller = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                serve(service, req, resp);
+            }
+        };
+        try {
+            new MockFilterChain(controller, requestFilter, compressionFilter).doFilter(request, response);
+        } catch (ServletException e) {
+            throw new IOException(e);
+        }
+        if (response.getStatus() != 200) {
+            throw new IOException("HTTP " + response.getStatus() + ": " + response.getContentAsString());
+        }
+
+        byte[] body = decode(response.getContentAsByteArray(), response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        JsonNode json = objectMapper.readTree(body);
+        return new Result(PayloadType.valueOf(json.get("payload_type").asText()),
+                json.hasNonNull("detected_subtype") ? json.get("detected_subtype").asText() : null,
+                json.get("masked_payload").asText());
+    }
+
+    private void serve(DataMaskingService service, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        SpilledPayload spilled = (SpilledPayload) request.getAttribute(SpilledPayload.REQUEST_ATTRIBUTE);
+        response.setContentType("application/json");
+        try {
+            if (spilled != null) {
+                PayloadType type = service.detectPayloadType(spilled);
+                service.maskPayload(spilled, type);
+                MaskingResponse masked = new MaskingResponse(spilled.getTransaction_id(), null, type.name(), 0L);
+                masked.setDetected_subtype(service.getLastDetectedSubtype());
+                Path file = spillService.writeResponse(spilled, masked);
+                response.setContentLengthLong(Files.size(file));
+                Files.copy(file, response.getOutputStream());
+                return;
+            }
+            MaskingRequest body = objectMapper.readValue(request.getInputStream(), MaskingRequest.class);
+            PayloadType type = service.detectPayloadType(body.getPayload_txt());
+            MaskingResponse masked = new MaskingResponse(body.getTransaction_id(),
+                    service.maskPayload(body.getPayload_txt(), type), type.name(), 0L);
+            masked.setDetected_subtype(service.getLastDetectedSubtype());
+            objectMapper.writeValue(response.getOutputStream(), masked);
+        } finally {
+            service.clearThreadLocalState();
+        }
+    }
+
+    private byte[] envelope(String payload) throws IOException {
+        Map<String, String> request = new LinkedHashMap<>();
+        request.put("transaction_id", "differential");
+        request.put("payload_txt", payload);
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    private static byte[] encode(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream encoder = "zstd".equals(encoding) ? new ZstdOutputStream(out) : new GZIPOutputStream(out)) {
+            encoder.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] body, String encoding) throws IOException {
+        if (encoding == null) {
+            return body;
+        }
+        try (InputStream decoder = "zstd".equals(encoding)
+                ? new ZstdInputStream(new ByteArrayInputStream(body))
+                : new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return StreamUtils.copyToByteArray(decoder);
+        }
+    }
+
+    /**
+     * A default-masking processor with adjusted detector settings, e.g. the legacy regex.
+     */
+    static DefaultMaskingProcessor defaultProcessor(Consumer<PiiDetectorProperties> settings) {
+        PiiDetectorProperties properties = new PiiDetectorProperties();
+        settings.accept(properties);
+        return new DefaultMaskingProcessor(properties);
+    }
+
+    private static String applyUtf8(String payload, List<MaskingPatch> patches) {
+        byte[] original = payload.getBytes(StandardCharsets.UTF_8);
+        List<MaskingPatch> sorted = new ArrayList<>(patches);
+        sorted.sort(Comparator.comparingLong(MaskingPatch::getOffset));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(original.length);
+        int position = 0;
+        for (MaskingPatch patch : sorted) {
+            out.write(original, position, (int) patch.getOffset() - position);
+            byte[] replacement = patch.getReplacement().getBytes(StandardCharsets.UTF_8);
+            out.write(replacement, 0, replacement.length);
+            position = (int) (patch.getOffset() + patch.getLength());
+        }
+        out.write(original, position, original.length - position);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
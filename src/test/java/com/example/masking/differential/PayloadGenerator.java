@@ -0,0 +1,694 @@
+package com.example.masking.differential;
+
+import com.example.masking.model.FixedLengthFormat;
+import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingConfig;
+import com.example.masking.model.MaskingRule;
+import com.example.masking.model.NamespaceMapping;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeded random payloads for every subtype in the masking config. Payloads hit the configured
+ * rules (sometimes several times, sometimes not at all) and surround them with the syntax an
+ * engine could get wrong: namespace prefixes, CDATA, entity and character references, comments,
+ * mixed content, escapes, nested arrays, irregular whitespace and non-ASCII text. Values of
+ * nested rules are mostly whole XML or JSON payloads of other subtypes, embedded as strings.
+ */
+final class PayloadGenerator {
+
+    enum Kind {
+        XML, JSON, FIXED, DEFAULT
+    }
+
+    /**
+     * A configured payload subtype and the rules that apply to it.
+     */
+    static final class Subtype {
+        final String name;                  // Rule type, e.g. "xml_pain_013"; "default" for rule-less text
+        final Kind kind;
+        final List<MaskingAttribute> attributes;
+        final String namespacePattern;      // Namespace-detected XML subtypes only
+        final FixedLengthFormat format;     // Fixed-length subtypes only
+        final List<Subtype> embedded = new ArrayList<>();   // Payloads generated for nested rules
+
+        Subtype(String name, Kind kind, List<MaskingAttribute> attributes, String namespacePattern,
+                FixedLengthFormat format) {
+            this.name = name;
+            this.kind = kind;
+            this.attributes = attributes;
+            this.namespacePattern = namespacePattern;
+            this.format = format;
+        }
+
+        /**
+         * The detected_subtype the service reports for this subtype's payloads.
+         */
+        String expectedDetectedSubtype() {
+            switch (kind) {
+                case JSON:
+                    return "JSON";
+                case DEFAULT:
+                    return "FIXED";
+                default:
+                    return name.toUpperCase();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final String[] WORDS = {"payment", "ref", "status", "accepted", "amount", "EUR", "note", "batch",
+            "Zoë", "Müller", "naïve", "straße", "中文", "id", "value", "total"};
+    private static final String[] IBAN_COUNTRIES = {"DE", "GB", "FR", "NL", "CH"};
+    private static final int[] IBAN_LENGTHS = {22, 22, 27, 18, 21};
+
+    private final Random random;
+    private final int scale;    // Repetitions of the generated structure, for larger payloads
+    private int embedding;      // Payloads being generated as values of nested rules
+
+    PayloadGenerator(long seed) {
+        this(seed, 1);
+    }
+
+    PayloadGenerator(long seed, int scale) {
+        this.random = new Random(seed);
+        this.scale = scale;
+    }
+
+    /**
+     * Every subtype in the config: generic and namespace-mapped XML, JSON, each fixed-length
+     * format, plus rule-less text that goes to default masking.
+     */
+    static List<Subtype> subtypes(MaskingConfig config) {
+        Map<String, List<MaskingAttribute>> rules = new LinkedHashMap<>();
+        for (MaskingRule rule : config.getRules()) {
+            rules.computeIfAbsent(rule.getType().toLowerCase(), k -> new ArrayList<>()).addAll(rule.getAttributes());
+        }
+
+        List<Subtype> subtypes = new ArrayList<>();
+        if (rules.containsKey("xml")) {
+            subtypes.add(new Subtype("xml", Kind.XML, rules.get("xml"), null, null));
+        }
+        for (NamespaceMapping mapping : config.getNamespaceMappings()) {
+            String type = "xml_" + mapping.getPattern().replace(".", "_").toLowerCase();
+            if (rules.containsKey(type)) {
+                subtypes.add(new Subtype(type, Kind.XML, rules.get(type), mapping.getPattern(), null));
+            }
+        }
+        if (rules.containsKey("json")) {
+            subtypes.add(new Subtype("json", Kind.JSON, rules.get("json"), null, null));
+        }
+        for (FixedLengthFormat format : config.getFixedLengthFormats()) {
+            String type = format.getType().toLowerCase();
+            subtypes.add(new Subtype(type, Kind.FIXED, rules.getOrDefault(type, Collections.emptyList()), null, format));
+        }
+        subtypes.add(new Subtype("default", Kind.DEFAULT, Collections.emptyList(), null, null));
+
+        for (Subtype subtype : subtypes) {
+            if (subtype.attributes.stream().anyMatch(MaskingAttribute::isNested)) {
+                subtypes.stream().filter(s -> s.kind == Kind.XML || s.kind == Kind.JSON).forEach(subtype.embedded::add);
+            }
+        }
+        return subtypes;
+    }
+
+    String generate(Subtype subtype) {
+        switch (subtype.kind) {
+            case XML:
+                return xml(subtype);
+            case JSON:
+                return json(subtype);
+            case FIXED:
+                return fixed(subtype);
+            default:
+                return text();
+        }
+    }
+
+    // ---------------------------------------------------------------- XML
+
+    private String xml(Subtype subtype) {
+        boolean namespaced = subtype.namespacePattern != null;
+        String prefix = namespaced && random.nextBoolean() ? pick("p", "doc", "ns1") : null;
+        boolean extension = random.nextInt(3) == 0;
+
+        StringBuilder xml = new StringBuilder();
+        // Namespace subtype detection reads the root element right after the declaration
+        if (namespaced || random.nextBoolean()) {
+            xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>").append(random.nextBoolean() ? "\n" : "");
+        }
+        String root = qualified(prefix, namespaced ? "Document" : pick("Payment", "Message", "Root"));
+        xml.append('<').append(root);
+        if (namespaced) {
+            String uri = "urn:iso:std:iso:20022:tech:xsd:" + subtype.namespacePattern + ".001.0" + random.nextInt(10);
+            xml.append(prefix == null ? " xmlns=\"" : " xmlns:" + prefix + "=\"").append(uri).append('"');
+        }
+        if (extension) {
+            xml.append(" xmlns:x=\"urn:example:extension\"");
+        }
+        xmlAttributes(xml);
+        xml.append('>');
+
+        List<String[]> blocks = new ArrayList<>();
+        for (int n = 0; n < scale; n++) {
+            for (MaskingAttribute attribute : subtype.attributes) {
+                int repeats = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(2);
+                for (int r = 0; r < repeats; r++) {
+                    blocks.add(steps(attribute.getXpath()));
+                }
+            }
+            for (int r = random.nextInt(4); r >= 0; r--) {
+                blocks.add(null);   // Noise
+            }
+        }
+        Collections.shuffle(blocks, random);
+
+        for (String[] steps : blocks) {
+            whitespace(xml, 1);
+            if (steps == null) {
+                xmlNoise(xml, prefix, extension, 1);
+            } else {
+                xmlChain(xml, prefix, extension, steps, 0, 1);
+            }
+        }
+        whitespace(xml, 0);
+        xml.append("</").append(root).append('>');
+        if (random.nextBoolean()) {
+            xml.append('\n');
+        }
+        return xml.toString();
+    }
+
+    private void xmlChain(StringBuilder xml, String prefix, boolean extension, String[] steps, int step, int depth) {
+        String name = qualified(prefix, steps[step]);
+        xml.append('<').append(name);
+        xmlAttributes(xml);
+        xml.append('>');
+
+        if (step == steps.length - 1) {
+            xmlValue(xml);
+        } else {
+            if (random.nextInt(3) == 0) {
+                whitespace(xml, depth + 1);
+                xmlNoise(xml, prefix, extension, depth + 1);
+            }
+            whitespace(xml, depth + 1);
+            xmlChain(xml, prefix, extension, steps, step + 1, depth + 1);
+            whitespace(xml, depth);
+        }
+        xml.append("</").append(name).append('>');
+    }
+
+    private void xmlNoise(StringBuilder xml, String prefix, boolean extension, int depth) {
+        switch (random.nextInt(7)) {
+            case 0:
+                xml.append("<!-- ").append(pick(WORDS)).append(" -->");
+                break;
+            case 1:
+                xml.append("<?audit ").append(pick(WORDS)).append("?>");
+                break;
+            case 2:
+                xml.append('<').append(qualified(prefix, "Empty"));
+                xmlAttributes(xml);
+                xml.append("/>");
+                break;
+            case 3:
+                if (extension) {
+                    xml.append("<x:Ext>");
+                    xmlValue(xml);
+                    xml.append("</x:Ext>");
+                    break;
+                }
+                // fall through
+            case 4: {
+                String name = qualified(prefix, pick("Note", "Ref", "Amount", "Number"));
+                xml.append('<').append(name).append('>');
+                xmlValue(xml);
+                xml.append("</").append(name).append('>');
+                break;
+            }
+            default: {
+                String name = qualified(prefix, pick("Group", "Details", "Id"));
+                xml.append('<').append(name);
+                xmlAttributes(xml);
+                xml.append('>');
+                if (depth < 4) {
+                    whitespace(xml, depth + 1);
+                    xmlNoise(xml, prefix, extension, depth + 1);
+                }
+                whitespace(xml, depth);
+                xml.append("</").append(name).append('>');
+            }
+        }
+    }
+
+    private void xmlValue(StringBuilder xml) {
+        String value = value();
+        switch (random.nextInt(8)) {
+            case 0:
+                // CDATA keeps markup characters unescaped
+                xml.append("<![CDATA[").append(value).append(random.nextBoolean() ? "<&>" : "").append("]]>");
+                break;
+            case 1:
+                // Entity and character references
+                xml.append(escapeXml(value, false)).append(pick("&amp;", "&lt;", "&gt;", "&#65;", "&#x20AC;", "&quot;"))
+                        .append(digits(1 + random.nextInt(6)));
+                break;
+            case 2:
+                // Mixed content: a comment splits the text
+                xml.append(digits(2 + random.nextInt(6))).append("<!--split-->").append(digits(2 + random.nextInt(8)));
+                break;
+            case 3:
+                xml.append(random.nextBoolean() ? " " : "\n  ").append(escapeXml(value, false)).append(' ');
+                break;
+            default:
+                xml.append(escapeXml(value, false));
+        }
+    }
+
+    private void xmlAttributes(StringBuilder xml) {
+        for (int n = random.nextInt(3) == 0 ? 1 + random.nextInt(2) : 0; n > 0; n--) {
+            char quote = random.nextBoolean() ? '"' : '\'';
+            xml.append(' ').append(pick("Ccy", "id", "type", "ref")).append(n).append('=').append(quote)
+                    .append(escapeXml(value(), true)).append(random.nextInt(4) == 0 ? "&amp;" : "").append(quote);
+        }
+    }
+
+    private static String[] steps(String xpath) {
+        String[] steps = xpath.replaceFirst("^/+", "").split("/");
+        for (int i = 0; i < steps.length; i++) {
+            int colon = steps[i].indexOf(':');
+            steps[i] = colon >= 0 ? steps[i].substring(colon + 1) : steps[i];
+        }
+        return steps;
+    }
+
+    private static String qualified(String prefix, String local) {
+        return prefix == null ? local : prefix + ":" + local;
+    }
+
+    private void whitespace(StringBuilder xml, int depth) {
+        switch (random.nextInt(4)) {
+            case 0:
+                break;
+            case 1:
+                xml.append(' ');
+                break;
+            default:
+                xml.append('\n');
+                for (int i = 0; i < depth; i++) {
+                    xml.append(random.nextBoolean() ? "  " : "\t");
+                }
+        }
+    }
+
+    private static String escapeXml(String value, boolean attribute) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '&') {
+                escaped.append("&amp;");
+            } else if (c == '<') {
+                escaped.append("&lt;");
+            } else if (attribute && (c == '"' || c == '\'')) {
+                escaped.append(c == '"' ? "&quot;" : "&apos;");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    // ---------------------------------------------------------------- JSON
+
+    private String json(Subtype subtype) {
+        // Record rules ($[*].a.b) as object rules relative to each record ($.a.b)
+        List<MaskingAttribute> objectRules = new ArrayList<>();
+        List<MaskingAttribute> recordRules = new ArrayList<>();
+        for (MaskingAttribute attribute : subtype.attributes) {
+            if (attribute.getJsonpath().startsWith("$[*]")) {
+                recordRules.add(new MaskingAttribute(null, "$" + attribute.getJsonpath().substring(4), null, null));
+            } else {
+                objectRules.add(attribute);
+            }
+        }
+
+        if (!recordRules.isEmpty() && random.nextInt(3) == 0) {
+            // Root array of records, with the odd scalar or unrelated value in between
+            List<Object> root = new ArrayList<>();
+            for (int n = 1 + random.nextInt(8 * scale); n > 0; n--) {
+                root.add(random.nextInt(10) == 0 ? jsonNoise(1) : jsonObject(recordRules, subtype.embedded));
+            }
+            return writeJson(root);
+        }
+        if (random.nextInt(20) == 0) {
+            // Root array: object rules do not apply
+            List<Object> root = new ArrayList<>();
+            root.add(jsonNoise(2));
+            root.add(jsonObject(objectRules, subtype.embedded));
+            return writeJson(root);
+        }
+        Map<String, Object> root = jsonObject(objectRules, subtype.embedded);
+        if (!recordRules.isEmpty() && random.nextInt(4) == 0) {
+            // [*] on an object selects its field values, so records nested one level down are masked too
+            root.put("record" + random.nextInt(100), jsonObject(recordRules, subtype.embedded));
+        }
+        return writeJson(root);
+    }
+
+    private Map<String, Object> jsonObject(List<MaskingAttribute> attributes, List<Subtype> embedded) {
+        Map<String, Object> root = new LinkedHashMap<>();
+        for (int n = 0; n < scale; n++) {
+            addNoise(root, 3);
+        }
+        for (MaskingAttribute attribute : attributes) {
+            if (random.nextInt(4) == 0) {
+                continue;
+            }
+            String[] steps = attribute.getJsonpath().replaceFirst("^\\$\\.", "").split("\\.");
+            Map<String, Object> parent = root;
+            for (int i = 0; i < steps.length - 1; i++) {
+                Object child = parent.get(steps[i]);
+                if (!(child instanceof Map)) {
+                    Map<String, Object> created = new LinkedHashMap<>();
+                    if (random.nextBoolean()) {
+                        addNoise(created, 2);
+                    }
+                    parent.put(steps[i], created);
+                    child = created;
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> next = (Map<String, Object>) child;
+                parent = next;
+            }
+            parent.put(steps[steps.length - 1], attribute.isNested() ? nestedLeaf(embedded) : jsonLeaf());
+        }
+        return root;
+    }
+
+    /**
+     * Value of a nested rule: usually a payload of another subtype (embedding payloads in turn, two
+     * levels deep at most), sometimes an ordinary value.
+     */
+    private Object nestedLeaf(List<Subtype> embedded) {
+        if (embedded.isEmpty() || embedding >= 2 || random.nextInt(4) == 0) {
+            return jsonLeaf();
+        }
+        embedding++;
+        try {
+            return generate(embedded.get(random.nextInt(embedded.size())));
+        } finally {
+            embedding--;
+        }
+    }
+
+    private Object jsonLeaf() {
+        switch (random.nextInt(12)) {
+            case 0:
+                return Long.parseLong("1" + digits(5 + random.nextInt(12)));
+            case 1:
+                return null;
+            case 2:
+                return random.nextBoolean();
+            case 3:
+                return jsonNoise(1);    // Object or array: masked as a whole
+            default:
+                return value();
+        }
+    }
+
+    private void addNoise(Map<String, Object> object, int depth) {
+        for (int n = random.nextInt(3); n >= 0; n--) {
+            object.put(pick("id", "note", "items", "amount", "meta", "tags", "ref") + random.nextInt(100), jsonNoise(depth));
+        }
+    }
+
+    private Object jsonNoise(int depth) {
+        switch (depth <= 0 ? random.nextInt(4) : random.nextInt(7)) {
+            case 0:
+                return value();
+            case 1:
+                return pick("12.50", "-3", "0", "1.5e3", "100000000000", "-0.25");   // Written as number literals
+            case 2:
+                return random.nextBoolean() ? Boolean.TRUE : null;
+            case 3:
+                return pick(WORDS) + " \"quoted\" \\ / \t line\nbreak";
+            case 4: {
+                List<Object> array = new ArrayList<>();
+                for (int n = random.nextInt(4); n > 0; n--) {
+                    array.add(jsonNoise(depth - 1));
+                }
+                return array;
+            }
+            case 5: {
+                // Nested arrays
+                List<Object> outer = new ArrayList<>();
+                List<Object> inner = new ArrayList<>();
+                inner.add(jsonNoise(depth - 1));
+                outer.add(inner);
+                outer.add(new ArrayList<>());
+                return outer;
+            }
+            default: {
+                Map<String, Object> object = new LinkedHashMap<>();
+                addNoise(object, depth - 1);
+                return object;
+            }
+        }
+    }
+
+    private String writeJson(Object value) {
+        StringBuilder json = new StringBuilder();
+        boolean pretty = random.nextBoolean();
+        writeJson(json, value, pretty, 0);
+        return json.toString();
+    }
+
+    private void writeJson(StringBuilder json, Object value, boolean pretty, int depth) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            json.append('{');
+            int i = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                json.append(i++ > 0 ? "," : "");
+                newline(json, pretty, depth + 1);
+                writeJsonString(json, entry.getKey().toString());
+                json.append(random.nextInt(3) == 0 ? " : " : pretty ? ": " : ":");
+                writeJson(json, entry.getValue(), pretty, depth + 1);
+            }
+            if (!map.isEmpty()) {
+                newline(json, pretty, depth);
+            }
+            json.append('}');
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            json.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                json.append(i > 0 ? (random.nextBoolean() ? ", " : ",") : "");
+                writeJson(json, list.get(i), pretty, depth + 1);
+            }
+            json.append(']');
+        } else if (value instanceof String && isNumberLiteral((String) value)) {
+            json.append(value);
+        } else if (value instanceof String) {
+            writeJsonString(json, (String) value);
+        } else {
+            json.append(value);     // Number, boolean or null
+        }
+    }
+
+    private void writeJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c == '\n') {
+                json.append("\\n");
+            } else if (c == '\t') {
+                json.append("\\t");
+            } else if (c == '/' && random.nextBoolean()) {
+                json.append("\\/");
+            } else if (c < 0x20 || (c > 0x7e && random.nextBoolean())) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static boolean isNumberLiteral(String value) {
+        return value.matches("-?\\d+(\\.\\d+)?(e\\d+)?") && !value.startsWith("0") || value.equals("0");
+    }
+
+    private void newline(StringBuilder json, boolean pretty, int depth) {
+        if (pretty) {
+            json.append('\n');
+            for (int i = 0; i < depth; i++) {
+                json.append("  ");
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- Fixed-length and default
+
+    private String fixed(Subtype subtype) {
+        StringBuilder record = new StringBuilder();
+        if (random.nextInt(10) == 0) {
+            record.append("  ");
+        }
+        record.append(subtype.format.getPrefix());
+
+        // Lengths around the masked segments, including records too short for some of them
+        int maxEnd = 0;
+        for (MaskingAttribute attribute : subtype.attributes) {
+            if (attribute.getEnd() != null) {
+                maxEnd = Math.max(maxEnd, attribute.getEnd());
+            }
+        }
+        int length = random.nextBoolean() ? random.nextInt(maxEnd + 40) : maxEnd - 2 + random.nextInt(5);
+        length = length * Math.max(1, scale / 4);
+        while (record.length() < length) {
+            int r = random.nextInt(20);
+            record.append(r < 12 ? (char) ('0' + random.nextInt(10))
+                    : r < 17 ? (char) ('A' + random.nextInt(26))
+                    : r < 19 ? ' ' : "é€ü".charAt(random.nextInt(3)));
+        }
+        if (random.nextInt(5) == 0) {
+            record.append('\n');
+        }
+        return record.toString();
+    }
+
+    private String text() {
+        StringBuilder text = new StringBuilder(pick("note", "Payment", "status", "Zoë"));
+        int tokens = (5 + random.nextInt(25)) * scale;
+        for (int i = 0; i < tokens; i++) {
+            text.append(pick(" ", " ", ", ", "\n", "; ", "-", "/"));
+            switch (random.nextInt(9)) {
+                case 0:
+                    text.append(digits(1 + random.nextInt(30)));
+                    break;
+                case 1:
+                    text.append(card());
+                    break;
+                case 2:
+                    text.append(iban());
+                    break;
+                case 3:
+                    // Near misses: invalid check digits, separators in the wrong places
+                    text.append(random.nextBoolean() ? "DE00" + digits(18) : digits(4) + " " + digits(3) + "-" + digits(9));
+                    break;
+                default:
+                    text.append(pick(WORDS));
+            }
+        }
+        return text.toString();
+    }
+
+    private String card() {
+        int length = pick(16, 16, 15, 19, 13);
+        StringBuilder digits = new StringBuilder(length == 15 ? "37" : "4");
+        while (digits.length() < length - 1) {
+            digits.append(random.nextInt(10));
+        }
+        digits.append(luhnCheckDigit(digits));
+        if (length == 16 && random.nextBoolean()) {
+            char separator = random.nextBoolean() ? ' ' : '-';
+            return digits.substring(0, 4) + separator + digits.substring(4, 8) + separator
+                    + digits.substring(8, 12) + separator + digits.substring(12);
+        }
+        return digits.toString();
+    }
+
+    private String iban() {
+        int country = random.nextInt(IBAN_COUNTRIES.length);
+        String code = IBAN_COUNTRIES[country];
+        StringBuilder bban = new StringBuilder();
+        if (code.equals("GB") || code.equals("NL")) {
+            for (int i = 0; i < 4; i++) {
+                bban.append((char) ('A' + random.nextInt(26)));
+            }
+        }
+        while (bban.length() < IBAN_LENGTHS[country] - 4) {
+            bban.append(random.nextInt(10));
+        }
+        int check = 98 - mod97(bban + code + "00");
+        String iban = code + (check < 10 ? "0" : "") + check + bban;
+        if (random.nextBoolean()) {
+            // Print format: groups of four
+            StringBuilder printed = new StringBuilder();
+            for (int i = 0; i < iban.length(); i += 4) {
+                printed.append(i > 0 ? " " : "").append(iban, i, Math.min(i + 4, iban.length()));
+            }
+            return printed.toString();
+        }
+        return iban;
+    }
+
+    // ---------------------------------------------------------------- Values
+
+    /**
+     * A field value: account-like digits of any length (including ones too short to mask), IBAN-like
+     * strings, or text with spaces, punctuation and non-ASCII characters.
+     */
+    private String value() {
+        switch (random.nextInt(6)) {
+            case 0:
+                return digits(random.nextInt(5));
+            case 1:
+                return iban();
+            case 2:
+                return pick(WORDS) + " " + digits(4 + random.nextInt(8)) + pick("", "€", "-X");
+            default:
+                return digits(8 + random.nextInt(12));
+        }
+    }
+
+    private String digits(int count) {
+        StringBuilder digits = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static int luhnCheckDigit(CharSequence payload) {
+        int sum = 0;
+        boolean twice = true;
+        for (int i = payload.length() - 1; i >= 0; i--) {
+            int digit = payload.charAt(i) - '0';
+            if (twice) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            twice = !twice;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private static int mod97(String rearranged) {
+        StringBuilder numeric = new StringBuilder();
+        for (char c : rearranged.toCharArray()) {
+            numeric.append(Character.isLetter(c) ? String.valueOf(c - 'A' + 10) : String.valueOf(c));
+        }
+        return new BigInteger(numeric.toString()).mod(BigInteger.valueOf(97)).intValue();
+    }
+
+    @SafeVarargs
+    private final <T> T pick(T... options) {
+        return options[random.nextInt(options.length)];
+    }
+}
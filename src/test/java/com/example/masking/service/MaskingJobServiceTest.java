@@ -0,0 +1,190 @@
+package com.example.masking.service;
+
+import com.example.masking.config.JobProperties;
+import com.example.masking.model.JobStatus;
+import com.example.masking.model.JobSubmission;
+import com.example.masking.model.MaskingConfig;
+import com.example.masking.model.MaskingRequest;
+import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.PayloadType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Bulk jobs on the directory queue: resuming after a crash that tore the last output line, and the
+ * progress checkpoints a resumed job starts from. Masking itself is mocked; the masked payload
+ * only marks which records the job ran.
+ */
+class MaskingJobServiceTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final String PAYLOAD = "[{\"account\":{\"accountNumber\":\"1234567890123456\"}}]";
+    private static final String MASKED = "[{\"account\":{\"accountNumber\":\"************3456\"}}]";
+
+    // The application's mapper settings: job.json carries derived fields (progress, records_per_second)
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @TempDir
+    Path directory;
+
+    private final DataMaskingService service = Mockito.mock(DataMaskingService.class);
+    private final TenantRuleSets tenantRuleSets = Mockito.mock(TenantRuleSets.class);
+
+    private MaskingJobService jobs;
+
+    @BeforeEach
+    void mockMasking() {
+        RuleSet ruleSet = RuleSet.compile(TenantRuleSets.DEFAULT_TENANT, new MaskingConfig());
+        when(tenantRuleSets.get(TenantRuleSets.DEFAULT_TENANT)).thenReturn(ruleSet);
+        when(service.detectPayloadType(PAYLOAD)).thenReturn(PayloadType.JSON);
+        when(service.maskPayload(PAYLOAD, PayloadType.JSON, ruleSet)).thenReturn(MASKED);
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        if (jobs != null) {
+            jobs.shutdown();
+        }
+    }
+
+    @Test
+    void resumeDropsTornLineAndContinuesAfterLastCompleteRecord() throws Exception {
+        Path jobDirectory = Files.createDirectories(directory.resolve("job-1"));
+        List<String> input = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            input.add(objectMapper.writeValueAsString(item("tx-" + i)));
+        }
+        Files.write(jobDirectory.resolve("input.jsonl"), input, StandardCharsets.UTF_8);
+
+        // Two complete results (one of them a failure) and a third cut off mid-write
+        String done = objectMapper.writeValueAsString(new MaskingResponse("tx-1", "{\"account\":\"done\"}", "JSON"))
+                + "\n{\"transaction_id\":\"tx-2\",\"error\":\"earlier failure\"}\n";
+        String torn = "{\"transaction_id\":\"tx-3\",\"masked_pay";
+        Files.write(jobDirectory.resolve("output.jsonl"), (done + torn).getBytes(StandardCharsets.UTF_8));
+
+        JobStatus crashed = new JobStatus();
+        crashed.setJob_id("job-1");
+        crashed.setStatus(JobStatus.State.RUNNING);
+        crashed.setTotal_records(5);
+        crashed.setProcessed_records(2);
+        crashed.setSubmitted_at(System.currentTimeMillis());
+        crashed.setStarted_at(System.currentTimeMillis());
+        objectMapper.writeValue(jobDirectory.resolve("job.json").toFile(), crashed);
+
+        jobs = jobService(500);
+        jobs.resumeUnfinishedJobs();
+        JobStatus status = awaitCompletion("job-1");
+
+        assertEquals(5, status.getProcessed_records());
+        assertEquals(1, status.getFailed_records());
+
+        String output = new String(Files.readAllBytes(jobs.getResultFile("job-1")), StandardCharsets.UTF_8);
+        assertTrue(output.startsWith(done), "Complete records before the crash are kept as they were");
+        String[] lines = output.split("\n");
+        assertEquals(5, lines.length);
+        for (int i = 2; i < lines.length; i++) {
+            JsonNode record = objectMapper.readTree(lines[i]);
+            assertEquals("tx-" + (i + 1), record.get("transaction_id").asText());
+            assertTrue(record.get("masked_payload").asText().contains("************3456"), lines[i]);
+        }
+        assertEquals(status.getProcessed_records(), persisted("job-1").getProcessed_records());
+    }
+
+    @Test
+    void checkpointsPersistProgressAndFlushOutput() throws Exception {
+        // Hold the sixth record until the state on disk has been checked
+        CountDownLatch reached = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        when(service.maskPayload(anyString(), any(PayloadType.class), any(RuleSet.class))).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 6) {
+                reached.countDown();
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            return MASKED;
+        });
+
+        jobs = jobService(2);
+        JobSubmission submission = new JobSubmission();
+        List<MaskingRequest> items = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            items.add(item("tx-" + i));
+        }
+        submission.setItems(items);
+        String jobId = jobs.submit(submission).getJob_id();
+
+        assertTrue(reached.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Job did not reach the sixth record");
+        try {
+            // Five records masked; the last checkpoint (every 2) was after the fourth
+            JobStatus checkpoint = persisted(jobId);
+            assertEquals(JobStatus.State.RUNNING, checkpoint.getStatus());
+            assertEquals(4, checkpoint.getProcessed_records());
+            assertEquals(4, Files.readAllLines(jobs.getResultFile(jobId), StandardCharsets.UTF_8).size());
+        } finally {
+            release.countDown();
+        }
+
+        JobStatus status = awaitCompletion(jobId);
+        assertEquals(9, status.getProcessed_records());
+        assertEquals(0, status.getFailed_records());
+        assertEquals(9, Files.readAllLines(jobs.getResultFile(jobId), StandardCharsets.UTF_8).size());
+        JobStatus finished = persisted(jobId);
+        assertEquals(JobStatus.State.COMPLETED, finished.getStatus());
+        assertEquals(9, finished.getProcessed_records());
+    }
+
+    private MaskingJobService jobService(int checkpointInterval) throws IOException {
+        JobProperties properties = new JobProperties();
+        properties.setDirectory(directory.toString());
+        properties.setWorkers(1);
+        properties.setCheckpointInterval(checkpointInterval);
+        return new MaskingJobService(service, tenantRuleSets, properties, objectMapper,
+                new SimpleMeterRegistry());
+    }
+
+    private JobStatus awaitCompletion(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        JobStatus status = jobs.getStatus(jobId);
+        while (status.getStatus() != JobStatus.State.COMPLETED && System.nanoTime() < deadline) {
+            assertTrue(status.getStatus() != JobStatus.State.FAILED, "Job failed: " + status.getError());
+            Thread.sleep(10);
+            status = jobs.getStatus(jobId);
+        }
+        assertEquals(JobStatus.State.COMPLETED, status.getStatus());
+        return status;
+    }
+
+    private JobStatus persisted(String jobId) throws IOException {
+        return objectMapper.readValue(directory.resolve(jobId).resolve("job.json").toFile(), JobStatus.class);
+    }
+
+    private static MaskingRequest item(String transactionId) {
+        MaskingRequest request = new MaskingRequest();
+        request.setTransaction_id(transactionId);
+        request.setPayload_txt(PAYLOAD);
+        return request;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.masking.service;
+
+import com.example.masking.config.ResponseCacheProperties;
+import com.example.masking.model.MaskingConfig;
+import com.example.masking.model.MaskingResponse;
+import com.example.masking.model.SpilledPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Idempotent-retry cache: a retry of the same transaction_id and payload under the same tenant and
+ * rule set version is served from the cache; anything else is a miss. Spilled requests are matched by
+ * the digest computed while spilling and answered with the stored response file.
+ */
+class MaskingResponseCacheTest {
+
+    private static final String PAYLOAD = "{\"account\":{\"accountNumber\":\"1234567890123456\"}}";
+    private static final String MASKED = "{\"account\":{\"accountNumber\":\"************3456\"}}";
+
+    @TempDir
+    Path directory;
+
+    private MeterRegistry registry;
+    private MaskingResponseCache cache;
+
+    @BeforeEach
+    void createCache() throws IOException {
+        ResponseCacheProperties properties = new ResponseCacheProperties();
+        properties.setEnabled(true);
+        properties.getSpilled().setDirectory(directory.resolve("cache").toString());
+        registry = new SimpleMeterRegistry();
+        cache = new MaskingResponseCache(properties, new ObjectMapper(), registry);
+    }
+
+    @Test
+    void retryWithSamePayloadIsAHit() {
+        RuleSet ruleSet = ruleSet("default", "v1");
+        MaskingResponse response = response("tx-1");
+        cache.put(ruleSet, "tx-1", PAYLOAD, response);
+
+        assertSame(response, cache.get(ruleSet, "tx-1", PAYLOAD));
+        assertEquals(1, requests("hit"));
+        assertEquals(0, requests("miss"));
+    }
+
+    @Test
+    void unknownTransactionIsAMiss() {
+        RuleSet ruleSet = ruleSet("default", "v1");
+        cache.put(ruleSet, "tx-1", PAYLOAD, response("tx-1"));
+
+        assertNull(cache.get(ruleSet, "tx-2", PAYLOAD));
+        assertEquals(1, requests("miss"));
+    }
+
+    @Test
+    void samePayloadLengthWithDifferentContentIsAMiss() {
+        RuleSet ruleSet = ruleSet("default", "v1");
+        cache.put(ruleSet, "tx-1", PAYLOAD, response("tx-1"));
+
+        // Same transaction_id and length, different content: not a retry
+        String changed = PAYLOAD.replace("1234567890123456", "6543210987654321");
+        assertEquals(PAYLOAD.length(), changed.length());
+        assertNull(cache.get(ruleSet, "tx-1", changed));
+        assertNull(cache.get(ruleSet, "tx-1", PAYLOAD + " "));
+        assertEquals(2, requests("miss"));
+    }
+
+    @Test
+    void reloadedRuleSetVersionIsAMiss() {
+        cache.put(ruleSet("default", "v1"), "tx-1", PAYLOAD, response("tx-1"));
+
+        assertNull(cache.get(ruleSet("default", "v2"), "tx-1", PAYLOAD));
+    }
+
+    @Test
+    void tenantsDoNotShareEntries() {
+        MaskingResponse acme = response("tx-1");
+        cache.put(ruleSet("acme", "v1"), "tx-1", PAYLOAD, acme);
+
+        assertNull(cache.get(ruleSet("default", "v1"), "tx-1", PAYLOAD));
+        assertNull(cache.get(ruleSet("globex", "v1"), "tx-1", PAYLOAD));
+        assertSame(acme, cache.get(ruleSet("acme", "v1"), "tx-1", PAYLOAD));
+    }
+
+    @Test
+    void disabledCacheNeverAnswers() throws IOException {
+        MaskingResponseCache disabled = new MaskingResponseCache(new ResponseCacheProperties(), new ObjectMapper(),
+                new SimpleMeterRegistry());
+        RuleSet ruleSet = ruleSet("default", "v1");
+        disabled.put(ruleSet, "tx-1", PAYLOAD, response("tx-1"));
+
+        assertNull(disabled.get(ruleSet, "tx-1", PAYLOAD));
+    }
+
+    @Test
+    void spilledRetryIsServedFromTheStoredResponseFile() throws IOException {
+        RuleSet ruleSet = ruleSet("default", "v1");
+        SpilledPayload first = spilled("first", PAYLOAD);
+        Files.write(first.getResponseFile(), MASKED.getBytes(StandardCharsets.UTF_8));
+        cache.putSpilled(ruleSet, "tx-1", first, first.getResponseFile());
+        // The request's temp files are deleted once its response has been written
+        first.close();
+
+        SpilledPayload retry = spilled("retry", PAYLOAD);
+        Path cached = cache.getSpilled(ruleSet, "tx-1", retry);
+        assertEquals(retry.getResponseFile(), cached);
+        assertEquals(MASKED, new String(Files.readAllBytes(cached), StandardCharsets.UTF_8));
+        assertEquals(1, requests("hit"));
+    }
+
+    @Test
+    void spilledRetryWithDifferentPayloadIsAMiss() throws IOException {
+        RuleSet ruleSet = ruleSet("default", "v1");
+        SpilledPayload first = spilled("first", PAYLOAD);
+        Files.write(first.getResponseFile(), MASKED.getBytes(StandardCharsets.UTF_8));
+        cache.putSpilled(ruleSet, "tx-1", first, first.getResponseFile());
+
+        String changed = PAYLOAD.replace("1234567890123456", "6543210987654321");
+        assertNull(cache.getSpilled(ruleSet, "tx-1", spilled("changed", changed)));
+        assertNull(cache.getSpilled(ruleSet("default", "v2"), "tx-1", spilled("reloaded", PAYLOAD)));
+        assertNull(cache.get(ruleSet, "tx-1", PAYLOAD), "Spilled entries never answer in-memory requests");
+    }
+
+    /**
+     * A spilled request as PayloadSpillService leaves it: temp files plus the payload's length and digest.
+     */
+    private SpilledPayload spilled(String name, String payload) throws IOException {
+        Path requestDirectory = Files.createDirectories(directory.resolve(name));
+        SpilledPayload spilled = new SpilledPayload(requestDirectory.resolve("payload.tmp"),
+                requestDirectory.resolve("masked.tmp"), Files.createFile(requestDirectory.resolve("response.json")));
+        spilled.setPayloadChars(payload.length());
+        spilled.setPayloadDigest(PayloadDigest.of(payload));
+        return spilled;
+    }
+
+    private static RuleSet ruleSet(String tenant, String version) {
+        MaskingConfig config = new MaskingConfig();
+        config.setVersion(version);
+        return RuleSet.compile(tenant, config);
+    }
+
+    private static MaskingResponse response(String transactionId) {
+        return new MaskingResponse(transactionId, MASKED, "JSON");
+    }
+
+    private long requests(String result) {
+        return (long) registry.get("masking.cache.requests").tag("result", result).counter().count();
+    }
+}
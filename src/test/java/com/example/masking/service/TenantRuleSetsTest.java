@@ -0,0 +1,115 @@
+package com.example.masking.service;
+
+import com.example.masking.config.RuleProfilerProperties;
+import com.example.masking.config.TenantProperties;
+import com.example.masking.model.MaskingAttribute;
+import com.example.masking.model.MaskingConfig;
+import com.example.masking.model.RuleStatsSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Reloading a tenant while a request still holds its previous rule set: the request's evaluations
+ * keep being counted until its permit is closed, and rules unchanged by the reload keep their counters.
+ */
+class TenantRuleSetsTest {
+
+    private static final String TENANT = "acme";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RuleStatistics ruleStatistics = new RuleStatistics(meterRegistry, new RuleProfilerProperties());
+
+    @TempDir
+    Path directory;
+
+    private Path configFile;
+    private TenantRuleSets tenantRuleSets;
+
+    @BeforeEach
+    void createTenants() throws IOException {
+        configFile = directory.resolve("acme.yaml");
+        writeRules("$.account", "$.card");
+
+        TenantProperties.Tenant acme = new TenantProperties.Tenant();
+        acme.setConfigFile(configFile.toUri().toString());
+        TenantProperties properties = new TenantProperties();
+        properties.getDefinitions().put(TENANT, acme);
+        tenantRuleSets = new TenantRuleSets(new MaskingConfig(), properties, ruleStatistics, meterRegistry,
+                new DefaultResourceLoader(), "masking-config.yaml");
+    }
+
+    @Test
+    void previousRulesAreCountedUntilTheirRequestsAreDone() throws IOException {
+        TenantRuleSets.Permit permit = tenantRuleSets.acquire(TENANT);
+        List<MaskingAttribute> previous = permit.getRuleSet().getAttributes("json");
+
+        writeRules("$.account", "$.iban");
+        RuleSet reloaded = tenantRuleSets.reload(TENANT);
+        assertNotSame(reloaded, permit.getRuleSet());
+
+        // The in-flight request masks with the previous rules
+        previous.forEach(attribute -> ruleStatistics.record(attribute, 1000, 1, 1, 100));
+        reloaded.getAttributes("json").forEach(attribute -> ruleStatistics.record(attribute, 1000, 1, 1, 100));
+
+        Map<String, Long> evaluations = evaluationsByRule();
+        assertEquals(2L, evaluations.get("$.account"), "An unchanged rule counts both versions' evaluations");
+        assertEquals(1L, evaluations.get("$.card"));
+        assertEquals(1L, evaluations.get("$.iban"));
+
+        permit.close();
+
+        evaluations = evaluationsByRule();
+        assertEquals(2L, evaluations.get("$.account"));
+        assertNull(evaluations.get("$.card"), "Rules of the previous version go once its last request is done");
+        assertNull(meterRegistry.find("masking.rule.evaluations").tag("rule", "$.card").functionTimer());
+
+        // Evaluations recorded after that are ignored
+        previous.forEach(attribute -> ruleStatistics.record(attribute, 1000, 1, 1, 100));
+        assertEquals(evaluations, evaluationsByRule());
+    }
+
+    @Test
+    void requestsAfterReloadUseTheNewRules() throws IOException {
+        writeRules("$.iban");
+        RuleSet reloaded = tenantRuleSets.reload(TENANT);
+
+        try (TenantRuleSets.Permit permit = tenantRuleSets.acquire(TENANT)) {
+            assertSame(reloaded, permit.getRuleSet());
+        }
+        assertEquals(1, evaluationsByRule().size());
+    }
+
+    private void writeRules(String... jsonPaths) throws IOException {
+        StringBuilder yaml = new StringBuilder("masking:\n  rules:\n    - type: \"json\"\n      attributes:\n");
+        for (String jsonPath : jsonPaths) {
+            yaml.append("        - jsonpath: \"").append(jsonPath).append("\"\n");
+        }
+        Files.write(configFile, yaml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Map<String, Long> evaluationsByRule() {
+        Map<String, Long> evaluations = new LinkedHashMap<>();
+        for (RuleStatsSnapshot snapshot : ruleStatistics.snapshot()) {
+            if (snapshot.getTenant().equals(TENANT)) {
+                evaluations.put(snapshot.getRule(), snapshot.getEvaluations());
+            }
+        }
+        return evaluations;
+    }
+}
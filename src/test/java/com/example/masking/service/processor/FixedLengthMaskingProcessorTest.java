@@ -0,0 +1,61 @@
+package com.example.masking.service.processor;
+
+import com.example.masking.model.MaskingAttribute;
+import com.example.masking.service.RuleStatistics;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Overlapping fixed-length ranges are merged into one segment; records too short for the merged
+ * segment still get the configured ranges that fit masked.
+ */
+class FixedLengthMaskingProcessorTest {
+
+    private static final String RECORD = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123";   // 30 chars
+
+    private final FixedLengthMaskingProcessor processor =
+            new FixedLengthMaskingProcessor(Mockito.mock(RuleStatistics.class));
+
+    // [0,10) and [5,30) overlap and are merged into [0,30)
+    private final FixedLengthMaskingPlan plan = FixedLengthMaskingPlan.compile("overlapping",
+            Arrays.asList(range(0, 10), range(5, 30)), null);
+
+    @Test
+    void overlappingRangesAreMergedOnFullRecords() {
+        assertEquals(1, plan.getSegments().size());
+        assertEquals("**************************0123", processor.mask(RECORD, plan));
+    }
+
+    @Test
+    void shortRecordKeepsTheRangesThatFitMasked() throws IOException {
+        String record = RECORD.substring(0, 20);
+
+        assertEquals("******GHIJKLMNOPQRST", processor.mask(record, plan));
+        assertEquals("******GHIJKLMNOPQRST", maskStreaming(record));
+        assertEquals("******GHIJKL", processor.mask(RECORD.substring(0, 12), plan));
+    }
+
+    @Test
+    void minimumRecordLengthIsTheSmallestConfiguredEnd() {
+        assertEquals(10, plan.getMinRecordLength());
+        assertEquals("******GHIJ", processor.mask(RECORD.substring(0, 10), plan));
+        assertEquals("ABCDEFGHI", processor.mask(RECORD.substring(0, 9), plan));
+    }
+
+    private String maskStreaming(String record) throws IOException {
+        StringWriter out = new StringWriter();
+        processor.mask(new StringReader(record), out, plan);
+        return out.toString();
+    }
+
+    private static MaskingAttribute range(int start, int end) {
+        return new MaskingAttribute(null, null, start, end);
+    }
+}